@@ -10,7 +10,10 @@
 package org.mrs;
 
 import org.apache.commons.lang3.StringUtils;
+import org.mrs.util.IdBitmap;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -33,6 +36,22 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	
 	private Collection<CohortMembership> memberships;
 	
+	/**
+	 * The ids of the patients with a membership, including voided ones, as of the last time they
+	 * were collected from {@link #memberIdBitmapSource}
+	 */
+	private transient IdBitmap memberIdBitmap;
+	
+	private transient Collection<CohortMembership> memberIdBitmapSource;
+	
+	private transient int memberIdBitmapSourceSize;
+	
+	/**
+	 * The cohorts to take the memberships of the patients in {@link #memberIdBitmap} from once they
+	 * are needed, set on the results of the static set operations
+	 */
+	private transient Cohort[] membershipSources;
+	
 	public Cohort() {
 		memberships = new TreeSet<>();
 	}
@@ -162,7 +181,9 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	public boolean addMembership(CohortMembership cohortMembership) {
 		if (cohortMembership != null) {
 			cohortMembership.setCohort(this);
-			return getMemberships().add(cohortMembership);
+			boolean added = getMemberships().add(cohortMembership);
+			memberIdBitmap = null;
+			return added;
 		}
 		return false;
 	}
@@ -171,7 +192,9 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	 * @since 2.1.0
 	 */
 	public boolean removeMembership(CohortMembership cohortMembership) {
-		return getMemberships().remove(cohortMembership);
+		boolean removed = getMemberships().remove(cohortMembership);
+		memberIdBitmap = null;
+		return removed;
 	}
 	
 	/**
@@ -190,12 +213,31 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	 * @since 2.1.0
 	 */
 	public Collection<CohortMembership> getMemberships() {
+		if (membershipSources != null) {
+			materializeMemberships();
+		}
 		if (memberships == null) {
 			memberships = new TreeSet<>();
 		}
 		return memberships;
 	}
 	
+	private void materializeMemberships() {
+		Cohort[] sources = membershipSources;
+		membershipSources = null;
+		Collection<CohortMembership> members = new TreeSet<>();
+		for (Cohort source : sources) {
+			for (CohortMembership membership : source.getMemberships()) {
+				if (memberIdBitmap.contains(membership.getPatientId())) {
+					members.add(membership);
+				}
+			}
+		}
+		memberships = members;
+		memberIdBitmapSource = members;
+		memberIdBitmapSourceSize = members.size();
+	}
+	
 	/**
 	 * @since 2.1.0
 	 * @param asOfDate date used to return active memberships
@@ -236,7 +278,8 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	// static utility methods
 	
 	/**
-	 * Returns the union of two cohorts
+	 * Returns the union of two cohorts, the memberships of the result are taken from both cohorts
+	 * once they are needed
 	 *
 	 * @param a The first Cohort
 	 * @param b The second Cohort
@@ -244,20 +287,21 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	 */
 	public static Cohort union(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
-		if (a != null) {
-			ret.getMemberships().addAll(a.getMemberships());
-		}
-		if (b != null) {
-			ret.getMemberships().addAll(b.getMemberships());
-		}
 		if (a != null && b != null) {
+			ret.setMembershipSources(IdBitmap.or(a.getCachedMemberIdBitmap(), b.getCachedMemberIdBitmap()), a, b);
 			ret.setName("(" + a.getName() + " + " + b.getName() + ")");
+		} else if (a != null) {
+			ret.setMembershipSources(a.getCachedMemberIdBitmap().copy(), a);
+		} else if (b != null) {
+			ret.setMembershipSources(b.getCachedMemberIdBitmap().copy(), b);
 		}
 		return ret;
 	}
 	
 	/**
-	 * Returns the intersection of two cohorts, treating null as an empty cohort
+	 * Returns the intersection of two cohorts, treating null as an empty cohort. The result has the
+	 * memberships of the first cohort of the patients that have a membership, voided or not, in
+	 * both cohorts, they are taken from the first cohort once they are needed.
 	 *
 	 * @param a The first Cohort
 	 * @param b The second Cohort
@@ -267,14 +311,15 @@ public class Cohort extends BaseChangeableOpenmrsData {
 		Cohort ret = new Cohort();
 		ret.setName("(" + (a == null ? "NULL" : a.getName()) + " * " + (b == null ? "NULL" : b.getName()) + ")");
 		if (a != null && b != null) {
-			ret.getMemberships().addAll(a.getMemberships());
-			ret.getMemberships().retainAll(b.getMemberships());
+			ret.setMembershipSources(IdBitmap.and(a.getCachedMemberIdBitmap(), b.getCachedMemberIdBitmap()), a);
 		}
 		return ret;
 	}
 	
 	/**
-	 * Subtracts a cohort from a cohort
+	 * Subtracts a cohort from a cohort. The result has the memberships of the original cohort of the
+	 * patients that don't have a membership, voided or not, in the cohort to subtract, they are taken
+	 * from the original cohort once they are needed.
 	 *
 	 * @param a the original Cohort
 	 * @param b the Cohort to subtract
@@ -283,15 +328,21 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	public static Cohort subtract(Cohort a, Cohort b) {
 		Cohort ret = new Cohort();
 		if (a != null) {
-			ret.getMemberships().addAll(a.getMemberships());
 			if (b != null) {
-				ret.getMemberships().removeAll(b.getMemberships());
+				ret.setMembershipSources(IdBitmap.andNot(a.getCachedMemberIdBitmap(), b.getCachedMemberIdBitmap()), a);
 				ret.setName("(" + a.getName() + " - " + b.getName() + ")");
+			} else {
+				ret.setMembershipSources(a.getCachedMemberIdBitmap().copy(), a);
 			}
 		}
 		return ret;
 	}
 	
+	private void setMembershipSources(IdBitmap memberIds, Cohort... sources) {
+		memberIdBitmap = memberIds;
+		membershipSources = sources;
+	}
+	
 	// getters and setters
 	
 	public Integer getCohortId() {
@@ -323,9 +374,66 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	 */
 	@Deprecated
 	public Set<Integer> getMemberIds() {
-		Set<Integer> memberIds = new TreeSet<>();
+		return getCachedMemberIdBitmap().toSet();
+	}
+	
+	/**
+	 * Gets the ids of the members without boxing them, which is what set operations and queries on
+	 * large cohorts should use
+	 * 
+	 * @since 2.3.0
+	 * @param includeVoided whether to include the patients whose memberships are all voided
+	 * @return the ids of the patients with a membership in the cohort, changing them doesn't change
+	 *         the cohort
+	 */
+	public IdBitmap getMemberIdBitmap(boolean includeVoided) {
+		if (includeVoided) {
+			return getCachedMemberIdBitmap().copy();
+		}
+		IdBitmap memberIds = new IdBitmap();
+		for (CohortMembership member : getMemberships()) {
+			if (!member.getVoided()) {
+				memberIds.add(member.getPatientId());
+			}
+		}
+		return memberIds;
+	}
+	
+	/**
+	 * The ids of all members are kept until the memberships are changed through this class or the
+	 * collection of memberships is replaced or changes size, voiding a membership doesn't change
+	 * them.
+	 * 
+	 * @return the ids of the patients with a membership in the cohort, including voided ones
+	 */
+	private IdBitmap getCachedMemberIdBitmap() {
+		if (membershipSources == null
+		        && (memberIdBitmap == null || memberIdBitmapSource != memberships || memberIdBitmapSourceSize != memberships
+		                .size())) {
+			Collection<CohortMembership> members = getMemberships();
+			IdBitmap memberIds = new IdBitmap();
+			for (CohortMembership member : members) {
+				memberIds.add(member.getPatientId());
+			}
+			memberIdBitmap = memberIds;
+			memberIdBitmapSource = members;
+			memberIdBitmapSourceSize = members.size();
+		}
+		return memberIdBitmap;
+	}
+	
+	/**
+	 * @since 2.3.0
+	 * @param asOfDate date used to find the active memberships, null for now
+	 * @return the ids of the patients with an active membership as of the given date
+	 * @see CohortMembership#isActive(Date)
+	 */
+	public IdBitmap getActiveMemberIdBitmap(Date asOfDate) {
+		IdBitmap memberIds = new IdBitmap();
 		for (CohortMembership member : getMemberships()) {
-			memberIds.add(member.getPatientId());
+			if (member.isActive(asOfDate)) {
+				memberIds.add(member.getPatientId());
+			}
 		}
 		return memberIds;
 	}
@@ -348,6 +456,8 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	
 	public void setMemberships(Collection<CohortMembership> members) {
 		this.memberships = members;
+		membershipSources = null;
+		memberIdBitmap = null;
 	}
 	
 	/**
@@ -403,4 +513,10 @@ public class Cohort extends BaseChangeableOpenmrsData {
 	public boolean hasNoActiveMemberships() {
 		return getActiveMemberships().isEmpty();
 	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		// the cohorts the memberships would be taken from aren't written
+		getMemberships();
+		out.defaultWriteObject();
+	}
 }
@@ -0,0 +1,135 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs;
+
+import java.util.Date;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.FetchType;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A pair of patients that are likely to be the same person, as found by the duplicate patient
+ * detection. The patient with the lower id is always patient A.
+ *
+ * @see org.mrs.api.PatientService#getDuplicatePatientMatches(Double, Integer, Integer)
+ * @see org.mrs.patient.duplicate.DuplicatePatientDetector
+ * @since 2.3.0
+ */
+@Entity
+@Table(name = "duplicate_patient_match", uniqueConstraints = @UniqueConstraint(columnNames = { "patient_a", "patient_b" }))
+public class DuplicatePatientMatch extends BaseOpenmrsObject {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	@Column(name = "duplicate_patient_match_id")
+	private Integer duplicatePatientMatchId;
+	
+	@ManyToOne(optional = false, fetch = FetchType.LAZY)
+	@JoinColumn(name = "patient_a")
+	private Patient patientA;
+	
+	@ManyToOne(optional = false, fetch = FetchType.LAZY)
+	@JoinColumn(name = "patient_b")
+	private Patient patientB;
+	
+	@Column(name = "score", nullable = false)
+	private Double score;
+	
+	@Column(name = "date_created", nullable = false, length = 19)
+	private Date dateCreated;
+	
+	public DuplicatePatientMatch() {
+	}
+	
+	/**
+	 * @param patientA one of the patients
+	 * @param patientB the other patient
+	 * @param score the likelihood, from 0 to 1, that both are the same person
+	 */
+	public DuplicatePatientMatch(Patient patientA, Patient patientB, Double score) {
+		boolean ordered = patientA.getPatientId() < patientB.getPatientId();
+		this.patientA = ordered ? patientA : patientB;
+		this.patientB = ordered ? patientB : patientA;
+		this.score = score;
+		this.dateCreated = new Date();
+	}
+	
+	public Integer getDuplicatePatientMatchId() {
+		return duplicatePatientMatchId;
+	}
+	
+	public void setDuplicatePatientMatchId(Integer duplicatePatientMatchId) {
+		this.duplicatePatientMatchId = duplicatePatientMatchId;
+	}
+	
+	public Patient getPatientA() {
+		return patientA;
+	}
+	
+	public void setPatientA(Patient patientA) {
+		this.patientA = patientA;
+	}
+	
+	public Patient getPatientB() {
+		return patientB;
+	}
+	
+	public void setPatientB(Patient patientB) {
+		this.patientB = patientB;
+	}
+	
+	public Double getScore() {
+		return score;
+	}
+	
+	public void setScore(Double score) {
+		this.score = score;
+	}
+	
+	public Date getDateCreated() {
+		return dateCreated;
+	}
+	
+	public void setDateCreated(Date dateCreated) {
+		this.dateCreated = dateCreated;
+	}
+	
+	/**
+	 * @see org.mrs.OpenmrsObject#getId()
+	 */
+	@Override
+	public Integer getId() {
+		return getDuplicatePatientMatchId();
+	}
+	
+	/**
+	 * @see org.mrs.OpenmrsObject#setId(java.lang.Integer)
+	 */
+	@Override
+	public void setId(Integer id) {
+		setDuplicatePatientMatchId(id);
+	}
+	
+	@Override
+	public String toString() {
+		return "DuplicatePatientMatch " + (patientA == null ? null : patientA.getPatientId()) + " - "
+		        + (patientB == null ? null : patientB.getPatientId()) + " score=" + score;
+	}
+}
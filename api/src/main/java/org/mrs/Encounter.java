@@ -26,7 +26,6 @@ import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -36,6 +35,7 @@ import javax.persistence.Table;
 
 import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cascade;
+import org.hibernate.annotations.GenericGenerator;
 import org.mrs.annotation.AllowDirectAccess;
 import org.mrs.annotation.DisableHandlers;
 import org.mrs.api.context.Context;
@@ -59,7 +59,8 @@ public class Encounter extends BaseChangeableOpenmrsData {
 	
 	// Fields
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "encounter_id_generator")
+	@GenericGenerator(name = "encounter_id_generator", strategy = "org.mrs.api.db.hibernate.PooledLoIfNotAssignedGenerator")
 	@Column(name = "encounter_id")
 	private Integer encounterId;
 	
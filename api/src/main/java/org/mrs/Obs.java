@@ -29,7 +29,6 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
@@ -42,6 +41,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cascade;
 import org.hibernate.annotations.CascadeType;
+import org.hibernate.annotations.GenericGenerator;
 import org.mrs.annotation.AllowDirectAccess;
 import org.mrs.api.APIException;
 import org.mrs.api.context.Context;
@@ -119,7 +119,8 @@ public class Obs extends BaseChangeableOpenmrsData {
 	private static final int FORM_NAMESPACE_PATH_MAX_LENGTH = 255;
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "obs_id_generator")
+	@GenericGenerator(name = "obs_id_generator", strategy = "org.mrs.api.db.hibernate.PooledLoIfNotAssignedGenerator")
 	@Column(name = "obs_id")
 	protected Integer obsId;
 	
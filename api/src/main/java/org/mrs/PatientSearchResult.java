@@ -0,0 +1,152 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs;
+
+import java.util.Date;
+
+/**
+ * A lightweight patient search result holding only the values stored in the search index, i.e. the
+ * preferred name and identifier, the gender and the birthdate. Nothing is loaded from the database
+ * to create it, so it is meant for type-ahead searches. Use the patient id to get the
+ * {@link Patient} once one of the results is picked.
+ *
+ * @see org.mrs.api.PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+ * @since 2.3.0
+ */
+public class PatientSearchResult {
+
+	private Integer patientId;
+
+	private String givenName;
+
+	private String middleName;
+
+	private String familyName;
+
+	private String identifier;
+
+	private String gender;
+
+	private Date birthdate;
+
+	/** default constructor */
+	public PatientSearchResult() {
+	}
+
+	/**
+	 * @param patientId the id of the matching patient
+	 */
+	public PatientSearchResult(Integer patientId) {
+		this.patientId = patientId;
+	}
+
+	/**
+	 * @return the id of the matching patient
+	 */
+	public Integer getPatientId() {
+		return patientId;
+	}
+
+	/**
+	 * @param patientId the patientId to set
+	 */
+	public void setPatientId(Integer patientId) {
+		this.patientId = patientId;
+	}
+
+	/**
+	 * @return the given name of the preferred name
+	 */
+	public String getGivenName() {
+		return givenName;
+	}
+
+	/**
+	 * @param givenName the givenName to set
+	 */
+	public void setGivenName(String givenName) {
+		this.givenName = givenName;
+	}
+
+	/**
+	 * @return the middle name of the preferred name
+	 */
+	public String getMiddleName() {
+		return middleName;
+	}
+
+	/**
+	 * @param middleName the middleName to set
+	 */
+	public void setMiddleName(String middleName) {
+		this.middleName = middleName;
+	}
+
+	/**
+	 * @return the family name of the preferred name
+	 */
+	public String getFamilyName() {
+		return familyName;
+	}
+
+	/**
+	 * @param familyName the familyName to set
+	 */
+	public void setFamilyName(String familyName) {
+		this.familyName = familyName;
+	}
+
+	/**
+	 * @return the preferred identifier
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * @param identifier the identifier to set
+	 */
+	public void setIdentifier(String identifier) {
+		this.identifier = identifier;
+	}
+
+	/**
+	 * @return the gender
+	 */
+	public String getGender() {
+		return gender;
+	}
+
+	/**
+	 * @param gender the gender to set
+	 */
+	public void setGender(String gender) {
+		this.gender = gender;
+	}
+
+	/**
+	 * @return the birthdate
+	 */
+	public Date getBirthdate() {
+		return birthdate;
+	}
+
+	/**
+	 * @param birthdate the birthdate to set
+	 */
+	public void setBirthdate(Date birthdate) {
+		this.birthdate = birthdate;
+	}
+
+	@Override
+	public String toString() {
+		return "PatientSearchResult[patientId=" + patientId + ", identifier=" + identifier + "]";
+	}
+}
@@ -25,7 +25,6 @@ import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Inheritance;
 import javax.persistence.InheritanceType;
@@ -43,12 +42,17 @@ import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Cache;
 import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Formula;
+import org.hibernate.annotations.GenericGenerator;
 import org.hibernate.annotations.LazyCollection;
 import org.hibernate.annotations.LazyCollectionOption;
 import org.hibernate.annotations.SortNatural;
 import org.hibernate.search.annotations.ContainedIn;
+import org.hibernate.search.annotations.DateBridge;
 import org.hibernate.search.annotations.DocumentId;
 import org.hibernate.search.annotations.Field;
+import org.hibernate.search.annotations.Index;
+import org.hibernate.search.annotations.Resolution;
+import org.hibernate.search.annotations.Store;
 import org.mrs.util.OpenmrsUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -72,7 +76,8 @@ public class Person extends BaseChangeableOpenmrsData {
 	private static final Logger log = LoggerFactory.getLogger(Person.class);
 	
 	@Id
-	@GeneratedValue(strategy = GenerationType.AUTO)
+	@GeneratedValue(generator = "person_id_generator")
+	@GenericGenerator(name = "person_id_generator", strategy = "org.mrs.api.db.hibernate.PooledLoIfNotAssignedGenerator")
 	@Column(name = "person_id")
 	@DocumentId
 	protected Integer personId;
@@ -102,10 +107,12 @@ public class Person extends BaseChangeableOpenmrsData {
 	@ContainedIn
 	private Set<PersonAttribute> attributes = null;
 	
-	@Field
+	@Field(store = Store.YES)
 	@Column(length = 50)
 	private String gender;
 	
+	@Field(index = Index.NO, store = Store.YES)
+	@DateBridge(resolution = Resolution.MILLISECOND)
 	@Column(name = "birthdate", length = 10)
 	private Date birthdate;
 	
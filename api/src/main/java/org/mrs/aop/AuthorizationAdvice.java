@@ -11,6 +11,9 @@ package org.mrs.aop;
 
 import java.lang.reflect.Method;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mrs.User;
@@ -33,6 +36,14 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 	private static final Logger log = LoggerFactory.getLogger(AuthorizationAdvice.class);
         private static final String USER_IS_NOT_AUTHORIZED_TO_ACCESS = "User {} is not authorized to access {}";
 	
+	private final AuthorizedAnnotationAttributes annotationAttributes = new AuthorizedAnnotationAttributes();
+	
+	/**
+	 * The authorization requirements of each method, read from its annotations the first time it is
+	 * called
+	 */
+	private final Map<Method, MethodAuthorization> methodAuthorizations = new ConcurrentHashMap<>();
+	
 	/**
 	 * Allows us to check whether a user is authorized to access a particular method.
 	 * 
@@ -55,9 +66,9 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 			}
 		}
 		
-		AuthorizedAnnotationAttributes attributes = new AuthorizedAnnotationAttributes();
-		Collection<String> privileges = attributes.getAttributes(method);
-		boolean requireAll = attributes.getRequireAll(method);
+		MethodAuthorization authorization = methodAuthorizations.computeIfAbsent(method, MethodAuthorization::new);
+		Collection<String> privileges = authorization.privileges;
+		boolean requireAll = authorization.requireAll;
 		
 		// Only execute if the "secure" method has authorization attributes
 		// Iterate through required privileges and return only if the user has
@@ -70,9 +81,10 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 					return;
 				}
 				
-				log.debug("User has privilege {}? {}", privilege, Context.hasPrivilege(privilege));
+				boolean hasPrivilege = Context.hasPrivilege(privilege);
+				log.debug("User has privilege {}? {}", privilege, hasPrivilege);
 				
-				if (Context.hasPrivilege(privilege)) {
+				if (hasPrivilege) {
 					if (!requireAll) {
 						// if not all required, the first one that they have
 						// causes them to "pass"
@@ -94,7 +106,7 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 				throwUnauthorized(Context.getAuthenticatedUser(), method, privileges);
 			}
 			
-		} else if (attributes.hasAuthorizedAnnotation(method) && !Context.isAuthenticated()) {
+		} else if (authorization.authorized && !Context.isAuthenticated()) {
 			throwUnauthorized(Context.getAuthenticatedUser(), method);
 		}
 	}
@@ -135,4 +147,22 @@ public class AuthorizationAdvice implements MethodBeforeAdvice {
 		log.debug(USER_IS_NOT_AUTHORIZED_TO_ACCESS, user, method.getName());
 		throw new APIAuthenticationException(Context.getMessageSourceService().getMessage("error.aunthenticationRequired"));
 	}
+	
+	/**
+	 * The privileges required by a method and whether all of them are needed
+	 */
+	private class MethodAuthorization {
+		
+		private final Collection<String> privileges;
+		
+		private final boolean requireAll;
+		
+		private final boolean authorized;
+		
+		MethodAuthorization(Method method) {
+			privileges = Collections.unmodifiableCollection(annotationAttributes.getAttributes(method));
+			requireAll = annotationAttributes.getRequireAll(method);
+			authorized = annotationAttributes.hasAuthorizedAnnotation(method);
+		}
+	}
 }
@@ -9,14 +9,21 @@
  */
 package org.mrs.aop;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.mrs.OpenmrsObject;
 import org.mrs.Retireable;
@@ -80,6 +87,21 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 	
 	private static final String UNABLE_GETTER_METHOD = "unable.getter.method";
 	
+	private static final MethodType CHILD_COLLECTION_ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+	
+	/**
+	 * The child collections to recurse into for each class and handler type, they only depend on
+	 * the fields and annotations of the class so they are looked up once. A ClassValue is used so
+	 * that the plans of module classes don't keep their class loaders from being collected.
+	 */
+	private static final ClassValue<Map<Class<? extends RequiredDataHandler>, List<ChildCollectionAccessor>>> traversalPlans = new ClassValue<Map<Class<? extends RequiredDataHandler>, List<ChildCollectionAccessor>>>() {
+		
+		@Override
+		protected Map<Class<? extends RequiredDataHandler>, List<ChildCollectionAccessor>> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<>();
+		}
+	};
+	
 	/**
 	 * @see org.springframework.aop.MethodBeforeAdvice#before(java.lang.reflect.Method,
 	 *      java.lang.Object[], java.lang.Object)
@@ -109,9 +131,7 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		if (methodName.startsWith("save") || methodName.startsWith("create")) {
 			
 			// if the first argument is an OpenmrsObject, handle it now
-			Reflect reflect = new Reflect(OpenmrsObject.class);
-			
-			if (reflect.isSuperClass(mainArgument)) {
+			if (mainArgument instanceof OpenmrsObject) {
 				// fail early if the method name is not like saveXyz(Xyz)
 				if (!methodNameEndsWithClassName(method, mainArgument.getClass())) {
 					return;
@@ -144,7 +164,7 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 				Collection<OpenmrsObject> openmrsObjects = (Collection<OpenmrsObject>) mainArgument;
 				
 				for (OpenmrsObject object : openmrsObjects) {
-					ValidateUtil.validate(mainArgument);
+					ValidateUtil.validate(object);
 					
 					recursivelyHandle(SaveHandler.class, object, other);
 				}
@@ -239,22 +259,31 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 	 *            void/retire reason)
 	 * @param alreadyHandled an optional list of objects that have already been handled and should
 	 *            not be processed again. this is intended to prevent infinite recursion when
-	 *            handling collection properties.
+	 *            handling collection properties. Objects handled by this call are added to it.
 	 * @see HandlerUtil#getHandlersForType(Class, Class)
 	 */
-	@SuppressWarnings("unchecked")
 	public static <H extends RequiredDataHandler> void recursivelyHandle(Class<H> handlerType, OpenmrsObject openmrsObject,
 	        User currentUser, Date currentDate, String other, List<OpenmrsObject> alreadyHandled) {
 		if (openmrsObject == null) {
 			return;
 		}
 		
-		Class<? extends OpenmrsObject> openmrsObjectClass = openmrsObject.getClass();
-		
-		if (alreadyHandled == null) {
-			alreadyHandled = new ArrayList<>();
+		// objects are tracked by identity, equals() may compare uuids or ids which is both slower and
+		// would skip distinct instances of the same row
+		Set<OpenmrsObject> handled = Collections.newSetFromMap(new IdentityHashMap<>());
+		if (alreadyHandled != null) {
+			handled.addAll(alreadyHandled);
 		}
 		
+		recursivelyHandle(handlerType, openmrsObject, currentUser, currentDate, other, handled, alreadyHandled);
+	}
+	
+	private static <H extends RequiredDataHandler> void recursivelyHandle(Class<H> handlerType,
+	        OpenmrsObject openmrsObject, User currentUser, Date currentDate, String other, Set<OpenmrsObject> handled,
+	        List<OpenmrsObject> alreadyHandled) {
+		
+		Class<? extends OpenmrsObject> openmrsObjectClass = openmrsObject.getClass();
+		
 		// fetch all handlers for the object being saved
 		List<H> handlers = HandlerUtil.getHandlersForType(handlerType, openmrsObjectClass);
 		
@@ -262,13 +291,49 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		for (H handler : handlers) {
 			handler.handle(openmrsObject, currentUser, currentDate, other);
 		}
-		alreadyHandled.add(openmrsObject);
-		
-		Reflect reflect = new Reflect(OpenmrsObject.class);
-		List<Field> allInheritedFields = reflect.getInheritedFields(openmrsObjectClass);
+		handled.add(openmrsObject);
+		if (alreadyHandled != null) {
+			alreadyHandled.add(openmrsObject);
+		}
 		
 		// loop over all child collections of OpenmrsObjects and recursively save on those
-		for (Field field : allInheritedFields) {
+		for (ChildCollectionAccessor accessor : getTraversalPlan(handlerType, openmrsObjectClass)) {
+			
+			// the collection we'll be looping over
+			Collection<OpenmrsObject> childCollection = accessor.get(openmrsObject);
+			
+			if (childCollection != null) {
+				for (OpenmrsObject collectionElement : childCollection) {
+					if (collectionElement != null && !handled.contains(collectionElement)) {
+						recursivelyHandle(handlerType, collectionElement, currentUser, currentDate, other, handled,
+						    alreadyHandled);
+					}
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Gets the child collections of the given class that the given handler type should recurse
+	 * into, i.e. the collections of {@link OpenmrsObject}s that are neither {@link Independent} nor
+	 * marked with {@link DisableHandlers} for the handler type.
+	 *
+	 * @param handlerType the type of handler the objects are handled with
+	 * @param openmrsObjectClass the class of the object being handled
+	 * @return accessors for the child collections, in field order
+	 */
+	static List<ChildCollectionAccessor> getTraversalPlan(Class<? extends RequiredDataHandler> handlerType,
+	        Class<? extends OpenmrsObject> openmrsObjectClass) {
+		return traversalPlans.get(openmrsObjectClass).computeIfAbsent(handlerType,
+		    type -> createTraversalPlan(type, openmrsObjectClass));
+	}
+	
+	private static List<ChildCollectionAccessor> createTraversalPlan(Class<? extends RequiredDataHandler> handlerType,
+	        Class<? extends OpenmrsObject> openmrsObjectClass) {
+		List<ChildCollectionAccessor> plan = new ArrayList<>();
+		
+		Reflect reflect = new Reflect(OpenmrsObject.class);
+		for (Field field : reflect.getInheritedFields(openmrsObjectClass)) {
 			
 			// skip field if it's declared independent
 			if (Reflect.isAnnotationPresent(openmrsObjectClass, field.getName(), Independent.class)) {
@@ -276,21 +341,11 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 			}
 			
 			if (reflect.isCollectionField(field) && !isHandlerMarkedAsDisabled(handlerType, field)) {
-				
-				// the collection we'll be looping over
-				Collection<OpenmrsObject> childCollection = getChildCollection(openmrsObject, field);
-				
-				if (childCollection != null) {
-					for (Object collectionElement : childCollection) {
-						if (!alreadyHandled.contains(collectionElement)) {
-							recursivelyHandle(handlerType, (OpenmrsObject) collectionElement, currentUser, currentDate,
-							    other, alreadyHandled);
-						}
-					}
-				}
+				plan.add(new ChildCollectionAccessor(openmrsObjectClass, field));
 			}
 		}
 		
+		return Collections.unmodifiableList(plan);
 	}
 	
 	/**
@@ -391,4 +446,64 @@ public class RequiredDataAdvice implements MethodBeforeAdvice {
 		
 		return false;
 	}
+	
+	/**
+	 * Reads one child collection off objects of a given class, using the getter for the field or
+	 * the field itself if it allows {@link AllowDirectAccess direct access}.
+	 *
+	 * @see #getChildCollection(OpenmrsObject, Field)
+	 */
+	static final class ChildCollectionAccessor {
+		
+		private final String fieldName;
+		
+		private final String getterName;
+		
+		private final boolean directAccess;
+		
+		private final MethodHandle accessor;
+		
+		ChildCollectionAccessor(Class<? extends OpenmrsObject> openmrsObjectClass, Field field) {
+			fieldName = field.getName();
+			getterName = "get" + StringUtils.capitalize(fieldName);
+			directAccess = field.isAnnotationPresent(AllowDirectAccess.class);
+			
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			try {
+				if (directAccess) {
+					field.setAccessible(true);
+					accessor = lookup.unreflectGetter(field).asType(CHILD_COLLECTION_ACCESSOR_TYPE);
+				} else {
+					Method getterMethod = openmrsObjectClass.getMethod(getterName, (Class[]) null);
+					accessor = lookup.unreflect(getterMethod).asType(CHILD_COLLECTION_ACCESSOR_TYPE);
+				}
+			}
+			catch (IllegalAccessException e) {
+				if (directAccess) {
+					throw new APIException("unable.get.field", new Object[] { fieldName, openmrsObjectClass }, e);
+				} else {
+					throw new APIException(UNABLE_GETTER_METHOD, new Object[] { "use", getterName, fieldName,
+					        openmrsObjectClass }, e);
+				}
+			}
+			catch (NoSuchMethodException e) {
+				throw new APIException(UNABLE_GETTER_METHOD, new Object[] { "find", getterName, fieldName,
+				        openmrsObjectClass }, e);
+			}
+		}
+		
+		@SuppressWarnings("unchecked")
+		Collection<OpenmrsObject> get(OpenmrsObject openmrsObject) {
+			try {
+				return (Collection<OpenmrsObject>) (Object) accessor.invokeExact((Object) openmrsObject);
+			}
+			catch (Error e) {
+				throw e;
+			}
+			catch (Throwable e) {
+				throw new APIException(UNABLE_GETTER_METHOD, new Object[] { "run", getterName, fieldName,
+				        openmrsObject.getClass() }, e);
+			}
+		}
+	}
 }
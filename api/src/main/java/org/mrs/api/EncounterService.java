@@ -180,6 +180,33 @@ public interface EncounterService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.GET_ENCOUNTERS })
 	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria);
 	
+	/**
+	 * Gets a page of the encounters that match the criteria and the authenticated user is allowed to
+	 * view. Encounters of types with a view privilege the user doesn't have are excluded in the
+	 * query, so every page except the last one is full.
+	 *
+	 * @param encounterSearchCriteria the object containing search parameters
+	 * @param start index of the first encounter to return, may be null
+	 * @param length maximum number of encounters to return, may be null
+	 * @return a list of encounters ordered by increasing encounterDatetime
+	 * @since 2.3.0
+	 * @should return the requested page of encounters
+	 * @should exclude encounters the user is not allowed to view
+	 */
+	@Authorized( { PrivilegeConstants.GET_ENCOUNTERS })
+	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria, Integer start, Integer length);
+	
+	/**
+	 * Counts the encounters that match the criteria and the authenticated user is allowed to view
+	 *
+	 * @param encounterSearchCriteria the object containing search parameters
+	 * @return the number of encounters
+	 * @since 2.3.0
+	 * @should count the encounters the user is allowed to view
+	 */
+	@Authorized( { PrivilegeConstants.GET_ENCOUNTERS })
+	public Long getCountOfEncounters(EncounterSearchCriteria encounterSearchCriteria);
+	
 	/**
 	 * Voiding a encounter essentially removes it from circulation
 	 * 
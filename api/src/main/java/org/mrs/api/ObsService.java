@@ -9,6 +9,7 @@
  */
 package org.mrs.api;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -128,6 +129,29 @@ public interface ObsService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.ADD_OBS, PrivilegeConstants.EDIT_OBS })
 	public Obs saveObs(Obs obs, String changeMessage) throws APIException;
 	
+	/**
+	 * Saves many obs at once, e.g. for data imports. Each obs is saved with the same rules as
+	 * {@link #saveObs(Obs, String)} but validation and save handlers run once for the whole batch
+	 * instead of once per service call, revisions are voided with bulk updates and the changes are
+	 * written in chunks of {@link org.mrs.util.OpenmrsConstants#GP_OBS_BULK_SAVE_BATCH_SIZE} obs.
+	 * <p>
+	 * After each chunk the hibernate session is flushed and cleared, so the passed obs and any
+	 * other objects loaded in the session are detached when this method returns.
+	 * 
+	 * @param obs the obs to save
+	 * @param changeMessage String explaining why existing obs are being changed, required if any
+	 *            of the obs has been saved before
+	 * @return the saved obs in the same order, for edited obs these are the newly created obs
+	 * @throws APIException
+	 * @since 2.3.0
+	 * @should save new obs and their group members
+	 * @should void the previous versions of edited obs and their group members
+	 * @should fail if an existing obs is saved without a change message
+	 * @should not void obs without changes
+	 */
+	@Authorized( { PrivilegeConstants.ADD_OBS, PrivilegeConstants.EDIT_OBS })
+	public List<Obs> saveObs(Collection<Obs> obs, String changeMessage) throws APIException;
+	
 	/**
 	 * Equivalent to deleting an observation
 	 * 
@@ -319,9 +319,12 @@ public interface OrderService extends OpenmrsService {
 	public List<Order> getOrderHistoryByConcept(Patient patient, Concept concept);
 	
 	/**
-	 * Gets the next available order number seed
+	 * Gets the next available order number seed, seeds are reserved from the database in blocks of
+	 * the size set by the {@link OpenmrsConstants#GP_ORDER_NUMBER_SEED_BLOCK_SIZE} global property
+	 * and handed out from memory until the block is used up
 	 * 
 	 * @return the order number seed
+	 * @should reserve seeds in blocks of the configured size
 	 */
 	@Authorized(PrivilegeConstants.ADD_ORDERS)
 	public Long getNextOrderNumberSeedSequenceValue();
@@ -16,14 +16,17 @@ import java.util.List;
 import org.mrs.Allergies;
 import org.mrs.Allergy;
 import org.mrs.Concept;
+import org.mrs.DuplicatePatientMatch;
 import org.mrs.Location;
 import org.mrs.Patient;
 import org.mrs.PatientIdentifier;
 import org.mrs.PatientIdentifierType;
+import org.mrs.PatientSearchResult;
 import org.mrs.annotation.Authorized;
 import org.mrs.api.db.PatientDAO;
 import org.mrs.comparator.PatientIdentifierTypeDefaultComparator;
 import org.mrs.patient.IdentifierValidator;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
 import org.mrs.person.PersonMergeLogData;
 import org.mrs.serialization.SerializationException;
 import org.mrs.util.PrivilegeConstants;
@@ -459,6 +462,26 @@ public interface PatientService extends OpenmrsService {
 	 */
 	@Authorized( { PrivilegeConstants.GET_PATIENTS })
 	public List<Patient> getPatients(String query, boolean includeVoided, Integer start, Integer length) throws APIException;
+	
+	/**
+	 * Searches patients like {@link #getPatients(String, boolean, Integer, Integer)} but returns only
+	 * the preferred name and identifier, the gender and the birthdate as stored in the search index.
+	 * No patients are loaded from the database, which makes it suitable for type-ahead searches.
+	 * 
+	 * @param query the string to search on
+	 * @param includeVoided true/false whether or not to included voided patients
+	 * @param start the starting index
+	 * @param length the number of results to return
+	 * @return the search results in the same order as the patients would be returned
+	 * @throws APIException
+	 * @since 2.3.0
+	 * @should return the same patients in the same order as getPatients
+	 * @should return the preferred name and identifier
+	 * @should return empty list if query is blank
+	 */
+	@Authorized( { PrivilegeConstants.GET_PATIENTS })
+	public List<PatientSearchResult> getPatientSearchResults(String query, boolean includeVoided, Integer start,
+	        Integer length) throws APIException;
 		
 	/**
 	 * This method tries to find a patient in the database given the attributes on the given
@@ -490,6 +513,72 @@ public interface PatientService extends OpenmrsService {
 	@Authorized( { PrivilegeConstants.GET_PATIENTS })
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) throws APIException;
 	
+	/**
+	 * Reads the attributes compared by the duplicate patient detection for a batch of patients,
+	 * without loading the patients. Called repeatedly with the id of the last patient of the
+	 * previous batch to stream all patients.
+	 * 
+	 * @param afterPatientId only patients with a greater id are read, null to start with the first
+	 * @param batchSize the maximum number of patients to read
+	 * @param includeVoided whether voided patients are read
+	 * @return the candidates ordered by patient id
+	 * @since 2.3.0
+	 * @see org.mrs.patient.duplicate.DuplicatePatientDetector
+	 */
+	@Authorized( { PrivilegeConstants.GET_PATIENTS })
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer afterPatientId, int batchSize,
+	        boolean includeVoided) throws APIException;
+	
+	/**
+	 * Saves the pairs found by the duplicate patient detection, pairs already saved get the score and
+	 * date created of the given match, so that they count as found by the run saving them
+	 * 
+	 * @param matches the pairs to save
+	 * @since 2.3.0
+	 */
+	@Authorized( { PrivilegeConstants.EDIT_PATIENTS })
+	public void saveDuplicatePatientMatches(Collection<DuplicatePatientMatch> matches) throws APIException;
+	
+	/**
+	 * Deletes all the pairs found by the duplicate patient detection, before it starts over
+	 * 
+	 * @since 2.3.0
+	 */
+	@Authorized( { PrivilegeConstants.PURGE_PATIENTS })
+	public void purgeDuplicatePatientMatches() throws APIException;
+	
+	/**
+	 * Deletes the pairs saved by the duplicate patient detection before the given date, i.e. the
+	 * pairs not found again by a run started at that date
+	 * 
+	 * @param foundBefore the date the run started
+	 * @since 2.3.0
+	 */
+	@Authorized( { PrivilegeConstants.PURGE_PATIENTS })
+	public void purgeDuplicatePatientMatches(Date foundBefore) throws APIException;
+	
+	/**
+	 * Gets a page of the likely duplicate patients found by the last run of the duplicate patient
+	 * detection, e.g. by the <code>DetectDuplicatePatientsTask</code>
+	 * 
+	 * @param minScore (optional) the minimum score of the pairs to return
+	 * @param start (optional) the index of the first pair to return
+	 * @param length (optional) the number of pairs to return
+	 * @return the pairs by descending score
+	 * @since 2.3.0
+	 */
+	@Authorized( { PrivilegeConstants.GET_PATIENTS })
+	public List<DuplicatePatientMatch> getDuplicatePatientMatches(Double minScore, Integer start, Integer length)
+	        throws APIException;
+	
+	/**
+	 * @param minScore (optional) the minimum score of the pairs to count
+	 * @return the number of pairs found by the last run of the duplicate patient detection
+	 * @since 2.3.0
+	 */
+	@Authorized( { PrivilegeConstants.GET_PATIENTS })
+	public Long getCountOfDuplicatePatientMatches(Double minScore) throws APIException;
+	
 	/**
 	 * Convenience method to join two patients' information into one record.
 	 * <ol>
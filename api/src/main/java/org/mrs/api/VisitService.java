@@ -13,6 +13,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 import org.mrs.Concept;
 import org.mrs.Location;
@@ -379,4 +380,36 @@ public interface VisitService extends OpenmrsService {
 	 */
 	@Authorized(PrivilegeConstants.EDIT_VISITS)
 	public void stopVisits(Date maximumStartDate);
+	
+	/**
+	 * Stops the visits like {@link #stopVisits(Date)} and reports the progress. The visits are
+	 * stopped with one {@link #stopVisitsById(Collection, Date)} per
+	 * {@link OpenmrsConstants#GP_VISITS_AUTO_CLOSE_BATCH_SIZE} visits, each of which commits on its
+	 * own unless the caller has a transaction.
+	 * 
+	 * @param maximumStartDate Visits started on or before this date time value will get stopped
+	 * @param progressListener called with the number of visits stopped so far after each update, may
+	 *            be null
+	 * @return the number of stopped visits
+	 * @since 2.3.0
+	 * @should close all unvoided active visit matching the specified visit types
+	 * @should report the number of stopped visits
+	 * @should call the visit stop listeners for each stopped visit
+	 */
+	@Authorized(PrivilegeConstants.EDIT_VISITS)
+	public int stopVisits(Date maximumStartDate, IntConsumer progressListener);
+	
+	/**
+	 * Stops the active visits with the given ids with a single update, which sets the stop date
+	 * time, changed by and date changed, and calls the registered {@link VisitStopListener}s for
+	 * each of them.
+	 * 
+	 * @param visitIds the ids of the visits to stop
+	 * @param stopDatetime the stop date time to set
+	 * @return the number of stopped visits
+	 * @since 2.3.0
+	 * @should stop the active visits with the given ids
+	 */
+	@Authorized(PrivilegeConstants.EDIT_VISITS)
+	public int stopVisitsById(Collection<Integer> visitIds, Date stopDatetime);
 }
@@ -0,0 +1,34 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api;
+
+import java.util.Date;
+
+import org.mrs.Visit;
+
+/**
+ * Lets modules act on each visit stopped by {@link VisitService#stopVisits(Date)}.
+ * <p>
+ * The visits are stopped with bulk updates, which bypass the save handlers and hibernate
+ * interceptors a visit saved on its own would go through. Beans implementing this interface are
+ * picked up and called for every stopped visit, which is then loaded for them. As that costs one
+ * query per visit, only implement it if the module really needs to see each visit.
+ *
+ * @since 2.3.0
+ */
+public interface VisitStopListener {
+
+	/**
+	 * Called after the visit has been stopped in the database. Changes made to the visit are saved.
+	 *
+	 * @param visit the stopped visit
+	 */
+	public void visitStopped(Visit visit);
+}
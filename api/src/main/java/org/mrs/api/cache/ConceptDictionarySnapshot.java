@@ -0,0 +1,553 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mrs.api.ConceptNameType;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.ConceptDAO;
+import org.mrs.util.OpenmrsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * An immutable, in-memory index of the concept dictionary used by
+ * {@link org.mrs.api.ConceptService} to resolve concepts by uuid, mapping and name without
+ * querying the database. It holds the id, uuid and retired flag of every concept, its mappings and
+ * its names, and the preferred name of each concept in every allowed locale.
+ * <p>
+ * The snapshot is only used when {@link OpenmrsConstants#GP_CONCEPT_DICTIONARY_SNAPSHOT_ENABLED} is
+ * true. It is built when the application starts, or on the first lookup, and replaced rather than
+ * modified afterwards: concepts that are saved, retired or purged through the concept service are
+ * read again from the database after the transaction commits and a copy of the snapshot with their
+ * new entries takes the place of the old one. Changes to concept sources and reference terms cause
+ * a full rebuild. Within a transaction that changed concepts the snapshot is not used at all, so
+ * that lookups see the uncommitted changes.
+ *
+ * @since 2.3.0
+ */
+public class ConceptDictionarySnapshot {
+	
+	private static final Logger log = LoggerFactory.getLogger(ConceptDictionarySnapshot.class);
+	
+	private ConceptDAO conceptDAO;
+	
+	private volatile Dictionary dictionary;
+	
+	private volatile boolean rebuildRequired;
+	
+	// concepts changed by committed transactions that are not refreshed in the dictionary yet
+	private final Set<Integer> changedConceptIds = ConcurrentHashMap.newKeySet();
+	
+	// number of transactions that changed concepts and haven't completed yet
+	private final AtomicInteger pendingTransactions = new AtomicInteger();
+	
+	public void setConceptDAO(ConceptDAO conceptDAO) {
+		this.conceptDAO = conceptDAO;
+	}
+	
+	/**
+	 * @return true if the snapshot is enabled by its global property
+	 */
+	public boolean isEnabled() {
+		return Boolean.parseBoolean(Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GP_CONCEPT_DICTIONARY_SNAPSHOT_ENABLED, "false"));
+	}
+	
+	/**
+	 * Builds the snapshot if it is enabled and hasn't been built yet. Must be called with an open
+	 * session.
+	 */
+	public void buildIfEnabled() {
+		if (isEnabled()) {
+			getDictionary();
+		}
+	}
+	
+	/**
+	 * Makes sure the snapshot is current and tells whether lookups can be answered from it. Must be
+	 * called with an open session, since it may need to read changed concepts.
+	 *
+	 * @return true if the snapshot is enabled and can be used in the current transaction
+	 */
+	public boolean isAvailable() {
+		return getDictionary() != null;
+	}
+	
+	/**
+	 * @param uuid the uuid of a concept
+	 * @return the id of the concept or null if there is none with that uuid
+	 */
+	public Integer getConceptIdByUuid(String uuid) {
+		Dictionary current = dictionary;
+		return current == null ? null : current.idsByUuid.get(uuid);
+	}
+	
+	/**
+	 * @param code the code of the reference term
+	 * @param sourceName the name or hl7 code of the concept source
+	 * @param includeRetired whether retired concepts should be returned
+	 * @return the ids of the concepts mapped to the term, concepts that are not retired first
+	 */
+	public List<Integer> getConceptIdsByMapping(String code, String sourceName, boolean includeRetired) {
+		Dictionary current = dictionary;
+		List<Integer> ids = current == null ? null : current.idsByMapping.get(toMappingKey(sourceName, code));
+		if (ids == null) {
+			return Collections.emptyList();
+		}
+		if (includeRetired) {
+			return ids;
+		}
+		
+		List<Integer> unretired = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			if (!current.entries.get(id).retired) {
+				unretired.add(id);
+			}
+		}
+		return unretired;
+	}
+	
+	/**
+	 * @param conceptId the id of a concept in the snapshot
+	 * @return true if the concept is retired
+	 */
+	public boolean isRetired(Integer conceptId) {
+		Dictionary current = dictionary;
+		Entry entry = current == null ? null : current.entries.get(conceptId);
+		return entry != null && entry.retired;
+	}
+	
+	/**
+	 * Finds the unretired concept with a non voided name in the language of the given locale, the
+	 * way {@link ConceptDAO#getConceptByName(String)} does. If several concepts have the name, the
+	 * first one having it in exactly the given locale is returned, preferring names over index
+	 * terms.
+	 *
+	 * @param name the name, compared case insensitively
+	 * @param locale the locale
+	 * @return the id of the concept or null if there is no or no single matching concept
+	 */
+	public Integer getConceptIdByName(String name, Locale locale) {
+		Dictionary current = dictionary;
+		List<NameEntry> names = current == null ? null : current.namesByKey.get(toNameKey(name, locale));
+		if (names == null) {
+			return null;
+		}
+		
+		Set<Integer> conceptIds = new HashSet<>();
+		for (NameEntry entry : names) {
+			conceptIds.add(entry.conceptId);
+		}
+		if (conceptIds.size() == 1) {
+			return names.get(0).conceptId;
+		}
+		
+		for (boolean indexTerms : new boolean[] { false, true }) {
+			for (NameEntry entry : names) {
+				if (entry.indexTerm == indexTerms && locale.equals(entry.locale)) {
+					return entry.conceptId;
+				}
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param conceptId the id of a concept
+	 * @param locale one of the allowed locales
+	 * @return the name marked as preferred in the locale, or else the fully specified name in it or
+	 *         its language, null if the concept has neither
+	 */
+	public String getPreferredName(Integer conceptId, Locale locale) {
+		Dictionary current = dictionary;
+		Entry entry = current == null ? null : current.entries.get(conceptId);
+		return entry == null ? null : entry.preferredNames.get(locale);
+	}
+	
+	/**
+	 * @return the number of concepts in the snapshot, 0 if it hasn't been built
+	 */
+	public int size() {
+		Dictionary current = dictionary;
+		return current == null ? 0 : current.entries.size();
+	}
+	
+	/**
+	 * To be called when a concept is saved, retired or purged. The concept is read again once the
+	 * current transaction, if any, is committed.
+	 *
+	 * @param conceptId the id of the concept
+	 */
+	public void conceptChanged(Integer conceptId) {
+		if (conceptId == null) {
+			return;
+		}
+		
+		ChangeSynchronization synchronization = getChangeSynchronization(true);
+		if (synchronization == null) {
+			changedConceptIds.add(conceptId);
+		} else {
+			synchronization.conceptIds.add(conceptId);
+		}
+	}
+	
+	/**
+	 * To be called when concept sources or reference terms change, which makes the snapshot rebuild
+	 * once the current transaction, if any, completes.
+	 */
+	public void invalidate() {
+		ChangeSynchronization synchronization = getChangeSynchronization(true);
+		if (synchronization == null) {
+			rebuildRequired = true;
+		} else {
+			synchronization.rebuild = true;
+		}
+	}
+	
+	private Dictionary getDictionary() {
+		if (conceptDAO == null || !isEnabled()) {
+			dictionary = null;
+			return null;
+		}
+		if (getChangeSynchronization(false) != null) {
+			return null;
+		}
+		
+		if (dictionary == null || rebuildRequired || !changedConceptIds.isEmpty()) {
+			refresh();
+		}
+		return dictionary;
+	}
+	
+	private synchronized void refresh() {
+		if (dictionary == null || rebuildRequired) {
+			rebuildRequired = false;
+			changedConceptIds.clear();
+			long start = System.currentTimeMillis();
+			Dictionary built = new Dictionary(getAllowedLocales());
+			built.add(conceptDAO.getConceptDictionaryEntries(null));
+			dictionary = built;
+			log.info("Built the concept dictionary snapshot of {} concepts in {} ms", built.entries.size(),
+			    System.currentTimeMillis() - start);
+		} else if (!changedConceptIds.isEmpty()) {
+			List<Integer> conceptIds = new ArrayList<>(changedConceptIds);
+			changedConceptIds.removeAll(conceptIds);
+			Dictionary updated = new Dictionary(dictionary);
+			updated.remove(conceptIds);
+			updated.add(conceptDAO.getConceptDictionaryEntries(conceptIds));
+			dictionary = updated;
+			log.debug("Refreshed {} concepts in the concept dictionary snapshot", conceptIds.size());
+		}
+	}
+	
+	private static List<Locale> getAllowedLocales() {
+		return new ArrayList<>(Context.getAdministrationService().getAllowedLocales());
+	}
+	
+	/**
+	 * Looks up the synchronization registered by this snapshot for the current transaction,
+	 * registering one if asked to and there is a transaction.
+	 */
+	private ChangeSynchronization getChangeSynchronization(boolean register) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		if (pendingTransactions.get() > 0) {
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				if (synchronization instanceof ChangeSynchronization
+				        && ((ChangeSynchronization) synchronization).getSnapshot() == this) {
+					return (ChangeSynchronization) synchronization;
+				}
+			}
+		}
+		if (!register) {
+			return null;
+		}
+		
+		ChangeSynchronization synchronization = new ChangeSynchronization();
+		TransactionSynchronizationManager.registerSynchronization(synchronization);
+		pendingTransactions.incrementAndGet();
+		return synchronization;
+	}
+	
+	private static String toMappingKey(String sourceName, String code) {
+		return StringUtils.lowerCase(sourceName) + "|" + StringUtils.lowerCase(code);
+	}
+	
+	private static String toNameKey(String name, Locale locale) {
+		return locale.getLanguage() + "|" + StringUtils.lowerCase(name);
+	}
+	
+	private class ChangeSynchronization extends TransactionSynchronizationAdapter {
+		
+		private final Set<Integer> conceptIds = new HashSet<>();
+		
+		private boolean rebuild;
+		
+		ConceptDictionarySnapshot getSnapshot() {
+			return ConceptDictionarySnapshot.this;
+		}
+		
+		@Override
+		public void afterCompletion(int status) {
+			if (status == STATUS_COMMITTED) {
+				changedConceptIds.addAll(conceptIds);
+				if (rebuild) {
+					rebuildRequired = true;
+				}
+			}
+			pendingTransactions.decrementAndGet();
+		}
+	}
+	
+	/**
+	 * The indexes of one version of the snapshot, never modified once published
+	 */
+	private static class Dictionary {
+		
+		private final List<Locale> locales;
+		
+		private final Map<Integer, Entry> entries;
+		
+		private final Map<String, Integer> idsByUuid;
+		
+		private final Map<String, List<Integer>> idsByMapping;
+		
+		private final Map<String, List<NameEntry>> namesByKey;
+		
+		private Dictionary(List<Locale> locales) {
+			this.locales = locales;
+			this.entries = new HashMap<>();
+			this.idsByUuid = new HashMap<>();
+			this.idsByMapping = new HashMap<>();
+			this.namesByKey = new HashMap<>();
+		}
+		
+		private Dictionary(Dictionary other) {
+			this.locales = other.locales;
+			this.entries = new HashMap<>(other.entries);
+			this.idsByUuid = new HashMap<>(other.idsByUuid);
+			this.idsByMapping = new HashMap<>(other.idsByMapping);
+			this.namesByKey = new HashMap<>(other.namesByKey);
+		}
+		
+		private void add(Collection<Entry> added) {
+			for (Entry entry : added) {
+				entry.computePreferredNames(locales);
+				entries.put(entry.conceptId, entry);
+				idsByUuid.put(entry.uuid, entry.conceptId);
+				
+				for (String key : entry.getMappingKeys()) {
+					List<Integer> ids = new ArrayList<>(idsByMapping.getOrDefault(key, Collections.emptyList()));
+					ids.add(entry.retired ? ids.size() : firstRetired(ids), entry.conceptId);
+					idsByMapping.put(key, Collections.unmodifiableList(ids));
+				}
+				
+				if (!entry.retired) {
+					for (Name name : entry.names) {
+						if (!name.voided) {
+							String key = toNameKey(name.name, name.locale);
+							List<NameEntry> names = new ArrayList<>(namesByKey.getOrDefault(key, Collections.emptyList()));
+							names.add(new NameEntry(entry.conceptId, name.locale,
+							        name.type == ConceptNameType.INDEX_TERM));
+							namesByKey.put(key, Collections.unmodifiableList(names));
+						}
+					}
+				}
+			}
+		}
+		
+		private int firstRetired(List<Integer> ids) {
+			for (int i = 0; i < ids.size(); i++) {
+				if (entries.get(ids.get(i)).retired) {
+					return i;
+				}
+			}
+			return ids.size();
+		}
+		
+		private void remove(Collection<Integer> conceptIds) {
+			for (Integer conceptId : conceptIds) {
+				Entry entry = entries.remove(conceptId);
+				if (entry == null) {
+					continue;
+				}
+				idsByUuid.remove(entry.uuid);
+				
+				for (String key : entry.getMappingKeys()) {
+					List<Integer> ids = new ArrayList<>(idsByMapping.get(key));
+					ids.remove(conceptId);
+					putOrRemove(idsByMapping, key, ids);
+				}
+				
+				for (Name name : entry.names) {
+					String key = toNameKey(name.name, name.locale);
+					List<NameEntry> names = namesByKey.get(key);
+					if (names != null) {
+						List<NameEntry> remaining = new ArrayList<>(names);
+						remaining.removeIf(n -> n.conceptId.equals(conceptId));
+						putOrRemove(namesByKey, key, remaining);
+					}
+				}
+			}
+		}
+		
+		private static <T> void putOrRemove(Map<String, List<T>> map, String key, List<T> values) {
+			if (values.isEmpty()) {
+				map.remove(key);
+			} else {
+				map.put(key, Collections.unmodifiableList(values));
+			}
+		}
+	}
+	
+	private static class NameEntry {
+		
+		private final Integer conceptId;
+		
+		private final Locale locale;
+		
+		private final boolean indexTerm;
+		
+		private NameEntry(Integer conceptId, Locale locale, boolean indexTerm) {
+			this.conceptId = conceptId;
+			this.locale = locale;
+			this.indexTerm = indexTerm;
+		}
+	}
+	
+	/**
+	 * What the snapshot holds of one concept, as read by
+	 * {@link ConceptDAO#getConceptDictionaryEntries(Collection)}
+	 */
+	public static class Entry {
+		
+		private final Integer conceptId;
+		
+		private final String uuid;
+		
+		private final boolean retired;
+		
+		private final List<Name> names = new ArrayList<>();
+		
+		private final List<String[]> mappings = new ArrayList<>();
+		
+		private Map<Locale, String> preferredNames = Collections.emptyMap();
+		
+		public Entry(Integer conceptId, String uuid, boolean retired) {
+			this.conceptId = conceptId;
+			this.uuid = uuid;
+			this.retired = retired;
+		}
+		
+		public Integer getConceptId() {
+			return conceptId;
+		}
+		
+		/**
+		 * @param name the name
+		 * @param locale the locale of the name
+		 * @param type the type of the name, may be null
+		 * @param localePreferred whether the name is preferred in its locale
+		 * @param voided whether the name is voided
+		 */
+		public void addName(String name, Locale locale, ConceptNameType type, boolean localePreferred, boolean voided) {
+			names.add(new Name(name, locale, type, localePreferred, voided));
+		}
+		
+		/**
+		 * @param code the code of the reference term
+		 * @param sourceName the name of the concept source
+		 * @param sourceHl7Code the hl7 code of the concept source, may be null
+		 */
+		public void addMapping(String code, String sourceName, String sourceHl7Code) {
+			mappings.add(new String[] { code, sourceName, sourceHl7Code });
+		}
+		
+		private Set<String> getMappingKeys() {
+			Set<String> keys = new HashSet<>();
+			for (String[] mapping : mappings) {
+				keys.add(toMappingKey(mapping[1], mapping[0]));
+				if (mapping[2] != null) {
+					keys.add(toMappingKey(mapping[2], mapping[0]));
+				}
+			}
+			return keys;
+		}
+		
+		private void computePreferredNames(List<Locale> locales) {
+			Map<Locale, String> preferred = new LinkedHashMap<>();
+			for (Locale locale : locales) {
+				String name = findPreferredName(locale);
+				if (name == null && (!locale.getCountry().isEmpty() || !locale.getVariant().isEmpty())) {
+					name = findPreferredName(new Locale(locale.getLanguage()));
+				}
+				if (name != null) {
+					preferred.put(locale, name);
+				}
+			}
+			preferredNames = preferred;
+		}
+		
+		private String findPreferredName(Locale locale) {
+			String fullySpecified = null;
+			for (Name name : names) {
+				if (name.voided || !locale.equals(name.locale)) {
+					continue;
+				}
+				if (name.localePreferred) {
+					return name.name;
+				}
+				if (fullySpecified == null && name.type == ConceptNameType.FULLY_SPECIFIED) {
+					fullySpecified = name.name;
+				}
+			}
+			return fullySpecified;
+		}
+	}
+	
+	private static class Name {
+		
+		private final String name;
+		
+		private final Locale locale;
+		
+		private final ConceptNameType type;
+		
+		private final boolean localePreferred;
+		
+		private final boolean voided;
+		
+		private Name(String name, Locale locale, ConceptNameType type, boolean localePreferred, boolean voided) {
+			this.name = name;
+			this.locale = locale;
+			this.type = type;
+			this.localePreferred = localePreferred;
+			this.voided = voided;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.cache;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.mrs.GlobalProperty;
+import org.mrs.api.GlobalPropertyListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Caches global property values for
+ * {@link org.mrs.api.AdministrationService#getGlobalProperty(String)}. All properties are loaded
+ * with a single query when the context starts up, or on the first read if that didn't happen or
+ * the cache was cleared, and afterwards values are only read from the database after they have
+ * been invalidated.
+ * <p>
+ * A property that is saved or deleted is removed from the cache right away and again once the
+ * transaction it was changed in completes. Until then reads of that property within the changing
+ * transaction go to the database so they see the uncommitted value, while other threads never get
+ * to cache it. Invalidation happens through the {@link GlobalPropertyListener} notifications sent by
+ * the administration service and through {@link GlobalPropertyCacheInterceptor} for properties that
+ * are written directly via hibernate.
+ * <p>
+ * The values are held in the <code>globalProperties</code> cache of ehcache-api.xml, on clustered
+ * deployments that cache can be configured to replicate removals to the other nodes. Hit and miss
+ * counts are available via {@link #getHitCount()} and {@link #getMissCount()}.
+ *
+ * @since 2.3.0
+ */
+public class GlobalPropertyCache implements GlobalPropertyListener {
+	
+	private static final Logger log = LoggerFactory.getLogger(GlobalPropertyCache.class);
+	
+	public static final String CACHE_NAME = "globalProperties";
+	
+	private Cache cache;
+	
+	private volatile boolean loaded = false;
+	
+	// incremented on every invalidation so that values read before it are not put into the cache
+	private final AtomicLong generation = new AtomicLong();
+	
+	// number of transactions that changed a property and haven't completed yet
+	private final AtomicInteger pendingTransactions = new AtomicInteger();
+	
+	private final AtomicLong hitCount = new AtomicLong();
+	
+	private final AtomicLong missCount = new AtomicLong();
+	
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cache = cacheManager.getCache(CACHE_NAME);
+	}
+	
+	/**
+	 * Gets the value of a global property, loading all global properties first if that has not been
+	 * done yet.
+	 *
+	 * @param propertyName the name of the property
+	 * @param allProperties loads all the global properties from the database
+	 * @param loader loads the value of a single property from the database
+	 * @return the property value or null if the property doesn't exist
+	 */
+	public String getValue(String propertyName, Supplier<Collection<GlobalProperty>> allProperties,
+	        Function<String, String> loader) {
+		String key = toKey(propertyName);
+		if (cache == null || isModifiedInCurrentTransaction(key)) {
+			return loader.apply(propertyName);
+		}
+		
+		if (!loaded) {
+			load(allProperties);
+		}
+		
+		ValueWrapper cached = cache.get(key);
+		if (cached != null) {
+			hitCount.incrementAndGet();
+			return (String) cached.get();
+		}
+		
+		missCount.incrementAndGet();
+		long expectedGeneration = generation.get();
+		String value = loader.apply(propertyName);
+		if (generation.get() == expectedGeneration) {
+			cache.put(key, value);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Puts all global properties into the cache unless that has been done already. Nothing is
+	 * loaded while the current transaction has changed a property.
+	 *
+	 * @param allProperties loads all the global properties from the database
+	 */
+	public synchronized void load(Supplier<Collection<GlobalProperty>> allProperties) {
+		if (cache == null || loaded || isModifiedInCurrentTransaction()) {
+			return;
+		}
+		
+		long expectedGeneration = generation.get();
+		Collection<GlobalProperty> globalProperties = allProperties.get();
+		if (generation.get() == expectedGeneration) {
+			for (GlobalProperty gp : globalProperties) {
+				cache.put(toKey(gp.getProperty()), gp.getPropertyValue());
+			}
+			loaded = true;
+			log.debug("Loaded {} global properties into the cache", globalProperties.size());
+		}
+	}
+	
+	/**
+	 * Removes the given property from the cache and makes sure that it is not cached again before
+	 * the current transaction, if any, has completed.
+	 *
+	 * @param propertyName the name of the changed property
+	 */
+	public void invalidate(String propertyName) {
+		if (cache == null || propertyName == null) {
+			return;
+		}
+		
+		String key = toKey(propertyName);
+		evict(key);
+		
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			InvalidationSynchronization synchronization = getInvalidationSynchronization();
+			if (synchronization == null) {
+				synchronization = new InvalidationSynchronization();
+				TransactionSynchronizationManager.registerSynchronization(synchronization);
+				pendingTransactions.incrementAndGet();
+			}
+			synchronization.modifiedKeys.add(key);
+		}
+	}
+	
+	/**
+	 * Removes all properties from the cache, they will be loaded again on the next read. This
+	 * should be called after global properties were changed with plain SQL.
+	 */
+	public void clear() {
+		generation.incrementAndGet();
+		loaded = false;
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	/**
+	 * @return the number of reads that were answered from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	/**
+	 * @return the number of reads that had to go to the database
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	/**
+	 * Sets the hit and miss counts back to zero
+	 */
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#supportsPropertyName(String)
+	 */
+	@Override
+	public boolean supportsPropertyName(String propertyName) {
+		return true;
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#globalPropertyChanged(GlobalProperty)
+	 */
+	@Override
+	public void globalPropertyChanged(GlobalProperty newValue) {
+		invalidate(newValue.getProperty());
+	}
+	
+	/**
+	 * @see GlobalPropertyListener#globalPropertyDeleted(String)
+	 */
+	@Override
+	public void globalPropertyDeleted(String propertyName) {
+		invalidate(propertyName);
+	}
+	
+	private void evict(String key) {
+		generation.incrementAndGet();
+		cache.evict(key);
+	}
+	
+	private boolean isModifiedInCurrentTransaction() {
+		InvalidationSynchronization synchronization = getInvalidationSynchronization();
+		return synchronization != null && !synchronization.modifiedKeys.isEmpty();
+	}
+	
+	private boolean isModifiedInCurrentTransaction(String key) {
+		InvalidationSynchronization synchronization = getInvalidationSynchronization();
+		return synchronization != null && synchronization.modifiedKeys.contains(key);
+	}
+	
+	/**
+	 * Looks up the synchronization registered by this cache for the current transaction, a
+	 * suspended outer transaction has its own one which isn't visible here.
+	 */
+	private InvalidationSynchronization getInvalidationSynchronization() {
+		if (pendingTransactions.get() == 0 || !TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			if (synchronization instanceof InvalidationSynchronization
+			        && ((InvalidationSynchronization) synchronization).getCache() == this) {
+				return (InvalidationSynchronization) synchronization;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Global property names are compared case insensitively by the database
+	 */
+	private static String toKey(String propertyName) {
+		return propertyName.toLowerCase();
+	}
+	
+	private class InvalidationSynchronization extends TransactionSynchronizationAdapter {
+		
+		private final Set<String> modifiedKeys = new HashSet<>();
+		
+		GlobalPropertyCache getCache() {
+			return GlobalPropertyCache.this;
+		}
+		
+		@Override
+		public void afterCompletion(int status) {
+			// other threads may have cached the previous value while the transaction was running
+			for (String key : modifiedKeys) {
+				evict(key);
+			}
+			pendingTransactions.decrementAndGet();
+		}
+	}
+}
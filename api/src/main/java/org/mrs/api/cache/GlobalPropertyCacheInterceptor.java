@@ -0,0 +1,60 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.cache;
+
+import java.io.Serializable;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+import org.mrs.GlobalProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalidates cached global property values when a {@link GlobalProperty} is written through
+ * hibernate without going through the administration service, e.g. the order number seed.
+ *
+ * @see GlobalPropertyCache
+ * @since 2.3.0
+ */
+@Component("globalPropertyCacheInterceptor")
+public class GlobalPropertyCacheInterceptor extends EmptyInterceptor {
+
+	private static final long serialVersionUID = 1L;
+
+	@Autowired
+	@Qualifier("globalPropertyCache")
+	private transient GlobalPropertyCache globalPropertyCache;
+
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		invalidate(entity);
+		return false;
+	}
+
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		invalidate(entity);
+		return false;
+	}
+
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		invalidate(entity);
+	}
+
+	private void invalidate(Object entity) {
+		if (entity instanceof GlobalProperty && globalPropertyCache != null) {
+			globalPropertyCache.invalidate(((GlobalProperty) entity).getProperty());
+		}
+	}
+}
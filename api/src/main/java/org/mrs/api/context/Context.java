@@ -53,7 +53,11 @@ import org.mrs.api.ProviderService;
 import org.mrs.api.SerializationService;
 import org.mrs.api.UserService;
 import org.mrs.api.VisitService;
+import org.mrs.api.cache.ConceptDictionarySnapshot;
+import org.mrs.api.cache.GlobalPropertyCache;
 import org.mrs.api.db.ContextDAO;
+import org.mrs.api.db.SearchIndexProgress;
+import org.mrs.api.db.SearchIndexRebuildOptions;
 import org.mrs.hl7.HL7Service;
 import org.mrs.logic.LogicService;
 import org.mrs.messagesource.MessageSourceService;
@@ -893,7 +897,18 @@ public class Context {
 		// correctly.
 		checkCoreDataset();
 
+		// read all global properties with one query rather than one by one as they are first used
+		try {
+			addProxyPrivilege(PrivilegeConstants.GET_GLOBAL_PROPERTIES);
+			getRegisteredComponent("globalPropertyCache", GlobalPropertyCache.class).load(
+			    getAdministrationService()::getAllGlobalProperties);
+		}
+		finally {
+			removeProxyPrivilege(PrivilegeConstants.GET_GLOBAL_PROPERTIES);
+		}
+
 		getContextDAO().setupSearchIndex();
+		getRegisteredComponent("conceptDictionarySnapshot", ConceptDictionarySnapshot.class).buildIfEnabled();
 
 		// Loop over each module and startup each with these custom properties
 		ModuleUtil.startup(props);
@@ -1366,7 +1381,10 @@ public class Context {
 	}
 
 	/**
-	 * Updates the search index for the given object.
+	 * Updates the search index for the given object. When indexing is left to the
+	 * {@link org.mrs.api.db.hibernate.search.SearchIndexQueue} this is asynchronous: the object is
+	 * queued once the current transaction is committed, not at all if it is rolled back, and the
+	 * index is updated later as the object was committed.
 	 *
 	 * @see #updateSearchIndex()
 	 * @param object
@@ -1376,6 +1394,31 @@ public class Context {
 		getContextDAO().updateSearchIndexForObject(object);
 	}
 
+	/**
+	 * Rebuilds the search index of the given types in place, so that searches keep being served
+	 * from the existing index while the rebuild runs. Batches of objects are loaded and indexed by
+	 * several threads, each in a transaction of its own. The last indexed object of each type is
+	 * saved in {@link OpenmrsConstants#GP_SEARCH_INDEX_REBUILD_POSITION}, so that a rebuild that was
+	 * interrupted can continue where it stopped. Types without an integer id are indexed at once by
+	 * the mass indexer of Hibernate Search, and start over if interrupted.
+	 *
+	 * @param options the types to index, thread count and batch sizes
+	 * @see #getSearchIndexProgress()
+	 * @since 2.3.0
+	 */
+	public static void rebuildSearchIndex(SearchIndexRebuildOptions options) {
+		getContextDAO().rebuildSearchIndex(options);
+	}
+
+	/**
+	 * @return the progress of the types of the current or last search index rebuild
+	 * @see #rebuildSearchIndex(SearchIndexRebuildOptions)
+	 * @since 2.3.0
+	 */
+	public static List<SearchIndexProgress> getSearchIndexProgress() {
+		return getContextDAO().getSearchIndexProgress();
+	}
+
 	/**
 	 * @see org.mrs.api.context.ServiceContext#setUseSystemClassLoader(boolean)
 	 * @since 1.10
@@ -77,7 +77,7 @@ public class ServiceContext implements ApplicationContextAware {
 
 	private ApplicationContext applicationContext;
 	
-	private static boolean refreshingContext = false;
+	private static volatile boolean refreshingContext = false;
 	
 	private static final Object refreshingContextLock = new Object();
 	
@@ -90,6 +90,12 @@ public class ServiceContext implements ApplicationContextAware {
 	// Cached service objects
 	Map<Class, Object> services = new HashMap<>();
 	
+	// Immutable copy of the cached services, replaced whenever a service is set so that
+	// getService can read it without taking a lock
+	private volatile Map<Class, Object> servicesSnapshot = Collections.emptyMap();
+	
+	private final Object servicesLock = new Object();
+	
 	// Advisors added to services by this service
 	Map<Class, Set<Advisor>> addedAdvisors = new HashMap<>();
 	
@@ -154,9 +160,12 @@ public class ServiceContext implements ApplicationContextAware {
 				ServiceContextHolder.instance.removeAddedAOP(serviceClass);
 			}
 			
-			if (ServiceContextHolder.instance.services != null) {
-				ServiceContextHolder.instance.services.clear();
-				ServiceContextHolder.instance.services = null;
+			synchronized (ServiceContextHolder.instance.servicesLock) {
+				if (ServiceContextHolder.instance.services != null) {
+					ServiceContextHolder.instance.services.clear();
+					ServiceContextHolder.instance.services = null;
+				}
+				ServiceContextHolder.instance.servicesSnapshot = Collections.emptyMap();
 			}
 			
 			if (ServiceContextHolder.instance.addedAdvisors != null) {
@@ -648,7 +657,9 @@ public class ServiceContext implements ApplicationContextAware {
 	}
 	
 	/**
-	 * Returns the current proxy that is stored for the Class <code>cls</code>
+	 * Returns the current proxy that is stored for the Class <code>cls</code>. The lookup is done
+	 * against an immutable snapshot of the services and only blocks while the context is being
+	 * refreshed.
 	 *
 	 * @param cls
 	 * @return Object that is a proxy for the <code>cls</code> class
@@ -661,27 +672,16 @@ public class ServiceContext implements ApplicationContextAware {
 		
 		// if the context is refreshing, wait until it is
 		// done -- otherwise a null service might be returned
-		synchronized (refreshingContextLock) {
+		if (refreshingContext) {
 			try {
-				while (refreshingContext) {
-					if (log.isDebugEnabled()) {
-						log.debug("Waiting to get service: " + cls + " while the context is being refreshed");
-					}
-					
-					refreshingContextLock.wait();
-					
-					if (log.isDebugEnabled()) {
-						log.debug("Finished waiting to get service " + cls + " while the context was being refreshed");
-					}
-				}
-				
+				waitForContextRefresh(cls.toString());
 			}
 			catch (InterruptedException e) {
 				log.warn("Refresh lock was interrupted", e);
 			}
 		}
 		
-		Object service = services.get(cls);
+		Object service = servicesSnapshot.get(cls);
 		if (service == null) {
 			throw new APIException("Service not found: " + cls);
 		}
@@ -689,6 +689,29 @@ public class ServiceContext implements ApplicationContextAware {
 		return (T) service;
 	}
 	
+	/**
+	 * Blocks the calling thread until {@link #doneRefreshingContext()} has been called, returns
+	 * immediately if the context is not being refreshed.
+	 *
+	 * @param requested description of what the caller is waiting for, used for logging
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private static void waitForContextRefresh(String requested) throws InterruptedException {
+		synchronized (refreshingContextLock) {
+			while (refreshingContext) {
+				if (log.isDebugEnabled()) {
+					log.debug("Waiting to get service: " + requested + " while the context is being refreshed");
+				}
+				
+				refreshingContextLock.wait();
+				
+				if (log.isDebugEnabled()) {
+					log.debug("Finished waiting to get service " + requested + " while the context was being refreshed");
+				}
+			}
+		}
+	}
+	
 	/**
 	 * Allow other services to be added to our service layer
 	 *
@@ -724,7 +747,10 @@ public class ServiceContext implements ApplicationContextAware {
 						moveAddedAOP(cachedService, advisedService);
 					}
 					
-					services.put(cls, advisedService);
+					synchronized (servicesLock) {
+						services.put(cls, advisedService);
+						servicesSnapshot = Collections.unmodifiableMap(new HashMap<>(services));
+					}
 				}
 				log.debug("Service: " + cls + " set successfully");
 			}
@@ -855,9 +881,7 @@ public class ServiceContext implements ApplicationContextAware {
 	 *         doneRefreshingContext()
 	 */
 	public boolean isRefreshingContext() {
-		synchronized (refreshingContextLock) {
-			return refreshingContext;
-		}
+		return refreshingContext;
 	}
 	
 	/**
@@ -949,22 +973,8 @@ public class ServiceContext implements ApplicationContextAware {
 	private void runOpenmrsServiceOnStartup(final OpenmrsService openmrsService, final String classString) {
 		new Thread(() -> {
 			try {
-				synchronized (refreshingContextLock) {
-					//Need to wait for application context to finish refreshing otherwise we get into trouble.
-					while (refreshingContext) {
-						if (log.isDebugEnabled()) {
-							log.debug("Waiting to get service: " + classString + " while the context"
-							        + " is being refreshed");
-						}
-
-						refreshingContextLock.wait();
-
-						if (log.isDebugEnabled()) {
-							log.debug("Finished waiting to get service " + classString
-							        + " while the context was being refreshed");
-						}
-					}
-				}
+				//Need to wait for application context to finish refreshing otherwise we get into trouble.
+				waitForContextRefresh(classString);
 
 				Daemon.runStartupForService(openmrsService);
 			}
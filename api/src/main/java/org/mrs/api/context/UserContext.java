@@ -11,13 +11,17 @@ package org.mrs.api.context;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.mrs.Location;
+import org.mrs.Privilege;
 import org.mrs.PrivilegeListener;
 import org.mrs.Role;
 import org.mrs.User;
@@ -49,6 +53,12 @@ public class UserContext implements Serializable {
 	 */
 	private static final Logger log = LoggerFactory.getLogger(UserContext.class);
 	
+	/**
+	 * Incremented whenever roles, privileges or the roles of a user are saved or deleted so that
+	 * every user context recomputes its cached privileges
+	 */
+	private static final AtomicLong privilegesVersion = new AtomicLong();
+	
 	/**
 	 * User object containing details about the authenticated user
 	 */
@@ -84,6 +94,16 @@ public class UserContext implements Serializable {
 	 */
 	private AuthenticationScheme authenticationScheme;
 	
+	/**
+	 * Cached privileges of the authenticated user, including those of the authenticated role
+	 */
+	private transient volatile PrivilegeSet userPrivileges;
+	
+	/**
+	 * Cached privileges of the anonymous role
+	 */
+	private transient volatile PrivilegeSet anonymousPrivileges;
+	
 	/**
 	 * Creates a user context based on the provided auth. scheme.
 	 * 
@@ -113,6 +133,7 @@ public class UserContext implements Serializable {
 		try {
 			authenticated = authenticationScheme.authenticate(credentials);
 			this.user = authenticated.getUser();
+			this.userPrivileges = null;
 			notifyUserSessionListener(this.user, Event.LOGIN, Status.SUCCESS);
 		}
 		catch(ContextAuthenticationException e) {
@@ -141,6 +162,7 @@ public class UserContext implements Serializable {
 		
 		if (user != null) {
 			user = Context.getUserService().getUser(user.getUserId());
+			userPrivileges = null;
 			//update the stored location in the user's session
 			setUserLocation();
 		}
@@ -179,6 +201,7 @@ public class UserContext implements Serializable {
 		}
 		
 		this.user = userToBecome;
+		this.userPrivileges = null;
 		//update the user's location
 		setUserLocation();
 		
@@ -210,6 +233,7 @@ public class UserContext implements Serializable {
 		log.debug("setting user to null on logout");
 		notifyUserSessionListener(user, Event.LOGOUT, Status.SUCCESS);
 		user = null;
+		userPrivileges = null;
 	}
 	
 	/**
@@ -319,11 +343,12 @@ public class UserContext implements Serializable {
 	public boolean hasPrivilege(String privilege) {
 		
 		// if a user has logged in, check their privileges
-		if (isAuthenticated()
-		        && (getAuthenticatedUser().hasPrivilege(privilege) || getAuthenticatedRole().hasPrivilege(privilege))) {
+		User authenticatedUser = getAuthenticatedUser();
+		if (authenticatedUser != null
+		        && (StringUtils.isEmpty(privilege) || getUserPrivileges(authenticatedUser).contains(privilege))) {
 			
 			// check user's privileges
-			notifyPrivilegeListeners(getAuthenticatedUser(), privilege, true);
+			notifyPrivilegeListeners(authenticatedUser, privilege, true);
 			return true;
 			
 		}
@@ -333,21 +358,57 @@ public class UserContext implements Serializable {
 		// check proxied privileges
 		for (String s : proxies) {
 			if (s.equals(privilege)) {
-				notifyPrivilegeListeners(getAuthenticatedUser(), privilege, true);
+				notifyPrivilegeListeners(authenticatedUser, privilege, true);
 				return true;
 			}
 		}
 		
-		if (getAnonymousRole().hasPrivilege(privilege)) {
-			notifyPrivilegeListeners(getAuthenticatedUser(), privilege, true);
+		if (getAnonymousPrivileges().contains(privilege)) {
+			notifyPrivilegeListeners(authenticatedUser, privilege, true);
 			return true;
 		}
 		
 		// default return value
-		notifyPrivilegeListeners(getAuthenticatedUser(), privilege, false);
+		notifyPrivilegeListeners(authenticatedUser, privilege, false);
 		return false;
 	}
 	
+	/**
+	 * Makes all user contexts discard their cached privileges, this must be called whenever a role,
+	 * a privilege or the roles of a user have been changed.
+	 *
+	 * @since 2.3.0
+	 */
+	public static void invalidateCachedPrivileges() {
+		privilegesVersion.incrementAndGet();
+	}
+	
+	/**
+	 * Gets the privileges of the given user together with those of the authenticated role, they are
+	 * computed once and then reused until the user or any role or privilege changes
+	 */
+	private PrivilegeSet getUserPrivileges(User authenticatedUser) {
+		PrivilegeSet privileges = userPrivileges;
+		long version = privilegesVersion.get();
+		if (privileges == null || privileges.owner != authenticatedUser || privileges.version != version) {
+			Set<Role> roles = authenticatedUser.getAllRoles();
+			roles.add(getAuthenticatedRole());
+			privileges = new PrivilegeSet(authenticatedUser, version, roles, authenticatedUser.isSuperUser());
+			userPrivileges = privileges;
+		}
+		return privileges;
+	}
+	
+	private PrivilegeSet getAnonymousPrivileges() {
+		PrivilegeSet privileges = anonymousPrivileges;
+		long version = privilegesVersion.get();
+		if (privileges == null || privileges.version != version) {
+			privileges = new PrivilegeSet(null, version, Collections.singleton(getAnonymousRole()), false);
+			anonymousPrivileges = privileges;
+		}
+		return privileges;
+	}
+	
 	/**
 	 * Convenience method to get the Role in the system designed to be given to all users
 	 *
@@ -484,4 +545,49 @@ public class UserContext implements Serializable {
 		    userSessionListener.loggedInOrOut(user, event, status);
 	    }
     }
+	
+	/**
+	 * Immutable, case insensitive set of the names of all privileges granted by a group of roles,
+	 * which replaces walking the roles and their privileges on every privilege check
+	 */
+	private static final class PrivilegeSet {
+		
+		private final User owner;
+		
+		private final long version;
+		
+		private final boolean all;
+		
+		private final Set<String> names;
+		
+		PrivilegeSet(User owner, long version, Collection<Role> roles, boolean superUser) {
+			boolean allPrivileges = superUser;
+			Set<String> privilegeNames = new HashSet<>();
+			for (Role role : roles) {
+				if (RoleConstants.SUPERUSER.equals(role.getRole())) {
+					allPrivileges = true;
+				}
+				if (role.getPrivileges() != null) {
+					for (Privilege privilege : role.getPrivileges()) {
+						if (privilege.getPrivilege() != null) {
+							privilegeNames.add(normalize(privilege.getPrivilege()));
+						}
+					}
+				}
+			}
+			
+			this.owner = owner;
+			this.version = version;
+			this.all = allPrivileges;
+			this.names = Collections.unmodifiableSet(privilegeNames);
+		}
+		
+		boolean contains(String privilege) {
+			return all || (privilege != null && names.contains(normalize(privilege)));
+		}
+		
+		private static String normalize(String privilege) {
+			return privilege.toLowerCase(Locale.ENGLISH);
+		}
+	}
 }
@@ -40,6 +40,7 @@ import org.mrs.Drug;
 import org.mrs.DrugIngredient;
 import org.mrs.api.APIException;
 import org.mrs.api.ConceptService;
+import org.mrs.api.cache.ConceptDictionarySnapshot;
 
 /**
  * Concept-related database functions
@@ -577,6 +578,16 @@ public interface ConceptDAO {
 	 */
 	public Concept getConceptByName(String name);
 	
+	/**
+	 * Reads the ids, uuids, retired flags, names and mappings of concepts with a few queries, for
+	 * the {@link ConceptDictionarySnapshot}
+	 *
+	 * @param conceptIds the ids of the concepts to read, null to read all concepts
+	 * @return an entry for each concept that exists
+	 * @since 2.3.0
+	 */
+	public List<ConceptDictionarySnapshot.Entry> getConceptDictionaryEntries(Collection<Integer> conceptIds);
+	
 	/**
 	 * It is in the DAO, because it must be done in the MANUAL flush mode to prevent premature
 	 * flushes in {@link ConceptService#saveConcept(Concept)}. It will be removed in 1.10 when we
@@ -177,4 +177,16 @@ public interface ContextDAO {
 	 * @see Context#updateSearchIndexForType(Class)
 	 */
 	public void updateSearchIndexForType(Class<?> type);
+	
+	/**
+	 * @see Context#rebuildSearchIndex(SearchIndexRebuildOptions)
+	 * @since 2.3.0
+	 */
+	public void rebuildSearchIndex(SearchIndexRebuildOptions options);
+	
+	/**
+	 * @see Context#getSearchIndexProgress()
+	 * @since 2.3.0
+	 */
+	public List<SearchIndexProgress> getSearchIndexProgress();
 }
@@ -9,6 +9,7 @@
  */
 package org.mrs.api.db;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -59,11 +60,46 @@ public interface EncounterDAO {
 	 */
 	public List<Encounter> getEncountersByPatientId(Integer patientId) throws DAOException;
 	
+	/**
+	 * @param patientId
+	 * @param excludedEncounterTypes encounters of these types are not returned, may be null
+	 * @return the encounters for the given patient identifier, which don't have one of the excluded
+	 *         types
+	 * @throws DAOException
+	 * @since 2.3.0
+	 */
+	public List<Encounter> getEncountersByPatientId(Integer patientId, Collection<EncounterType> excludedEncounterTypes)
+	        throws DAOException;
+	
 	/**
 	 * @see org.mrs.api.EncounterService#getEncounters(org.mrs.parameter.EncounterSearchCriteria)
 	 */
 	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria);
 	
+	/**
+	 * Gets a page of the encounters matching the search criteria ordered by encounter datetime
+	 * 
+	 * @param encounterSearchCriteria the search criteria
+	 * @param excludedEncounterTypes encounters of these types are not returned, may be null
+	 * @param start index of the first encounter to return, may be null
+	 * @param length maximum number of encounters to return, may be null
+	 * @return the encounters
+	 * @since 2.3.0
+	 * @see org.mrs.api.EncounterService#getEncounters(EncounterSearchCriteria, Integer, Integer)
+	 */
+	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria,
+	        Collection<EncounterType> excludedEncounterTypes, Integer start, Integer length);
+	
+	/**
+	 * @param encounterSearchCriteria the search criteria
+	 * @param excludedEncounterTypes encounters of these types are not counted, may be null
+	 * @return the number of encounters matching the search criteria
+	 * @since 2.3.0
+	 * @see org.mrs.api.EncounterService#getCountOfEncounters(EncounterSearchCriteria)
+	 */
+	public Long getCountOfEncounters(EncounterSearchCriteria encounterSearchCriteria,
+	        Collection<EncounterType> excludedEncounterTypes);
+	
 	/**
 	 * Save an Encounter Type
 	 * 
@@ -155,6 +191,15 @@ public interface EncounterDAO {
 	 */
 	List<Encounter> getEncounters(String query, Integer patientId, Integer start, Integer length, boolean includeVoided);
 	
+	/**
+	 * Same as {@link #getEncounters(String, Integer, Integer, Integer, boolean)}, but doesn't return
+	 * encounters of the excluded types
+	 * 
+	 * @since 2.3.0
+	 */
+	List<Encounter> getEncounters(String query, Integer patientId, Integer start, Integer length, boolean includeVoided,
+	        Collection<EncounterType> excludedEncounterTypes);
+	
 	/**
 	 * Gets the location of the encounter
 	 * 
@@ -179,11 +224,29 @@ public interface EncounterDAO {
 	 */
 	public Long getCountOfEncounters(String query, Integer patientId, boolean includeVoided);
 	
+	/**
+	 * Same as {@link #getCountOfEncounters(String, Integer, boolean)}, but doesn't count encounters
+	 * of the excluded types
+	 * 
+	 * @since 2.3.0
+	 */
+	public Long getCountOfEncounters(String query, Integer patientId, boolean includeVoided,
+	        Collection<EncounterType> excludedEncounterTypes);
+	
 	/**
 	 * @see EncounterService#getEncountersByVisit(Visit, boolean)
 	 */
 	public List<Encounter> getEncountersByVisit(Visit visit, boolean includeVoided);
 	
+	/**
+	 * Same as {@link #getEncountersByVisit(Visit, boolean)}, but doesn't return encounters of the
+	 * excluded types
+	 * 
+	 * @since 2.3.0
+	 */
+	public List<Encounter> getEncountersByVisit(Visit visit, boolean includeVoided,
+	        Collection<EncounterType> excludedEncounterTypes);
+	
 	/**
 	 * Saves an encounter role
 	 * 
@@ -9,6 +9,7 @@
  */
 package org.mrs.api.db;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -18,6 +19,7 @@ import org.mrs.Encounter;
 import org.mrs.Location;
 import org.mrs.Obs;
 import org.mrs.Person;
+import org.mrs.User;
 import org.mrs.api.ObsService;
 import org.mrs.util.OpenmrsConstants.PERSON_TYPE;
 
@@ -87,4 +89,18 @@ public interface ObsDAO {
 	 */
 	public Obs.Status getSavedStatus(Obs obs);
 	
+	/**
+	 * Voids the obs with the given ids and all their group members with a bulk update, obs that are
+	 * already voided are left alone. The obs must not be in the current session or they will be
+	 * out of date.
+	 * 
+	 * @param obsIds the ids of the obs to void
+	 * @param voidedBy the user voiding the obs
+	 * @param dateVoided the date the obs are voided
+	 * @param voidReason the reason for voiding the obs
+	 * @return the number of obs voided, including group members
+	 * @since 2.3.0
+	 */
+	public int voidObs(Collection<Integer> obsIds, User voidedBy, Date dateVoided, String voidReason);
+	
 }
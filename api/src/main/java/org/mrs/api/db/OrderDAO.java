@@ -95,11 +95,12 @@ public interface OrderDAO {
 	public Order getOrderByOrderNumber(String orderNumber);
 	
 	/**
-	 * Gets the next available order number seed
+	 * Reserves a block of order number seeds by advancing the stored seed by the block size
 	 * 
-	 * @return the order number seed
+	 * @param blockSize the number of seeds to reserve
+	 * @return the first order number seed of the reserved block
 	 */
-	public Long getNextOrderNumberSeedSequenceValue();
+	public Long getNextOrderNumberSeedSequenceValue(int blockSize);
 	
 	/**
 	 * @see org.mrs.api.OrderService#getActiveOrders(org.mrs.Patient, org.mrs.OrderType,
@@ -9,15 +9,20 @@
  */
 package org.mrs.api.db;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.mrs.Allergies;
 import org.mrs.Allergy;
+import org.mrs.DuplicatePatientMatch;
 import org.mrs.Location;
 import org.mrs.Patient;
 import org.mrs.PatientIdentifier;
 import org.mrs.PatientIdentifierType;
+import org.mrs.PatientSearchResult;
 import org.mrs.api.PatientService;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
 
 /**
  * Database methods for the PatientService
@@ -124,6 +129,12 @@ public interface PatientDAO {
 	 */
 	public List<Patient> getPatients(String query, boolean includeVoided, Integer start, Integer length) throws DAOException;
 	
+	/**
+	 * @see org.mrs.api.PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	public List<PatientSearchResult> getPatientSearchResults(String query, boolean includeVoided, Integer start,
+	        Integer length) throws DAOException;
+	
 	/**
 	 * @see PatientService#getPatients(String, String, List, boolean, Integer, Integer)
 	 */
@@ -185,6 +196,45 @@ public interface PatientDAO {
 	 */
 	public List<Patient> getDuplicatePatientsByAttributes(List<String> attributes) throws DAOException;
 	
+	/**
+	 * @see org.mrs.api.PatientService#getDuplicatePatientCandidates(Integer, int, boolean)
+	 */
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer afterPatientId, int batchSize,
+	        boolean includeVoided) throws DAOException;
+	
+	/**
+	 * @see org.mrs.api.PatientService#saveDuplicatePatientMatches(java.util.Collection)
+	 */
+	public void saveDuplicatePatientMatches(Collection<DuplicatePatientMatch> matches) throws DAOException;
+	
+	/**
+	 * @see org.mrs.api.PatientService#purgeDuplicatePatientMatches()
+	 */
+	public void deleteDuplicatePatientMatches() throws DAOException;
+	
+	/**
+	 * @see org.mrs.api.PatientService#purgeDuplicatePatientMatches(Date)
+	 */
+	public void deleteDuplicatePatientMatches(Date foundBefore) throws DAOException;
+	
+	/**
+	 * Deletes the pairs found by the duplicate patient detection that include a patient
+	 * 
+	 * @param patient the patient
+	 */
+	public void deleteDuplicatePatientMatches(Patient patient) throws DAOException;
+	
+	/**
+	 * @see org.mrs.api.PatientService#getDuplicatePatientMatches(Double, Integer, Integer)
+	 */
+	public List<DuplicatePatientMatch> getDuplicatePatientMatches(Double minScore, Integer start, Integer length)
+	        throws DAOException;
+	
+	/**
+	 * @see org.mrs.api.PatientService#getCountOfDuplicatePatientMatches(Double)
+	 */
+	public Long getCountOfDuplicatePatientMatches(Double minScore) throws DAOException;
+	
 	/**
 	 * @see org.mrs.api.PatientService#isIdentifierInUseByAnotherPatient(PatientIdentifier)
 	 */
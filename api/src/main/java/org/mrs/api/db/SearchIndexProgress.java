@@ -0,0 +1,111 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The progress of rebuilding the search index of one type
+ *
+ * @see ContextDAO#getSearchIndexProgress()
+ * @since 2.3.0
+ */
+public class SearchIndexProgress {
+	
+	private final Class<?> type;
+	
+	private final long total;
+	
+	private final long startTime;
+	
+	private final AtomicLong indexed = new AtomicLong();
+	
+	private volatile long endTime;
+	
+	/**
+	 * @param type the indexed type
+	 * @param total the number of objects to index
+	 */
+	public SearchIndexProgress(Class<?> type, long total) {
+		this(type, total, System.currentTimeMillis());
+	}
+	
+	SearchIndexProgress(Class<?> type, long total, long startTime) {
+		this.type = type;
+		this.total = total;
+		this.startTime = startTime;
+	}
+	
+	public Class<?> getType() {
+		return type;
+	}
+	
+	public long getTotal() {
+		return total;
+	}
+	
+	public long getIndexed() {
+		return indexed.get();
+	}
+	
+	public long getStartTime() {
+		return startTime;
+	}
+	
+	public boolean isFinished() {
+		return endTime != 0;
+	}
+	
+	/**
+	 * @param count the number of objects indexed since the last call
+	 */
+	public void addIndexed(long count) {
+		indexed.addAndGet(count);
+	}
+	
+	public void finish() {
+		endTime = System.currentTimeMillis();
+	}
+	
+	/**
+	 * @return the number of documents indexed per second so far
+	 */
+	public double getDocumentsPerSecond() {
+		return getDocumentsPerSecond(isFinished() ? endTime : System.currentTimeMillis());
+	}
+	
+	double getDocumentsPerSecond(long now) {
+		long elapsed = now - startTime;
+		return elapsed <= 0 ? 0 : indexed.get() * 1000.0 / elapsed;
+	}
+	
+	/**
+	 * @return the estimated number of milliseconds until all objects are indexed, 0 if finished and
+	 *         -1 if nothing has been indexed yet
+	 */
+	public long getEstimatedTimeRemaining() {
+		return isFinished() ? 0 : getEstimatedTimeRemaining(System.currentTimeMillis());
+	}
+	
+	long getEstimatedTimeRemaining(long now) {
+		double rate = getDocumentsPerSecond(now);
+		if (rate <= 0) {
+			return -1;
+		}
+		long remaining = Math.max(0, total - indexed.get());
+		return (long) (remaining / rate * 1000);
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("%s: %d/%d documents, %.1f documents/s", type.getSimpleName(), getIndexed(), total,
+		    getDocumentsPerSecond());
+	}
+}
@@ -0,0 +1,94 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of a search index rebuild started with
+ * {@link ContextDAO#rebuildSearchIndex(SearchIndexRebuildOptions)}
+ *
+ * @since 2.3.0
+ */
+public class SearchIndexRebuildOptions {
+	
+	public static final int DEFAULT_LOADER_THREADS = 2;
+	
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	public static final int DEFAULT_FETCH_SIZE = 1000;
+	
+	private List<Class<?>> types = new ArrayList<>();
+	
+	private int loaderThreads = DEFAULT_LOADER_THREADS;
+	
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	
+	private boolean resume = true;
+	
+	/**
+	 * @return the types to rebuild the index of, all indexed types if empty
+	 */
+	public List<Class<?>> getTypes() {
+		return types;
+	}
+	
+	public void setTypes(List<Class<?>> types) {
+		this.types = types == null ? new ArrayList<>() : types;
+	}
+	
+	/**
+	 * @return the number of threads that load and index batches of objects
+	 */
+	public int getLoaderThreads() {
+		return loaderThreads;
+	}
+	
+	public void setLoaderThreads(int loaderThreads) {
+		this.loaderThreads = Math.max(1, loaderThreads);
+	}
+	
+	/**
+	 * @return the number of objects loaded and indexed in one transaction
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+	
+	/**
+	 * @return the JDBC fetch size used when reading ids and objects
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+	
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(1, fetchSize);
+	}
+	
+	/**
+	 * @return true if a rebuild that was interrupted continues after the last indexed object,
+	 *         false to start over
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+	
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+}
@@ -17,6 +17,7 @@ import java.util.Map;
 import org.mrs.Concept;
 import org.mrs.Location;
 import org.mrs.Patient;
+import org.mrs.User;
 import org.mrs.Visit;
 import org.mrs.VisitAttribute;
 import org.mrs.VisitAttributeType;
@@ -156,4 +157,32 @@ public interface VisitDAO {
 	 */
 	public Visit getNextVisit(Visit previousVisit, Collection<VisitType> visitTypes, Date maximumStartDate);
 	
+	/**
+	 * Gets the ids of the next active visits which match the specified visit types
+	 * 
+	 * @param previousVisitId only visits with a greater id are returned, may be null
+	 * @param visitTypes a collection of visit types to match against
+	 * @param maximumStartDate the visits should have been created before or at this date time
+	 * @param maxResults the maximum number of ids to return
+	 * @return the ids in ascending order
+	 * @since 2.3.0
+	 * @should return the ids of the next unvoided active visits matching the specified types and startDate
+	 */
+	public List<Integer> getNextVisitIds(Integer previousVisitId, Collection<VisitType> visitTypes, Date maximumStartDate,
+	        int maxResults);
+	
+	/**
+	 * Stops the visits with the given ids in a single update. Visits, which have been stopped in the
+	 * meantime, are left unchanged. Visits loaded in the session are refreshed.
+	 * 
+	 * @param visitIds the ids of the visits
+	 * @param stopDatetime the stop date time to set
+	 * @param changedBy the user to set as the one who changed the visits
+	 * @return the number of stopped visits
+	 * @since 2.3.0
+	 * @should stop the active visits with the given ids
+	 * @should refresh the visits loaded in the session
+	 */
+	public int stopVisits(Collection<Integer> visitIds, Date stopDatetime, User changedBy);
+	
 }
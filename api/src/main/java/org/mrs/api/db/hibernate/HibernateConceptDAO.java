@@ -16,6 +16,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
@@ -60,7 +61,9 @@ import org.mrs.Drug;
 import org.mrs.DrugIngredient;
 import org.mrs.OpenmrsObject;
 import org.mrs.api.APIException;
+import org.mrs.api.ConceptNameType;
 import org.mrs.api.ConceptService;
+import org.mrs.api.cache.ConceptDictionarySnapshot;
 import org.mrs.api.context.Context;
 import org.mrs.api.db.ConceptDAO;
 import org.mrs.api.db.DAOException;
@@ -1817,6 +1820,63 @@ public class HibernateConceptDAO implements ConceptDAO {
 		return null;
 	}
 	
+	/**
+	 * @see org.mrs.api.db.ConceptDAO#getConceptDictionaryEntries(Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<ConceptDictionarySnapshot.Entry> getConceptDictionaryEntries(Collection<Integer> conceptIds) {
+		Map<Integer, ConceptDictionarySnapshot.Entry> entries = new LinkedHashMap<>();
+		List<List<Integer>> chunks = new ArrayList<>();
+		if (conceptIds == null) {
+			chunks.add(null);
+		} else {
+			List<Integer> ids = new ArrayList<>(conceptIds);
+			for (int i = 0; i < ids.size(); i += 1000) {
+				chunks.add(ids.subList(i, Math.min(ids.size(), i + 1000)));
+			}
+		}
+		
+		for (List<Integer> chunk : chunks) {
+			for (Object[] row : (List<Object[]>) createDictionaryQuery(
+			    "select c.conceptId, c.uuid, c.retired from Concept c", "c.conceptId", chunk).list()) {
+				Integer conceptId = (Integer) row[0];
+				entries.put(conceptId, new ConceptDictionarySnapshot.Entry(conceptId, (String) row[1], Boolean.TRUE
+				        .equals(row[2])));
+			}
+			
+			for (Object[] row : (List<Object[]>) createDictionaryQuery(
+			    "select n.concept.conceptId, n.name, n.locale, n.conceptNameType, n.localePreferred, n.voided "
+			            + "from ConceptName n", "n.concept.conceptId", chunk).list()) {
+				ConceptDictionarySnapshot.Entry entry = entries.get(row[0]);
+				if (entry != null) {
+					entry.addName((String) row[1], (Locale) row[2], (ConceptNameType) row[3], Boolean.TRUE.equals(row[4]),
+					    Boolean.TRUE.equals(row[5]));
+				}
+			}
+			
+			for (Object[] row : (List<Object[]>) createDictionaryQuery(
+			    "select m.concept.conceptId, t.code, s.name, s.hl7Code from ConceptMap m join m.conceptReferenceTerm t "
+			            + "join t.conceptSource s", "m.concept.conceptId", chunk).list()) {
+				ConceptDictionarySnapshot.Entry entry = entries.get(row[0]);
+				if (entry != null) {
+					entry.addMapping((String) row[1], (String) row[2], (String) row[3]);
+				}
+			}
+		}
+		
+		return new ArrayList<>(entries.values());
+	}
+	
+	private Query createDictionaryQuery(String hql, String conceptIdProperty, List<Integer> conceptIds) {
+		if (conceptIds == null) {
+			return sessionFactory.getCurrentSession().createQuery(hql);
+		}
+		String where = hql.contains(" where ") ? " and " : " where ";
+		return sessionFactory.getCurrentSession().createQuery(hql + where + conceptIdProperty + " in (:conceptIds)")
+		        .setParameterList("conceptIds", conceptIds);
+	}
+	
 	/**
 	 * @see org.mrs.api.db.ConceptDAO#getDefaultConceptMapType()
 	 */
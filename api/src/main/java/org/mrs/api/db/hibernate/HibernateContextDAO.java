@@ -10,33 +10,55 @@
 package org.mrs.api.db.hibernate;
 
 import java.io.File;
+import java.io.Serializable;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.CacheMode;
 import org.hibernate.FlushMode;
 import org.hibernate.HibernateException;
+import org.hibernate.Query;
 import org.hibernate.ScrollMode;
 import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.search.FullTextSession;
+import org.hibernate.search.Search;
 import org.hibernate.stat.QueryStatistics;
 import org.hibernate.stat.Statistics;
 import org.hibernate.type.StandardBasicTypes;
 import org.mrs.FullTextSessionFactory;
 import org.mrs.GlobalProperty;
+import org.mrs.OpenmrsObject;
 import org.mrs.User;
+import org.mrs.api.AdministrationService;
 import org.mrs.api.context.Context;
 import org.mrs.api.context.ContextAuthenticationException;
 import org.mrs.api.context.Daemon;
 import org.mrs.api.db.ContextDAO;
+import org.mrs.api.db.DAOException;
+import org.mrs.api.db.SearchIndexProgress;
+import org.mrs.api.db.SearchIndexRebuildOptions;
 import org.mrs.api.db.UserDAO;
+import org.mrs.api.db.hibernate.search.SearchIndexQueue;
 import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.OpenmrsUtil;
 import org.mrs.util.Security;
@@ -59,6 +81,9 @@ public class HibernateContextDAO implements ContextDAO {
 	
 	private static final Logger log = LoggerFactory.getLogger(HibernateContextDAO.class);
 	
+	// the id types the search index rebuild pages through, and can resume from, in id order
+	private static final List<Class<?>> KEYSET_ID_TYPES = Arrays.asList(Integer.class, Long.class);
+	
 	/**
 	 * Hibernate session factory
 	 */
@@ -67,8 +92,18 @@ public class HibernateContextDAO implements ContextDAO {
 	@Autowired
 	private FullTextSessionFactory fullTextSessionFactory;
 	
+	@Autowired
+	private SearchIndexQueue searchIndexQueue;
+	
+	@Autowired
+	private SearchIndexInterceptor searchIndexInterceptor;
+	
 	private UserDAO userDao;
 	
+	// the progress of the current or last search index rebuild, by type name
+	private final Map<String, SearchIndexProgress> searchIndexProgress = Collections
+	        .synchronizedMap(new LinkedHashMap<>());
+	
 	/**
 	 * Session factory to use for this DAO. This is usually injected by spring and its application
 	 * context.
@@ -503,11 +538,21 @@ public class HibernateContextDAO implements ContextDAO {
 	}
 	
 	/**
+	 * When the {@link SearchIndexQueue} is enabled the object is only queued once the transaction
+	 * is committed, so that neither uncommitted nor rolled back changes are indexed.
+	 * 
 	 * @see org.mrs.api.db.ContextDAO#updateSearchIndexForObject(java.lang.Object)
 	 */
 	@Override
 	@Transactional
 	public void updateSearchIndexForObject(Object object) {
+		if (object instanceof OpenmrsObject && searchIndexQueue.isEnabled()) {
+			if (!searchIndexInterceptor.addToCurrentTransaction((OpenmrsObject) object)) {
+				searchIndexQueue.add((OpenmrsObject) object);
+			}
+			return;
+		}
+		
 		FullTextSession session = fullTextSessionFactory.getFullTextSession();
 		session.index(object);
 		session.flushToIndexes();
@@ -560,4 +605,240 @@ public class HibernateContextDAO implements ContextDAO {
 			throw new RuntimeException("Failed to start asynchronous search index update", e);
 		}
 	}
+	
+	/**
+	 * @see ContextDAO#rebuildSearchIndex(SearchIndexRebuildOptions)
+	 */
+	@Override
+	public void rebuildSearchIndex(SearchIndexRebuildOptions options) {
+		Map<String, String> positions = new LinkedHashMap<>();
+		if (options.isResume()) {
+			positions.putAll(getSearchIndexRebuildPositions());
+		}
+		
+		List<Class<?>> types = options.getTypes();
+		if (types.isEmpty()) {
+			types = new ArrayList<>(fullTextSessionFactory.getFullTextSession().getSearchFactory().getIndexedTypes());
+		}
+		
+		searchIndexProgress.clear();
+		for (Class<?> type : types) {
+			searchIndexProgress.put(type.getName(), new SearchIndexProgress(type, 0));
+		}
+		
+		AtomicInteger threadNumber = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(options.getLoaderThreads(), runnable -> {
+			Thread thread = new Thread(runnable, "search-index-rebuild-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			for (Class<?> type : types) {
+				rebuildSearchIndexForType(type, options, positions, executor);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void rebuildSearchIndexForType(Class<?> type, SearchIndexRebuildOptions options,
+	        Map<String, String> positions, ExecutorService executor) {
+		ClassMetadata metadata = sessionFactory.getClassMetadata(type);
+		Class<?> idClass = metadata.getIdentifierType().getReturnedClass();
+		String idProperty = metadata.getIdentifierPropertyName();
+		if (idProperty == null || !KEYSET_ID_TYPES.contains(idClass)) {
+			rebuildSearchIndexForTypeAtOnce(type, options, positions);
+			return;
+		}
+		String position = positions.get(type.getName());
+		Serializable lastId = position == null ? null : toId(idClass, position);
+		
+		Session session = sessionFactory.openSession();
+		try {
+			session.setCacheMode(CacheMode.IGNORE);
+			Number total = (Number) createIdQuery(session, "select count(*)", type, idProperty, lastId, false)
+			        .uniqueResult();
+			SearchIndexProgress progress = new SearchIndexProgress(type, total.longValue());
+			searchIndexProgress.put(type.getName(), progress);
+			log.info("Rebuilding the search index of {} objects of {}", total, type.getName());
+			
+			// batches are indexed in parallel, but the position only moves past a batch once all the
+			// batches before it are indexed too
+			Deque<Future<Serializable>> pending = new ArrayDeque<>();
+			int maxPending = options.getLoaderThreads() * 2;
+			Serializable nextId = lastId;
+			while (true) {
+				@SuppressWarnings("unchecked")
+				List<Serializable> ids = createIdQuery(session, "select " + idProperty, type, idProperty, nextId, true)
+				        .setMaxResults(options.getBatchSize()).setFetchSize(options.getFetchSize()).list();
+				if (ids.isEmpty()) {
+					break;
+				}
+				nextId = ids.get(ids.size() - 1);
+				pending.add(executor.submit(() -> indexBatch(type, idProperty, ids, options.getFetchSize(), progress)));
+				
+				if (pending.size() >= maxPending) {
+					saveSearchIndexRebuildPosition(positions, type, waitForBatch(type, pending.poll()));
+					log.debug("{}", progress);
+				}
+			}
+			
+			while (!pending.isEmpty()) {
+				saveSearchIndexRebuildPosition(positions, type, waitForBatch(type, pending.poll()));
+			}
+			
+			progress.finish();
+			saveSearchIndexRebuildPosition(positions, type, null);
+			log.info("Finished rebuilding the search index of {}", progress);
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	/**
+	 * Rebuilds the index of a type whose ids can't be paged through in order, e.g. a composite id,
+	 * with the mass indexer of Hibernate Search. Such a rebuild has no position to resume from, it
+	 * starts over if it was interrupted.
+	 */
+	private void rebuildSearchIndexForTypeAtOnce(Class<?> type, SearchIndexRebuildOptions options,
+	        Map<String, String> positions) {
+		log.warn("The search index of {} can't be rebuilt in batches since it has no integer id, it is rebuilt at once",
+		    type.getName());
+		
+		Session session = sessionFactory.openSession();
+		try {
+			Number total = (Number) session.createQuery("select count(*) from " + type.getName()).uniqueResult();
+			SearchIndexProgress progress = new SearchIndexProgress(type, total.longValue());
+			searchIndexProgress.put(type.getName(), progress);
+			
+			Search.getFullTextSession(session).createIndexer(type).threadsToLoadObjects(options.getLoaderThreads())
+			        .batchSizeToLoadObjects(options.getBatchSize()).startAndWait();
+			
+			progress.addIndexed(total.longValue());
+			progress.finish();
+			saveSearchIndexRebuildPosition(positions, type, null);
+			log.info("Finished rebuilding the search index of {}", progress);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DAOException("Interrupted while rebuilding the search index of " + type.getName(), e);
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	/**
+	 * Creates a query on the objects of a type with an id greater than the given one, or on all of
+	 * them if it is null
+	 */
+	private Query createIdQuery(Session session, String select, Class<?> type, String idProperty, Serializable afterId,
+	        boolean ordered) {
+		StringBuilder hql = new StringBuilder(select).append(" from ").append(type.getName());
+		if (afterId != null) {
+			hql.append(" where ").append(idProperty).append(" > :afterId");
+		}
+		if (ordered) {
+			hql.append(" order by ").append(idProperty);
+		}
+		
+		Query query = session.createQuery(hql.toString());
+		if (afterId != null) {
+			query.setParameter("afterId", afterId);
+		}
+		return query;
+	}
+	
+	private Serializable toId(Class<?> idClass, String position) {
+		return Long.class.equals(idClass) ? Long.valueOf(position) : Integer.valueOf(position);
+	}
+	
+	/**
+	 * Indexes a batch of objects in a session and transaction of its own. The session is not
+	 * obtained from the {@link FullTextSessionFactory} since that one is bound to the calling thread.
+	 */
+	private Serializable indexBatch(Class<?> type, String idProperty, List<Serializable> ids, int fetchSize,
+	        SearchIndexProgress progress) {
+		FullTextSession session = Search.getFullTextSession(sessionFactory.openSession());
+		try {
+			session.setFlushMode(FlushMode.MANUAL);
+			session.setCacheMode(CacheMode.IGNORE);
+			Transaction tx = session.beginTransaction();
+			try {
+				for (Object object : session.createCriteria(type).add(Restrictions.in(idProperty, ids))
+				        .setFetchSize(fetchSize).list()) {
+					// updates the document of the object, the old one is used by searches until then
+					session.index(object);
+				}
+				session.flushToIndexes();
+				tx.commit();
+			}
+			catch (RuntimeException e) {
+				tx.rollback();
+				throw e;
+			}
+			progress.addIndexed(ids.size());
+			return ids.get(ids.size() - 1);
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	private Serializable waitForBatch(Class<?> type, Future<Serializable> batch) {
+		try {
+			return batch.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DAOException("Interrupted while rebuilding the search index of " + type.getName(), e);
+		}
+		catch (ExecutionException e) {
+			throw new DAOException("Failed to rebuild the search index of " + type.getName(), e.getCause());
+		}
+	}
+	
+	private Map<String, String> getSearchIndexRebuildPositions() {
+		Map<String, String> positions = new LinkedHashMap<>();
+		String value = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION, "");
+		for (String pair : StringUtils.split(StringUtils.defaultString(value), ',')) {
+			String[] typeAndId = StringUtils.split(pair, '=');
+			if (typeAndId.length == 2) {
+				positions.put(typeAndId[0].trim(), typeAndId[1].trim());
+			}
+		}
+		return positions;
+	}
+	
+	private void saveSearchIndexRebuildPosition(Map<String, String> positions, Class<?> type, Serializable lastId) {
+		if (lastId == null) {
+			positions.remove(type.getName());
+		} else {
+			positions.put(type.getName(), lastId.toString());
+		}
+		
+		List<String> pairs = new ArrayList<>();
+		for (Map.Entry<String, String> entry : positions.entrySet()) {
+			pairs.add(entry.getKey() + "=" + entry.getValue());
+		}
+		
+		AdministrationService as = Context.getAdministrationService();
+		GlobalProperty gp = as.getGlobalPropertyObject(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION);
+		if (gp == null) {
+			gp = new GlobalProperty(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION);
+		}
+		gp.setPropertyValue(StringUtils.join(pairs, ','));
+		as.saveGlobalProperty(gp);
+	}
+	
+	/**
+	 * @see ContextDAO#getSearchIndexProgress()
+	 */
+	@Override
+	public List<SearchIndexProgress> getSearchIndexProgress() {
+		return new ArrayList<>(searchIndexProgress.values());
+	}
 }
@@ -10,6 +10,7 @@
 package org.mrs.api.db.hibernate;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -96,9 +97,20 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	@Override
 	@SuppressWarnings("unchecked")
 	public List<Encounter> getEncountersByPatientId(Integer patientId) throws DAOException {
+		return getEncountersByPatientId(patientId, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getEncountersByPatientId(java.lang.Integer, java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncountersByPatientId(Integer patientId, Collection<EncounterType> excludedEncounterTypes)
+	        throws DAOException {
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Encounter.class).createAlias("patient", "p").add(
 		    Restrictions.eq("p.patientId", patientId)).add(Restrictions.eq("voided", false)).addOrder(
 		    Order.desc("encounterDatetime"));
+		excludeEncounterTypes(crit, "encounterType", excludedEncounterTypes);
 		
 		return crit.list();
 	}
@@ -106,9 +118,48 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	/**
 	 * @see org.mrs.api.db.EncounterDAO#getEncounters(org.mrs.parameter.EncounterSearchCriteria)
 	 */
-	@SuppressWarnings("unchecked")
 	@Override
 	public List<Encounter> getEncounters(EncounterSearchCriteria searchCriteria) {
+		return getEncounters(searchCriteria, null, null, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getEncounters(org.mrs.parameter.EncounterSearchCriteria,
+	 *      java.util.Collection, java.lang.Integer, java.lang.Integer)
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<Encounter> getEncounters(EncounterSearchCriteria searchCriteria,
+	        Collection<EncounterType> excludedEncounterTypes, Integer start, Integer length) {
+		Criteria crit = createEncounterCriteria(searchCriteria, excludedEncounterTypes);
+		crit.addOrder(Order.asc("encounterDatetime"));
+		// makes the pages stable for encounters at the same time
+		crit.addOrder(Order.asc("encounterId"));
+		
+		if (start != null) {
+			crit.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			crit.setMaxResults(length);
+		}
+		
+		return crit.list();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getCountOfEncounters(org.mrs.parameter.EncounterSearchCriteria,
+	 *      java.util.Collection)
+	 */
+	@Override
+	public Long getCountOfEncounters(EncounterSearchCriteria searchCriteria, Collection<EncounterType> excludedEncounterTypes) {
+		Criteria crit = createEncounterCriteria(searchCriteria, excludedEncounterTypes);
+		crit.setProjection(Projections.countDistinct("encounterId"));
+		
+		return (Long) crit.uniqueResult();
+	}
+	
+	private Criteria createEncounterCriteria(EncounterSearchCriteria searchCriteria,
+	        Collection<EncounterType> excludedEncounterTypes) {
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Encounter.class);
 		
 		if (searchCriteria.getPatient() != null && searchCriteria.getPatient().getPatientId() != null) {
@@ -154,8 +205,23 @@ public class HibernateEncounterDAO implements EncounterDAO {
 		if (!searchCriteria.getIncludeVoided()) {
 			crit.add(Restrictions.eq("voided", false));
 		}
-		crit.addOrder(Order.asc("encounterDatetime"));
-		return crit.list();
+		excludeEncounterTypes(crit, "encounterType", excludedEncounterTypes);
+		return crit;
+	}
+	
+	/**
+	 * Restricts the criteria to encounters without a type or with a type other than the given ones
+	 * 
+	 * @param criteria the criteria
+	 * @param encounterTypeProperty the path to the encounter type of the encounter
+	 * @param excludedEncounterTypes the types to exclude, may be null
+	 */
+	private void excludeEncounterTypes(Criteria criteria, String encounterTypeProperty,
+	        Collection<EncounterType> excludedEncounterTypes) {
+		if (excludedEncounterTypes != null && !excludedEncounterTypes.isEmpty()) {
+			criteria.add(Restrictions.or(Restrictions.isNull(encounterTypeProperty),
+			    Restrictions.not(Restrictions.in(encounterTypeProperty, excludedEncounterTypes))));
+		}
 	}
 	
 	/**
@@ -268,14 +334,24 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	 *      boolean)
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public List<Encounter> getEncounters(String query, Integer patientId, Integer start, Integer length,
 	        boolean includeVoided) {
+		return getEncounters(query, patientId, start, length, includeVoided, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getEncounters(String, Integer, Integer, Integer, boolean,
+	 *      java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncounters(String query, Integer patientId, Integer start, Integer length,
+	        boolean includeVoided, Collection<EncounterType> excludedEncounterTypes) {
 		if (StringUtils.isBlank(query) && patientId == null) {
 			return Collections.emptyList();
 		}
 		
-		Criteria criteria = createEncounterByQueryCriteria(query, patientId, includeVoided, true);
+		Criteria criteria = createEncounterByQueryCriteria(query, patientId, includeVoided, true, excludedEncounterTypes);
 		
 		if (start != null) {
 			criteria.setFirstResult(start);
@@ -362,7 +438,17 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	 */
 	@Override
 	public Long getCountOfEncounters(String query, Integer patientId, boolean includeVoided) {
-		Criteria criteria = createEncounterByQueryCriteria(query, patientId, includeVoided, false);
+		return getCountOfEncounters(query, patientId, includeVoided, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getCountOfEncounters(String, Integer, boolean,
+	 *      java.util.Collection)
+	 */
+	@Override
+	public Long getCountOfEncounters(String query, Integer patientId, boolean includeVoided,
+	        Collection<EncounterType> excludedEncounterTypes) {
+		Criteria criteria = createEncounterByQueryCriteria(query, patientId, includeVoided, false, excludedEncounterTypes);
 		
 		criteria.setProjection(Projections.countDistinct("enc.encounterId"));
 		return (Long) criteria.uniqueResult();
@@ -376,14 +462,16 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	 * @param patientId the patient id
 	 * @param includeVoided Specifies whether voided encounters should be included
 	 * @param orderByNames specifies whether the encounters should be ordered by person names
+	 * @param excludedEncounterTypes encounters of these types are not matched, may be null
 	 * @return Criteria
 	 */
 	private Criteria createEncounterByQueryCriteria(String query, Integer patientId, boolean includeVoided,
-	        boolean orderByNames) {
+	        boolean orderByNames, Collection<EncounterType> excludedEncounterTypes) {
 		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Encounter.class, "enc");
 		if (!includeVoided) {
 			criteria.add(Restrictions.eq("enc.voided", false));
 		}
+		excludeEncounterTypes(criteria, "enc.encounterType", excludedEncounterTypes);
 		
 		criteria = criteria.createCriteria("patient", "pat");
 		if (patientId != null) {
@@ -447,13 +535,23 @@ public class HibernateEncounterDAO implements EncounterDAO {
 	 * @see org.mrs.api.db.EncounterDAO#getEncountersByVisit(Visit, boolean)
 	 */
 	@Override
-	@SuppressWarnings("unchecked")
 	public List<Encounter> getEncountersByVisit(Visit visit, boolean includeVoided) {
+		return getEncountersByVisit(visit, includeVoided, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.db.EncounterDAO#getEncountersByVisit(Visit, boolean, java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Encounter> getEncountersByVisit(Visit visit, boolean includeVoided,
+	        Collection<EncounterType> excludedEncounterTypes) {
 		Criteria crit = sessionFactory.getCurrentSession().createCriteria(Encounter.class).add(
 		    Restrictions.eq("visit", visit));
 		if (!includeVoided) {
 			crit.add(Restrictions.eq("voided", false));
 		}
+		excludeEncounterTypes(crit, "encounterType", excludedEncounterTypes);
 		crit.addOrder(Order.asc("encounterDatetime"));
 		
 		return crit.list();
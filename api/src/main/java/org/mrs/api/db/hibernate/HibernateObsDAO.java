@@ -9,6 +9,7 @@
  */
 package org.mrs.api.db.hibernate;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
@@ -284,4 +285,32 @@ public class HibernateObsDAO implements ObsDAO {
 		}
 	}
 	
+	/**
+	 * @see org.mrs.api.db.ObsDAO#voidObs(Collection, User, Date, String)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public int voidObs(Collection<Integer> obsIds, User voidedBy, Date dateVoided, String voidReason) {
+		Session session = sessionFactory.getCurrentSession();
+		int voided = 0;
+		
+		// void one level of the obs groups at a time, starting with the given obs
+		Collection<Integer> ids = obsIds;
+		while (!ids.isEmpty()) {
+			List<Integer> memberIds = session.createQuery(
+			    "select o.obsId from Obs o where o.obsGroup.obsId in (:ids) and o.voided = false").setParameterList(
+			    "ids", ids).list();
+			
+			voided += session.createQuery(
+			    "update Obs set voided = true, voidedBy = :voidedBy, dateVoided = :dateVoided, voidReason = :voidReason "
+			            + "where obsId in (:ids) and voided = false").setParameter("voidedBy", voidedBy).setParameter(
+			    "dateVoided", dateVoided).setParameter("voidReason", voidReason).setParameterList("ids", ids)
+			        .executeUpdate();
+			
+			ids = memberIds;
+		}
+		
+		return voided;
+	}
+	
 }
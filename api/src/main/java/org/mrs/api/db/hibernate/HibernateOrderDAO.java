@@ -297,10 +297,10 @@ public class HibernateOrderDAO implements OrderDAO {
 	}
 	
 	/**
-	 * @see org.mrs.api.db.OrderDAO#getNextOrderNumberSeedSequenceValue()
+	 * @see org.mrs.api.db.OrderDAO#getNextOrderNumberSeedSequenceValue(int)
 	 */
 	@Override
-	public Long getNextOrderNumberSeedSequenceValue() {
+	public Long getNextOrderNumberSeedSequenceValue(int blockSize) {
 		GlobalProperty globalProperty = (GlobalProperty) sessionFactory.getCurrentSession().get(GlobalProperty.class,
 		    OpenmrsConstants.GP_NEXT_ORDER_NUMBER_SEED, LockOptions.UPGRADE);
 		
@@ -323,7 +323,7 @@ public class HibernateOrderDAO implements OrderDAO {
 			        new Object[] { OpenmrsConstants.GP_NEXT_ORDER_NUMBER_SEED });
 		}
 		
-		globalProperty.setPropertyValue(String.valueOf(gpNumericValue + 1));
+		globalProperty.setPropertyValue(String.valueOf(gpNumericValue + blockSize));
 		
 		sessionFactory.getCurrentSession().save(globalProperty);
 		
@@ -10,11 +10,13 @@
 package org.mrs.api.db.hibernate;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -23,19 +25,24 @@ import java.util.regex.Pattern;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Query;
 import org.hibernate.SQLQuery;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.mrs.Allergies;
 import org.mrs.Allergy;
+import org.mrs.DuplicatePatientMatch;
 import org.mrs.Location;
 import org.mrs.Patient;
 import org.mrs.PatientIdentifier;
 import org.mrs.PatientIdentifierType;
 import org.mrs.PatientIdentifierType.UniquenessBehavior;
+import org.mrs.PatientSearchResult;
 import org.mrs.Person;
 import org.mrs.PersonAttribute;
 import org.mrs.PersonName;
@@ -44,6 +51,7 @@ import org.mrs.api.db.DAOException;
 import org.mrs.api.db.PatientDAO;
 import org.mrs.api.db.hibernate.search.LuceneQuery;
 import org.mrs.collection.ListPart;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
 import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.OpenmrsUtil;
 import org.slf4j.Logger;
@@ -60,6 +68,11 @@ public class HibernatePatientDAO implements PatientDAO {
 	
 	private static final Logger log = LoggerFactory.getLogger(HibernatePatientDAO.class);
 	
+	/**
+	 * Limits the number of ids in a single in clause or terms filter
+	 */
+	private static final int MAX_IDS_PER_QUERY = 500;
+	
 	/**
 	 * Hibernate session factory
 	 */
@@ -219,6 +232,29 @@ public class HibernatePatientDAO implements PatientDAO {
 		return getPatients(query, false, start, length);
 	}
 	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	@Override
+	public List<PatientSearchResult> getPatientSearchResults(String query, boolean includeVoided, Integer start,
+	        Integer length) throws DAOException {
+		if (StringUtils.isBlank(query) || (length != null && length < 1)) {
+			return Collections.emptyList();
+		}
+		
+		Integer tmpStart = start;
+		if (tmpStart == null || tmpStart < 0) {
+			tmpStart = 0;
+		}
+		
+		Integer tmpLength = length;
+		if (tmpLength == null) {
+			tmpLength = HibernatePersonDAO.getMaximumSearchResults();
+		}
+		
+		return projectPatients(findPatientIds(query, includeVoided, tmpStart, tmpLength), includeVoided);
+	}
+	
 	private void setFirstAndMaxResult(Criteria criteria, Integer start, Integer length) {
 		if (start != null) {
 			criteria.setFirstResult(start);
@@ -566,6 +602,159 @@ public class HibernatePatientDAO implements PatientDAO {
 		patients.sort(new PatientIdComparator(patientIdOrder));
 	}
 	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#getDuplicatePatientCandidates(Integer, int, boolean)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer afterPatientId, int batchSize,
+	        boolean includeVoided) {
+		Session session = sessionFactory.getCurrentSession();
+		String hql = "select p.patientId, p.gender, p.birthdate from Patient p where p.patientId > :afterPatientId";
+		if (!includeVoided) {
+			hql += " and p.voided = false";
+		}
+		Query query = session.createQuery(hql + " order by p.patientId");
+		query.setInteger("afterPatientId", afterPatientId == null ? 0 : afterPatientId);
+		query.setMaxResults(batchSize);
+		
+		Map<Integer, DuplicatePatientCandidate> candidates = new LinkedHashMap<>();
+		for (Object[] row : (List<Object[]>) query.list()) {
+			candidates.put((Integer) row[0], new DuplicatePatientCandidate((Integer) row[0], (String) row[1],
+			        (Date) row[2]));
+		}
+		if (candidates.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Query names = session.createQuery("select pn.person.personId, pn.givenName, pn.middleName, pn.familyName, "
+		        + "pn.familyName2 from PersonName pn where pn.person.personId in (:ids) and pn.voided = false");
+		names.setParameterList("ids", candidates.keySet());
+		for (Object[] row : (List<Object[]>) names.list()) {
+			DuplicatePatientCandidate candidate = candidates.get(row[0]);
+			for (int i = 1; i < row.length; i++) {
+				candidate.addName((String) row[i]);
+			}
+		}
+		
+		Query identifiers = session.createQuery("select pi.patient.patientId, pi.identifier from PatientIdentifier pi "
+		        + "where pi.patient.patientId in (:ids) and pi.voided = false");
+		identifiers.setParameterList("ids", candidates.keySet());
+		for (Object[] row : (List<Object[]>) identifiers.list()) {
+			candidates.get(row[0]).addIdentifier((String) row[1]);
+		}
+		return new ArrayList<>(candidates.values());
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#saveDuplicatePatientMatches(java.util.Collection)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public void saveDuplicatePatientMatches(Collection<DuplicatePatientMatch> matches) {
+		Set<Integer> patientAIds = new HashSet<>();
+		for (DuplicatePatientMatch match : matches) {
+			patientAIds.add(match.getPatientA().getPatientId());
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		Map<Long, DuplicatePatientMatch> saved = new HashMap<>();
+		List<Integer> ids = new ArrayList<>(patientAIds);
+		for (int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY) {
+			Query existing = session.createQuery("select m, m.patientA.patientId, m.patientB.patientId "
+			        + "from DuplicatePatientMatch m where m.patientA.patientId in (:ids)");
+			existing.setParameterList("ids", ids.subList(i, Math.min(i + MAX_IDS_PER_QUERY, ids.size())));
+			for (Object[] row : (List<Object[]>) existing.list()) {
+				saved.put(getPairKey((Integer) row[1], (Integer) row[2]), (DuplicatePatientMatch) row[0]);
+			}
+		}
+		
+		Set<Long> pairs = new HashSet<>();
+		for (DuplicatePatientMatch match : matches) {
+			Integer patientAId = match.getPatientA().getPatientId();
+			Integer patientBId = match.getPatientB().getPatientId();
+			long pairKey = getPairKey(patientAId, patientBId);
+			if (!pairs.add(pairKey)) {
+				continue;
+			}
+			DuplicatePatientMatch savedMatch = saved.get(pairKey);
+			if (savedMatch != null) {
+				savedMatch.setScore(match.getScore());
+				savedMatch.setDateCreated(match.getDateCreated());
+				continue;
+			}
+			// the detector only knows the ids of the patients
+			match.setPatientA((Patient) session.load(Patient.class, patientAId));
+			match.setPatientB((Patient) session.load(Patient.class, patientBId));
+			session.save(match);
+		}
+	}
+	
+	private static long getPairKey(Integer patientAId, Integer patientBId) {
+		return ((long) patientAId << 32) | patientBId;
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#deleteDuplicatePatientMatches(Patient)
+	 */
+	@Override
+	public void deleteDuplicatePatientMatches(Patient patient) {
+		sessionFactory.getCurrentSession().createQuery(
+		    "delete from DuplicatePatientMatch m where m.patientA = :patient or m.patientB = :patient").setParameter(
+		    "patient", patient).executeUpdate();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#deleteDuplicatePatientMatches()
+	 */
+	@Override
+	public void deleteDuplicatePatientMatches() {
+		sessionFactory.getCurrentSession().createQuery("delete from DuplicatePatientMatch").executeUpdate();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#deleteDuplicatePatientMatches(Date)
+	 */
+	@Override
+	public void deleteDuplicatePatientMatches(Date foundBefore) {
+		sessionFactory.getCurrentSession().createQuery("delete from DuplicatePatientMatch m where m.dateCreated < :date")
+		        .setTimestamp("date", foundBefore).executeUpdate();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#getDuplicatePatientMatches(Double, Integer, Integer)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<DuplicatePatientMatch> getDuplicatePatientMatches(Double minScore, Integer start, Integer length) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DuplicatePatientMatch.class);
+		if (minScore != null) {
+			criteria.add(Restrictions.ge("score", minScore));
+		}
+		criteria.addOrder(Order.desc("score"));
+		criteria.addOrder(Order.asc("duplicatePatientMatchId"));
+		if (start != null) {
+			criteria.setFirstResult(start);
+		}
+		if (length != null && length > 0) {
+			criteria.setMaxResults(length);
+		}
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.PatientDAO#getCountOfDuplicatePatientMatches(Double)
+	 */
+	@Override
+	public Long getCountOfDuplicatePatientMatches(Double minScore) {
+		Criteria criteria = sessionFactory.getCurrentSession().createCriteria(DuplicatePatientMatch.class);
+		if (minScore != null) {
+			criteria.add(Restrictions.ge("score", minScore));
+		}
+		criteria.setProjection(Projections.rowCount());
+		return (Long) criteria.uniqueResult();
+	}
+	
 	/**
 	 * @see org.mrs.api.db.PatientDAO#getPatientByUuid(java.lang.String)
 	 */
@@ -704,6 +893,10 @@ public class HibernatePatientDAO implements PatientDAO {
 	}
 	
 	private List<Patient> findPatients(String query, List<PatientIdentifierType> identifierTypes, boolean matchExactly, Integer start, Integer length) {
+		return loadPatients(findPatientIds(query, identifierTypes, matchExactly, start, length));
+	}
+	
+	private List<Integer> findPatientIds(String query, List<PatientIdentifierType> identifierTypes, boolean matchExactly, Integer start, Integer length) {
 		String tmpQuery = query;
 		Integer tmpStart = start;
 		
@@ -717,7 +910,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 		tmpQuery = LuceneQuery.escapeQuery(tmpQuery);
 		
-		List<Patient> patients = new LinkedList<>();
+		List<Integer> patientIds = new ArrayList<>();
 		
 		String minChars = Context.getAdministrationService().getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_MIN_SEARCH_CHARACTERS);
 		
@@ -725,14 +918,14 @@ public class HibernatePatientDAO implements PatientDAO {
 			minChars = "" + OpenmrsConstants.GLOBAL_PROPERTY_DEFAULT_MIN_SEARCH_CHARACTERS;
 		}
 		if (tmpQuery.length() < Integer.valueOf(minChars)) {
-			return patients;
+			return patientIds;
 		}
 		LuceneQuery<PatientIdentifier> identifierQuery = getPatientIdentifierLuceneQuery(tmpQuery, identifierTypes, matchExactly);
 		
 		long identifiersSize = identifierQuery.resultSize();
 		if (identifiersSize > tmpStart) {
 			ListPart<Object[]> patientIdentifiers = identifierQuery.listPartProjection(tmpStart, tmpLength, "patient.personId");
-			patientIdentifiers.getList().forEach(patientIdentifier -> patients.add(getPatient((Integer) patientIdentifier[0])));
+			patientIdentifiers.getList().forEach(patientIdentifier -> patientIds.add((Integer) patientIdentifier[0]));
 			
 			tmpLength -= patientIdentifiers.getList().size();
 			tmpStart = 0;
@@ -741,12 +934,20 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 		
 		if (tmpLength == 0) {
-			return patients;
+			return patientIds;
 		}
-		return patients;
+		return patientIds;
 	}
 	
 	public List<Patient> findPatients(String query, boolean includeVoided, Integer start, Integer length){
+		return loadPatients(findPatientIds(query, includeVoided, start, length));
+	}
+	
+	/**
+	 * Searches the identifiers, names and attributes of patients in this order and returns the ids of
+	 * the matching patients in the order of their rank.
+	 */
+	private List<Integer> findPatientIds(String query, boolean includeVoided, Integer start, Integer length) {
 		Integer tmpStart = start;
 		if (tmpStart == null) {
 			tmpStart = 0;
@@ -758,7 +959,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 		query = LuceneQuery.escapeQuery(query);
 
-		List<Patient> patients = new LinkedList<>();
+		List<Integer> patientIds = new ArrayList<>();
 
 		String minChars = Context.getAdministrationService().getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_MIN_SEARCH_CHARACTERS);
 
@@ -766,7 +967,7 @@ public class HibernatePatientDAO implements PatientDAO {
 			minChars = "" + OpenmrsConstants.GLOBAL_PROPERTY_DEFAULT_MIN_SEARCH_CHARACTERS;
 		}
 		if (query.length() < Integer.valueOf(minChars)) {
-			return patients;
+			return patientIds;
 		}
 
 		LuceneQuery<PatientIdentifier> identifierQuery = getPatientIdentifierLuceneQuery(query, includeVoided, false);
@@ -774,7 +975,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		long identifiersSize = identifierQuery.resultSize();
 		if (identifiersSize > tmpStart) {
 			ListPart<Object[]> patientIdentifiers = identifierQuery.listPartProjection(tmpStart, tmpLength, "patient.personId");
-			patientIdentifiers.getList().forEach(patientIdentifier -> patients.add(getPatient((Integer) patientIdentifier[0])));
+			patientIdentifiers.getList().forEach(patientIdentifier -> patientIds.add((Integer) patientIdentifier[0]));
 
 			tmpLength -= patientIdentifiers.getList().size();
 			tmpStart = 0;
@@ -783,7 +984,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 
 		if (tmpLength == 0) {
-			return patients;
+			return patientIds;
 		}
 
 		PersonLuceneQuery personLuceneQuery = new PersonLuceneQuery(sessionFactory);
@@ -792,7 +993,7 @@ public class HibernatePatientDAO implements PatientDAO {
 		long namesSize = nameQuery.resultSize();
 		if (namesSize > tmpStart) {
 			ListPart<Object[]> personNames = nameQuery.listPartProjection(tmpStart, tmpLength, "person.personId");
-			personNames.getList().forEach(personName -> patients.add(getPatient((Integer) personName[0])));
+			personNames.getList().forEach(personName -> patientIds.add((Integer) personName[0]));
 
 			tmpLength -= personNames.getList().size();
 			tmpStart = 0;
@@ -801,18 +1002,113 @@ public class HibernatePatientDAO implements PatientDAO {
 		}
 
 		if (tmpLength == 0) {
-			return patients;
+			return patientIds;
 		}
 
 		LuceneQuery<PersonAttribute> attributeQuery = personLuceneQuery.getPatientAttributeQuery(query, includeVoided, nameQuery);
 		long attributesSize = attributeQuery.resultSize();
 		if (attributesSize > tmpStart) {
 			ListPart<Object[]> personAttributes = attributeQuery.listPartProjection(tmpStart, tmpLength, "person.personId");
-			personAttributes.getList().forEach(personAttribute -> patients.add(getPatient((Integer) personAttribute[0])));
+			personAttributes.getList().forEach(personAttribute -> patientIds.add((Integer) personAttribute[0]));
 		}
 
+		return patientIds;
+	}
+	/**
+	 * Loads the patients with the given ids in one query per {@link #MAX_IDS_PER_QUERY} ids instead of
+	 * one query per patient. The identifiers are fetched in the same query and the names, addresses
+	 * and attributes are batch fetched for all of them.
+	 *
+	 * @param patientIds the ids
+	 * @return the patients in the order of the given ids
+	 */
+	private List<Patient> loadPatients(List<Integer> patientIds) {
+		Map<Integer, Patient> patientsById = new HashMap<>();
+		for (int i = 0; i < patientIds.size(); i += MAX_IDS_PER_QUERY) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Patient.class);
+			criteria.add(Restrictions.in("patientId", patientIds.subList(i, Math.min(i + MAX_IDS_PER_QUERY, patientIds.size()))));
+			criteria.setFetchMode("identifiers", FetchMode.JOIN);
+			criteria.setResultTransformer(Criteria.DISTINCT_ROOT_ENTITY);
+			for (Object patient : criteria.list()) {
+				patientsById.put(((Patient) patient).getPatientId(), (Patient) patient);
+			}
+		}
+		
+		List<Patient> patients = new ArrayList<>(patientIds.size());
+		for (Integer patientId : patientIds) {
+			Patient patient = patientsById.get(patientId);
+			if (patient != null) {
+				patients.add(patient);
+			}
+		}
 		return patients;
 	}
+	
+	/**
+	 * Creates search results from the values stored in the name and identifier indexes without
+	 * loading anything from the database. The preferred name and identifier are used if there are
+	 * several.
+	 *
+	 * @param patientIds the ids
+	 * @param includeVoided whether voided names and identifiers can be used
+	 * @return the search results in the order of the given ids
+	 */
+	private List<PatientSearchResult> projectPatients(List<Integer> patientIds, boolean includeVoided) {
+		Map<Integer, PatientSearchResult> results = new LinkedHashMap<>();
+		for (Integer patientId : patientIds) {
+			results.put(patientId, new PatientSearchResult(patientId));
+		}
+		
+		Set<Integer> withPreferredName = new HashSet<>();
+		Set<Integer> withPreferredIdentifier = new HashSet<>();
+		for (int i = 0; i < patientIds.size(); i += MAX_IDS_PER_QUERY) {
+			List<Integer> ids = patientIds.subList(i, Math.min(i + MAX_IDS_PER_QUERY, patientIds.size()));
+			
+			LuceneQuery<PersonName> nameQuery = LuceneQuery.newQuery(PersonName.class, sessionFactory.getCurrentSession(), "")
+			        .include("person.personId", ids);
+			if (!includeVoided) {
+				nameQuery.include("voided", false);
+			}
+			for (Object[] row : nameQuery.listProjection("person.personId", "preferred", "givenName", "middleName",
+			    "familyName", "person.gender", "person.birthdate")) {
+				PatientSearchResult result = results.get(row[0]);
+				if (result.getFamilyName() == null && result.getGivenName() == null
+				        || Boolean.TRUE.equals(row[1]) && !withPreferredName.contains(row[0])) {
+					result.setGivenName((String) row[2]);
+					result.setMiddleName((String) row[3]);
+					result.setFamilyName((String) row[4]);
+				}
+				if (Boolean.TRUE.equals(row[1])) {
+					withPreferredName.add((Integer) row[0]);
+				}
+				result.setGender((String) row[5]);
+				result.setBirthdate((Date) row[6]);
+			}
+			
+			LuceneQuery<PatientIdentifier> identifierQuery = LuceneQuery.newQuery(PatientIdentifier.class,
+			    sessionFactory.getCurrentSession(), "").include("patient.personId", ids);
+			if (!includeVoided) {
+				identifierQuery.include("voided", false);
+			}
+			for (Object[] row : identifierQuery.listProjection("patient.personId", "preferred", "identifier",
+			    "patient.gender", "patient.birthdate")) {
+				PatientSearchResult result = results.get(row[0]);
+				if (result.getIdentifier() == null || Boolean.TRUE.equals(row[1]) && !withPreferredIdentifier.contains(row[0])) {
+					result.setIdentifier((String) row[2]);
+				}
+				if (Boolean.TRUE.equals(row[1])) {
+					withPreferredIdentifier.add((Integer) row[0]);
+				}
+				if (result.getGender() == null) {
+					result.setGender((String) row[3]);
+					result.setBirthdate((Date) row[4]);
+				}
+			}
+		}
+		
+		return new ArrayList<>(results.values());
+	}
+	
 	private LuceneQuery<PatientIdentifier> getPatientIdentifierLuceneQuery(String query, List<PatientIdentifierType> identifierTypes, boolean matchExactly) {
 		LuceneQuery<PatientIdentifier> patientIdentifierLuceneQuery = getPatientIdentifierLuceneQuery(query, matchExactly);
 		for(PatientIdentifierType identifierType : identifierTypes) {
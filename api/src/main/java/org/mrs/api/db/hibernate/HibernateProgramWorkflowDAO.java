@@ -9,6 +9,7 @@
  */
 package org.mrs.api.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
@@ -50,6 +51,8 @@ import org.mrs.customdatatype.CustomDatatypeUtil;
  */
 public class HibernateProgramWorkflowDAO implements ProgramWorkflowDAO {
 	
+	private static final int MAX_PATIENT_IDS_PER_QUERY = 1000;
+	
 	private SessionFactory sessionFactory;
 	
 	public HibernateProgramWorkflowDAO() {
@@ -219,14 +222,25 @@ public class HibernateProgramWorkflowDAO implements ProgramWorkflowDAO {
 			hql += " program in (:programs)";
 		}
 		hql += " order by patient.patientId, dateEnrolled";
-		Query query = sessionFactory.getCurrentSession().createQuery(hql);
-		if (cohort != null) {
-			query.setParameterList("patientIds", cohort.getMemberIds());
+		if (cohort == null) {
+			Query query = sessionFactory.getCurrentSession().createQuery(hql);
+			if (programs != null) {
+				query.setParameterList("programs", programs);
+			}
+			return query.list();
 		}
-		if (programs != null) {
-			query.setParameterList("programs", programs);
+		
+		// chunks of ascending patient ids keep the results ordered by patient
+		List<PatientProgram> patientPrograms = new ArrayList<>();
+		for (List<Integer> patientIds : cohort.getMemberIdBitmap(true).chunks(MAX_PATIENT_IDS_PER_QUERY)) {
+			Query query = sessionFactory.getCurrentSession().createQuery(hql);
+			query.setParameterList("patientIds", patientIds);
+			if (programs != null) {
+				query.setParameterList("programs", programs);
+			}
+			patientPrograms.addAll(query.list());
 		}
-		return query.list();
+		return patientPrograms;
 	}
 	
 	/**
@@ -11,19 +11,25 @@ package org.mrs.api.db.hibernate;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.hibernate.Criteria;
+import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.EntityKey;
 import org.mrs.Concept;
 import org.mrs.Location;
 import org.mrs.Patient;
+import org.mrs.User;
 import org.mrs.Visit;
 import org.mrs.VisitAttribute;
 import org.mrs.VisitAttributeType;
@@ -302,4 +308,61 @@ public class HibernateVisitDAO implements VisitDAO {
 		
 		return (Visit) criteria.uniqueResult();
 	}
+	
+	/**
+	 * @see org.mrs.api.db.VisitDAO#getNextVisitIds(Integer, Collection, Date, int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<Integer> getNextVisitIds(Integer previousVisitId, Collection<VisitType> visitTypes, Date maximumStartDate,
+	        int maxResults) {
+		Criteria criteria = getCurrentSession().createCriteria(Visit.class);
+		criteria.setProjection(Projections.id());
+		criteria.add(Restrictions.eq("voided", false)).add(
+		    Restrictions.gt("visitId", (previousVisitId != null) ? previousVisitId : 0)).addOrder(Order.asc("visitId"))
+		        .add(Restrictions.isNull("stopDatetime")).setMaxResults(maxResults);
+		if (maximumStartDate != null) {
+			criteria.add(Restrictions.le("startDatetime", maximumStartDate));
+		}
+		
+		if (CollectionUtils.isNotEmpty(visitTypes)) {
+			criteria.add(Restrictions.in("visitType", visitTypes));
+		}
+		
+		return criteria.list();
+	}
+	
+	/**
+	 * @see org.mrs.api.db.VisitDAO#stopVisits(Collection, Date, User)
+	 */
+	@Override
+	public int stopVisits(Collection<Integer> visitIds, Date stopDatetime, User changedBy) {
+		if (visitIds.isEmpty()) {
+			return 0;
+		}
+		
+		Query query = getCurrentSession().createQuery(
+		    "update Visit set stopDatetime = :stopDatetime, dateChanged = :dateChanged"
+		            + (changedBy != null ? ", changedBy = :changedBy" : "")
+		            + " where visitId in (:visitIds) and stopDatetime is null");
+		query.setTimestamp("stopDatetime", stopDatetime);
+		query.setTimestamp("dateChanged", new Date());
+		if (changedBy != null) {
+			query.setEntity("changedBy", changedBy);
+		}
+		query.setParameterList("visitIds", visitIds);
+		int stopped = query.executeUpdate();
+		
+		//visits loaded before the update would otherwise be handed out and flushed back stale
+		Session session = getCurrentSession();
+		Set<Integer> ids = new HashSet<>(visitIds);
+		for (Object key : session.getStatistics().getEntityKeys().toArray()) {
+			EntityKey entityKey = (EntityKey) key;
+			if (Visit.class.getName().equals(entityKey.getEntityName()) && ids.contains(entityKey.getIdentifier())) {
+				session.refresh(session.load(Visit.class, entityKey.getIdentifier()));
+			}
+		}
+		
+		return stopped;
+	}
 }
@@ -32,7 +32,10 @@ import org.hibernate.type.Type;
  * at runtime by simply setting the primary key property.
  * 
  * @author paul.shemansky@gmail.com
+ * @deprecated as of 2.3.0, identity inserts can't be batched, use
+ *             {@link PooledLoIfNotAssignedGenerator} instead
  */
+@Deprecated
 public class NativeIfNotAssignedIdentityGenerator extends IdentityGenerator implements Configurable {
 	
 	private String entityName;
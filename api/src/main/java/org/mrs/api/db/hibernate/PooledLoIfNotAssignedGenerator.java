@@ -0,0 +1,302 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.HibernateException;
+import org.hibernate.MappingException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.Configurable;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.jdbc.AbstractReturningWork;
+import org.hibernate.type.Type;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <b>pooled-lo-if-not-assigned</b><br>
+ * <br>
+ * Generates ids from blocks that are reserved in the <code>id_allocation</code> table, one row per
+ * entity table holding the first id of the next free block. Because the ids are known before the
+ * row is inserted, hibernate can delay the inserts and send them in JDBC batches, which isn't
+ * possible with identity columns where every insert has to be executed right away to learn its
+ * key. <br>
+ * <br>
+ * Like {@link NativeIfNotAssignedIdentityGenerator} an id that was set on the entity before it is
+ * saved is kept. <br>
+ * <br>
+ * Existing data and rows inserted without going through hibernate, e.g. by liquibase changesets or
+ * modules, are taken into account by never starting a block below the current maximum id of the
+ * table or, on MySQL and H2, below the next value of the auto increment of its primary key column,
+ * which also covers rows that were inserted and deleted again. Every reservation advances the
+ * allocation past both of them. The reservation itself runs in a separate transaction so that it
+ * doesn't hold a lock on the allocation row until the saving transaction completes. The block size
+ * is set with the <code>increment_size</code> parameter; ids of a block that isn't used up before a
+ * restart are skipped. Rows inserted with plain SQL while a block is in use can collide with it, so
+ * {@link #discardReservedBlocks()} should be called after such inserts.
+ *
+ * @since 2.3.0
+ */
+public class PooledLoIfNotAssignedGenerator implements PersistentIdentifierGenerator, Configurable {
+
+	private static final Logger log = LoggerFactory.getLogger(PooledLoIfNotAssignedGenerator.class);
+
+	public static final String ALLOCATION_TABLE = "id_allocation";
+
+	public static final String INCREMENT_SIZE = "increment_size";
+
+	public static final int DEFAULT_INCREMENT_SIZE = 50;
+
+	// incremented to make all generators reserve a new block on their next use
+	private static final AtomicLong blocksVersion = new AtomicLong();
+
+	private String entityName;
+
+	private String tableName;
+
+	private int incrementSize;
+
+	private Class<?> returnedClass;
+
+	private String selectMaxIdSql;
+
+	// null if the next auto increment value can't be read for the dialect
+	private String selectNextAutoIncrementSql;
+
+	private String columnName;
+
+	private String selectNextIdSql;
+
+	private String insertNextIdSql;
+
+	private String updateNextIdSql;
+
+	// the next id to hand out and the end (exclusive) of the block it belongs to
+	private long nextId;
+
+	private long blockEnd;
+
+	private long blockVersion;
+
+	/**
+	 * @see org.hibernate.id.Configurable#configure(org.hibernate.type.Type, java.util.Properties,
+	 *      org.hibernate.dialect.Dialect)
+	 */
+	@Override
+	public void configure(Type type, Properties params, Dialect dialect) throws MappingException {
+		entityName = params.getProperty(ENTITY_NAME);
+		if (entityName == null) {
+			throw new MappingException("no entity name");
+		}
+		tableName = params.getProperty(TABLE);
+		columnName = params.getProperty(PK);
+		if (tableName == null || columnName == null) {
+			throw new MappingException("no table or primary key column for " + entityName);
+		}
+
+		incrementSize = ConfigurationHelper.getInt(INCREMENT_SIZE, params, DEFAULT_INCREMENT_SIZE);
+		if (incrementSize < 1) {
+			throw new MappingException(INCREMENT_SIZE + " must be at least 1 for " + entityName);
+		}
+		returnedClass = type.getReturnedClass();
+
+		selectMaxIdSql = "select max(" + columnName + ") from " + tableName;
+		if (dialect instanceof MySQLDialect) {
+			selectNextAutoIncrementSql = "select t.auto_increment from information_schema.tables t "
+			        + "join information_schema.columns c on c.table_schema = t.table_schema "
+			        + "and c.table_name = t.table_name where t.table_schema = database() and t.table_name = ? "
+			        + "and c.column_name = ? and c.extra like '%auto_increment%'";
+		} else if (dialect instanceof H2Dialect) {
+			selectNextAutoIncrementSql = "select s.current_value + s.increment from information_schema.sequences s "
+			        + "join information_schema.columns c on c.sequence_name = s.sequence_name "
+			        + "where upper(c.table_name) = upper(?) and upper(c.column_name) = upper(?)";
+		}
+		selectNextIdSql = "select next_id from " + ALLOCATION_TABLE + " where table_name = ?" + dialect.getForUpdateString();
+		insertNextIdSql = "insert into " + ALLOCATION_TABLE + " (table_name, next_id) values (?, ?)";
+		updateNextIdSql = "update " + ALLOCATION_TABLE + " set next_id = ? where table_name = ?";
+	}
+
+	/**
+	 * @see org.hibernate.id.IdentifierGenerator#generate(org.hibernate.engine.spi.SessionImplementor,
+	 *      java.lang.Object)
+	 */
+	@Override
+	public Serializable generate(SessionImplementor session, Object entity) throws HibernateException {
+		// Determine if an ID has been assigned.
+		Serializable id = session.getEntityPersister(entityName, entity).getIdentifier(entity, session);
+		if (id != null) {
+			return id;
+		}
+
+		long value;
+		synchronized (this) {
+			long currentVersion = blocksVersion.get();
+			if (nextId >= blockEnd || blockVersion != currentVersion) {
+				nextId = reserveBlock(session);
+				blockEnd = nextId + incrementSize;
+				blockVersion = currentVersion;
+			}
+			value = nextId++;
+		}
+
+		if (Long.class.equals(returnedClass) || long.class.equals(returnedClass)) {
+			return value;
+		}
+		return (int) value;
+	}
+
+	/**
+	 * Makes all generators drop the remainder of their current block so that the next id is
+	 * allocated above the maximum id in the table again. This should be called after rows were
+	 * inserted with explicit ids without going through hibernate.
+	 */
+	public static void discardReservedBlocks() {
+		blocksVersion.incrementAndGet();
+	}
+
+	/**
+	 * Reserves the next block of ids
+	 *
+	 * @return the first id of the block
+	 */
+	private long reserveBlock(SessionImplementor session) {
+		// read with the connection of the current transaction so that rows it inserted without an
+		// id from this generator are seen as well
+		final long maxId = selectMaxId(session.connection());
+
+		long firstId = session.getTransactionCoordinator().getTransaction().createIsolationDelegate().delegateWork(
+		    new AbstractReturningWork<Long>() {
+
+			    @Override
+			    public Long execute(Connection connection) throws SQLException {
+				    Long storedNextId = selectNextId(connection);
+				    long lowest = Math.max(maxId + 1, selectNextAutoIncrement(connection));
+				    long first = Math.max(storedNextId == null ? 1 : storedNextId, lowest);
+				    if (storedNextId == null) {
+					    try {
+						    execute(connection, insertNextIdSql, tableName, first + incrementSize);
+						    return first;
+					    }
+					    catch (SQLException e) {
+						    // another node created the row first, reserve from it below
+						    log.debug("Failed to create the id allocation row for {}", tableName, e);
+						    storedNextId = selectNextId(connection);
+						    if (storedNextId == null) {
+							    throw e;
+						    }
+						    first = Math.max(storedNextId, lowest);
+					    }
+				    }
+
+				    execute(connection, updateNextIdSql, first + incrementSize, tableName);
+				    return first;
+			    }
+		    }, true);
+
+		log.debug("Reserved ids {} to {} for {}", firstId, firstId + incrementSize - 1, tableName);
+
+		return firstId;
+	}
+
+	private Long selectNextId(Connection connection) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(selectNextIdSql)) {
+			statement.setString(1, tableName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() ? resultSet.getLong(1) : null;
+			}
+		}
+	}
+
+	/**
+	 * @return the value the auto increment of the primary key column assigns next or 0 if it isn't
+	 *         known
+	 */
+	private long selectNextAutoIncrement(Connection connection) throws SQLException {
+		if (selectNextAutoIncrementSql == null) {
+			return 0;
+		}
+
+		try (PreparedStatement statement = connection.prepareStatement(selectNextAutoIncrementSql)) {
+			statement.setString(1, tableName);
+			statement.setString(2, columnName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() ? resultSet.getLong(1) : 0;
+			}
+		}
+	}
+
+	private long selectMaxId(Connection connection) {
+		try (PreparedStatement statement = connection.prepareStatement(selectMaxIdSql)) {
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() ? resultSet.getLong(1) : 0;
+			}
+		}
+		catch (SQLException e) {
+			throw new HibernateException("Failed to read the maximum id of " + tableName, e);
+		}
+	}
+
+	private static void execute(Connection connection, String sql, Object... parameters) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; i < parameters.length; i++) {
+				statement.setObject(i + 1, parameters[i]);
+			}
+			statement.executeUpdate();
+		}
+	}
+
+	/**
+	 * @see org.hibernate.id.PersistentIdentifierGenerator#sqlCreateStrings(org.hibernate.dialect.Dialect)
+	 */
+	@Override
+	public String[] sqlCreateStrings(Dialect dialect) throws HibernateException {
+		return new String[] { dialect.getCreateTableString() + " " + ALLOCATION_TABLE + " (table_name "
+		        + dialect.getTypeName(Types.VARCHAR, 64, 0, 0) + " not null, next_id " + dialect.getTypeName(Types.BIGINT)
+		        + " not null, primary key (table_name))" };
+	}
+
+	/**
+	 * @see org.hibernate.id.PersistentIdentifierGenerator#sqlDropStrings(org.hibernate.dialect.Dialect)
+	 */
+	@Override
+	public String[] sqlDropStrings(Dialect dialect) throws HibernateException {
+		StringBuilder drop = new StringBuilder("drop table ");
+		if (dialect.supportsIfExistsBeforeTableName()) {
+			drop.append("if exists ");
+		}
+		drop.append(ALLOCATION_TABLE);
+		if (dialect.supportsIfExistsAfterTableName()) {
+			drop.append(" if exists");
+		}
+		return new String[] { drop.toString() };
+	}
+
+	/**
+	 * All entities share the one allocation table
+	 *
+	 * @see org.hibernate.id.PersistentIdentifierGenerator#generatorKey()
+	 */
+	@Override
+	public Object generatorKey() {
+		return ALLOCATION_TABLE;
+	}
+}
@@ -0,0 +1,187 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.Hibernate;
+import org.hibernate.Transaction;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.type.Type;
+import org.mrs.OpenmrsObject;
+import org.mrs.api.db.hibernate.search.SearchIndexQueue;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects the indexed objects, and the objects that contain them in the search index, that a
+ * transaction inserts, updates or deletes, and hands them to the {@link SearchIndexQueue} once the
+ * transaction is committed. Does nothing unless the queue is enabled.
+ * <p>
+ * The changes are kept per transaction. A transaction started while another one is active on the
+ * same thread, e.g. by a service method requiring a new transaction, gets its own changes, and
+ * those of the outer transaction are handed over when the outer transaction completes.
+ *
+ * @since 2.3.0
+ */
+@Component("searchIndexInterceptor")
+public class SearchIndexInterceptor extends EmptyInterceptor {
+	
+	private static final long serialVersionUID = 1L;
+	
+	// the changes of the active transactions of each thread, the innermost first
+	private static final ThreadLocal<Deque<PendingChanges>> pendingChanges = ThreadLocal.withInitial(ArrayDeque::new);
+	
+	@Autowired
+	private transient SearchIndexQueue searchIndexQueue;
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onSave(Object, Serializable, Object[], String[], Type[])
+	 */
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		addChangedObject(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onFlushDirty(Object, Serializable, Object[], Object[],
+	 *      String[], Type[])
+	 */
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		addChangedObject(entity);
+		return false;
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onDelete(Object, Serializable, Object[], String[], Type[])
+	 */
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		addChangedObject(entity);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionRecreate(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionRecreate(Object collection, Serializable key) {
+		addChangedOwner(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionRemove(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionRemove(Object collection, Serializable key) {
+		addChangedOwner(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#onCollectionUpdate(Object, Serializable)
+	 */
+	@Override
+	public void onCollectionUpdate(Object collection, Serializable key) {
+		addChangedOwner(collection);
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionBegin(Transaction)
+	 */
+	@Override
+	public void afterTransactionBegin(Transaction tx) {
+		pendingChanges.get().push(new PendingChanges(tx));
+	}
+	
+	/**
+	 * @see org.hibernate.EmptyInterceptor#afterTransactionCompletion(Transaction)
+	 */
+	@Override
+	public void afterTransactionCompletion(Transaction tx) {
+		Deque<PendingChanges> stack = pendingChanges.get();
+		PendingChanges completed = null;
+		for (Iterator<PendingChanges> it = stack.iterator(); it.hasNext() && completed == null;) {
+			PendingChanges pending = it.next();
+			// also drops inner transactions that never completed
+			it.remove();
+			if (pending.tx == tx) {
+				completed = pending;
+			}
+		}
+		if (stack.isEmpty()) {
+			pendingChanges.remove();
+		}
+		
+		if (completed != null && !completed.objects.isEmpty() && tx.wasCommitted()) {
+			searchIndexQueue.add(new ArrayList<>(completed.objects));
+		}
+	}
+	
+	/**
+	 * Adds an object to the objects handed to the {@link SearchIndexQueue} once the current
+	 * transaction is committed, so that it is indexed as it was committed.
+	 *
+	 * @param object the object
+	 * @return false if no transaction is active on this thread, in which case the object is not
+	 *         added
+	 */
+	public boolean addToCurrentTransaction(OpenmrsObject object) {
+		Deque<PendingChanges> stack = pendingChanges.get();
+		if (stack.isEmpty()) {
+			pendingChanges.remove();
+			return false;
+		}
+		
+		stack.peek().objects.add(object);
+		return true;
+	}
+	
+	private void addChangedOwner(Object collection) {
+		if (collection instanceof PersistentCollection) {
+			addChangedObject(((PersistentCollection) collection).getOwner());
+		}
+	}
+	
+	private void addChangedObject(Object entity) {
+		if (!(entity instanceof OpenmrsObject) || !SearchIndexQueue.isIndexRelevant(Hibernate.getClass(entity))
+		        || !searchIndexQueue.isEnabled()) {
+			return;
+		}
+		
+		PendingChanges pending = pendingChanges.get().peek();
+		if (pending != null) {
+			pending.objects.add((OpenmrsObject) entity);
+		}
+	}
+	
+	/**
+	 * The objects changed by one transaction
+	 */
+	private static class PendingChanges {
+		
+		private final Transaction tx;
+		
+		private final Set<OpenmrsObject> objects = Collections.newSetFromMap(new IdentityHashMap<>());
+		
+		private PendingChanges(Transaction tx) {
+			this.tx = tx;
+		}
+	}
+}
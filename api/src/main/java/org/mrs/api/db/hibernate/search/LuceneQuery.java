@@ -9,7 +9,7 @@
  */
 package org.mrs.api.db.hibernate.search;
 
-import java.util.ArrayList;
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -17,8 +17,8 @@ import java.util.List;
 import java.util.Set;
 
 import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
-import org.apache.lucene.queries.TermsFilter;
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
@@ -27,6 +27,7 @@ import org.apache.lucene.search.Query;
 import org.hibernate.Session;
 import org.hibernate.search.FullTextQuery;
 import org.hibernate.search.FullTextSession;
+import org.hibernate.search.indexes.IndexReaderAccessor;
 import org.hibernate.search.query.dsl.QueryBuilder;
 import org.mrs.FullTextSessionFactory;
 import org.mrs.PatientIdentifier;
@@ -46,12 +47,10 @@ public abstract class LuceneQuery<T> extends SearchQuery<T> {
 	
 	private Set<Term> excludeTerms = new HashSet<>();
 
-	private TermsFilter termsFilter;
+	private SkipSameFilter skipSameFilter;
 
 	private boolean noUniqueTerms = false;
 
-	private Set<Object> skipSameValues;
-
 	boolean useOrQueryParser = false;
 
 	public static <T> LuceneQuery<T> newQuery(final Class<T> type, final Session session, final String query, final Collection<String> fields) {
@@ -275,7 +274,8 @@ public abstract class LuceneQuery<T> extends SearchQuery<T> {
 	 * Only first elements will be included in the results.
 	 * <p>
 	 * <b>Note:</b> This method must be called as last when constructing a query. When called it
-	 * will project the query and create a filter to eliminate duplicates.
+	 * will run the query and create a filter to eliminate duplicates. The values are read from the
+	 * field cache so the field must be untokenized and have a single value per document.
 	 * 
 	 * @param field
 	 * @return this
@@ -290,41 +290,46 @@ public abstract class LuceneQuery<T> extends SearchQuery<T> {
 	 * Only first elements will be included in the results.
 	 * <p>
 	 * <b>Note:</b> This method must be called as last when constructing a query. When called it
-	 * will project the query and create a filter to eliminate duplicates.
+	 * will run the query and create a filter to eliminate duplicates. The values are read from the
+	 * field cache so the field must be untokenized and have a single value per document.
 	 *
 	 * @param field
 	 * @param luceneQuery results of which should be skipped too. It works only for queries, which called skipSame as well.
 	 * @return this
 	 */
 	public LuceneQuery<T> skipSame(String field, LuceneQuery<?> luceneQuery){
-		String idPropertyName = getSession().getSessionFactory().getClassMetadata(getType()).getIdentifierPropertyName();
+		if (luceneQuery != null && luceneQuery.skipSameFilter == null) {
+			throw new IllegalArgumentException("The skipSame method must be called on the given luceneQuery before calling this method.");
+		}
 
-		FullTextQuery query = buildQuery();
-		query.setProjection(idPropertyName, field);
-		List<Object[]> documents = query.list();
+		Query query = parseQuery();
 
-		skipSameValues = new HashSet<>();
-		if (luceneQuery != null) {
-			if (luceneQuery.skipSameValues == null) {
-				throw new IllegalArgumentException("The skipSame method must be called on the given luceneQuery before calling this method.");
-			}
-			skipSameValues.addAll(luceneQuery.skipSameValues);
-		}
+		TermsFilterFactory termsFilterFactory = new TermsFilterFactory();
+		termsFilterFactory.setIncludeTerms(includeTerms);
+		termsFilterFactory.setExcludeTerms(excludeTerms);
 
-		termsFilter = null;
-		if (!documents.isEmpty()) {
-			List<Term> terms = new ArrayList<>();
-			for (Object[] row : documents) {
-				if (skipSameValues.add(row[1])) {
-					terms.add(new Term(idPropertyName, row[0].toString()));
-				}
+		IndexReaderAccessor readerAccessor = getFullTextSession().getSearchFactory().getIndexReaderAccessor();
+		IndexReader reader = readerAccessor.open(getType());
+		IndexReader skipReader = null;
+		try {
+			SkipSameFilter skipFilter = null;
+			if (luceneQuery != null) {
+				skipFilter = luceneQuery.skipSameFilter;
+				skipReader = readerAccessor.open(luceneQuery.getType());
 			}
-			if (!terms.isEmpty()) {
-				termsFilter = new TermsFilter(terms);
-			} else {
-				noUniqueTerms = true;
+			skipSameFilter = SkipSameFilter.build(reader, query, termsFilterFactory.getFilter(), field, skipFilter,
+			    skipReader);
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Failed to skip same values in " + field, e);
+		}
+		finally {
+			readerAccessor.close(reader);
+			if (skipReader != null) {
+				readerAccessor.close(skipReader);
 			}
 		}
+		noUniqueTerms = skipSameFilter.isEmpty();
 
 		return this;
 	}
@@ -419,21 +424,22 @@ public abstract class LuceneQuery<T> extends SearchQuery<T> {
 		return listPartProjection(first, max, fields);
 	}
 	
-	private FullTextQuery buildQuery() {
-		Query query;
+	private Query parseQuery() {
 		try {
-			query = prepareQuery();
+			return prepareQuery();
 		}
 		catch (ParseException e) {
 			throw new IllegalStateException("Invalid query", e);
 		}
-		
-		FullTextQuery fullTextQuery = getFullTextSession().createFullTextQuery(query, getType());
+	}
+	
+	private FullTextQuery buildQuery() {
+		FullTextQuery fullTextQuery = getFullTextSession().createFullTextQuery(parseQuery(), getType());
 
 		fullTextQuery.enableFullTextFilter("termsFilterFactory").setParameter("includeTerms", includeTerms)
 				.setParameter("excludeTerms", excludeTerms);
 
-		fullTextQuery.setFilter(termsFilter);
+		fullTextQuery.setFilter(skipSameFilter);
 
 		adjustFullTextQuery(fullTextQuery);
 
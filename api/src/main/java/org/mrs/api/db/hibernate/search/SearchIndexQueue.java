@@ -0,0 +1,568 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate.search;
+
+import java.io.Serializable;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.hibernate.CacheMode;
+import org.hibernate.FlushMode;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.proxy.HibernateProxy;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.Search;
+import org.hibernate.search.annotations.ContainedIn;
+import org.hibernate.search.annotations.Indexed;
+import org.mrs.OpenmrsObject;
+import org.mrs.api.APIException;
+import org.mrs.api.context.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies changes to the search index outside of the transactions that made them.
+ * <p>
+ * When <tt>hibernate.search.indexing_strategy</tt> is <tt>manual</tt>, Hibernate Search does not
+ * index objects when they are saved. Instead the
+ * {@link org.mrs.api.db.hibernate.SearchIndexInterceptor} adds the objects a transaction changed
+ * to this queue once the transaction is committed. Changes to the same object are coalesced until
+ * the object is indexed. A worker thread loads the queued objects in batches and indexes them, and
+ * the objects that contain them as declared with {@link ContainedIn}, in one index commit per
+ * batch. It waits at most {@link #getFlushInterval()} milliseconds for a batch to fill up, so that
+ * changes show up in searches within about that time plus the time it takes to index a batch.
+ * <p>
+ * When the queue holds {@link #getMaxQueueSize()} objects, committing threads wait for the worker to
+ * catch up.
+ * <p>
+ * The objects of a batch that could not be indexed are queued again ahead of the others and retried
+ * one at a time after {@link #getRetryDelay()} milliseconds, multiplied by the number of attempts.
+ * Objects that still fail after {@link #getMaxAttempts()} attempts are given up on and counted in
+ * {@link #getFailedCount()}.
+ *
+ * @since 2.3.0
+ */
+@Component("searchIndexQueue")
+public class SearchIndexQueue {
+	
+	private static final Logger log = LoggerFactory.getLogger(SearchIndexQueue.class);
+	
+	public static final String INDEXING_STRATEGY_PROPERTY = "hibernate.search.indexing_strategy";
+	
+	private static final Map<Class<?>, IndexedTypeInfo> typeInfos = new ConcurrentHashMap<>();
+	
+	private final Object lock = new Object();
+	
+	// the queued objects, in the order they were first queued
+	private final LinkedHashMap<Key, QueueEntry> queue = new LinkedHashMap<>();
+	
+	private int batchSize = 500;
+	
+	private long flushInterval = 200;
+	
+	private int maxQueueSize = 100000;
+	
+	private int maxAttempts = 3;
+	
+	private long retryDelay = 1000;
+	
+	private long enqueued;
+	
+	private long indexedUpTo;
+	
+	private long indexedCount;
+	
+	private long failedCount;
+	
+	private Thread worker;
+	
+	private volatile boolean shutdown;
+	
+	private volatile Boolean enabled;
+	
+	private SessionFactory sessionFactory;
+	
+	/**
+	 * @return true if Hibernate Search is configured to leave indexing to this queue
+	 */
+	public boolean isEnabled() {
+		if (enabled == null) {
+			SessionFactory sf;
+			try {
+				sf = getSessionFactory();
+			}
+			catch (APIException e) {
+				// not started yet
+				return false;
+			}
+			enabled = sf instanceof SessionFactoryImplementor
+			        && "manual".equalsIgnoreCase(((SessionFactoryImplementor) sf).getProperties().getProperty(
+			            INDEXING_STRATEGY_PROPERTY));
+		}
+		return enabled;
+	}
+	
+	/**
+	 * @param type the class of an object, not a proxy class
+	 * @return true if objects of the type are indexed or contained in indexed objects
+	 */
+	public static boolean isIndexRelevant(Class<?> type) {
+		IndexedTypeInfo info = getTypeInfo(type);
+		return info.indexed || !info.containedIn.isEmpty();
+	}
+	
+	/**
+	 * Queues an object to be indexed. The object is loaded again when it is indexed, so that it is
+	 * indexed as it was last committed.
+	 *
+	 * @param object the object, its id must be set
+	 */
+	public void add(OpenmrsObject object) {
+		add(Collections.singletonList(object));
+	}
+	
+	/**
+	 * Queues objects to be indexed
+	 *
+	 * @param objects the objects, objects without id are ignored
+	 * @see #add(OpenmrsObject)
+	 */
+	public void add(Collection<? extends OpenmrsObject> objects) {
+		synchronized (lock) {
+			startWorker();
+			for (OpenmrsObject object : objects) {
+				if (object.getId() == null) {
+					continue;
+				}
+				while (queue.size() >= maxQueueSize && !shutdown) {
+					try {
+						lock.wait(flushInterval);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				enqueued++;
+				queue.putIfAbsent(new Key(Hibernate.getClass(object), object.getId()),
+				    new QueueEntry(enqueued, System.currentTimeMillis()));
+			}
+			lock.notifyAll();
+		}
+	}
+	
+	/**
+	 * Waits until everything queued so far is indexed
+	 *
+	 * @param timeout the maximum number of milliseconds to wait
+	 * @return true if everything was indexed, false if the timeout elapsed first
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public boolean waitForIndex(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized (lock) {
+			long target = enqueued;
+			while (indexedUpTo < target) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				lock.wait(remaining);
+			}
+			return true;
+		}
+	}
+	
+	/**
+	 * @return the number of objects waiting to be indexed
+	 */
+	public int getQueueSize() {
+		synchronized (lock) {
+			return queue.size();
+		}
+	}
+	
+	/**
+	 * @return the number of milliseconds the longest waiting object has been queued, 0 if the queue
+	 *         is empty
+	 */
+	public long getLag() {
+		synchronized (lock) {
+			if (queue.isEmpty()) {
+				return 0;
+			}
+			return System.currentTimeMillis() - queue.values().iterator().next().queuedTime;
+		}
+	}
+	
+	/**
+	 * @return the number of objects taken from the queue and indexed so far
+	 */
+	public long getIndexedCount() {
+		synchronized (lock) {
+			return indexedCount;
+		}
+	}
+	
+	/**
+	 * @return the number of objects that could not be indexed after {@link #getMaxAttempts()}
+	 *         attempts
+	 */
+	public long getFailedCount() {
+		synchronized (lock) {
+			return failedCount;
+		}
+	}
+	
+	public int getBatchSize() {
+		return batchSize;
+	}
+	
+	public void setBatchSize(int batchSize) {
+		this.batchSize = Math.max(1, batchSize);
+	}
+	
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+	
+	public void setFlushInterval(long flushInterval) {
+		synchronized (lock) {
+			this.flushInterval = Math.max(1, flushInterval);
+			// let the worker see the new interval
+			lock.notifyAll();
+		}
+	}
+	
+	public int getMaxQueueSize() {
+		return maxQueueSize;
+	}
+	
+	public void setMaxQueueSize(int maxQueueSize) {
+		this.maxQueueSize = Math.max(1, maxQueueSize);
+	}
+	
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+	
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+	
+	public long getRetryDelay() {
+		return retryDelay;
+	}
+	
+	public void setRetryDelay(long retryDelay) {
+		this.retryDelay = Math.max(0, retryDelay);
+	}
+	
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+	
+	private SessionFactory getSessionFactory() {
+		if (sessionFactory == null) {
+			// looked up lazily, the session factory depends on the interceptor that depends on this queue
+			sessionFactory = Context.getRegisteredComponent("sessionFactory", SessionFactory.class);
+		}
+		return sessionFactory;
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		Thread thread;
+		synchronized (lock) {
+			shutdown = true;
+			thread = worker;
+			lock.notifyAll();
+		}
+		if (thread != null) {
+			try {
+				thread.join(TimeUnit.SECONDS.toMillis(30));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private void startWorker() {
+		if (worker == null && !shutdown) {
+			worker = new Thread(this::run, "search-index-queue");
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+	
+	private void run() {
+		while (true) {
+			Map<Key, QueueEntry> batch = new LinkedHashMap<>();
+			synchronized (lock) {
+				try {
+					while (!isBatchReady()) {
+						lock.wait(flushInterval);
+					}
+				}
+				catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (queue.isEmpty()) {
+					// shut down and nothing left to index
+					return;
+				}
+				
+				Iterator<Map.Entry<Key, QueueEntry>> entries = queue.entrySet().iterator();
+				while (entries.hasNext() && batch.size() < batchSize) {
+					Map.Entry<Key, QueueEntry> next = entries.next();
+					// retried objects are indexed one at a time, so that one object can't fail a batch
+					if (!batch.isEmpty() && next.getValue().attempts > 0) {
+						break;
+					}
+					batch.put(next.getKey(), next.getValue());
+					entries.remove();
+					if (next.getValue().attempts > 0) {
+						break;
+					}
+				}
+			}
+			
+			boolean indexed = indexBatch(batch.keySet());
+			
+			synchronized (lock) {
+				if (indexed) {
+					indexedCount += batch.size();
+				} else {
+					requeue(batch);
+				}
+				// everything queued before the oldest remaining object is indexed now
+				indexedUpTo = queue.isEmpty() ? enqueued : queue.values().iterator().next().sequence - 1;
+				lock.notifyAll();
+			}
+		}
+	}
+	
+	/**
+	 * Queues the objects of a failed batch again ahead of the others, they were the oldest ones
+	 */
+	private void requeue(Map<Key, QueueEntry> batch) {
+		LinkedHashMap<Key, QueueEntry> requeued = new LinkedHashMap<>();
+		long now = System.currentTimeMillis();
+		for (Map.Entry<Key, QueueEntry> failed : batch.entrySet()) {
+			QueueEntry entry = failed.getValue();
+			// changed again while it was being indexed, it is reloaded anyway
+			queue.remove(failed.getKey());
+			entry.attempts++;
+			if (entry.attempts >= maxAttempts) {
+				log.error("Giving up indexing {} {} after {} attempts", failed.getKey().type.getName(),
+				    failed.getKey().id, entry.attempts);
+				failedCount++;
+			} else {
+				entry.notBefore = now + retryDelay * entry.attempts;
+				requeued.put(failed.getKey(), entry);
+			}
+		}
+		if (!requeued.isEmpty()) {
+			requeued.putAll(queue);
+			queue.clear();
+			queue.putAll(requeued);
+		}
+	}
+	
+	private boolean isBatchReady() {
+		if (queue.isEmpty()) {
+			return shutdown;
+		}
+		QueueEntry first = queue.values().iterator().next();
+		if (first.attempts > 0) {
+			return shutdown || System.currentTimeMillis() >= first.notBefore;
+		}
+		return shutdown || queue.size() >= batchSize || System.currentTimeMillis() - first.queuedTime >= flushInterval;
+	}
+	
+	private boolean indexBatch(Collection<Key> batch) {
+		FullTextSession session;
+		try {
+			session = Search.getFullTextSession(getSessionFactory().openSession());
+		}
+		catch (RuntimeException e) {
+			log.error("Unable to open a session to index a batch of " + batch.size() + " objects", e);
+			return false;
+		}
+		try {
+			session.setFlushMode(FlushMode.MANUAL);
+			session.setCacheMode(CacheMode.IGNORE);
+			Transaction tx = session.beginTransaction();
+			try {
+				Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+				for (Key key : batch) {
+					Object object = session.get(key.type, key.id);
+					if (object != null) {
+						index(session, object, visited);
+					} else if (getTypeInfo(key.type).indexed) {
+						session.purge(key.type, key.id);
+					}
+				}
+				session.flushToIndexes();
+				tx.commit();
+				return true;
+			}
+			catch (RuntimeException e) {
+				tx.rollback();
+				log.error("Failed to index a batch of " + batch.size() + " objects", e);
+				return false;
+			}
+		}
+		finally {
+			session.close();
+		}
+	}
+	
+	private void index(FullTextSession session, Object object, Set<Object> visited) {
+		if (object instanceof HibernateProxy) {
+			object = ((HibernateProxy) object).getHibernateLazyInitializer().getImplementation();
+		}
+		if (object == null || !visited.add(object)) {
+			return;
+		}
+		
+		IndexedTypeInfo info = getTypeInfo(object.getClass());
+		if (info.indexed) {
+			session.index(object);
+		}
+		for (AccessibleObject member : info.containedIn) {
+			Object value = getValue(member, object);
+			if (value instanceof Map) {
+				value = ((Map<?, ?>) value).values();
+			}
+			if (value instanceof Iterable) {
+				for (Object element : (Iterable<?>) value) {
+					index(session, element, visited);
+				}
+			} else if (value != null) {
+				index(session, value, visited);
+			}
+		}
+	}
+	
+	private static Object getValue(AccessibleObject member, Object object) {
+		try {
+			if (member instanceof Field) {
+				return ((Field) member).get(object);
+			}
+			return ((Method) member).invoke(object);
+		}
+		catch (IllegalAccessException | InvocationTargetException e) {
+			throw new IllegalStateException("Unable to read " + member + " of " + object, e);
+		}
+	}
+	
+	private static IndexedTypeInfo getTypeInfo(Class<?> type) {
+		return typeInfos.computeIfAbsent(type, IndexedTypeInfo::new);
+	}
+	
+	/**
+	 * Whether a type is indexed and the members declared as {@link ContainedIn} in it and its super
+	 * classes, read the way Hibernate Search reads them
+	 */
+	private static class IndexedTypeInfo {
+		
+		private final boolean indexed;
+		
+		private final List<AccessibleObject> containedIn = new ArrayList<>();
+		
+		private IndexedTypeInfo(Class<?> type) {
+			indexed = type.isAnnotationPresent(Indexed.class);
+			for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+				for (Field field : c.getDeclaredFields()) {
+					if (field.isAnnotationPresent(ContainedIn.class)) {
+						field.setAccessible(true);
+						containedIn.add(field);
+					}
+				}
+				for (Method method : c.getDeclaredMethods()) {
+					if (method.isAnnotationPresent(ContainedIn.class) && method.getParameterCount() == 0) {
+						method.setAccessible(true);
+						containedIn.add(method);
+					}
+				}
+			}
+		}
+	}
+	
+	private static class QueueEntry {
+		
+		// the number of the add that first queued the object
+		private final long sequence;
+		
+		private final long queuedTime;
+		
+		private int attempts;
+		
+		// when a failed object may be retried
+		private long notBefore;
+		
+		private QueueEntry(long sequence, long queuedTime) {
+			this.sequence = sequence;
+			this.queuedTime = queuedTime;
+		}
+	}
+	
+	private static class Key {
+		
+		private final Class<?> type;
+		
+		private final Serializable id;
+		
+		private Key(Class<?> type, Serializable id) {
+			this.type = type;
+			this.id = id;
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return type.equals(other.type) && id.equals(other.id);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(type, id);
+		}
+	}
+}
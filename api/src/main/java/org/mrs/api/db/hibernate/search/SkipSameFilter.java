@@ -0,0 +1,413 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate.search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.SortedDocValues;
+import org.apache.lucene.search.BitsFilteredDocIdSet;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+
+/**
+ * Lets through only the best scoring document for each value of a field, see
+ * {@link LuceneQuery#skipSame(String, LuceneQuery)}.
+ * <p>
+ * The documents are chosen in a single pass over the hits, reading the values through the terms
+ * index of each segment, so nothing is loaded from the stored fields and no value is kept. The best
+ * document of a value is kept by its ordinal in the segment in arrays grown with the values that
+ * have hits, so the memory used is bounded by the number of those values rather than by the number
+ * of distinct values in the index. The segments are then merged in term order to keep one document
+ * per value across segments. Segments written after the filter was built don't match.
+ *
+ * @since 2.3.0
+ */
+class SkipSameFilter extends Filter {
+
+	private final String field;
+
+	private final Map<Object, FixedBitSet> docsBySegment;
+
+	private final int chosenCount;
+
+	private SkipSameFilter(String field, Map<Object, FixedBitSet> docsBySegment, int chosenCount) {
+		this.field = field;
+		this.docsBySegment = docsBySegment;
+		this.chosenCount = chosenCount;
+	}
+
+	/**
+	 * Runs the query and chooses the best scoring document for each value of the field.
+	 *
+	 * @param reader the reader of the index to search
+	 * @param query the query
+	 * @param filter applied to the query, may be null
+	 * @param field the field, which must have a single untokenized value
+	 * @param skipFilter a filter, values of the chosen documents of which should not be chosen, may
+	 *            be null
+	 * @param skipReader the reader of the index the skip filter was built for, null if there is no
+	 *            skip filter
+	 * @return the filter
+	 * @throws IOException
+	 */
+	static SkipSameFilter build(IndexReader reader, Query query, Filter filter, String field, SkipSameFilter skipFilter,
+	        IndexReader skipReader) throws IOException {
+		List<AtomicReaderContext> leaves = reader.leaves();
+		SortedDocValues[] termsIndexes = new SortedDocValues[leaves.size()];
+		for (AtomicReaderContext leaf : leaves) {
+			termsIndexes[leaf.ord] = FieldCache.DEFAULT.getTermsIndex(leaf.reader(), field);
+		}
+
+		int[][] skippedOrds = new int[leaves.size()][];
+		if (skipFilter != null) {
+			skipFilter.findChosenValues(skipReader, termsIndexes, skippedOrds);
+		}
+
+		BestDocCollector collector = new BestDocCollector(termsIndexes, skippedOrds);
+		new IndexSearcher(reader).search(query, filter, collector);
+
+		FixedBitSet[] chosenDocs = new FixedBitSet[leaves.size()];
+		int chosenCount = chooseAcrossSegments(leaves, termsIndexes, collector, chosenDocs);
+
+		Map<Object, FixedBitSet> docsBySegment = new HashMap<>();
+		for (AtomicReaderContext leaf : leaves) {
+			if (chosenDocs[leaf.ord] != null) {
+				docsBySegment.put(leaf.reader().getCoreCacheKey(), chosenDocs[leaf.ord]);
+			}
+		}
+
+		return new SkipSameFilter(field, docsBySegment, chosenCount);
+	}
+
+	/**
+	 * Looks up the ordinals of the values of the chosen documents in the given terms indexes.
+	 *
+	 * @param reader the reader of the index this filter was built for
+	 * @param termsIndexes the terms indexes of the segments of another index
+	 * @param ords set to the sorted ordinals of each segment of the other index, null for segments
+	 *            without any of the values
+	 * @throws IOException
+	 */
+	private void findChosenValues(IndexReader reader, SortedDocValues[] termsIndexes, int[][] ords)
+	        throws IOException {
+		int[] counts = new int[termsIndexes.length];
+		for (AtomicReaderContext leaf : reader.leaves()) {
+			FixedBitSet docs = docsBySegment.get(leaf.reader().getCoreCacheKey());
+			if (docs == null) {
+				continue;
+			}
+
+			SortedDocValues values = FieldCache.DEFAULT.getTermsIndex(leaf.reader(), field);
+			for (int doc = nextSetBit(docs, 0); doc >= 0; doc = nextSetBit(docs, doc + 1)) {
+				int valueOrd = values.getOrd(doc);
+				if (valueOrd < 0) {
+					continue;
+				}
+
+				// copied as the other index may share the terms index when it is the same one
+				BytesRef value = BytesRef.deepCopyOf(values.lookupOrd(valueOrd));
+				for (int i = 0; i < termsIndexes.length; i++) {
+					int ord = termsIndexes[i].lookupTerm(value);
+					if (ord >= 0) {
+						if (ords[i] == null) {
+							ords[i] = new int[16];
+						} else if (counts[i] == ords[i].length) {
+							ords[i] = ArrayUtil.grow(ords[i]);
+						}
+						ords[i][counts[i]++] = ord;
+					}
+				}
+			}
+		}
+
+		for (int i = 0; i < ords.length; i++) {
+			if (ords[i] != null) {
+				ords[i] = Arrays.copyOf(ords[i], counts[i]);
+				Arrays.sort(ords[i]);
+			}
+		}
+	}
+
+	/**
+	 * Walks the values with hits of all segments in term order and chooses the best document of
+	 * each value among the segments that have it. For equal scores the document of the earliest
+	 * segment wins, as it does in the sorted hits.
+	 *
+	 * @return the number of chosen documents
+	 */
+	private static int chooseAcrossSegments(List<AtomicReaderContext> leaves, SortedDocValues[] termsIndexes,
+	        BestDocCollector collector, FixedBitSet[] chosenDocs) {
+		PriorityQueue<SegmentValues> queue = new PriorityQueue<>();
+		for (int segment = 0; segment < termsIndexes.length; segment++) {
+			if (collector.hits[segment] != null) {
+				SegmentValues values = new SegmentValues(segment, termsIndexes[segment], collector.hits[segment]);
+				if (values.next()) {
+					queue.add(values);
+				}
+			}
+		}
+
+		int chosenCount = 0;
+		List<SegmentValues> same = new ArrayList<>();
+		while (!queue.isEmpty()) {
+			SegmentValues best = queue.poll();
+			same.add(best);
+			while (!queue.isEmpty() && queue.peek().value.bytesEquals(best.value)) {
+				SegmentValues other = queue.poll();
+				same.add(other);
+				if (other.getScore() > best.getScore()) {
+					best = other;
+				}
+			}
+
+			if (chosenDocs[best.segment] == null) {
+				chosenDocs[best.segment] = new FixedBitSet(leaves.get(best.segment).reader().maxDoc());
+			}
+			chosenDocs[best.segment].set(best.getDoc());
+			chosenCount++;
+
+			for (SegmentValues values : same) {
+				if (values.next()) {
+					queue.add(values);
+				}
+			}
+			same.clear();
+		}
+		return chosenCount;
+	}
+
+	/**
+	 * @return the next set bit from the given index on or -1 if there is none
+	 */
+	private static int nextSetBit(FixedBitSet bits, int index) {
+		if (index >= bits.length()) {
+			return -1;
+		}
+		int next = bits.nextSetBit(index);
+		return next < bits.length() ? next : -1;
+	}
+
+	/**
+	 * @return true if no document was chosen
+	 */
+	boolean isEmpty() {
+		return chosenCount == 0;
+	}
+
+	@Override
+	public DocIdSet getDocIdSet(AtomicReaderContext context, Bits acceptDocs) throws IOException {
+		FixedBitSet docs = docsBySegment.get(context.reader().getCoreCacheKey());
+		if (docs == null) {
+			return null;
+		}
+		return BitsFilteredDocIdSet.wrap(docs, acceptDocs);
+	}
+
+	/**
+	 * Remembers the document with the highest score for each value ordinal of each segment.
+	 * Documents are collected in order so for equal scores the first one wins, as it does in the
+	 * sorted hits.
+	 */
+	private static class BestDocCollector extends Collector {
+
+		private final SortedDocValues[] termsIndexes;
+
+		// per segment: the sorted ordinals of the values to skip
+		private final int[][] skippedOrds;
+
+		// per segment: the best doc and score of each ordinal with hits
+		private final SegmentHits[] hits;
+
+		private Scorer scorer;
+
+		private int segment;
+
+		BestDocCollector(SortedDocValues[] termsIndexes, int[][] skippedOrds) {
+			this.termsIndexes = termsIndexes;
+			this.skippedOrds = skippedOrds;
+			this.hits = new SegmentHits[termsIndexes.length];
+		}
+
+		@Override
+		public void setScorer(Scorer scorer) {
+			this.scorer = scorer;
+		}
+
+		@Override
+		public void setNextReader(AtomicReaderContext context) {
+			segment = context.ord;
+		}
+
+		@Override
+		public void collect(int doc) throws IOException {
+			int ord = termsIndexes[segment].getOrd(doc);
+			if (ord < 0 || (skippedOrds[segment] != null && Arrays.binarySearch(skippedOrds[segment], ord) >= 0)) {
+				return;
+			}
+
+			if (hits[segment] == null) {
+				hits[segment] = new SegmentHits();
+			}
+			hits[segment].collect(ord, doc, scorer.score());
+		}
+
+		@Override
+		public boolean acceptsDocsOutOfOrder() {
+			return false;
+		}
+	}
+
+	/**
+	 * The best document and score of each value ordinal with hits in a segment. They are kept in
+	 * arrays which grow with the number of values and found by an open addressing hash table of
+	 * ordinals.
+	 */
+	private static class SegmentHits {
+
+		private int[] ords = new int[16];
+
+		private int[] docs = new int[16];
+
+		private float[] scores = new float[16];
+
+		private int size;
+
+		// index + 1 into the arrays above of the ordinal hashed to a slot, 0 for an empty slot
+		private int[] slots = new int[32];
+
+		void collect(int ord, int doc, float score) {
+			int slot = findSlot(ord);
+			int index = slots[slot] - 1;
+			if (index < 0) {
+				if (size == ords.length) {
+					int length = ArrayUtil.oversize(size + 1, RamUsageEstimator.NUM_BYTES_INT);
+					ords = Arrays.copyOf(ords, length);
+					docs = Arrays.copyOf(docs, length);
+					scores = Arrays.copyOf(scores, length);
+				}
+				ords[size] = ord;
+				docs[size] = doc;
+				scores[size] = score;
+				slots[slot] = ++size;
+				if (size * 2 > slots.length) {
+					rehash();
+				}
+			} else if (score > scores[index]) {
+				docs[index] = doc;
+				scores[index] = score;
+			}
+		}
+
+		/**
+		 * @return the slot of the given ordinal or the empty slot it would go to
+		 */
+		private int findSlot(int ord) {
+			int mask = slots.length - 1;
+			int hash = ord * 0x9E3779B9;
+			int slot = (hash ^ (hash >>> 16)) & mask;
+			while (slots[slot] != 0 && ords[slots[slot] - 1] != ord) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void rehash() {
+			slots = new int[slots.length * 2];
+			for (int i = 0; i < size; i++) {
+				slots[findSlot(ords[i])] = i + 1;
+			}
+		}
+
+		/**
+		 * @return the indexes of the ordinals in ordinal order, which is the term order
+		 */
+		int[] sortByOrd() {
+			long[] ordsAndIndexes = new long[size];
+			for (int i = 0; i < size; i++) {
+				ordsAndIndexes[i] = ((long) ords[i] << 32) | i;
+			}
+			Arrays.sort(ordsAndIndexes);
+
+			int[] indexes = new int[size];
+			for (int i = 0; i < size; i++) {
+				indexes[i] = (int) ordsAndIndexes[i];
+			}
+			return indexes;
+		}
+	}
+
+	/**
+	 * Iterates the values with hits of a segment in term order.
+	 */
+	private static class SegmentValues implements Comparable<SegmentValues> {
+
+		private final int segment;
+
+		private final SortedDocValues termsIndex;
+
+		private final SegmentHits hits;
+
+		private final int[] sortedIndexes;
+
+		private int position = -1;
+
+		private BytesRef value;
+
+		SegmentValues(int segment, SortedDocValues termsIndex, SegmentHits hits) {
+			this.segment = segment;
+			this.termsIndex = termsIndex;
+			this.hits = hits;
+			this.sortedIndexes = hits.sortByOrd();
+		}
+
+		/**
+		 * @return false if there are no more values
+		 */
+		boolean next() {
+			if (++position >= sortedIndexes.length) {
+				return false;
+			}
+			value = BytesRef.deepCopyOf(termsIndex.lookupOrd(hits.ords[sortedIndexes[position]]));
+			return true;
+		}
+
+		int getDoc() {
+			return hits.docs[sortedIndexes[position]];
+		}
+
+		float getScore() {
+			return hits.scores[sortedIndexes[position]];
+		}
+
+		@Override
+		public int compareTo(SegmentValues other) {
+			int compare = value.compareTo(other.value);
+			return compare != 0 ? compare : Integer.compare(segment, other.segment);
+		}
+	}
+}
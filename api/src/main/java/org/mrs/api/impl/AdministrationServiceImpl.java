@@ -38,6 +38,7 @@ import org.mrs.api.APIException;
 import org.mrs.api.AdministrationService;
 import org.mrs.api.EventListeners;
 import org.mrs.api.GlobalPropertyListener;
+import org.mrs.api.cache.GlobalPropertyCache;
 import org.mrs.api.context.Context;
 import org.mrs.api.db.AdministrationDAO;
 import org.mrs.customdatatype.CustomDatatypeUtil;
@@ -77,6 +78,8 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 	
 	private HttpClient implementationIdHttpClient;
 	
+	private GlobalPropertyCache globalPropertyCache;
+	
 	/**
 	 * Default empty constructor
 	 */
@@ -94,6 +97,15 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 	public void setEventListeners(EventListeners eventListeners) {
 		this.eventListeners = eventListeners;
 	}
+	
+	/**
+	 * @param globalPropertyCache the cache for global property values, if null values are always
+	 *            read from the database
+	 * @since 2.3.0
+	 */
+	public void setGlobalPropertyCache(GlobalPropertyCache globalPropertyCache) {
+		this.globalPropertyCache = globalPropertyCache;
+	}
 		
 	/**
 	 * Static-ish variable used to cache the system variables. This is not static so that every time
@@ -151,7 +163,11 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 			return null;
 		}
 		
-		return dao.getGlobalProperty(propertyName);
+		if (globalPropertyCache == null) {
+			return dao.getGlobalProperty(propertyName);
+		}
+		
+		return globalPropertyCache.getValue(propertyName, dao::getAllGlobalProperties, dao::getGlobalProperty);
 	}
 	
 	/**
@@ -204,6 +220,9 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 		}
 		gp.setPropertyValue(propertyValue);
 		dao.saveGlobalProperty(gp);
+		if (globalPropertyCache != null) {
+			globalPropertyCache.invalidate(propertyName);
+		}
 	}
 	
 	/**
@@ -313,7 +332,13 @@ public class AdministrationServiceImpl extends BaseOpenmrsService implements Adm
 			return null;
 		}
 		
-		return dao.executeSQL(sql, selectOnly);
+		List<List<Object>> results = dao.executeSQL(sql, selectOnly);
+		if (!selectOnly && globalPropertyCache != null) {
+			// the statement may have changed global properties behind hibernate's back
+			globalPropertyCache.clear();
+		}
+		
+		return results;
 	}
 	
 	/**
@@ -57,6 +57,7 @@ import org.mrs.api.ConceptNameInUseException;
 import org.mrs.api.ConceptService;
 import org.mrs.api.ConceptStopWordException;
 import org.mrs.api.ConceptsLockedException;
+import org.mrs.api.cache.ConceptDictionarySnapshot;
 import org.mrs.api.context.Context;
 import org.mrs.api.db.ConceptDAO;
 import org.mrs.api.db.DAOException;
@@ -81,6 +82,8 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	
 	private ConceptDAO dao;
 	
+	private ConceptDictionarySnapshot conceptDictionarySnapshot;
+	
 	private static Concept trueConcept;
 	
 	private static Concept falseConcept;
@@ -96,6 +99,31 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	public void setConceptDAO(ConceptDAO dao) {
 		this.dao = dao;
 	}
+	
+	/**
+	 * @param conceptDictionarySnapshot the snapshot used to look up concepts by uuid, name and
+	 *            mapping when it is enabled
+	 * @since 2.3.0
+	 */
+	public void setConceptDictionarySnapshot(ConceptDictionarySnapshot conceptDictionarySnapshot) {
+		this.conceptDictionarySnapshot = conceptDictionarySnapshot;
+	}
+	
+	private boolean isConceptDictionarySnapshotAvailable() {
+		return conceptDictionarySnapshot != null && conceptDictionarySnapshot.isAvailable();
+	}
+	
+	private void conceptChanged(Concept concept) {
+		if (conceptDictionarySnapshot != null) {
+			conceptDictionarySnapshot.conceptChanged(concept.getConceptId());
+		}
+	}
+	
+	private void invalidateConceptDictionarySnapshot() {
+		if (conceptDictionarySnapshot != null) {
+			conceptDictionarySnapshot.invalidate();
+		}
+	}
 
 	/**
 	 * @see org.mrs.api.ConceptService#saveConcept(org.mrs.Concept)
@@ -176,7 +204,9 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 			concept.setSet(true);
 		}
 
-		return dao.saveConcept(concept);
+		Concept savedConcept = dao.saveConcept(concept);
+		conceptChanged(savedConcept);
+		return savedConcept;
 	}
 
 	private void ensureConceptMapTypeIsSet(Concept concept) {
@@ -272,6 +302,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 			}
 		}
 		
+		conceptChanged(concept);
 		dao.purgeConcept(concept);
 	}
 	
@@ -290,6 +321,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 			
 			concept.setRetired(true);
 			concept.setRetireReason(reason);
+			conceptChanged(concept);
 			return dao.saveConcept(concept);
 			
 		}
@@ -415,6 +447,10 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		if (!StringUtils.hasText(name)) {
 			return null;
 		}
+		if (isConceptDictionarySnapshotAvailable()) {
+			Integer conceptId = conceptDictionarySnapshot.getConceptIdByName(name, Context.getLocale());
+			return conceptId == null ? null : dao.getConcept(conceptId);
+		}
 		return dao.getConceptByName(name);
 	}
 
@@ -952,7 +988,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	@Override
 	public ConceptSource purgeConceptSource(ConceptSource cs) throws APIException {
-		
+		invalidateConceptDictionarySnapshot();
 		return dao.deleteConceptSource(cs);
 	}
 	
@@ -962,6 +998,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	@Override
 	public ConceptSource retireConceptSource(ConceptSource cs, String reason) throws APIException {
 		// retireReason is automatically set in BaseRetireHandler
+		invalidateConceptDictionarySnapshot();
 		return dao.saveConceptSource(cs);
 	}
 	
@@ -970,6 +1007,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	@Override
 	public ConceptSource saveConceptSource(ConceptSource conceptSource) throws APIException {
+		invalidateConceptDictionarySnapshot();
 		return dao.saveConceptSource(conceptSource);
 	}
 	
@@ -998,6 +1036,10 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	@Override
 	@Transactional(readOnly = true)
 	public Concept getConceptByUuid(String uuid) {
+		if (isConceptDictionarySnapshotAvailable()) {
+			Integer conceptId = conceptDictionarySnapshot.getConceptIdByUuid(uuid);
+			return conceptId == null ? null : dao.getConcept(conceptId);
+		}
 		return dao.getConceptByUuid(uuid);
 	}
 	
@@ -1130,6 +1172,16 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	@Override
 	@Transactional(readOnly = true)
 	public Concept getConceptByMapping(String code, String sourceName, Boolean includeRetired) throws APIException {
+		if (isConceptDictionarySnapshotAvailable()) {
+			List<Integer> conceptIds = conceptDictionarySnapshot.getConceptIdsByMapping(code, sourceName, includeRetired);
+			if (conceptIds.isEmpty()) {
+				return null;
+			} else if (conceptIds.size() > 1 && !conceptDictionarySnapshot.isRetired(conceptIds.get(1))) {
+				throw new APIException("Concept.error.multiple.non.retired", new Object[] { code, sourceName });
+			}
+			return dao.getConcept(conceptIds.get(0));
+		}
+		
 		List<Concept> concepts = Context.getConceptService().getConceptsByMapping(code, sourceName, includeRetired);
 		
 		if (concepts.isEmpty()) {
@@ -1704,6 +1756,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 	 */
 	@Override
 	public ConceptReferenceTerm saveConceptReferenceTerm(ConceptReferenceTerm conceptReferenceTerm) throws APIException {
+		invalidateConceptDictionarySnapshot();
 		return dao.saveConceptReferenceTerm(conceptReferenceTerm);
 	}
 	
@@ -1737,6 +1790,7 @@ public class ConceptServiceImpl extends BaseOpenmrsService implements ConceptSer
 		if (dao.isConceptReferenceTermInUse(conceptReferenceTerm)) {
 			throw new APIException("ConceptRefereceTerm.inUse", (Object[]) null);
 		}
+		invalidateConceptDictionarySnapshot();
 		dao.deleteConceptReferenceTerm(conceptReferenceTerm);
 	}
 	
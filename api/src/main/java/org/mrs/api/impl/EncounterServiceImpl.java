@@ -83,8 +83,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 			throw new IllegalArgumentException("The 'query' parameter is required and cannot be null");
 		}
 		
-		return Context.getEncounterService().filterEncountersByViewPermissions(
-		    dao.getEncounters(query, null, null, null, includeVoided), null);
+		return dao.getEncounters(query, null, null, null, includeVoided, getEncounterTypesNotViewable(null));
 	}
 	
 	/**
@@ -322,7 +321,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	@Transactional(readOnly = true)
 	public List<Encounter> getEncountersByPatient(String query) throws APIException {
 		
-		return Context.getEncounterService().filterEncountersByViewPermissions(getEncountersByPatient(query, false), null);
+		return getEncountersByPatient(query, false);
 	}
 	
 	/**
@@ -334,8 +333,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		if (patientId == null) {
 			throw new IllegalArgumentException("The 'patientId' parameter is requred and cannot be null");
 		}
-		return Context.getEncounterService()
-		        .filterEncountersByViewPermissions(dao.getEncountersByPatientId(patientId), null);
+		return dao.getEncountersByPatientId(patientId, getEncounterTypesNotViewable(null));
 	}
 	
 	/**
@@ -352,7 +350,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		for (Patient p : Context.getPatientService().getPatients(identifier, null, null, false)) {
 			encs.addAll(Context.getEncounterService().getEncountersByPatientId(p.getPatientId()));
 		}
-		return Context.getEncounterService().filterEncountersByViewPermissions(encs, null);
+		return encs;
 	}
 	
 	/**
@@ -382,9 +380,26 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	 */
 	@Override
 	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria) {
-		// the second search parameter is null as it defaults to authenticated user from context
-		return Context.getEncounterService().filterEncountersByViewPermissions(dao.getEncounters(encounterSearchCriteria),
-		    null);
+		return getEncounters(encounterSearchCriteria, null, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.EncounterService#getEncounters(org.mrs.parameter.EncounterSearchCriteria,
+	 *      java.lang.Integer, java.lang.Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<Encounter> getEncounters(EncounterSearchCriteria encounterSearchCriteria, Integer start, Integer length) {
+		return dao.getEncounters(encounterSearchCriteria, getEncounterTypesNotViewable(null), start, length);
+	}
+	
+	/**
+	 * @see org.mrs.api.EncounterService#getCountOfEncounters(org.mrs.parameter.EncounterSearchCriteria)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Long getCountOfEncounters(EncounterSearchCriteria encounterSearchCriteria) {
+		return dao.getCountOfEncounters(encounterSearchCriteria, getEncounterTypesNotViewable(null));
 	}
 	
 	/**
@@ -643,8 +658,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	@Transactional(readOnly = true)
 	public List<Encounter> getEncounters(String query, Integer start, Integer length, boolean includeVoided)
 	    throws APIException {
-		return Context.getEncounterService().filterEncountersByViewPermissions(
-		    dao.getEncounters(query, null, start, length, includeVoided), null);
+		return dao.getEncounters(query, null, start, length, includeVoided, getEncounterTypesNotViewable(null));
 	}
 	
 	/**
@@ -655,8 +669,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	@Transactional(readOnly = true)
 	public List<Encounter> getEncounters(String query, Integer patientId, Integer start, Integer length,
 	                                     boolean includeVoided) throws APIException {
-		return Context.getEncounterService().filterEncountersByViewPermissions(
-		    dao.getEncounters(query, patientId, start, length, includeVoided), null);
+		return dao.getEncounters(query, patientId, start, length, includeVoided, getEncounterTypesNotViewable(null));
 	}
 	
 	/**
@@ -665,7 +678,8 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	@Override
 	@Transactional(readOnly = true)
 	public Integer getCountOfEncounters(String query, boolean includeVoided) {
-		return OpenmrsUtil.convertToInteger(dao.getCountOfEncounters(query, null, includeVoided));
+		return OpenmrsUtil.convertToInteger(dao.getCountOfEncounters(query, null, includeVoided,
+		    getEncounterTypesNotViewable(null)));
 	}
 	
 	/**
@@ -674,8 +688,7 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 	@Override
 	@Transactional(readOnly = true)
 	public List<Encounter> getEncountersByVisit(Visit visit, boolean includeVoided) {
-		return Context.getEncounterService().filterEncountersByViewPermissions(
-		    dao.getEncountersByVisit(visit, includeVoided), null);
+		return dao.getEncountersByVisit(visit, includeVoided, getEncounterTypesNotViewable(null));
 	}
 	
 	@Override
@@ -934,6 +947,27 @@ public class EncounterServiceImpl extends BaseOpenmrsService implements Encounte
 		return userHasEncounterPrivilege(encounter.getEncounterType().getViewPrivilege(), user);
 	}
 	
+	/**
+	 * Gets the encounter types with a view privilege the user doesn't have, so that their encounters
+	 * can be excluded in the query instead of being loaded and removed afterwards
+	 * 
+	 * @param user the user or null for the authenticated user
+	 * @return the encounter types, including retired ones, the user is not allowed to view
+	 */
+	private List<EncounterType> getEncounterTypesNotViewable(User user) {
+		if (user == null) {
+			user = Context.getAuthenticatedUser();
+		}
+		
+		List<EncounterType> notViewable = new ArrayList<>();
+		for (EncounterType encounterType : dao.getAllEncounterTypes(true)) {
+			if (!userHasEncounterPrivilege(encounterType.getViewPrivilege(), user)) {
+				notViewable.add(encounterType);
+			}
+		}
+		return notViewable;
+	}
+	
 	/**
 	 * Convenient method that safely checks if user has given encounter privilege
 	 * 
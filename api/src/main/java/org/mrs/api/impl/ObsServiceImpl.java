@@ -10,6 +10,7 @@
 package org.mrs.api.impl;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -35,6 +36,7 @@ import org.mrs.obs.ComplexData;
 import org.mrs.obs.ComplexObsHandler;
 import org.mrs.obs.handler.AbstractHandler;
 import org.mrs.util.OpenmrsClassLoader;
+import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.OpenmrsConstants.PERSON_TYPE;
 import org.mrs.util.OpenmrsUtil;
 import org.mrs.util.PrivilegeConstants;
@@ -114,6 +116,119 @@ public class ObsServiceImpl extends BaseOpenmrsService implements ObsService {
 		}
 	}
 
+	/**
+	 * @see org.mrs.api.ObsService#saveObs(Collection, String)
+	 */
+	@Override
+	public List<Obs> saveObs(Collection<Obs> obsToSave, String changeMessage) throws APIException {
+		if (obsToSave == null) {
+			throw new APIException("Obs.error.cannot.be.null", (Object[]) null);
+		}
+		
+		int batchSize = getBulkSaveBatchSize();
+		List<Obs> savedObs = new ArrayList<>(obsToSave.size());
+		List<Integer> supersededObsIds = new ArrayList<>();
+		int obsInBatch = 0;
+		
+		for (Obs obs : obsToSave) {
+			if (obs == null) {
+				throw new APIException("Obs.error.cannot.be.null", (Object[]) null);
+			}
+			if (obs.getId() != null && changeMessage == null) {
+				throw new APIException("Obs.error.ChangeMessage.required", (Object[]) null);
+			}
+			
+			// save handlers have already been run on the whole batch by the RequiredDataAdvice
+			savedObs.add(saveObsInBatch(obs, changeMessage, supersededObsIds));
+			
+			if (++obsInBatch >= batchSize) {
+				flushBatch(supersededObsIds, changeMessage);
+				obsInBatch = 0;
+			}
+		}
+		
+		flushBatch(supersededObsIds, changeMessage);
+		
+		return savedObs;
+	}
+	
+	private Obs saveObsInBatch(Obs obs, String changeMessage, List<Integer> supersededObsIds) {
+		handleExistingObsWithComplexConcept(obs);
+		
+		ensureRequirePrivilege(obs);
+		
+		if (obs.getObsId() == null || obs.getVoided()) {
+			dao.saveObs(obs);
+			saveObsGroupInBatch(obs, changeMessage, supersededObsIds);
+			return obs;
+		}
+		
+		setPersonFromEncounter(obs);
+		if (!obs.isDirty()) {
+			saveObsGroupInBatch(obs, changeMessage, supersededObsIds);
+			return obs;
+		}
+		
+		Obs newObs = Obs.newInstance(obs);
+		unsetVoidedAndCreationProperties(newObs, obs);
+		updateStatusIfNecessary(newObs, dao.getSavedStatus(obs));
+		RequiredDataAdvice.recursivelyHandle(SaveHandler.class, newObs, changeMessage);
+		
+		// the previous file of a complex obs has to be looked up from the database copy of the obs,
+		// so those are still voided one at a time
+		boolean voidInBulk = !obs.isComplex();
+		if (voidInBulk) {
+			// make sure the changes made to the original obs are never written
+			evictObsAndChildren(obs);
+		}
+		
+		dao.saveObs(newObs);
+		saveObsGroupInBatch(newObs, changeMessage, supersededObsIds);
+		
+		if (voidInBulk) {
+			supersededObsIds.add(obs.getObsId());
+		} else {
+			voidExistingObs(obs, changeMessage, newObs);
+		}
+		
+		return newObs;
+	}
+	
+	private void saveObsGroupInBatch(Obs obs, String changeMessage, List<Integer> supersededObsIds) {
+		if (obs.isObsGrouping()) {
+			for (Obs member : obs.getGroupMembers(true)) {
+				if (member.getObsId() != null && changeMessage == null) {
+					throw new APIException("Obs.error.ChangeMessage.required", (Object[]) null);
+				}
+				saveObsInBatch(member, changeMessage, supersededObsIds);
+			}
+		}
+	}
+	
+	/**
+	 * Writes the pending inserts and updates, voids the superseded obs and clears the session so
+	 * that it doesn't grow with the number of obs saved
+	 */
+	private void flushBatch(List<Integer> supersededObsIds, String changeMessage) {
+		Context.flushSession();
+		if (!supersededObsIds.isEmpty()) {
+			dao.voidObs(supersededObsIds, Context.getAuthenticatedUser(), new Date(), changeMessage);
+			supersededObsIds.clear();
+		}
+		Context.clearSession();
+	}
+	
+	private int getBulkSaveBatchSize() {
+		String batchSize = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GP_OBS_BULK_SAVE_BATCH_SIZE);
+		try {
+			return Math.max(1, Integer.parseInt(batchSize));
+		}
+		catch (NumberFormatException e) {
+			return 500;
+		}
+	}
+	
 	private void setPersonFromEncounter(Obs obs) {
 		Encounter encounter = obs.getEncounter();
 		if (encounter != null) {
@@ -20,6 +20,8 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.time.DateUtils;
 import org.hibernate.proxy.HibernateProxy;
@@ -61,6 +63,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 /**
@@ -81,8 +86,28 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	protected OrderDAO dao;
 	
 	private static OrderNumberGenerator orderNumberGenerator = null;
+	
+	/**
+	 * Number of locks that orders are spread across by patient, orders for patients that hash to
+	 * different stripes are saved concurrently
+	 */
+	private static final int PATIENT_LOCK_STRIPES = 64;
+	
+	private final Lock[] patientLocks = new Lock[PATIENT_LOCK_STRIPES];
+	
+	private final Object orderNumberSeedLock = new Object();
+	
+	// The block of order number seeds reserved from the database, next is inclusive and limit exclusive
+	private long nextOrderNumberSeed = 0;
+	
+	private long orderNumberSeedLimit = 0;
+	
+	private Integer orderNumberSeedBlockSize = null;
 
 	public OrderServiceImpl() {
+		for (int i = 0; i < PATIENT_LOCK_STRIPES; i++) {
+			patientLocks[i] = new ReentrantLock();
+		}
 	}
 	
 	/**
@@ -97,8 +122,15 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 * @see org.mrs.api.OrderService#saveOrder(org.mrs.Order, org.mrs.api.OrderContext)
 	 */
 	@Override
-	public synchronized Order saveOrder(Order order, OrderContext orderContext) throws APIException {
-		return saveOrder(order, orderContext, false);
+	public Order saveOrder(Order order, OrderContext orderContext) throws APIException {
+		Lock lock = getPatientLock(order);
+		lock.lock();
+		try {
+			return saveOrder(order, orderContext, false);
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 	
 	/**
@@ -122,8 +154,29 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 * @see org.mrs.api.OrderService#saveOrder(org.mrs.Order, org.mrs.api.OrderContext)
 	 */
 	@Override
-	public synchronized Order saveRetrospectiveOrder(Order order, OrderContext orderContext) {
-		return saveOrder(order, orderContext, true);
+	public Order saveRetrospectiveOrder(Order order, OrderContext orderContext) {
+		Lock lock = getPatientLock(order);
+		lock.lock();
+		try {
+			return saveOrder(order, orderContext, true);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Gets the lock that serializes saving of orders for the patient of the specified order, the
+	 * active and duplicate order checks are only meaningful among orders of the same patient so
+	 * orders for other patients don't need to wait.
+	 * 
+	 * @param order the order to be saved
+	 * @return the lock for the order's patient
+	 */
+	private Lock getPatientLock(Order order) {
+		Patient patient = order == null ? null : order.getPatient();
+		int hash = patient == null || patient.getUuid() == null ? 0 : patient.getUuid().hashCode();
+		return patientLocks[(hash & Integer.MAX_VALUE) % PATIENT_LOCK_STRIPES];
 	}
 
 	private Order saveOrder(Order order, OrderContext orderContext, boolean isRetrospective) {
@@ -606,8 +659,67 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 */
 	@Override
 	@Transactional(propagation = Propagation.REQUIRES_NEW)
-	public synchronized Long getNextOrderNumberSeedSequenceValue() {
-		return dao.getNextOrderNumberSeedSequenceValue();
+	public Long getNextOrderNumberSeedSequenceValue() {
+		synchronized (orderNumberSeedLock) {
+			if (nextOrderNumberSeed >= orderNumberSeedLimit) {
+				int blockSize = getOrderNumberSeedBlockSize();
+				nextOrderNumberSeed = dao.getNextOrderNumberSeedSequenceValue(blockSize);
+				orderNumberSeedLimit = nextOrderNumberSeed + blockSize;
+				if (TransactionSynchronizationManager.isSynchronizationActive()) {
+					// the reserved block isn't ours if the update of the seed doesn't get committed
+					TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+						
+						@Override
+						public void afterCompletion(int status) {
+							if (status != TransactionSynchronization.STATUS_COMMITTED) {
+								discardOrderNumberSeedBlock();
+							}
+						}
+					});
+				}
+			}
+			
+			return nextOrderNumberSeed++;
+		}
+	}
+	
+	/**
+	 * Gets the number of order number seeds to reserve from the database at a time
+	 * 
+	 * @return the block size, never less than 1
+	 */
+	private int getOrderNumberSeedBlockSize() {
+		if (orderNumberSeedBlockSize == null) {
+			orderNumberSeedBlockSize = parseOrderNumberSeedBlockSize(Context.getAdministrationService().getGlobalProperty(
+			    OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE));
+		}
+		
+		return orderNumberSeedBlockSize;
+	}
+	
+	private int parseOrderNumberSeedBlockSize(String blockSize) {
+		if (StringUtils.hasText(blockSize)) {
+			try {
+				return Math.max(1, Integer.parseInt(blockSize.trim()));
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for global property " + OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE
+				        + ", reserving one order number at a time");
+			}
+		}
+		
+		return 1;
+	}
+	
+	/**
+	 * Drops any unused order number seeds held in memory so that the next request reserves a new
+	 * block from the database
+	 */
+	private void discardOrderNumberSeedBlock() {
+		synchronized (orderNumberSeedLock) {
+			nextOrderNumberSeed = 0;
+			orderNumberSeedLimit = 0;
+		}
 	}
 	
 	/**
@@ -853,7 +965,9 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 */
 	@Override
 	public boolean supportsPropertyName(String propertyName) {
-		return OpenmrsConstants.GP_ORDER_NUMBER_GENERATOR_BEAN_ID.equals(propertyName);
+		return OpenmrsConstants.GP_ORDER_NUMBER_GENERATOR_BEAN_ID.equals(propertyName)
+		        || OpenmrsConstants.GP_NEXT_ORDER_NUMBER_SEED.equals(propertyName)
+		        || OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE.equals(propertyName);
 	}
 	
 	/**
@@ -861,7 +975,16 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 */
 	@Override
 	public void globalPropertyChanged(GlobalProperty newValue) {
-		setOrderNumberGenerator(null);
+		if (OpenmrsConstants.GP_ORDER_NUMBER_GENERATOR_BEAN_ID.equals(newValue.getProperty())) {
+			setOrderNumberGenerator(null);
+		} else {
+			synchronized (orderNumberSeedLock) {
+				if (OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE.equals(newValue.getProperty())) {
+					orderNumberSeedBlockSize = parseOrderNumberSeedBlockSize(newValue.getPropertyValue());
+				}
+				discardOrderNumberSeedBlock();
+			}
+		}
 	}
 	
 	/**
@@ -869,7 +992,16 @@ public class OrderServiceImpl extends BaseOpenmrsService implements OrderService
 	 */
 	@Override
 	public void globalPropertyDeleted(String propertyName) {
-		setOrderNumberGenerator(null);
+		if (OpenmrsConstants.GP_ORDER_NUMBER_GENERATOR_BEAN_ID.equals(propertyName)) {
+			setOrderNumberGenerator(null);
+		} else {
+			synchronized (orderNumberSeedLock) {
+				if (OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE.equals(propertyName)) {
+					orderNumberSeedBlockSize = null;
+				}
+				discardOrderNumberSeedBlock();
+			}
+		}
 	}
 	
 	/**
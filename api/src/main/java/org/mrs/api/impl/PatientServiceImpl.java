@@ -15,6 +15,7 @@ import org.mrs.Allergies;
 import org.mrs.Allergy;
 import org.mrs.BaseOpenmrsMetadata;
 import org.mrs.Concept;
+import org.mrs.DuplicatePatientMatch;
 import org.mrs.Encounter;
 import org.mrs.Location;
 import org.mrs.Obs;
@@ -23,6 +24,7 @@ import org.mrs.Patient;
 import org.mrs.PatientIdentifier;
 import org.mrs.PatientIdentifierType;
 import org.mrs.PatientProgram;
+import org.mrs.PatientSearchResult;
 import org.mrs.Person;
 import org.mrs.PersonAddress;
 import org.mrs.PersonAttribute;
@@ -49,6 +51,7 @@ import org.mrs.api.db.PatientDAO;
 import org.mrs.parameter.EncounterSearchCriteria;
 import org.mrs.parameter.EncounterSearchCriteriaBuilder;
 import org.mrs.patient.IdentifierValidator;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
 import org.mrs.patient.impl.LuhnIdentifierValidator;
 import org.mrs.person.PersonMergeLog;
 import org.mrs.person.PersonMergeLogData;
@@ -357,6 +360,7 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 	 */
 	@Override
 	public void purgePatient(Patient patient) throws APIException {
+		dao.deleteDuplicatePatientMatches(patient);
 		dao.deletePatient(patient);
 	}
 	
@@ -541,6 +545,59 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		return dao.getDuplicatePatientsByAttributes(attributes);
 	}
 	
+	/**
+	 * @see org.mrs.api.PatientService#getDuplicatePatientCandidates(Integer, int, boolean)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<DuplicatePatientCandidate> getDuplicatePatientCandidates(Integer afterPatientId, int batchSize,
+	        boolean includeVoided) throws APIException {
+		return dao.getDuplicatePatientCandidates(afterPatientId, batchSize, includeVoided);
+	}
+	
+	/**
+	 * @see org.mrs.api.PatientService#saveDuplicatePatientMatches(java.util.Collection)
+	 */
+	@Override
+	public void saveDuplicatePatientMatches(Collection<DuplicatePatientMatch> matches) throws APIException {
+		dao.saveDuplicatePatientMatches(matches);
+	}
+	
+	/**
+	 * @see org.mrs.api.PatientService#purgeDuplicatePatientMatches()
+	 */
+	@Override
+	public void purgeDuplicatePatientMatches() throws APIException {
+		dao.deleteDuplicatePatientMatches();
+	}
+	
+	/**
+	 * @see org.mrs.api.PatientService#purgeDuplicatePatientMatches(Date)
+	 */
+	@Override
+	public void purgeDuplicatePatientMatches(Date foundBefore) throws APIException {
+		dao.deleteDuplicatePatientMatches(foundBefore);
+	}
+	
+	/**
+	 * @see org.mrs.api.PatientService#getDuplicatePatientMatches(Double, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<DuplicatePatientMatch> getDuplicatePatientMatches(Double minScore, Integer start, Integer length)
+	        throws APIException {
+		return dao.getDuplicatePatientMatches(minScore, start, length);
+	}
+	
+	/**
+	 * @see org.mrs.api.PatientService#getCountOfDuplicatePatientMatches(Double)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public Long getCountOfDuplicatePatientMatches(Double minScore) throws APIException {
+		return dao.getCountOfDuplicatePatientMatches(minScore);
+	}
+	
 	/**
 	 * generate a relationship hash for use in mergePatients; follows the convention:
 	 * [relationshipType][A|B][relativeId]
@@ -600,6 +657,9 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		// associate the Users associated with the not preferred person, to the preferred person.
 		changeUserAssociations(preferred, notPreferred, mergedData);
 		
+		// the pairs including the not preferred patient are resolved or stale now
+		dao.deleteDuplicatePatientMatches(notPreferred);
+		
 		// Save the newly update preferred patient
 		// This must be called _after_ voiding the nonPreferred patient so that
 		//  a "Duplicate Identifier" error doesn't pop up.
@@ -1608,6 +1668,20 @@ public class PatientServiceImpl extends BaseOpenmrsService implements PatientSer
 		return dao.getPatients(query, includeVoided, start, length);
 	}
 	
+	/**
+	 * @see PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	@Override
+	@Transactional(readOnly = true)
+	public List<PatientSearchResult> getPatientSearchResults(String query, boolean includeVoided, Integer start,
+	        Integer length) throws APIException {
+		if (StringUtils.isBlank(query)) {
+			return Collections.emptyList();
+		}
+		
+		return dao.getPatientSearchResults(query, includeVoided, start, length);
+	}
+	
 	/**
 	 * @see PatientService#getPatients(String, String, List, boolean, Integer, Integer)
 	 */
@@ -303,7 +303,7 @@ public class ProgramWorkflowServiceImpl extends BaseOpenmrsService implements Pr
 	@Override
 	@Transactional(readOnly = true)
 	public List<PatientProgram> getPatientPrograms(Cohort cohort, Collection<Program> programs) {
-		if (cohort.getMemberIds().isEmpty()) {
+		if (cohort.getMemberships().isEmpty()) {
 			return dao.getPatientPrograms(null, programs);
 		} else {
 			return dao.getPatientPrograms(cohort, programs);
@@ -33,6 +33,7 @@ import org.mrs.api.CannotDeleteRoleWithChildrenException;
 import org.mrs.api.InvalidActivationKeyException;
 import org.mrs.api.UserService;
 import org.mrs.api.context.Context;
+import org.mrs.api.context.UserContext;
 import org.mrs.api.db.DAOException;
 import org.mrs.api.db.LoginCredential;
 import org.mrs.api.db.UserDAO;
@@ -176,7 +177,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 			        + " is already in use.");
 		}
 		
-		return dao.saveUser(user, null);
+		User savedUser = dao.saveUser(user, null);
+		UserContext.invalidateCachedPrivileges();
+		return savedUser;
 	}
 	
 	/**
@@ -256,6 +259,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 		
 		dao.deletePrivilege(privilege);
+		UserContext.invalidateCachedPrivileges();
 	}
 	
 	/**
@@ -263,7 +267,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 	 */
 	@Override
 	public Privilege savePrivilege(Privilege privilege) throws APIException {
-		return dao.savePrivilege(privilege);
+		Privilege savedPrivilege = dao.savePrivilege(privilege);
+		UserContext.invalidateCachedPrivileges();
+		return savedPrivilege;
 	}
 
 	/**
@@ -302,6 +308,7 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		}
 		
 		dao.deleteRole(role);
+		UserContext.invalidateCachedPrivileges();
 	}
 	
 	/**
@@ -317,7 +324,9 @@ public class UserServiceImpl extends BaseOpenmrsService implements UserService {
 		
 		checkPrivileges(role);
 		
-		return dao.saveRole(role);
+		Role savedRole = dao.saveRole(role);
+		UserContext.invalidateCachedPrivileges();
+		return savedRole;
 	}
 	
 	/**
@@ -15,6 +15,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -27,13 +28,16 @@ import org.mrs.VisitAttributeType;
 import org.mrs.VisitType;
 import org.mrs.api.APIException;
 import org.mrs.api.VisitService;
+import org.mrs.api.VisitStopListener;
 import org.mrs.api.context.Context;
 import org.mrs.api.db.VisitDAO;
 import org.mrs.customdatatype.CustomDatatypeUtil;
 import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.PrivilegeConstants;
 import org.mrs.validator.ValidateUtil;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 /**
  * Default implementation of the {@link VisitService}. This class should not be used on its own. The
@@ -44,6 +48,8 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class VisitServiceImpl extends BaseOpenmrsService implements VisitService {
 	
+	private static final int DEFAULT_AUTO_CLOSE_BATCH_SIZE = 1000;
+	
 	private VisitDAO dao;
 	
 	/**
@@ -350,33 +356,89 @@ public class VisitServiceImpl extends BaseOpenmrsService implements VisitService
 	 * @see org.mrs.api.VisitService#stopVisits(Date)
 	 */
 	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
 	public void stopVisits(Date maximumStartDate) {
+		Context.getVisitService().stopVisits(maximumStartDate, null);
+	}
+	
+	/**
+	 * @see org.mrs.api.VisitService#stopVisits(Date, IntConsumer)
+	 */
+	@Override
+	@Transactional(propagation = Propagation.SUPPORTS)
+	public int stopVisits(Date maximumStartDate, IntConsumer progressListener) {
 		
 		final List<VisitType> visitTypesToStop = getVisitTypesToStop();
 		
 		if (maximumStartDate == null) {
 			maximumStartDate = new Date();
 		}
-			
+		
 		if (visitTypesToStop.isEmpty()) {
-			return;
+			return 0;
 		}
 		
-		int counter = 0;
+		int batchSize = getAutoCloseBatchSize();
+		boolean inTransaction = TransactionSynchronizationManager.isActualTransactionActive();
+		
+		//the bulk updates don't go through the session so pending changes must be in the DB first
+		Context.flushSession();
+		
+		int stopped = 0;
 		Date stopDate = new Date();
-		Visit nextVisit = dao.getNextVisit(null, visitTypesToStop, maximumStartDate);
-		while (nextVisit != null) {
-			nextVisit.setStopDatetime(stopDate);
-			dao.saveVisit(nextVisit);
-			if (counter++ > 50) {
-				//ensure changes are persisted to DB before reclaiming memory
-				Context.flushSession();
+		List<Integer> visitIds = dao.getNextVisitIds(null, visitTypesToStop, maximumStartDate, batchSize);
+		while (!visitIds.isEmpty()) {
+			//each chunk is committed on its own unless the caller has a transaction
+			stopped += Context.getVisitService().stopVisitsById(visitIds, stopDate);
+			if (!inTransaction) {
+				//the visits loaded for the listeners of the committed chunk aren't needed anymore
 				Context.clearSession();
-				counter = 0;
 			}
-					
-		nextVisit = dao.getNextVisit(nextVisit, visitTypesToStop, maximumStartDate);
+			
+			if (progressListener != null) {
+				progressListener.accept(stopped);
+			}
+			
+			visitIds = dao.getNextVisitIds(visitIds.get(visitIds.size() - 1), visitTypesToStop, maximumStartDate,
+			    batchSize);
+		}
+		
+		return stopped;
+	}
+	
+	/**
+	 * @see org.mrs.api.VisitService#stopVisitsById(Collection, Date)
+	 */
+	@Override
+	public int stopVisitsById(Collection<Integer> visitIds, Date stopDatetime) {
+		int stopped = dao.stopVisits(visitIds, stopDatetime, Context.getAuthenticatedUser());
+		
+		List<VisitStopListener> listeners = Context.getRegisteredComponents(VisitStopListener.class);
+		if (!listeners.isEmpty()) {
+			for (Integer visitId : visitIds) {
+				Visit visit = dao.getVisit(visitId);
+				for (VisitStopListener listener : listeners) {
+					listener.visitStopped(visit);
+				}
+			}
+		}
+		
+		return stopped;
+	}
+	
+	private int getAutoCloseBatchSize() {
+		String gpValue = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GP_VISITS_AUTO_CLOSE_BATCH_SIZE);
+		try {
+			int batchSize = Integer.parseInt(StringUtils.trim(gpValue));
+			if (batchSize > 0) {
+				return batchSize;
+			}
+		}
+		catch (NumberFormatException e) {
+			//use the default
 		}
+		return DEFAULT_AUTO_CLOSE_BATCH_SIZE;
 	}
 	
 	private List<VisitType> getVisitTypesToStop() {
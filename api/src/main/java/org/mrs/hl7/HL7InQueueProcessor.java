@@ -9,7 +9,19 @@
  */
 package org.mrs.hl7;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.StringUtils;
 import org.mrs.api.context.Context;
+import org.mrs.api.context.Daemon;
+import org.mrs.util.OpenmrsConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.transaction.annotation.Transactional;
@@ -20,7 +32,16 @@ import ca.uhn.hl7v2.HL7Exception;
  * Processes message in the HL7 inbound queue. Messages are moved into either the archive or error
  * table depending on success or failure of the processing. You may, however, set a global property
  * that causes the processor to ignore messages regarding unknown patients from a non-local HL7
- * source. (i.e. those messages neither go to the archive or the error table.)
+ * source. (i.e. those messages neither go to the archive or the error table.) <br>
+ * <br>
+ * Pending queue entries are claimed in batches of
+ * {@link OpenmrsConstants#GP_HL7_PROCESSOR_BATCH_SIZE} by marking them as processing. When
+ * {@link OpenmrsConstants#GP_HL7_PROCESSOR_THREADS} is more than one and the processor runs in a
+ * daemon thread, e.g. from the scheduler, the claimed entries are handed to that many worker
+ * threads. Entries are assigned to workers by the patient identifier in their PID segment so that
+ * the messages for a patient are still processed one after the other in the order they were
+ * queued. Claimed entries which have not been processed when a run ends, because it was
+ * interrupted or processing an entry failed, are marked as pending again.
  *
  * @version 1.0
  */
@@ -33,7 +54,10 @@ public class HL7InQueueProcessor /* implements Runnable */{
 
 	private static final Object lock = new Object();
 	
-	private static Integer count = 0;
+	private static final AtomicInteger count = new AtomicInteger();
+	
+	// tells a worker that no more entries will be handed to it
+	private static final Integer END_OF_QUEUE = -1;
 	
 	// processor per JVM
 	
@@ -45,7 +69,7 @@ public class HL7InQueueProcessor /* implements Runnable */{
 	}
 	
 	public static void setCount(Integer count) {
-		HL7InQueueProcessor.count = count;
+		HL7InQueueProcessor.count.set(count);
 	}
 	
 	/**
@@ -66,8 +90,11 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		catch (HL7Exception e) {
 			log.error("Unable to process hl7 in queue", e);
 		}
-		setCount(count + 1);
-		if (count > 25) {
+		garbageCollectIfNeeded();
+	}
+	
+	private void garbageCollectIfNeeded() {
+		if (count.incrementAndGet() > 25) {
 			// clean up memory after processing each queue entry (otherwise, the
 			// memory-intensive process may crash or eat up all our memory)
 			try {
@@ -110,8 +137,24 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		}
 		try {
 			log.debug("Start processing hl7 in queue");
-			while (processNextHL7InQueue()) {
-				// loop until queue is empty
+			HL7Service hl7Service = Context.getHL7Service();
+			long processedBefore = hl7Service.getHL7InQueueStatistics().getProcessedCount();
+			long start = System.currentTimeMillis();
+			
+			int threads = getIntegerGlobalProperty(OpenmrsConstants.GP_HL7_PROCESSOR_THREADS, 1);
+			int batchSize = getIntegerGlobalProperty(OpenmrsConstants.GP_HL7_PROCESSOR_BATCH_SIZE, 100);
+			if (threads > 1 && Daemon.isDaemonThread()) {
+				processInParallel(threads, batchSize);
+			} else {
+				processInBatches(batchSize);
+			}
+			
+			long processed = hl7Service.getHL7InQueueStatistics().getProcessedCount() - processedBefore;
+			if (processed > 0) {
+				long elapsed = Math.max(1, System.currentTimeMillis() - start);
+				log.info("Processed {} hl7 in queue entries in {} ms ({}/s), pending: {}, totals: {}", processed,
+				    elapsed, processed * 1000 / elapsed, hl7Service.countHL7InQueue(HL7Constants.HL7_STATUS_PENDING, null),
+				    hl7Service.getHL7InQueueStatistics());
 			}
 			log.debug("Done processing hl7 in queue");
 		}
@@ -120,4 +163,202 @@ public class HL7InQueueProcessor /* implements Runnable */{
 		}
 	}
 	
+	private void processInBatches(int batchSize) {
+		HL7Service hl7Service = Context.getHL7Service();
+		Set<Integer> unprocessed = ConcurrentHashMap.newKeySet();
+		try {
+			List<HL7InQueue> batch = claimBatch(batchSize, unprocessed);
+			while (!batch.isEmpty()) {
+				for (HL7InQueue hl7InQueue : batch) {
+					processClaimed(hl7InQueue, unprocessed);
+				}
+				Context.clearSession();
+				batch = claimBatch(batchSize, unprocessed);
+			}
+		}
+		finally {
+			releaseClaims(hl7Service, unprocessed);
+		}
+	}
+	
+	private void processInParallel(int threads, int batchSize) {
+		// limits the claimed entries that are waiting for a worker, the others are left pending
+		Semaphore capacity = new Semaphore(batchSize * 2);
+		Set<Integer> unprocessed = ConcurrentHashMap.newKeySet();
+		List<BlockingQueue<Integer>> partitions = new ArrayList<>(threads);
+		List<Thread> workers = new ArrayList<>(threads);
+		for (int i = 0; i < threads; i++) {
+			BlockingQueue<Integer> partition = new LinkedBlockingQueue<>();
+			partitions.add(partition);
+			workers.add(Daemon.runInNewDaemonThread(() -> processPartition(partition, capacity, unprocessed)));
+		}
+		
+		HL7Service hl7Service = Context.getHL7Service();
+		try {
+			List<HL7InQueue> batch = claimBatch(batchSize, unprocessed);
+			while (!batch.isEmpty()) {
+				for (HL7InQueue hl7InQueue : batch) {
+					int partition = Math.floorMod(getPartitionKey(hl7InQueue).hashCode(), threads);
+					capacity.acquire();
+					partitions.get(partition).add(hl7InQueue.getHL7InQueueId());
+				}
+				Context.clearSession();
+				batch = claimBatch(batchSize, unprocessed);
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("Interrupted while handing hl7 in queue entries to the workers, the entries that were not "
+			        + "processed are marked as pending again");
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// the interrupt status is cleared so that the database can be used to release the claims
+			boolean interrupted = Thread.interrupted();
+			for (BlockingQueue<Integer> partition : partitions) {
+				if (interrupted) {
+					// the workers only finish the entries they are processing
+					partition.clear();
+				}
+				partition.add(END_OF_QUEUE);
+			}
+			// claims may only be released once no worker is processing them anymore
+			for (Thread worker : workers) {
+				while (worker.isAlive()) {
+					try {
+						worker.join();
+					}
+					catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			releaseClaims(hl7Service, unprocessed);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	/**
+	 * Processes the entries handed to one worker, runs in a daemon thread with its own session
+	 */
+	private void processPartition(BlockingQueue<Integer> partition, Semaphore capacity, Set<Integer> unprocessed) {
+		HL7Service hl7Service = Context.getHL7Service();
+		try {
+			for (Integer id = partition.take(); !END_OF_QUEUE.equals(id); id = partition.take()) {
+				try {
+					HL7InQueue hl7InQueue = hl7Service.getHL7InQueue(id);
+					if (hl7InQueue != null) {
+						processClaimed(hl7InQueue, unprocessed);
+					}
+				}
+				catch (Exception e) {
+					log.error("Unable to process hl7 in queue entry " + id, e);
+				}
+				finally {
+					Context.clearSession();
+					capacity.release();
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			log.warn("HL7 processor worker interrupted, the entries that were not processed are marked as pending "
+			        + "again");
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Claims the next batch and remembers its entries as unprocessed
+	 */
+	private List<HL7InQueue> claimBatch(int batchSize, Set<Integer> unprocessed) {
+		List<HL7InQueue> batch = Context.getHL7Service().claimHL7InQueueBatch(batchSize);
+		for (HL7InQueue hl7InQueue : batch) {
+			unprocessed.add(hl7InQueue.getHL7InQueueId());
+		}
+		return batch;
+	}
+	
+	private void processClaimed(HL7InQueue hl7InQueue, Set<Integer> unprocessed) {
+		try {
+			Context.getHL7Service().processClaimedHL7InQueue(hl7InQueue);
+		}
+		catch (HL7Exception e) {
+			log.error("Unable to process hl7 in queue", e);
+		}
+		// an entry the service failed on with another exception stays marked as unprocessed and is
+		// released when the run ends
+		unprocessed.remove(hl7InQueue.getHL7InQueueId());
+		garbageCollectIfNeeded();
+	}
+	
+	/**
+	 * Marks the claimed entries that were not processed as pending again
+	 */
+	private void releaseClaims(HL7Service hl7Service, Set<Integer> unprocessed) {
+		if (unprocessed.isEmpty()) {
+			return;
+		}
+		
+		try {
+			int released = hl7Service.releaseHL7InQueueClaims(new ArrayList<>(unprocessed));
+			log.info("Marked {} claimed hl7 in queue entries that were not processed as pending again", released);
+		}
+		catch (Exception e) {
+			log.error("Unable to mark the claimed hl7 in queue entries " + unprocessed + " as pending again", e);
+		}
+	}
+	
+	/**
+	 * Gets the key that decides which worker processes a queue entry, entries with the same key are
+	 * processed in order by the same worker. This is the id number of the first patient identifier
+	 * in the PID segment, or the queue entry id if the message has none.
+	 *
+	 * @param hl7InQueue the queue entry
+	 * @return the partition key
+	 */
+	static String getPartitionKey(HL7InQueue hl7InQueue) {
+		String patientIdentifier = getPatientIdentifier(hl7InQueue.getHL7Data());
+		return patientIdentifier != null ? patientIdentifier : String.valueOf(hl7InQueue.getHL7InQueueId());
+	}
+	
+	/**
+	 * Reads the id number of the first identifier in PID-3 without parsing the whole message
+	 *
+	 * @param hl7Data the hl7 message
+	 * @return the identifier or null if the message has no PID segment or it has no identifier
+	 */
+	static String getPatientIdentifier(String hl7Data) {
+		if (hl7Data == null || !hl7Data.startsWith("MSH") || hl7Data.length() < 8) {
+			return null;
+		}
+		
+		char fieldSeparator = hl7Data.charAt(3);
+		char componentSeparator = hl7Data.charAt(4);
+		char repetitionSeparator = hl7Data.charAt(5);
+		for (String segment : hl7Data.split("[\\r\\n]+")) {
+			if (segment.startsWith("PID" + fieldSeparator)) {
+				String[] fields = StringUtils.splitPreserveAllTokens(segment, fieldSeparator);
+				if (fields.length < 4) {
+					return null;
+				}
+				String identifier = StringUtils.substringBefore(StringUtils.substringBefore(fields[3],
+				    String.valueOf(repetitionSeparator)), String.valueOf(componentSeparator));
+				return StringUtils.isBlank(identifier) ? null : identifier.trim();
+			}
+		}
+		
+		return null;
+	}
+	
+	private static int getIntegerGlobalProperty(String propertyName, int defaultValue) {
+		String value = Context.getAdministrationService().getGlobalProperty(propertyName);
+		try {
+			return Math.max(1, Integer.parseInt(value));
+		}
+		catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+	
 }
@@ -0,0 +1,170 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the messages processed from the HL7 inbound queue and the time spent in each stage of
+ * processing them. The counters are updated by {@link HL7Service#processHL7InQueue(HL7InQueue)}
+ * and can be read from any thread while messages are being processed.
+ *
+ * @see HL7Service#getHL7InQueueStatistics()
+ * @since 2.3.0
+ */
+public class HL7InQueueStatistics {
+
+	/**
+	 * The stages a queue entry goes through
+	 */
+	public enum Stage {
+		/**
+		 * Parsing the hl7 string into a message
+		 */
+		PARSE,
+		/**
+		 * Handing the message to the handler registered for its type
+		 */
+		ROUTE,
+		/**
+		 * Moving the queue entry into the archive or error table
+		 */
+		PERSIST
+	}
+
+	private final Map<Stage, StageTimer> timers = new EnumMap<>(Stage.class);
+
+	private final LongAdder processedCount = new LongAdder();
+
+	private final LongAdder errorCount = new LongAdder();
+
+	private final AtomicLong startTime = new AtomicLong(System.currentTimeMillis());
+
+	public HL7InQueueStatistics() {
+		for (Stage stage : Stage.values()) {
+			timers.put(stage, new StageTimer());
+		}
+	}
+
+	/**
+	 * Adds the time a queue entry spent in the given stage
+	 *
+	 * @param stage the stage
+	 * @param nanos the elapsed time in nanoseconds
+	 */
+	public void record(Stage stage, long nanos) {
+		timers.get(stage).record(nanos);
+	}
+
+	/**
+	 * Counts a queue entry that was processed, successfully or not
+	 *
+	 * @param failed true if the entry was moved to the error table
+	 */
+	public void recordProcessed(boolean failed) {
+		processedCount.increment();
+		if (failed) {
+			errorCount.increment();
+		}
+	}
+
+	/**
+	 * @return the number of queue entries processed since the last reset
+	 */
+	public long getProcessedCount() {
+		return processedCount.sum();
+	}
+
+	/**
+	 * @return the number of queue entries that were moved to the error table since the last reset
+	 */
+	public long getErrorCount() {
+		return errorCount.sum();
+	}
+
+	/**
+	 * @return the average number of queue entries processed per second since the last reset
+	 */
+	public double getThroughput() {
+		long elapsed = System.currentTimeMillis() - startTime.get();
+		return elapsed <= 0 ? 0 : getProcessedCount() * 1000.0 / elapsed;
+	}
+
+	/**
+	 * @param stage the stage
+	 * @return the number of times the stage was timed since the last reset
+	 */
+	public long getCount(Stage stage) {
+		return timers.get(stage).count.sum();
+	}
+
+	/**
+	 * @param stage the stage
+	 * @return the average time spent in the stage in milliseconds
+	 */
+	public double getAverageMillis(Stage stage) {
+		StageTimer timer = timers.get(stage);
+		long count = timer.count.sum();
+		return count == 0 ? 0 : timer.totalNanos.sum() / (double) TimeUnit.MILLISECONDS.toNanos(1) / count;
+	}
+
+	/**
+	 * @param stage the stage
+	 * @return the longest time spent in the stage in milliseconds
+	 */
+	public double getMaxMillis(Stage stage) {
+		return timers.get(stage).maxNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	/**
+	 * Sets all counters back to zero and restarts the throughput measurement
+	 */
+	public void reset() {
+		for (StageTimer timer : timers.values()) {
+			timer.count.reset();
+			timer.totalNanos.reset();
+			timer.maxNanos.set(0);
+		}
+		processedCount.reset();
+		errorCount.reset();
+		startTime.set(System.currentTimeMillis());
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("processed: ").append(getProcessedCount()).append(", errors: ").append(getErrorCount()).append(
+		    String.format(", %.1f/s", getThroughput()));
+		for (Stage stage : Stage.values()) {
+			sb.append(String.format(", %s avg %.2fms max %.2fms", stage.name().toLowerCase(), getAverageMillis(stage),
+			    getMaxMillis(stage)));
+		}
+		return sb.toString();
+	}
+
+	private static class StageTimer {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder totalNanos = new LongAdder();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		void record(long nanos) {
+			count.increment();
+			totalNanos.add(nanos);
+			maxNanos.accumulateAndGet(nanos, Math::max);
+		}
+	}
+}
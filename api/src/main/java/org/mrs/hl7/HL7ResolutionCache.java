@@ -0,0 +1,284 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Remembers which concept, provider, location and person the codes and identifiers in hl7 messages
+ * resolved to, so that messages referring to the same ones don't repeat the lookups. Only the ids
+ * are cached, the objects are loaded by id which is answered from the session or the second level
+ * cache for concepts, locations and persons. Lookups that don't find anything are not cached.
+ * <p>
+ * Each type of lookup has its own cache in ehcache-api.xml (<code>hl7.concepts</code>,
+ * <code>hl7.providers</code>, <code>hl7.locations</code> and <code>hl7.persons</code>) which limits
+ * the number of entries and how long they are kept. When an object the lookups may depend on is saved
+ * or deleted, see {@link HL7ResolutionCacheInterceptor}, the entries of persons are removed by the
+ * keys derived from the identifiers of the object and all entries of the other types are removed.
+ * They are removed again once the transaction that changed the object completes.
+ *
+ * @since 2.3.0
+ */
+public class HL7ResolutionCache {
+
+	/**
+	 * The kinds of lookups that are cached
+	 */
+	public enum Type {
+		/**
+		 * Concepts by code and coding system
+		 */
+		CONCEPT("hl7.concepts"),
+		/**
+		 * Providers by identifier and assigning authority
+		 */
+		PROVIDER("hl7.providers"),
+		/**
+		 * Locations by point of care and facility
+		 */
+		LOCATION("hl7.locations"),
+		/**
+		 * Persons by identifiers
+		 */
+		PERSON("hl7.persons");
+
+		private final String cacheName;
+
+		Type(String cacheName) {
+			this.cacheName = cacheName;
+		}
+
+		public String getCacheName() {
+			return cacheName;
+		}
+	}
+
+	/**
+	 * Looks up the id of an object that isn't cached yet
+	 *
+	 * @param <E> the exception thrown by the lookup
+	 */
+	@FunctionalInterface
+	public interface IdLoader<E extends Exception> {
+
+		/**
+		 * @return the id or null if nothing was found
+		 */
+		Integer load() throws E;
+	}
+
+	private final Map<Type, Region> regions = new EnumMap<>(Type.class);
+
+	private final AtomicLong hitCount = new AtomicLong();
+
+	private final AtomicLong missCount = new AtomicLong();
+
+	public void setCacheManager(CacheManager cacheManager) {
+		for (Type type : Type.values()) {
+			Cache cache = cacheManager.getCache(type.getCacheName());
+			if (cache != null) {
+				regions.put(type, new Region(cache));
+			}
+		}
+	}
+
+	/**
+	 * Gets the cached id for the given key or looks it up and caches it
+	 *
+	 * @param type the kind of lookup
+	 * @param key identifies the lookup within its type, e.g. the code and coding system
+	 * @param loader looks up the id if it is not cached
+	 * @return the id or null if the loader didn't find anything
+	 * @throws E if the loader fails
+	 */
+	public <E extends Exception> Integer getId(Type type, String key, IdLoader<E> loader) throws E {
+		Region region = regions.get(type);
+		if (region == null || key == null) {
+			return loader.load();
+		}
+
+		ValueWrapper cached = region.cache.get(key);
+		if (cached != null) {
+			hitCount.incrementAndGet();
+			return (Integer) cached.get();
+		}
+
+		missCount.incrementAndGet();
+		long expectedGeneration = region.generation.get();
+		Integer id = loader.load();
+		// values read while the type was invalidated may already be stale
+		if (id != null && region.generation.get() == expectedGeneration && !region.isModifiedInCurrentTransaction(key)) {
+			region.cache.put(key, id);
+		}
+
+		return id;
+	}
+
+	/**
+	 * Removes the cached ids of the given keys, now and when the current transaction completes
+	 *
+	 * @param type the kind of lookup
+	 * @param keys the keys of the lookups to remove
+	 */
+	public void evict(Type type, Collection<String> keys) {
+		Region region = regions.get(type);
+		if (region != null && !keys.isEmpty()) {
+			region.evict(keys);
+		}
+	}
+
+	/**
+	 * Removes all cached ids of the given type, now and when the current transaction completes
+	 *
+	 * @param type the kind of lookup
+	 */
+	public void invalidate(Type type) {
+		Region region = regions.get(type);
+		if (region != null) {
+			region.invalidate();
+		}
+	}
+
+	/**
+	 * Removes all cached ids
+	 */
+	public void clear() {
+		for (Region region : regions.values()) {
+			region.clear();
+		}
+	}
+
+	/**
+	 * Gets the key of the lookup of a person by one hl7 identifier, the identifier type code is only
+	 * part of the key of local person and patient ids as it isn't used for the other identifiers
+	 *
+	 * @param idNumber the id number of the identifier
+	 * @param assigningAuthority the assigning authority of the identifier
+	 * @param identifierTypeCode the identifier type code of the identifier
+	 * @return the key of the lookup of type {@link Type#PERSON}
+	 */
+	public static String getPersonKey(String idNumber, String assigningAuthority, String identifierTypeCode) {
+		String key = idNumber + "^" + assigningAuthority;
+		if (HL7Constants.HL7_AUTHORITY_LOCAL.equals(assigningAuthority)
+		        && (HL7Constants.HL7_ID_PERSON.equals(identifierTypeCode) || HL7Constants.HL7_ID_PATIENT
+		                .equals(identifierTypeCode))) {
+			key += "^" + identifierTypeCode;
+		}
+		return key;
+	}
+
+	/**
+	 * @return the number of lookups that were answered from the cache
+	 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/**
+	 * @return the number of lookups that had to go to the database
+	 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	private static class Region {
+
+		private final Cache cache;
+
+		private final AtomicLong generation = new AtomicLong();
+
+		Region(Cache cache) {
+			this.cache = cache;
+		}
+
+		void clear() {
+			generation.incrementAndGet();
+			cache.clear();
+		}
+
+		void evictNow(Collection<String> keys) {
+			generation.incrementAndGet();
+			for (String key : keys) {
+				cache.evict(key);
+			}
+		}
+
+		void evict(Collection<String> keys) {
+			evictNow(keys);
+			Changes changes = getChangesOfCurrentTransaction();
+			if (changes != null) {
+				changes.keys.addAll(keys);
+			}
+		}
+
+		void invalidate() {
+			clear();
+			Changes changes = getChangesOfCurrentTransaction();
+			if (changes != null) {
+				changes.all = true;
+			}
+		}
+
+		boolean isModifiedInCurrentTransaction(String key) {
+			Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+			return changes != null && (changes.all || changes.keys.contains(key));
+		}
+
+		/**
+		 * @return the changes of the current transaction, null if there is no transaction
+		 */
+		private Changes getChangesOfCurrentTransaction() {
+			if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+				return null;
+			}
+			Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+			if (changes == null) {
+				Changes newChanges = new Changes();
+				TransactionSynchronizationManager.bindResource(this, newChanges);
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+					@Override
+					public void afterCompletion(int status) {
+						TransactionSynchronizationManager.unbindResourceIfPossible(Region.this);
+						// other threads may have cached the previous ids while the transaction was running
+						if (newChanges.all) {
+							clear();
+						} else {
+							evictNow(newChanges.keys);
+						}
+					}
+				});
+				changes = newChanges;
+			}
+			return changes;
+		}
+	}
+
+	/**
+	 * The cached ids removed by a transaction
+	 */
+	private static class Changes {
+
+		private boolean all;
+
+		private final Set<String> keys = new HashSet<>();
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import java.io.Serializable;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.hibernate.EmptyInterceptor;
+import org.hibernate.type.Type;
+import org.mrs.Concept;
+import org.mrs.ConceptMap;
+import org.mrs.ConceptReferenceTerm;
+import org.mrs.ConceptSource;
+import org.mrs.Location;
+import org.mrs.PatientIdentifier;
+import org.mrs.PatientIdentifierType;
+import org.mrs.Person;
+import org.mrs.Provider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Invalidates the ids cached by {@link HL7ResolutionCache} when an object that the lookups depend
+ * on is saved or deleted. Saving or deleting a person or patient identifier only evicts the person
+ * lookups of its identifiers, both the previous and the new ones.
+ *
+ * @since 2.3.0
+ */
+@Component("hl7ResolutionCacheInterceptor")
+public class HL7ResolutionCacheInterceptor extends EmptyInterceptor {
+
+	private static final long serialVersionUID = 1L;
+
+	@Autowired
+	@Qualifier("hl7ResolutionCache")
+	private transient HL7ResolutionCache hl7ResolutionCache;
+
+	@Override
+	public boolean onFlushDirty(Object entity, Serializable id, Object[] currentState, Object[] previousState,
+	        String[] propertyNames, Type[] types) {
+		// the previous identifiers of an object updated without being loaded are unknown
+		if (isPersonLookupDependency(entity) && previousState != null) {
+			evictPersonLookups(entity, id, previousState, propertyNames);
+			evictPersonLookups(entity, id, currentState, propertyNames);
+		} else {
+			invalidate(entity);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean onSave(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		if (isPersonLookupDependency(entity)) {
+			evictPersonLookups(entity, id, state, propertyNames);
+		} else {
+			invalidate(entity);
+		}
+		return false;
+	}
+
+	@Override
+	public void onDelete(Object entity, Serializable id, Object[] state, String[] propertyNames, Type[] types) {
+		if (isPersonLookupDependency(entity)) {
+			evictPersonLookups(entity, id, state, propertyNames);
+		} else {
+			invalidate(entity);
+		}
+	}
+
+	private boolean isPersonLookupDependency(Object entity) {
+		return entity instanceof Person || entity instanceof PatientIdentifier;
+	}
+
+	/**
+	 * Evicts the person lookups by the uuid and local ids of a person or by the value of a patient
+	 * identifier, all person lookups if the identifier isn't known
+	 */
+	private void evictPersonLookups(Object entity, Serializable id, Object[] state, String[] propertyNames) {
+		if (hl7ResolutionCache == null) {
+			return;
+		}
+
+		Set<String> keys = new LinkedHashSet<>();
+		if (entity instanceof Person) {
+			keys.add(HL7ResolutionCache.getPersonKey((String) getValue(state, propertyNames, "uuid"),
+			    HL7Constants.HL7_AUTHORITY_UUID, null));
+			if (id != null) {
+				keys.add(HL7ResolutionCache.getPersonKey(id.toString(), HL7Constants.HL7_AUTHORITY_LOCAL,
+				    (String) HL7Constants.HL7_ID_PERSON));
+				keys.add(HL7ResolutionCache.getPersonKey(id.toString(), HL7Constants.HL7_AUTHORITY_LOCAL,
+				    (String) HL7Constants.HL7_ID_PATIENT));
+			}
+		} else {
+			String identifier = (String) getValue(state, propertyNames, "identifier");
+			PatientIdentifierType type = (PatientIdentifierType) getValue(state, propertyNames, "identifierType");
+			if (identifier == null || type == null || type.getName() == null) {
+				hl7ResolutionCache.invalidate(HL7ResolutionCache.Type.PERSON);
+				return;
+			}
+			// the identifier type code is part of the key if the type is named like the local authority
+			keys.add(HL7ResolutionCache.getPersonKey(identifier, type.getName(), null));
+			keys.add(HL7ResolutionCache.getPersonKey(identifier, type.getName(), (String) HL7Constants.HL7_ID_PERSON));
+			keys.add(HL7ResolutionCache.getPersonKey(identifier, type.getName(), (String) HL7Constants.HL7_ID_PATIENT));
+		}
+		hl7ResolutionCache.evict(HL7ResolutionCache.Type.PERSON, keys);
+	}
+
+	private Object getValue(Object[] state, String[] propertyNames, String propertyName) {
+		for (int i = 0; i < propertyNames.length; i++) {
+			if (propertyName.equals(propertyNames[i])) {
+				return state[i];
+			}
+		}
+		return null;
+	}
+
+	private void invalidate(Object entity) {
+		if (hl7ResolutionCache == null) {
+			return;
+		}
+
+		if (entity instanceof Concept || entity instanceof ConceptMap || entity instanceof ConceptReferenceTerm
+		        || entity instanceof ConceptSource) {
+			hl7ResolutionCache.invalidate(HL7ResolutionCache.Type.CONCEPT);
+		} else if (entity instanceof Provider) {
+			hl7ResolutionCache.invalidate(HL7ResolutionCache.Type.PROVIDER);
+		} else if (entity instanceof Location) {
+			hl7ResolutionCache.invalidate(HL7ResolutionCache.Type.LOCATION);
+		} else if (entity instanceof Person || entity instanceof PatientIdentifier
+		        || entity instanceof PatientIdentifierType) {
+			hl7ResolutionCache.invalidate(HL7ResolutionCache.Type.PERSON);
+		}
+	}
+}
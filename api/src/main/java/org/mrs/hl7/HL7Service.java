@@ -9,6 +9,7 @@
  */
 package org.mrs.hl7;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -218,6 +219,43 @@ public interface HL7Service extends OpenmrsService {
 	@Authorized(PrivilegeConstants.GET_HL7_IN_QUEUE)
 	public HL7InQueue getNextHL7InQueue() throws APIException;
 	
+	/**
+	 * Marks up to <code>batchSize</code> pending queue items as processing and returns them, oldest
+	 * first. An item is only returned to one caller even if several processors claim batches at the
+	 * same time.
+	 * 
+	 * @param batchSize the maximum number of items to claim
+	 * @return the claimed queue items
+	 * @since 2.3.0
+	 * @should claim pending queue items in order
+	 * @should not claim queue items that are not pending
+	 */
+	@Authorized(PrivilegeConstants.PRIV_UPDATE_HL7_IN_QUEUE)
+	public List<HL7InQueue> claimHL7InQueueBatch(int batchSize) throws APIException;
+	
+	/**
+	 * Marks the given queue items as pending again if they are still marked as processing, so that
+	 * a later batch claims them. Used to give back items that were claimed but not processed.
+	 * 
+	 * @param hl7InQueueIds the ids of the queue items
+	 * @return the number of queue items that were marked as pending
+	 * @since 2.3.0
+	 * @should mark the given claimed queue items as pending
+	 * @should not change queue items that are not marked as processing
+	 */
+	@Authorized(PrivilegeConstants.PRIV_UPDATE_HL7_IN_QUEUE)
+	public int releaseHL7InQueueClaims(Collection<Integer> hl7InQueueIds) throws APIException;
+	
+	/**
+	 * Gets the counters and stage timings of the queue items processed by
+	 * {@link #processHL7InQueue(HL7InQueue)}
+	 * 
+	 * @return the statistics
+	 * @since 2.3.0
+	 */
+	@Authorized(PrivilegeConstants.GET_HL7_IN_QUEUE)
+	public HL7InQueueStatistics getHL7InQueueStatistics();
+	
 	/**
 	 * Completely delete the hl7 in queue item from the database.
 	 * 
@@ -421,6 +459,18 @@ public interface HL7Service extends OpenmrsService {
 	 */
 	public HL7InQueue processHL7InQueue(HL7InQueue inQueue) throws HL7Exception;
 	
+	/**
+	 * Processes a queue item claimed with {@link #claimHL7InQueueBatch(int)} like
+	 * {@link #processHL7InQueue(HL7InQueue)} does, which refuses items marked as processing.
+	 * 
+	 * @param inQueue the claimed queue item
+	 * @return the processed {@link HL7InQueue}
+	 * @since 2.3.0
+	 * @should process a claimed queue item
+	 * @should fail if the given inQueue was not claimed
+	 */
+	public HL7InQueue processClaimedHL7InQueue(HL7InQueue inQueue) throws HL7Exception;
+	
 	/**
 	 * Parses the given string and returns the resulting {@link Message}
 	 * 
@@ -9,6 +9,7 @@
  */
 package org.mrs.hl7.db;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.mrs.api.db.DAOException;
@@ -80,6 +81,16 @@ public interface HL7DAO {
 	 */
 	public HL7InQueue getNextHL7InQueue() throws DAOException;
 	
+	/**
+	 * @see org.mrs.hl7.HL7Service#claimHL7InQueueBatch(int)
+	 */
+	public List<HL7InQueue> claimHL7InQueueBatch(int batchSize) throws DAOException;
+	
+	/**
+	 * @see org.mrs.hl7.HL7Service#releaseHL7InQueueClaims(Collection)
+	 */
+	public int releaseHL7InQueueClaims(Collection<Integer> hl7InQueueIds) throws DAOException;
+	
 	/**
 	 * @see org.mrs.hl7.HL7Service#deleteHL7InQueue(org.mrs.hl7.HL7InQueue)
 	 */
@@ -9,11 +9,14 @@
  */
 package org.mrs.hl7.db.hibernate;
 
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.List;
 
 import org.hibernate.Criteria;
 import org.hibernate.Query;
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.criterion.MatchMode;
 import org.hibernate.criterion.Order;
@@ -205,6 +208,56 @@ public class HibernateHL7DAO implements HL7DAO {
 		return (HL7InQueue) query.uniqueResult();
 	}
 	
+	/**
+	 * Each pending item is claimed with its own conditional update, an item that another processor
+	 * claimed between the select and the update is skipped.
+	 * 
+	 * @see org.mrs.hl7.db.HL7DAO#claimHL7InQueueBatch(int)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public List<HL7InQueue> claimHL7InQueueBatch(int batchSize) throws DAOException {
+		Session session = sessionFactory.getCurrentSession();
+		List<Integer> pendingIds = session.createQuery(
+		    "select hiq.HL7InQueueId from HL7InQueue as hiq where hiq.messageState = :pending order by hiq.HL7InQueueId")
+		        .setParameter("pending", HL7Constants.HL7_STATUS_PENDING).setMaxResults(batchSize).list();
+		if (pendingIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Query claim = session.createQuery(
+		    "update HL7InQueue set messageState = :processing where HL7InQueueId = :id and messageState = :pending")
+		        .setParameter("processing", HL7Constants.HL7_STATUS_PROCESSING).setParameter("pending",
+		            HL7Constants.HL7_STATUS_PENDING);
+		List<Integer> claimedIds = new ArrayList<>(pendingIds.size());
+		for (Integer id : pendingIds) {
+			if (claim.setParameter("id", id).executeUpdate() == 1) {
+				claimedIds.add(id);
+			}
+		}
+		if (claimedIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		return session.createQuery("from HL7InQueue as hiq where hiq.HL7InQueueId in (:ids) order by hiq.HL7InQueueId")
+		        .setParameterList("ids", claimedIds).list();
+	}
+	
+	/**
+	 * @see org.mrs.hl7.db.HL7DAO#releaseHL7InQueueClaims(Collection)
+	 */
+	@Override
+	public int releaseHL7InQueueClaims(Collection<Integer> hl7InQueueIds) throws DAOException {
+		if (hl7InQueueIds.isEmpty()) {
+			return 0;
+		}
+		
+		return sessionFactory.getCurrentSession().createQuery(
+		    "update HL7InQueue set messageState = :pending where HL7InQueueId in (:ids) and messageState = :processing")
+		        .setParameter("pending", HL7Constants.HL7_STATUS_PENDING).setParameter("processing",
+		            HL7Constants.HL7_STATUS_PROCESSING).setParameterList("ids", hl7InQueueIds).executeUpdate();
+	}
+	
 	/**
 	 * @see org.mrs.hl7.db.HL7DAO#deleteHL7InQueue(org.mrs.hl7.HL7InQueue)
 	 */
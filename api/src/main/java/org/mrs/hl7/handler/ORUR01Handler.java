@@ -40,6 +40,7 @@ import org.mrs.User;
 import org.mrs.api.context.Context;
 import org.mrs.hl7.HL7Constants;
 import org.mrs.hl7.HL7InQueueProcessor;
+import org.mrs.hl7.HL7ResolutionCache;
 import org.mrs.obs.ComplexData;
 import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.OpenmrsUtil;
@@ -99,6 +100,19 @@ public class ORUR01Handler implements Application {
 	
 	private static EncounterRole unknownRole = null;
 	
+	private HL7ResolutionCache resolutionCache;
+	
+	/**
+	 * Sets the cache for concepts and providers resolved from messages, if none is set they are
+	 * looked up for every message
+	 *
+	 * @param resolutionCache the cache to use
+	 * @since 2.3.0
+	 */
+	public void setResolutionCache(HL7ResolutionCache resolutionCache) {
+		this.resolutionCache = resolutionCache;
+	}
+	
 	/**
 	 * Always returns true, assuming that the router calling this handler will only call this
 	 * handler with ORU_R01 messages.
@@ -970,7 +984,11 @@ public class ORUR01Handler implements Application {
 			}
 		} else {
 			// the concept is not local, look it up in our mapping
-			return Context.getConceptService().getConceptByMapping(hl7ConceptId, codingSystem);
+			Integer conceptId = resolveId(HL7ResolutionCache.Type.CONCEPT, codingSystem + "|" + hl7ConceptId, () -> {
+				Concept concept = Context.getConceptService().getConceptByMapping(hl7ConceptId, codingSystem);
+				return concept == null ? null : concept.getConceptId();
+			});
+			return conceptId == null ? null : Context.getConceptService().getConcept(conceptId);
 		}
 	}
 	
@@ -1038,37 +1056,29 @@ public class ORUR01Handler implements Application {
 		String type = hl7Provider.getAssigningAuthority().getUniversalIDType().getValue();
 		String errorMessage;
 		if (StringUtils.hasText(id)) {
-			String specificErrorMsg = "";
+			String specificErrorMsg;
 			if (OpenmrsUtil.nullSafeEquals("L", type)) {
 				if (HL7Constants.PROVIDER_ASSIGNING_AUTH_PROV_ID.equalsIgnoreCase(assignAuth)) {
-					try {
-						provider = Context.getProviderService().getProvider(Integer.valueOf(id));
-					}
-					catch (NumberFormatException e) {
-						// ignore
-					}
 					specificErrorMsg = "with provider Id";
 				} else if (HL7Constants.PROVIDER_ASSIGNING_AUTH_IDENTIFIER.equalsIgnoreCase(assignAuth)) {
-					provider = Context.getProviderService().getProviderByIdentifier(id);
 					specificErrorMsg = "with provider identifier";
 				} else if (HL7Constants.PROVIDER_ASSIGNING_AUTH_PROV_UUID.equalsIgnoreCase(assignAuth)) {
-					provider = Context.getProviderService().getProviderByUuid(id);
 					specificErrorMsg = "with provider uuid";
+				} else {
+					specificErrorMsg = "";
 				}
 			} else {
-				try {
-					Person person = Context.getPersonService().getPerson(Integer.valueOf(id));
-					Collection<Provider> providers = Context.getProviderService().getProvidersByPerson(person);
-					if (!providers.isEmpty()) {
-						provider = providers.iterator().next();
-					}
-				}
-				catch (NumberFormatException e) {
-					// ignore
-				}
 				specificErrorMsg = "associated to a person with person id";
 			}
 			
+			Integer providerId = resolveId(HL7ResolutionCache.Type.PROVIDER, type + "|" + assignAuth + "|" + id, () -> {
+				Provider found = findProvider(id, assignAuth, type);
+				return found == null ? null : found.getProviderId();
+			});
+			if (providerId != null) {
+				provider = Context.getProviderService().getProvider(providerId);
+			}
+			
 			errorMessage = "Could not resolve provider " + specificErrorMsg + ":" + id;
 		} else {
 			errorMessage = "No unique identifier was found for the provider";
@@ -1081,6 +1091,44 @@ public class ORUR01Handler implements Application {
 		return provider;
 	}
 	
+	private Provider findProvider(String id, String assignAuth, String type) {
+		Provider provider = null;
+		if (OpenmrsUtil.nullSafeEquals("L", type)) {
+			if (HL7Constants.PROVIDER_ASSIGNING_AUTH_PROV_ID.equalsIgnoreCase(assignAuth)) {
+				try {
+					provider = Context.getProviderService().getProvider(Integer.valueOf(id));
+				}
+				catch (NumberFormatException e) {
+					// ignore
+				}
+			} else if (HL7Constants.PROVIDER_ASSIGNING_AUTH_IDENTIFIER.equalsIgnoreCase(assignAuth)) {
+				provider = Context.getProviderService().getProviderByIdentifier(id);
+			} else if (HL7Constants.PROVIDER_ASSIGNING_AUTH_PROV_UUID.equalsIgnoreCase(assignAuth)) {
+				provider = Context.getProviderService().getProviderByUuid(id);
+			}
+		} else {
+			try {
+				Person person = Context.getPersonService().getPerson(Integer.valueOf(id));
+				Collection<Provider> providers = Context.getProviderService().getProvidersByPerson(person);
+				if (!providers.isEmpty()) {
+					provider = providers.iterator().next();
+				}
+			}
+			catch (NumberFormatException e) {
+				// ignore
+			}
+		}
+		return provider;
+	}
+	
+	/**
+	 * Looks up an id through the resolution cache if one is set
+	 */
+	private <E extends Exception> Integer resolveId(HL7ResolutionCache.Type type, String key,
+	        HL7ResolutionCache.IdLoader<E> loader) throws E {
+		return resolutionCache == null ? loader.load() : resolutionCache.getId(type, key, loader);
+	}
+	
 	private Patient getPatient(PID pid) throws HL7Exception {
 		Integer patientId = Context.getHL7Service().resolvePatientId(pid);
 		if (patientId == null) {
@@ -21,6 +21,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
@@ -45,7 +46,10 @@ import org.mrs.hl7.HL7Constants;
 import org.mrs.hl7.HL7InArchive;
 import org.mrs.hl7.HL7InError;
 import org.mrs.hl7.HL7InQueue;
+import org.mrs.hl7.HL7InQueueStatistics;
+import org.mrs.hl7.HL7InQueueStatistics.Stage;
 import org.mrs.hl7.HL7QueueItem;
+import org.mrs.hl7.HL7ResolutionCache;
 import org.mrs.hl7.HL7Service;
 import org.mrs.hl7.HL7Source;
 import org.mrs.hl7.HL7Util;
@@ -95,6 +99,10 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	
 	private MessageTypeRouter router;
 	
+	private final HL7InQueueStatistics statistics = new HL7InQueueStatistics();
+	
+	private HL7ResolutionCache resolutionCache;
+	
 	/**
 	 * Private constructor to only support on singleton instance.
 	 *
@@ -132,6 +140,17 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		this.parser = parser;
 	}
 	
+	/**
+	 * Used by spring to inject the cache for locations and persons resolved from messages, if none
+	 * is set they are looked up for every message
+	 *
+	 * @param resolutionCache the cache to use
+	 * @since 2.3.0
+	 */
+	public void setResolutionCache(HL7ResolutionCache resolutionCache) {
+		this.resolutionCache = resolutionCache;
+	}
+	
 	/**
 	 * Used by spring to inject the router
 	 *
@@ -311,6 +330,22 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		return dao.getNextHL7InQueue();
 	}
 	
+	/**
+	 * @see org.mrs.hl7.HL7Service#claimHL7InQueueBatch(int)
+	 */
+	@Override
+	public List<HL7InQueue> claimHL7InQueueBatch(int batchSize) throws APIException {
+		return dao.claimHL7InQueueBatch(batchSize);
+	}
+	
+	/**
+	 * @see org.mrs.hl7.HL7Service#releaseHL7InQueueClaims(Collection)
+	 */
+	@Override
+	public int releaseHL7InQueueClaims(Collection<Integer> hl7InQueueIds) throws APIException {
+		return dao.releaseHL7InQueueClaims(hl7InQueueIds);
+	}
+	
 	/**
 	 * @see org.mrs.hl7.HL7Service#getHL7InArchiveByState(java.lang.Integer)
 	 */
@@ -532,10 +567,15 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	@Override
 	@Transactional(readOnly = true)
 	public Integer resolveLocationId(PL pl) throws HL7Exception {
-		// TODO: Get rid of hack that allows first component to be an integer
-		// location.location_id
 		String pointOfCare = pl.getPointOfCare().getValue();
 		String facility = pl.getFacility().getUniversalID().getValue();
+		return resolveId(HL7ResolutionCache.Type.LOCATION, pointOfCare + "|" + facility, () -> findLocationId(pointOfCare,
+		    facility));
+	}
+	
+	private Integer findLocationId(String pointOfCare, String facility) throws HL7Exception {
+		// TODO: Get rid of hack that allows first component to be an integer
+		// location.location_id
 		// HACK: try to treat the first component (which should be "Point of
 		// Care" as an internal mrs location_id
 		try {
@@ -592,15 +632,15 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 	@Override
 	@Transactional(readOnly = true)
 	public Person resolvePersonFromIdentifiers(CX[] identifiers) throws HL7Exception {
-		// TODO: Properly handle assigning authority. If specified it's
-		// currently treated as PatientIdentifierType.name
-		// TODO: Throw exceptions instead of returning null in some cases
-		
 		// give up if no identifiers exist
 		if (identifiers.length < 1) {
 			throw new HL7Exception("Missing patient identifier in PID segment");
 		}
 		
+		// TODO: Properly handle assigning authority. If specified it's
+		// currently treated as PatientIdentifierType.name
+		// TODO: Throw exceptions instead of returning null in some cases
+		
 		// TODO other potential identifying characteristics in PID we could use
 		// to identify the patient
 		
@@ -612,66 +652,17 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 			String assigningAuthority = identifier.getAssigningAuthority().getNamespaceID().getValue();
 			
 			if (StringUtils.isNotBlank(assigningAuthority)) {
-				// Assigning authority defined
-				try {
-					PatientIdentifierType pit = Context.getPatientService().getPatientIdentifierTypeByName(
-					    assigningAuthority);
-					if (pit == null) {
-						// there is no matching PatientIdentifierType
-						if (assigningAuthority.equals(HL7Constants.HL7_AUTHORITY_UUID)) {
-							// the identifier is a UUID
-							Person p = Context.getPersonService().getPersonByUuid(hl7PersonId);
-							if (p != null) {
-								return p;
-							}
-							log.warn("Can't find person for UUID '" + hl7PersonId + "'");
-							continue; // skip identifiers with unknown type
-						} else if (assigningAuthority.equals(HL7Constants.HL7_AUTHORITY_LOCAL)) {
-							// the ID is internal (local)
-							String idType = identifier.getIdentifierTypeCode().getValue();
-							try {
-								if (idType.equals(HL7Constants.HL7_ID_PERSON)) {
-									Integer pid = Integer.parseInt(hl7PersonId);
-									// patient_id == person_id, so just look for
-									// the person
-									Person p = Context.getPersonService().getPerson(pid);
-									if (p != null) {
-										return p;
-									}
-								} else if (idType.equals(HL7Constants.HL7_ID_PATIENT)) {
-									Integer pid = Integer.parseInt(hl7PersonId);
-									// patient_id == person_id, so just look for
-									// the person
-									Patient p = Context.getPatientService().getPatient(pid);
-									if (p != null) {
-										return p;
-									}
-								}
-							}
-							catch (NumberFormatException e) {}
-							log.warn("Can't find Local identifier of '" + hl7PersonId + "'");
-							continue; // skip identifiers with unknown type
-						}
-						log.warn("Can't find PatientIdentifierType named '" + assigningAuthority + "'");
-						continue; // skip identifiers with unknown type
-					}
-					List<PatientIdentifier> matchingIds = Context.getPatientService().getPatientIdentifiers(hl7PersonId,
-					    Collections.singletonList(pit), null, null, null);
-					if (matchingIds == null || matchingIds.isEmpty()) {
-						// no matches
-						log.warn("NO matches found for " + hl7PersonId);
-					} else if (matchingIds.size() == 1) {
-						// unique match -- we're done
-						return matchingIds.get(0).getPatient();
-					} else {
-						// ambiguous identifier
-						log.debug("Ambiguous identifier in PID. " + matchingIds.size() + " matches for identifier '"
-						        + hl7PersonId + "' of type '" + pit + "'");
-					}
-				}
-				catch (Exception e) {
-					log.error("Error resolving patient identifier '" + hl7PersonId + "' for assigning authority '"
-					        + assigningAuthority + "'", e);
+				// Assigning authority defined, each identifier is cached on its own so that saving one
+				// only evicts its own lookups, see HL7ResolutionCacheInterceptor
+				String key = HL7ResolutionCache.getPersonKey(hl7PersonId, assigningAuthority, identifier
+				        .getIdentifierTypeCode().getValue());
+				Integer personId = resolveId(HL7ResolutionCache.Type.PERSON, key, () -> {
+					Person person = findPersonFromIdentifier(identifier);
+					return person == null ? null : person.getPersonId();
+				});
+				Person person = personId == null ? null : Context.getPersonService().getPerson(personId);
+				if (person != null) {
+					return person;
 				}
 			} else {
 				try {
@@ -688,6 +679,86 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		return null;
 	}
 	
+	/**
+	 * @param identifier an identifier with an assigning authority
+	 * @return the person the identifier uniquely matches, or null if there is none
+	 */
+	private Person findPersonFromIdentifier(CX identifier) {
+		String hl7PersonId = identifier.getIDNumber().getValue();
+		String assigningAuthority = identifier.getAssigningAuthority().getNamespaceID().getValue();
+		
+		try {
+			PatientIdentifierType pit = Context.getPatientService().getPatientIdentifierTypeByName(
+			    assigningAuthority);
+			if (pit == null) {
+				// there is no matching PatientIdentifierType
+				if (assigningAuthority.equals(HL7Constants.HL7_AUTHORITY_UUID)) {
+					// the identifier is a UUID
+					Person p = Context.getPersonService().getPersonByUuid(hl7PersonId);
+					if (p != null) {
+						return p;
+					}
+					log.warn("Can't find person for UUID '" + hl7PersonId + "'");
+					return null; // skip identifiers with unknown type
+				} else if (assigningAuthority.equals(HL7Constants.HL7_AUTHORITY_LOCAL)) {
+					// the ID is internal (local)
+					String idType = identifier.getIdentifierTypeCode().getValue();
+					try {
+						if (idType.equals(HL7Constants.HL7_ID_PERSON)) {
+							Integer pid = Integer.parseInt(hl7PersonId);
+							// patient_id == person_id, so just look for
+							// the person
+							Person p = Context.getPersonService().getPerson(pid);
+							if (p != null) {
+								return p;
+							}
+						} else if (idType.equals(HL7Constants.HL7_ID_PATIENT)) {
+							Integer pid = Integer.parseInt(hl7PersonId);
+							// patient_id == person_id, so just look for
+							// the person
+							Patient p = Context.getPatientService().getPatient(pid);
+							if (p != null) {
+								return p;
+							}
+						}
+					}
+					catch (NumberFormatException e) {}
+					log.warn("Can't find Local identifier of '" + hl7PersonId + "'");
+					return null; // skip identifiers with unknown type
+				}
+				log.warn("Can't find PatientIdentifierType named '" + assigningAuthority + "'");
+				return null; // skip identifiers with unknown type
+			}
+			List<PatientIdentifier> matchingIds = Context.getPatientService().getPatientIdentifiers(hl7PersonId,
+			    Collections.singletonList(pit), null, null, null);
+			if (matchingIds == null || matchingIds.isEmpty()) {
+				// no matches
+				log.warn("NO matches found for " + hl7PersonId);
+			} else if (matchingIds.size() == 1) {
+				// unique match -- we're done
+				return matchingIds.get(0).getPatient();
+			} else {
+				// ambiguous identifier
+				log.debug("Ambiguous identifier in PID. " + matchingIds.size() + " matches for identifier '"
+				        + hl7PersonId + "' of type '" + pit + "'");
+			}
+		}
+		catch (Exception e) {
+			log.error("Error resolving patient identifier '" + hl7PersonId + "' for assigning authority '"
+			        + assigningAuthority + "'", e);
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Looks up an id through the resolution cache if one is set
+	 */
+	private <E extends Exception> Integer resolveId(HL7ResolutionCache.Type type, String key,
+	        HL7ResolutionCache.IdLoader<E> loader) throws E {
+		return resolutionCache == null ? loader.load() : resolutionCache.getId(type, key, loader);
+	}
+	
 	/**
 	 * @see org.mrs.hl7.HL7Service#garbageCollect()
 	 */
@@ -714,6 +785,32 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 			hl7InQueue.setMessageState(HL7Constants.HL7_STATUS_PROCESSING);
 		}
 		
+		return process(hl7InQueue);
+	}
+	
+	/**
+	 * @see org.mrs.hl7.HL7Service#processClaimedHL7InQueue(org.mrs.hl7.HL7InQueue)
+	 */
+	@Override
+	public HL7InQueue processClaimedHL7InQueue(HL7InQueue hl7InQueue) throws HL7Exception {
+		
+		if (hl7InQueue == null) {
+			throw new HL7Exception("hl7InQueue argument cannot be null");
+		}
+		
+		if (!OpenmrsUtil.nullSafeEquals(HL7Constants.HL7_STATUS_PROCESSING, hl7InQueue.getMessageState())) {
+			throw new HL7Exception("The hl7InQueue message with id: " + hl7InQueue.getHL7InQueueId()
+			        + " has not been claimed (key=" + hl7InQueue.getHL7SourceKey() + ")");
+		}
+		
+		return process(hl7InQueue);
+	}
+	
+	/**
+	 * Moves a queue item that is marked as processing to the archive or, if it fails, to the errors
+	 */
+	private HL7InQueue process(HL7InQueue hl7InQueue) {
+		
 		if (log.isDebugEnabled()) {
 			log.debug("Processing HL7 inbound queue (id=" + hl7InQueue.getHL7InQueueId() + ",key="
 			        + hl7InQueue.getHL7SourceKey() + ")");
@@ -721,17 +818,21 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 		
 		// Parse the HL7 into an HL7Message or abort with failure
 		String hl7Message = hl7InQueue.getHL7Data();
+		long stageStart = System.nanoTime();
+		boolean failed = false;
 		try {
 			// Parse the inbound HL7 message using the parser
 			// NOT making a direct call here so that AOP can happen around this
 			// method
 			Message parsedMessage = Context.getHL7Service().parseHL7String(hl7Message);
+			stageStart = recordStage(Stage.PARSE, stageStart);
 			
 			// Send the parsed message to our receiver routine for processing
 			// into db
 			// NOT making a direct call here so that AOP can happen around this
 			// method
 			Context.getHL7Service().processHL7Message(parsedMessage);
+			stageStart = recordStage(Stage.ROUTE, stageStart);
 			
 			// Move HL7 inbound queue entry into the archive before exiting
 			log.debug("Archiving HL7 inbound queue entry");
@@ -756,18 +857,36 @@ public class HL7ServiceImpl extends BaseOpenmrsService implements HL7Service {
 				skipError = true;
 			}
 			if (!skipError) {
+				failed = true;
 				setFatalError(hl7InQueue, "Trouble parsing HL7 message (" + hl7InQueue.getHL7SourceKey() + ")", e);
 			}
 			
 		}
 		catch (Exception e) {
+			failed = true;
 			setFatalError(hl7InQueue, "Exception while attempting to process HL7 In Queue (" + hl7InQueue.getHL7SourceKey()
 			        + ")", e);
 		}
+		recordStage(Stage.PERSIST, stageStart);
+		statistics.recordProcessed(failed);
 		
 		return hl7InQueue;
 	}
 	
+	private long recordStage(Stage stage, long start) {
+		long end = System.nanoTime();
+		statistics.record(stage, end - start);
+		return end;
+	}
+	
+	/**
+	 * @see org.mrs.hl7.HL7Service#getHL7InQueueStatistics()
+	 */
+	@Override
+	public HL7InQueueStatistics getHL7InQueueStatistics() {
+		return statistics;
+	}
+	
 	/**
 	 * Convenience method to respond to fatal errors by moving the queue entry into an error bin
 	 * prior to aborting
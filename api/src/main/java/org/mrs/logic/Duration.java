@@ -255,4 +255,10 @@ public class Duration implements Operand {
 		return (ComparisonOperator.WITHIN.equals(operator));
 	}
 	
+	@Override
+	public String toString() {
+		return (duration % 1 == 0 ? String.valueOf(duration.longValue()) : String.valueOf(duration)) + " "
+		        + units.name().toLowerCase();
+	}
+	
 }
@@ -0,0 +1,177 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.datasource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mrs.Cohort;
+import org.mrs.Concept;
+import org.mrs.Obs;
+import org.mrs.api.context.Context;
+import org.mrs.logic.LogicContext;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.db.LogicObsDAO;
+import org.mrs.logic.impl.LogicExpressionBinary;
+import org.mrs.logic.impl.ResultFilter;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.Operator;
+import org.mrs.logic.result.Result;
+
+/**
+ * Provides the observations of patients, the keys are the names of the question concepts, e.g.
+ * <code>"CD4 COUNT"</code>.
+ * <p>
+ * The restrictions on a key, and the transform above them, are evaluated by the database for the
+ * whole cohort at once (see {@link LogicObsDAO#supports(LogicExpression)}). The rest of the
+ * criteria, e.g. a restriction applied after a {@link Operator#LAST} transform or the
+ * {@link Operator#AND} of two keys, is evaluated in memory on the results of those queries.
+ *
+ * @since 2.3.0
+ */
+public class ObsDataSource implements LogicDataSource {
+	
+	public static final String NAME = "obs";
+	
+	private static final int DEFAULT_TTL = 300;
+	
+	private LogicObsDAO logicObsDAO;
+	
+	public void setLogicObsDAO(LogicObsDAO logicObsDAO) {
+		this.logicObsDAO = logicObsDAO;
+	}
+	
+	/**
+	 * @see org.mrs.logic.datasource.LogicDataSource#read(org.mrs.logic.LogicContext, org.mrs.Cohort,
+	 *      org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public Map<Integer, Result> read(LogicContext context, Cohort patients, LogicCriteria criteria)
+	        throws LogicException {
+		LogicExpression expression = criteria.getExpression();
+		Date indexDate = ResultFilter.getIndexDate(expression, context.getIndexDate());
+		
+		Map<LogicExpression, Map<Integer, Result>> queried = new IdentityHashMap<>();
+		query(patients, expression, indexDate, queried);
+		
+		Map<Integer, Result> results = new HashMap<>();
+		for (Integer patientId : patients.getMemberIds()) {
+			results.put(patientId, ResultFilter.evaluate(expression, e -> {
+				Map<Integer, Result> queryResults = queried.get(e);
+				if (queryResults == null) {
+					return null;
+				}
+				return queryResults.getOrDefault(patientId, getEmptyResult(e.getTransform()));
+			}, indexDate));
+		}
+		return results;
+	}
+	
+	/**
+	 * Queries the largest sub expressions supported by the database
+	 */
+	private void query(Cohort patients, LogicExpression expression, Date indexDate,
+	        Map<LogicExpression, Map<Integer, Result>> queried) {
+		if (logicObsDAO.supports(expression)) {
+			queried.put(expression, query(patients, expression, indexDate));
+			return;
+		}
+		
+		List<Operand> operands = new ArrayList<>();
+		if (expression instanceof LogicExpressionBinary) {
+			operands.add(((LogicExpressionBinary) expression).getLeftOperand());
+		}
+		operands.add(expression.getRightOperand());
+		for (Operand operand : operands) {
+			if (operand instanceof LogicExpression) {
+				query(patients, (LogicExpression) operand, indexDate, queried);
+			}
+		}
+	}
+	
+	private Map<Integer, Result> query(Cohort patients, LogicExpression expression, Date indexDate) {
+		String key = expression.getRootToken();
+		Concept concept = Context.getConceptService().getConceptByName(key);
+		if (concept == null) {
+			throw new LogicException("No concept named '" + key + "'");
+		}
+		
+		Map<Integer, Result> results = new HashMap<>();
+		LogicTransform transform = expression.getTransform();
+		Operator operator = transform == null ? null : transform.getTransformOperator();
+		if (Operator.COUNT.equals(operator) || Operator.AVERAGE.equals(operator) || Operator.EXISTS.equals(operator)
+		        || Operator.NOT_EXISTS.equals(operator)) {
+			Map<Integer, Number> aggregates = logicObsDAO.getAggregates(patients, concept, expression, indexDate);
+			for (Map.Entry<Integer, Number> aggregate : aggregates.entrySet()) {
+				Number value = aggregate.getValue();
+				if (Operator.COUNT.equals(operator)) {
+					results.put(aggregate.getKey(), new Result(value.intValue()));
+				} else if (Operator.AVERAGE.equals(operator)) {
+					results.put(aggregate.getKey(), new Result(value.doubleValue()));
+				} else {
+					results.put(aggregate.getKey(), new Result(Operator.EXISTS.equals(operator) == (value.intValue() > 0)));
+				}
+			}
+			return results;
+		}
+		
+		Map<Integer, List<Obs>> observations = logicObsDAO.getObservations(patients, concept, expression, indexDate);
+		for (Map.Entry<Integer, List<Obs>> patientObservations : observations.entrySet()) {
+			List<Result> patientResults = new ArrayList<>();
+			for (Obs obs : patientObservations.getValue()) {
+				patientResults.add(new Result(obs));
+			}
+			results.put(patientObservations.getKey(), ResultFilter.applyTransform(new Result(patientResults), transform));
+		}
+		return results;
+	}
+	
+	/**
+	 * @return the result of a query for a patient without observations
+	 */
+	private Result getEmptyResult(LogicTransform transform) {
+		return ResultFilter.applyTransform(Result.emptyResult(), transform);
+	}
+	
+	/**
+	 * Concepts are looked up by name when they are read, the keys are not enumerated
+	 *
+	 * @see org.mrs.logic.datasource.LogicDataSource#getKeys()
+	 */
+	@Override
+	public Collection<String> getKeys() {
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * @see org.mrs.logic.datasource.LogicDataSource#hasKey(java.lang.String)
+	 */
+	@Override
+	public boolean hasKey(String key) {
+		return key != null && Context.getConceptService().getConceptByName(key) != null;
+	}
+	
+	/**
+	 * @see org.mrs.logic.datasource.LogicDataSource#getDefaultTTL()
+	 */
+	@Override
+	public int getDefaultTTL() {
+		return DEFAULT_TTL;
+	}
+}
@@ -0,0 +1,70 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.db;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.mrs.Cohort;
+import org.mrs.Concept;
+import org.mrs.Obs;
+import org.mrs.api.db.DAOException;
+import org.mrs.logic.LogicExpression;
+
+/**
+ * Database queries of the observations read by the obs logic data source. The expressions handed to
+ * these methods are chains of restrictions on a concept token, as accepted by
+ * {@link #supports(LogicExpression)}, that are translated to a single query per chunk of patients.
+ *
+ * @see org.mrs.logic.datasource.ObsDataSource
+ * @since 2.3.0
+ */
+public interface LogicObsDAO {
+	
+	/**
+	 * @param expression an expression on a token
+	 * @return true if the expression, its restrictions and its transform can be evaluated by the
+	 *         database
+	 */
+	public boolean supports(LogicExpression expression);
+	
+	/**
+	 * Gets the observations of the given concept matching the restrictions of the expression. A
+	 * {@link org.mrs.logic.op.Operator#LAST} or {@link org.mrs.logic.op.Operator#FIRST} transform
+	 * of the expression limits the observations returned per patient, other transforms are left to
+	 * the caller.
+	 *
+	 * @param who the patients to get the observations of
+	 * @param concept the question of the observations
+	 * @param expression the restrictions on the observations
+	 * @param indexDate the date observations are read as of, later observations are ignored
+	 * @return the observations by patient id, ordered by date, patients without observations are
+	 *         not included
+	 */
+	public Map<Integer, List<Obs>> getObservations(Cohort who, Concept concept, LogicExpression expression,
+	        Date indexDate) throws DAOException;
+	
+	/**
+	 * Computes the average of the observations of the given concept matching the restrictions of
+	 * the expression for an {@link org.mrs.logic.op.Operator#AVERAGE} transform, their count for
+	 * the {@link org.mrs.logic.op.Operator#COUNT}, {@link org.mrs.logic.op.Operator#EXISTS} and
+	 * {@link org.mrs.logic.op.Operator#NOT_EXISTS} transforms, grouped by patient
+	 *
+	 * @param who the patients to aggregate the observations of
+	 * @param concept the question of the observations
+	 * @param expression the restrictions on the observations, with an aggregating transform
+	 * @param indexDate the date observations are read as of, later observations are ignored
+	 * @return the count or the average by patient id, patients without observations are not
+	 *         included
+	 */
+	public Map<Integer, Number> getAggregates(Cohort who, Concept concept, LogicExpression expression, Date indexDate)
+	        throws DAOException;
+}
@@ -0,0 +1,223 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.db.hibernate;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hibernate.Criteria;
+import org.hibernate.SessionFactory;
+import org.hibernate.criterion.Conjunction;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
+import org.mrs.Cohort;
+import org.mrs.Concept;
+import org.mrs.Obs;
+import org.mrs.api.db.DAOException;
+import org.mrs.logic.Duration;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.db.LogicObsDAO;
+import org.mrs.logic.impl.LogicExpressionBinary;
+import org.mrs.logic.impl.LogicExpressionUnary;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandDate;
+import org.mrs.logic.op.OperandNumeric;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+
+/**
+ * Hibernate implementation of the {@link org.mrs.logic.db.LogicObsDAO}, patients are queried by
+ * chunks of {@value #MAX_PATIENTS_PER_QUERY} ids
+ *
+ * @since 2.3.0
+ */
+public class HibernateLogicObsDAO implements LogicObsDAO {
+	
+	private static final int MAX_PATIENTS_PER_QUERY = 1000;
+	
+	private SessionFactory sessionFactory;
+	
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+	
+	/**
+	 * @see org.mrs.logic.db.LogicObsDAO#supports(org.mrs.logic.LogicExpression)
+	 */
+	@Override
+	public boolean supports(LogicExpression expression) {
+		return supportsTransform(expression.getTransform()) && supportsRestrictions(expression);
+	}
+	
+	/**
+	 * @see org.mrs.logic.db.LogicObsDAO#getObservations(org.mrs.Cohort, org.mrs.Concept,
+	 *      org.mrs.logic.LogicExpression, java.util.Date)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<Integer, List<Obs>> getObservations(Cohort who, Concept concept, LogicExpression expression,
+	        Date indexDate) throws DAOException {
+		LogicTransform transform = expression.getTransform();
+		boolean last = transform != null && Operator.LAST.equals(transform.getTransformOperator());
+		boolean first = transform != null && Operator.FIRST.equals(transform.getTransformOperator());
+		int numResults = transform == null || transform.getNumResults() == null ? 1 : transform.getNumResults();
+		
+		Map<Integer, List<Obs>> observations = new LinkedHashMap<>();
+		for (List<Integer> chunk : getChunks(who)) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs");
+			criteria.add(Restrictions.in("obs.personId", chunk));
+			criteria.add(getRestrictions("obs", concept, expression, indexDate));
+			if ((last || first) && numResults == 1) {
+				// only the observations at the latest, or earliest, date of each patient
+				DetachedCriteria extreme = DetachedCriteria.forClass(Obs.class, "other");
+				extreme.setProjection(last ? Projections.max("other.obsDatetime") : Projections.min("other.obsDatetime"));
+				extreme.add(Restrictions.eqProperty("other.personId", "obs.personId"));
+				extreme.add(getRestrictions("other", concept, expression, indexDate));
+				criteria.add(Subqueries.propertyEq("obs.obsDatetime", extreme));
+			}
+			criteria.addOrder(Order.asc("obs.personId"));
+			criteria.addOrder(last ? Order.desc("obs.obsDatetime") : Order.asc("obs.obsDatetime"));
+			criteria.addOrder(last ? Order.desc("obs.obsId") : Order.asc("obs.obsId"));
+			
+			for (Obs obs : (List<Obs>) criteria.list()) {
+				List<Obs> patientObservations = observations.computeIfAbsent(obs.getPersonId(), id -> new ArrayList<>());
+				if (!(last || first) || patientObservations.size() < numResults) {
+					patientObservations.add(obs);
+				}
+			}
+		}
+		return observations;
+	}
+	
+	/**
+	 * @see org.mrs.logic.db.LogicObsDAO#getAggregates(org.mrs.Cohort, org.mrs.Concept,
+	 *      org.mrs.logic.LogicExpression, java.util.Date)
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public Map<Integer, Number> getAggregates(Cohort who, Concept concept, LogicExpression expression, Date indexDate)
+	        throws DAOException {
+		LogicTransform transform = expression.getTransform();
+		if (transform == null || !isAggregate(transform.getTransformOperator())) {
+			throw new DAOException("Not an aggregating expression: " + expression);
+		}
+		boolean average = Operator.AVERAGE.equals(transform.getTransformOperator());
+		
+		Map<Integer, Number> aggregates = new LinkedHashMap<>();
+		for (List<Integer> chunk : getChunks(who)) {
+			Criteria criteria = sessionFactory.getCurrentSession().createCriteria(Obs.class, "obs");
+			criteria.add(Restrictions.in("obs.personId", chunk));
+			criteria.add(getRestrictions("obs", concept, expression, indexDate));
+			if (average) {
+				criteria.add(Restrictions.isNotNull("obs.valueNumeric"));
+			}
+			criteria.setProjection(Projections.projectionList().add(Projections.groupProperty("obs.personId")).add(
+			    average ? Projections.avg("obs.valueNumeric") : Projections.rowCount()));
+			
+			for (Object[] row : (List<Object[]>) criteria.list()) {
+				aggregates.put((Integer) row[0], (Number) row[1]);
+			}
+		}
+		return aggregates;
+	}
+	
+	private Iterable<List<Integer>> getChunks(Cohort who) {
+		return who.getMemberIdBitmap(true).chunks(MAX_PATIENTS_PER_QUERY);
+	}
+	
+	private Conjunction getRestrictions(String alias, Concept concept, LogicExpression expression, Date indexDate) {
+		Conjunction restrictions = Restrictions.conjunction();
+		restrictions.add(Restrictions.eq(alias + ".concept", concept));
+		restrictions.add(Restrictions.eq(alias + ".voided", false));
+		restrictions.add(Restrictions.le(alias + ".obsDatetime", indexDate));
+		
+		LogicExpression restriction = expression;
+		while (restriction instanceof LogicExpressionBinary) {
+			Operator operator = restriction.getOperator();
+			Operand operand = restriction.getRightOperand();
+			if (Operator.WITHIN.equals(operator)) {
+				Date from = new Date(indexDate.getTime() - ((Duration) operand).getDurationInMillis());
+				restrictions.add(Restrictions.ge(alias + ".obsDatetime", from));
+			} else if (Operator.BEFORE.equals(operator)) {
+				restrictions.add(Restrictions.lt(alias + ".obsDatetime", ((OperandDate) operand).asDate()));
+			} else if (Operator.AFTER.equals(operator)) {
+				restrictions.add(Restrictions.gt(alias + ".obsDatetime", ((OperandDate) operand).asDate()));
+			} else if (Operator.ASOF.equals(operator)) {
+				restrictions.add(Restrictions.le(alias + ".obsDatetime", ((OperandDate) operand).asDate()));
+			} else {
+				Double value = ((OperandNumeric) operand).asDouble();
+				String property = alias + ".valueNumeric";
+				if (Operator.EQUALS.equals(operator)) {
+					restrictions.add(Restrictions.eq(property, value));
+				} else if (Operator.GT.equals(operator)) {
+					restrictions.add(Restrictions.gt(property, value));
+				} else if (Operator.GTE.equals(operator)) {
+					restrictions.add(Restrictions.ge(property, value));
+				} else if (Operator.LT.equals(operator)) {
+					restrictions.add(Restrictions.lt(property, value));
+				} else {
+					restrictions.add(Restrictions.le(property, value));
+				}
+			}
+			restriction = (LogicExpression) ((LogicExpressionBinary) restriction).getLeftOperand();
+		}
+		return restrictions;
+	}
+	
+	private boolean supportsTransform(LogicTransform transform) {
+		if (transform == null) {
+			return true;
+		}
+		Operator operator = transform.getTransformOperator();
+		return Operator.LAST.equals(operator) || Operator.FIRST.equals(operator) || Operator.DISTINCT.equals(operator)
+		        || isAggregate(operator);
+	}
+	
+	private boolean isAggregate(Operator operator) {
+		return Operator.COUNT.equals(operator) || Operator.AVERAGE.equals(operator) || Operator.EXISTS.equals(operator)
+		        || Operator.NOT_EXISTS.equals(operator);
+	}
+	
+	/**
+	 * Only the date restrictions and the numeric comparisons, which mean the same in the database as
+	 * in {@link org.mrs.logic.impl.ResultFilter}, are supported. The restrictions below the
+	 * expression must not have transforms since a database restriction applies before them.
+	 */
+	private boolean supportsRestrictions(LogicExpression expression) {
+		if (expression instanceof LogicExpressionUnary) {
+			return expression.getOperator() == null && expression.getRightOperand() instanceof OperandString;
+		}
+		
+		Operator operator = expression.getOperator();
+		Operand operand = expression.getRightOperand();
+		boolean supported;
+		if (Operator.WITHIN.equals(operator)) {
+			supported = operand instanceof Duration;
+		} else if (Operator.BEFORE.equals(operator) || Operator.AFTER.equals(operator) || Operator.ASOF.equals(operator)) {
+			supported = operand instanceof OperandDate;
+		} else if (Operator.EQUALS.equals(operator) || Operator.GT.equals(operator) || Operator.GTE.equals(operator)
+		        || Operator.LT.equals(operator) || Operator.LTE.equals(operator)) {
+			supported = operand instanceof OperandNumeric;
+		} else {
+			supported = false;
+		}
+		
+		Operand left = ((LogicExpressionBinary) expression).getLeftOperand();
+		return supported && left instanceof LogicExpression && ((LogicExpression) left).getTransform() == null
+		        && supportsRestrictions((LogicExpression) left);
+	}
+}
@@ -0,0 +1,377 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.mrs.Cohort;
+import org.mrs.Patient;
+import org.mrs.api.context.Context;
+import org.mrs.logic.LogicContext;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.Rule;
+import org.mrs.logic.datasource.LogicDataSource;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.result.Result;
+import org.mrs.logic.rule.ReferenceRule;
+
+/**
+ * The context of one evaluation by the {@link LogicServiceImpl}. Data source keys are read for the
+ * whole cohort of the evaluation at once: the first time a rule reads a key for one patient, the key
+ * is read for all patients of the cohort with a single data source call and the results of the
+ * other patients are kept for when the rule gets to them. Results are looked up in and added to the
+ * {@link LogicResultCache}.
+ *
+ * @since 2.3.0
+ */
+public class LogicContextImpl implements LogicContext {
+	
+	private final LogicServiceImpl logicService;
+	
+	private final Cohort patients;
+	
+	private final Set<Integer> patientIds;
+	
+	private Date indexDate = new Date();
+	
+	private boolean indexDateSet = false;
+	
+	private final Map<String, Object> globalParameters = new HashMap<>();
+	
+	// rules resolved by token, so that data sources aren't asked for their keys for every patient
+	private final Map<String, Rule> rules = new HashMap<>();
+	
+	// results read from the data sources for the patients of the cohort, by data source, criteria and index date
+	private final Map<String, Map<Integer, Result>> readResults = new HashMap<>();
+	
+	public LogicContextImpl(LogicServiceImpl logicService, Cohort patients) {
+		this.logicService = logicService;
+		this.patients = patients;
+		this.patientIds = patients == null ? Collections.emptySet() : patients.getMemberIds();
+	}
+	
+	/**
+	 * Evaluates a criteria for all patients of a cohort. Criteria on data source keys are handed to
+	 * the data source as a whole, rules are evaluated patient by patient.
+	 *
+	 * @param who the patients
+	 * @param criteria the criteria
+	 * @param parameters the rule parameters
+	 * @return the result of each patient
+	 * @throws LogicException
+	 */
+	public Map<Integer, Result> eval(Cohort who, LogicCriteria criteria, Map<String, Object> parameters)
+	        throws LogicException {
+		Rule rule = getRule(criteria.getRootToken());
+		if (rule instanceof ReferenceRule) {
+			ReferenceRule reference = (ReferenceRule) rule;
+			return read(who, who.getMemberIds(), getLogicDataSource(reference.getDataSourceName()),
+			    toDataSourceCriteria(criteria));
+		}
+		
+		Map<Integer, Result> results = new HashMap<>();
+		for (Integer patientId : who.getMemberIds()) {
+			results.put(patientId, eval(patientId, criteria, parameters));
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#getPatient(java.lang.Integer)
+	 */
+	@Override
+	public Patient getPatient(Integer patientId) {
+		return Context.getPatientService().getPatient(patientId);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#eval(java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	public Result eval(Integer patientId, String token) throws LogicException {
+		return eval(patientId, new LogicCriteriaImpl(token), null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#eval(java.lang.Integer, java.lang.String, java.util.Map)
+	 */
+	@Override
+	public Result eval(Integer patientId, String token, Map<String, Object> parameters) throws LogicException {
+		return eval(patientId, new LogicCriteriaImpl(token), parameters);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#eval(java.lang.Integer, org.mrs.logic.LogicCriteria,
+	 *      java.util.Map)
+	 */
+	@Override
+	public Result eval(Integer patientId, LogicCriteria criteria, Map<String, Object> parameters) throws LogicException {
+		Rule rule = getRule(criteria.getRootToken());
+		if (rule instanceof ReferenceRule) {
+			ReferenceRule reference = (ReferenceRule) rule;
+			return read(patientId, getLogicDataSource(reference.getDataSourceName()), toDataSourceCriteria(criteria));
+		}
+		
+		LogicResultCache cache = logicService.getResultCache();
+		String key = criteria.toString();
+		Date cacheDate = getCacheDate();
+		Result result = cache == null ? null : cache.get(key, parameters, patientId, cacheDate);
+		if (result == null) {
+			result = ResultFilter.evaluate(criteria.getExpression(), expression -> {
+				String token = getToken(expression);
+				if (token == null) {
+					return null;
+				}
+				Result tokenResult = getRule(token).eval(this, patientId, parameters);
+				return ResultFilter.applyTransform(tokenResult, expression.getTransform());
+			}, indexDate);
+			
+			if (cache != null) {
+				cache.put(key, parameters, patientId, cacheDate, result, rule.getTTL());
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#getLogicDataSource(java.lang.String)
+	 */
+	@Override
+	public LogicDataSource getLogicDataSource(String name) {
+		LogicDataSource dataSource = logicService.getLogicDataSource(name);
+		if (dataSource == null) {
+			throw new LogicException("No logic data source registered as '" + name + "'");
+		}
+		return dataSource;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#read(java.lang.Integer, org.mrs.logic.datasource.LogicDataSource,
+	 *      java.lang.String)
+	 */
+	@Override
+	public Result read(Integer patientId, LogicDataSource dataSource, String key) throws LogicException {
+		return read(patientId, dataSource, new LogicCriteriaImpl(key));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#read(java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	public Result read(Integer patientId, String key) throws LogicException {
+		return read(patientId, new LogicCriteriaImpl(key));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#read(java.lang.Integer, org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public Result read(Integer patientId, LogicCriteria criteria) throws LogicException {
+		Rule rule = getRule(criteria.getRootToken());
+		if (!(rule instanceof ReferenceRule)) {
+			throw new LogicException("'" + criteria.getRootToken() + "' is not a data source key");
+		}
+		ReferenceRule reference = (ReferenceRule) rule;
+		return read(patientId, getLogicDataSource(reference.getDataSourceName()), toDataSourceCriteria(criteria));
+	}
+	
+	/**
+	 * Reads the criteria for the patient, reading it for all patients of the cohort of this context
+	 * if it hasn't been read for the patient yet
+	 *
+	 * @see org.mrs.logic.LogicContext#read(java.lang.Integer, org.mrs.logic.datasource.LogicDataSource,
+	 *      org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public Result read(Integer patientId, LogicDataSource dataSource, LogicCriteria criteria) throws LogicException {
+		String key = getReadKey(dataSource, criteria) + "|" + indexDate.getTime();
+		Map<Integer, Result> results = readResults.get(key);
+		if (results == null || !results.containsKey(patientId)) {
+			Map<Integer, Result> read;
+			if (results == null && patientIds.contains(patientId)) {
+				read = read(patients, patientIds, dataSource, criteria);
+			} else {
+				Set<Integer> ids = Collections.singleton(patientId);
+				read = read(new Cohort(ids), ids, dataSource, criteria);
+			}
+			if (results == null) {
+				results = read;
+				readResults.put(key, results);
+			} else {
+				results.putAll(read);
+			}
+		}
+		
+		Result result = results.get(patientId);
+		return result == null ? Result.emptyResult() : result;
+	}
+	
+	/**
+	 * Reads a criteria from a data source for the patients whose results aren't cached
+	 */
+	private Map<Integer, Result> read(Cohort who, Set<Integer> ids, LogicDataSource dataSource, LogicCriteria criteria)
+	        throws LogicException {
+		LogicResultCache cache = logicService.getResultCache();
+		String key = getReadKey(dataSource, criteria);
+		Date cacheDate = getCacheDate();
+		
+		Map<Integer, Result> results = new HashMap<>();
+		List<Integer> missing = new ArrayList<>();
+		for (Integer patientId : ids) {
+			Result cached = cache == null ? null : cache.get(key, null, patientId, cacheDate);
+			if (cached == null) {
+				missing.add(patientId);
+			} else {
+				results.put(patientId, cached);
+			}
+		}
+		if (missing.isEmpty()) {
+			return results;
+		}
+		
+		Map<Integer, Result> read = dataSource.read(this, missing.size() == ids.size() ? who : new Cohort(missing),
+		    criteria);
+		for (Integer patientId : missing) {
+			Result result = read.get(patientId);
+			if (result == null) {
+				result = Result.emptyResult();
+			}
+			results.put(patientId, result);
+			if (cache != null) {
+				cache.put(key, null, patientId, cacheDate, result, dataSource.getDefaultTTL());
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#setIndexDate(java.util.Date)
+	 */
+	@Override
+	public void setIndexDate(Date indexDate) {
+		this.indexDate = indexDate;
+		this.indexDateSet = true;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#getIndexDate()
+	 */
+	@Override
+	public Date getIndexDate() {
+		return indexDate;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#today()
+	 */
+	@Override
+	public Date today() {
+		return getIndexDate();
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#setGlobalParameter(java.lang.String, java.lang.Object)
+	 */
+	@Override
+	public Object setGlobalParameter(String id, Object value) {
+		return globalParameters.put(id, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#getGlobalParameter(java.lang.String)
+	 */
+	@Override
+	public Object getGlobalParameter(String id) {
+		return globalParameters.get(id);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicContext#getGlobalParameters()
+	 */
+	@Override
+	public Collection<String> getGlobalParameters() {
+		return globalParameters.keySet();
+	}
+	
+	private Rule getRule(String token) {
+		Rule rule = rules.get(token);
+		if (rule == null) {
+			rule = logicService.getRule(token);
+			rules.put(token, rule);
+		}
+		return rule;
+	}
+	
+	/**
+	 * Results evaluated as of "today" are cached for the day, those of an explicit index date for
+	 * that exact date
+	 */
+	private Date getCacheDate() {
+		return indexDateSet ? indexDate : DateUtils.truncate(indexDate, Calendar.DATE);
+	}
+	
+	private String getReadKey(LogicDataSource dataSource, LogicCriteria criteria) {
+		return dataSource.getClass().getName() + "|" + criteria;
+	}
+	
+	/**
+	 * @return the token of a token expression, null for other expressions
+	 */
+	private static String getToken(LogicExpression expression) {
+		if (expression instanceof LogicExpressionUnary && expression.getOperator() == null
+		        && expression.getRightOperand() instanceof OperandString) {
+			return ((OperandString) expression.getRightOperand()).getValue();
+		}
+		return null;
+	}
+	
+	/**
+	 * Copies the criteria replacing tokens of the form <em>@dataSource.key</em> by the key, which is
+	 * what data sources expect
+	 */
+	private static LogicCriteria toDataSourceCriteria(LogicCriteria criteria) {
+		if (!ReferenceRule.isReference(criteria.getRootToken())) {
+			return criteria;
+		}
+		LogicCriteria copy = new LogicCriteriaImpl(toDataSourceExpression(criteria.getExpression()));
+		copy.setLogicParameters(criteria.getLogicParameters());
+		return copy;
+	}
+	
+	private static LogicExpression toDataSourceExpression(LogicExpression expression) {
+		LogicExpression copy;
+		if (expression instanceof LogicExpressionBinary) {
+			copy = new LogicExpressionBinary(toDataSourceOperand(((LogicExpressionBinary) expression).getLeftOperand()),
+			        expression.getOperator(), toDataSourceOperand(expression.getRightOperand()));
+		} else if (getToken(expression) != null) {
+			copy = new LogicExpressionUnary(new OperandString(ReferenceRule.getKey(getToken(expression))), null);
+		} else {
+			copy = new LogicExpressionUnary(toDataSourceOperand(expression.getRightOperand()), expression.getOperator());
+		}
+		copy.setTransform(expression.getTransform());
+		return copy;
+	}
+	
+	private static Operand toDataSourceOperand(Operand operand) {
+		return operand instanceof LogicExpression ? toDataSourceExpression((LogicExpression) operand) : operand;
+	}
+}
@@ -0,0 +1,528 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.mrs.logic.Duration;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.op.ComparisonOperator;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandCollection;
+import org.mrs.logic.op.OperandDate;
+import org.mrs.logic.op.OperandNumeric;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+
+/**
+ * Default implementation of {@link LogicCriteria}. Every method that appends to the criteria
+ * returns a new criteria wrapping the existing expression, transforms are applied to the current
+ * expression.
+ *
+ * @since 2.3.0
+ */
+public class LogicCriteriaImpl implements LogicCriteria {
+	
+	private LogicExpression expression;
+	
+	private Map<String, Object> logicParameters = new HashMap<>();
+	
+	/**
+	 * @param token the token of the rule or data source key the criteria applies to
+	 */
+	public LogicCriteriaImpl(String token) {
+		this(new LogicExpressionUnary(new OperandString(token), null));
+	}
+	
+	public LogicCriteriaImpl(Operator operator, Operand operand) {
+		this(new LogicExpressionUnary(operand, operator));
+	}
+	
+	public LogicCriteriaImpl(LogicExpression expression) {
+		this.expression = expression;
+	}
+	
+	private LogicCriteria newCriteria(LogicExpression newExpression) {
+		LogicCriteriaImpl criteria = new LogicCriteriaImpl(newExpression);
+		criteria.setLogicParameters(logicParameters);
+		return criteria;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#appendExpression(org.mrs.logic.op.Operator,
+	 *      org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria appendExpression(Operator operator, Operand operand) {
+		if (operator instanceof ComparisonOperator && !operand.supports((ComparisonOperator) operator)) {
+			throw new LogicException("'" + operand + "' can't be used with the " + operator + " operator");
+		}
+		return newCriteria(new LogicExpressionBinary(expression, operator, operand));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#appendExpression(org.mrs.logic.op.Operator, java.lang.String)
+	 */
+	@Override
+	public LogicCriteria appendExpression(Operator operator, String operand) {
+		return appendExpression(operator, new OperandString(operand));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#appendExpression(org.mrs.logic.op.Operator, double)
+	 */
+	@Override
+	public LogicCriteria appendExpression(Operator operator, double operand) {
+		return appendExpression(operator, new OperandNumeric(operand));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#applyTransform(org.mrs.logic.op.Operator)
+	 */
+	@Override
+	public LogicCriteria applyTransform(Operator operator) {
+		expression.setTransform(new LogicTransform(operator));
+		return this;
+	}
+	
+	private LogicCriteria applyTransform(Operator operator, Integer numResults, String sortColumn) {
+		LogicTransform transform = new LogicTransform(operator, numResults);
+		transform.setSortColumn(sortColumn);
+		expression.setTransform(transform);
+		return this;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#appendCriteria(org.mrs.logic.op.Operator,
+	 *      org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public LogicCriteria appendCriteria(Operator operator, LogicCriteria logicCriteria) {
+		return newCriteria(new LogicExpressionBinary(expression, operator, logicCriteria.getExpression()));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#and(org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public LogicCriteria and(LogicCriteria logicCriteria) {
+		return appendCriteria(Operator.AND, logicCriteria);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#or(org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public LogicCriteria or(LogicCriteria logicCriteria) {
+		return appendCriteria(Operator.OR, logicCriteria);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#not()
+	 */
+	@Override
+	public LogicCriteria not() {
+		return newCriteria(new LogicExpressionUnary(expression, Operator.NOT));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#count()
+	 */
+	@Override
+	public LogicCriteria count() {
+		return applyTransform(Operator.COUNT);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#average()
+	 */
+	@Override
+	public LogicCriteria average() {
+		return applyTransform(Operator.AVERAGE);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#last()
+	 */
+	@Override
+	public LogicCriteria last() {
+		return applyTransform(Operator.LAST);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#last(java.lang.Integer)
+	 */
+	@Override
+	public LogicCriteria last(Integer numResults) {
+		return applyTransform(Operator.LAST, numResults, null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#first()
+	 */
+	@Override
+	public LogicCriteria first() {
+		return applyTransform(Operator.FIRST);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#first(java.lang.Integer)
+	 */
+	@Override
+	public LogicCriteria first(Integer numResults) {
+		return applyTransform(Operator.FIRST, numResults, null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#first(java.lang.String)
+	 */
+	@Override
+	public LogicCriteria first(String sortComponent) {
+		return applyTransform(Operator.FIRST, null, sortComponent);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#first(java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	public LogicCriteria first(Integer numResults, String sortComponent) {
+		return applyTransform(Operator.FIRST, numResults, sortComponent);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#distinct()
+	 */
+	@Override
+	public LogicCriteria distinct() {
+		return applyTransform(Operator.DISTINCT);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#exists()
+	 */
+	@Override
+	public LogicCriteria exists() {
+		return applyTransform(Operator.EXISTS);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#notExists()
+	 */
+	@Override
+	public LogicCriteria notExists() {
+		return applyTransform(Operator.NOT_EXISTS);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#asOf(java.util.Date)
+	 */
+	@Override
+	public LogicCriteria asOf(Date value) {
+		return appendExpression(Operator.ASOF, new OperandDate(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#before(java.util.Date)
+	 */
+	@Override
+	public LogicCriteria before(Date value) {
+		return appendExpression(Operator.BEFORE, new OperandDate(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#after(java.util.Date)
+	 */
+	@Override
+	public LogicCriteria after(Date value) {
+		return appendExpression(Operator.AFTER, new OperandDate(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#in(java.util.Collection)
+	 */
+	@Override
+	public LogicCriteria in(Collection<?> value) {
+		return appendExpression(Operator.IN, new OperandCollection(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#contains(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria contains(Operand value) {
+		return appendExpression(Operator.CONTAINS, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#contains(int)
+	 */
+	@Override
+	public LogicCriteria contains(int value) {
+		return appendExpression(Operator.CONTAINS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#contains(float)
+	 */
+	@Override
+	public LogicCriteria contains(float value) {
+		return appendExpression(Operator.CONTAINS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#contains(double)
+	 */
+	@Override
+	public LogicCriteria contains(double value) {
+		return appendExpression(Operator.CONTAINS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#contains(java.lang.String)
+	 */
+	@Override
+	public LogicCriteria contains(String value) {
+		return appendExpression(Operator.CONTAINS, new OperandString(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#equalTo(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria equalTo(Operand value) {
+		return appendExpression(Operator.EQUALS, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#equalTo(int)
+	 */
+	@Override
+	public LogicCriteria equalTo(int value) {
+		return appendExpression(Operator.EQUALS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#equalTo(float)
+	 */
+	@Override
+	public LogicCriteria equalTo(float value) {
+		return appendExpression(Operator.EQUALS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#equalTo(double)
+	 */
+	@Override
+	public LogicCriteria equalTo(double value) {
+		return appendExpression(Operator.EQUALS, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#equalTo(java.lang.String)
+	 */
+	@Override
+	public LogicCriteria equalTo(String value) {
+		return appendExpression(Operator.EQUALS, new OperandString(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gte(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria gte(Operand value) {
+		return appendExpression(Operator.GTE, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gte(int)
+	 */
+	@Override
+	public LogicCriteria gte(int value) {
+		return appendExpression(Operator.GTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gte(float)
+	 */
+	@Override
+	public LogicCriteria gte(float value) {
+		return appendExpression(Operator.GTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gte(double)
+	 */
+	@Override
+	public LogicCriteria gte(double value) {
+		return appendExpression(Operator.GTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gt(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria gt(Operand value) {
+		return appendExpression(Operator.GT, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gt(int)
+	 */
+	@Override
+	public LogicCriteria gt(int value) {
+		return appendExpression(Operator.GT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gt(float)
+	 */
+	@Override
+	public LogicCriteria gt(float value) {
+		return appendExpression(Operator.GT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#gt(double)
+	 */
+	@Override
+	public LogicCriteria gt(double value) {
+		return appendExpression(Operator.GT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lt(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria lt(Operand value) {
+		return appendExpression(Operator.LT, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lt(int)
+	 */
+	@Override
+	public LogicCriteria lt(int value) {
+		return appendExpression(Operator.LT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lt(float)
+	 */
+	@Override
+	public LogicCriteria lt(float value) {
+		return appendExpression(Operator.LT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lt(double)
+	 */
+	@Override
+	public LogicCriteria lt(double value) {
+		return appendExpression(Operator.LT, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lte(org.mrs.logic.op.Operand)
+	 */
+	@Override
+	public LogicCriteria lte(Operand value) {
+		return appendExpression(Operator.LTE, value);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lte(int)
+	 */
+	@Override
+	public LogicCriteria lte(int value) {
+		return appendExpression(Operator.LTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lte(float)
+	 */
+	@Override
+	public LogicCriteria lte(float value) {
+		return appendExpression(Operator.LTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#lte(double)
+	 */
+	@Override
+	public LogicCriteria lte(double value) {
+		return appendExpression(Operator.LTE, new OperandNumeric(value));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#within(org.mrs.logic.Duration)
+	 */
+	@Override
+	public LogicCriteria within(Duration duration) {
+		return appendExpression(Operator.WITHIN, duration);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#getLogicParameters()
+	 */
+	@Override
+	public Map<String, Object> getLogicParameters() {
+		return logicParameters;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#setLogicParameters(java.util.Map)
+	 */
+	@Override
+	public void setLogicParameters(Map<String, Object> logicParameters) {
+		this.logicParameters = logicParameters == null ? new HashMap<>() : new HashMap<>(logicParameters);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#getRootToken()
+	 */
+	@Override
+	public String getRootToken() {
+		return expression.getRootToken();
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicCriteria#getExpression()
+	 */
+	@Override
+	public LogicExpression getExpression() {
+		return expression;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof LogicCriteriaImpl)) {
+			return false;
+		}
+		LogicCriteriaImpl other = (LogicCriteriaImpl) obj;
+		return toString().equals(other.toString()) && logicParameters.equals(other.logicParameters);
+	}
+	
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return expression.toString();
+	}
+	
+}
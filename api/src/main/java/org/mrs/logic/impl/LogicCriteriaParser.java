@@ -0,0 +1,312 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mrs.logic.Duration;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandDate;
+import org.mrs.logic.op.OperandNumeric;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+
+/**
+ * Parses criteria strings such as <code>LAST 'CD4 COUNT' &lt; 200 WITHIN 6 MONTHS</code>. The
+ * grammar, keywords being case insensitive:
+ *
+ * <pre>
+ * criteria    := and { OR and }
+ * and         := unary { AND unary }
+ * unary       := NOT unary | primary
+ * primary     := [ transform ] ( token | '(' criteria ')' ) { restriction }
+ * transform   := LAST [n] | FIRST [n] | COUNT | AVERAGE | DISTINCT | EXISTS | NOT EXISTS
+ * restriction := ( &lt; | &lt;= | &gt; | &gt;= | = | CONTAINS ) value | WITHIN n units
+ *              | BEFORE date | AFTER date | AS OF date
+ * </pre>
+ *
+ * Tokens and text values containing spaces are quoted with ' or " or enclosed in braces, dates are
+ * written as yyyy-MM-dd. A transform applies to the token or parenthesized criteria right after
+ * it, before the restrictions that follow.
+ *
+ * @since 2.3.0
+ */
+public class LogicCriteriaParser {
+	
+	private static final Pattern TOKENS = Pattern
+	        .compile("\\s*(?:'([^']*)'|\"([^\"]*)\"|\\{([^}]*)\\}|(<=|>=|<|>|=|\\(|\\))|([^\\s'\"{}()<>=]+))");
+	
+	private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+	
+	private final String criteria;
+	
+	private final List<String> tokens = new ArrayList<>();
+	
+	// whether each token was quoted, quoted tokens are never keywords
+	private final List<Boolean> quoted = new ArrayList<>();
+	
+	private int position = 0;
+	
+	private LogicCriteriaParser(String criteria) {
+		this.criteria = criteria;
+		Matcher matcher = TOKENS.matcher(criteria);
+		int end = 0;
+		while (matcher.find() && matcher.start() == end && matcher.end() > end) {
+			end = matcher.end();
+			for (int group = 1; group <= 5; group++) {
+				if (matcher.group(group) != null) {
+					tokens.add(matcher.group(group));
+					quoted.add(group <= 3);
+					break;
+				}
+			}
+		}
+		if (criteria.substring(end).trim().length() > 0) {
+			throw error("unexpected character at " + end);
+		}
+	}
+	
+	/**
+	 * @param criteria the criteria string
+	 * @return the parsed criteria
+	 * @throws LogicException if the string is not a valid criteria
+	 */
+	public static LogicCriteria parse(String criteria) throws LogicException {
+		if (criteria == null || criteria.trim().isEmpty()) {
+			throw new LogicException("The criteria is empty");
+		}
+		
+		LogicCriteriaParser parser = new LogicCriteriaParser(criteria);
+		LogicCriteria result = parser.parseOr();
+		if (parser.position < parser.tokens.size()) {
+			throw parser.error("unexpected '" + parser.tokens.get(parser.position) + "'");
+		}
+		return result;
+	}
+	
+	private LogicCriteria parseOr() {
+		LogicCriteria result = parseAnd();
+		while (accept("OR")) {
+			result = result.or(parseAnd());
+		}
+		return result;
+	}
+	
+	private LogicCriteria parseAnd() {
+		LogicCriteria result = parseUnary();
+		while (accept("AND")) {
+			result = result.and(parseUnary());
+		}
+		return result;
+	}
+	
+	private LogicCriteria parseUnary() {
+		if (isKeyword(position, "NOT") && !isKeyword(position + 1, "EXISTS")) {
+			position++;
+			return parseUnary().not();
+		}
+		return parsePrimary();
+	}
+	
+	private LogicCriteria parsePrimary() {
+		String transform = null;
+		Integer numResults = null;
+		if (accept("NOT")) {
+			expect("EXISTS");
+			transform = "NOT EXISTS";
+		} else {
+			for (String keyword : new String[] { "LAST", "FIRST", "COUNT", "AVERAGE", "DISTINCT", "EXISTS" }) {
+				if (accept(keyword)) {
+					transform = keyword;
+					break;
+				}
+			}
+			if (("LAST".equals(transform) || "FIRST".equals(transform)) && peekNumber() != null) {
+				numResults = peekNumber().intValue();
+				position++;
+			}
+		}
+		
+		LogicCriteria result;
+		if (accept("(")) {
+			result = parseOr();
+			expect(")");
+			if (transform != null && result.getExpression().getTransform() != null) {
+				result = new LogicCriteriaImpl(new LogicExpressionUnary(result.getExpression(), null));
+			}
+		} else {
+			result = new LogicCriteriaImpl(nextValue());
+		}
+		
+		if ("LAST".equals(transform)) {
+			result = numResults == null ? result.last() : result.last(numResults);
+		} else if ("FIRST".equals(transform)) {
+			result = numResults == null ? result.first() : result.first(numResults);
+		} else if ("COUNT".equals(transform)) {
+			result = result.count();
+		} else if ("AVERAGE".equals(transform)) {
+			result = result.average();
+		} else if ("DISTINCT".equals(transform)) {
+			result = result.distinct();
+		} else if ("EXISTS".equals(transform)) {
+			result = result.exists();
+		} else if ("NOT EXISTS".equals(transform)) {
+			result = result.notExists();
+		}
+		
+		while (true) {
+			if (accept("<")) {
+				result = result.appendExpression(Operator.LT, parseValue());
+			} else if (accept("<=")) {
+				result = result.appendExpression(Operator.LTE, parseValue());
+			} else if (accept(">")) {
+				result = result.appendExpression(Operator.GT, parseValue());
+			} else if (accept(">=")) {
+				result = result.appendExpression(Operator.GTE, parseValue());
+			} else if (accept("=")) {
+				result = result.appendExpression(Operator.EQUALS, parseValue());
+			} else if (accept("CONTAINS")) {
+				result = result.appendExpression(Operator.CONTAINS, parseValue());
+			} else if (accept("WITHIN")) {
+				result = result.within(parseDuration());
+			} else if (accept("BEFORE")) {
+				result = result.before(parseDate());
+			} else if (accept("AFTER")) {
+				result = result.after(parseDate());
+			} else if (accept("AS")) {
+				expect("OF");
+				result = result.asOf(parseDate());
+			} else {
+				return result;
+			}
+		}
+	}
+	
+	private Operand parseValue() {
+		boolean wasQuoted = position < quoted.size() && quoted.get(position);
+		String value = nextValue();
+		if (!wasQuoted && DATE.matcher(value).matches()) {
+			return new OperandDate(toDate(value));
+		}
+		if (!wasQuoted) {
+			try {
+				return new OperandNumeric(Double.valueOf(value));
+			}
+			catch (NumberFormatException e) {
+				// not a number, so it is a text value
+			}
+		}
+		return new OperandString(value);
+	}
+	
+	private Duration parseDuration() {
+		Double amount = peekNumber();
+		if (amount == null) {
+			throw error("expected a number after WITHIN");
+		}
+		position++;
+		String units = nextValue().toUpperCase();
+		if (units.endsWith("S")) {
+			units = units.substring(0, units.length() - 1);
+		}
+		switch (units) {
+			case "SECOND":
+				return Duration.seconds(amount);
+			case "MINUTE":
+				return Duration.minutes(amount);
+			case "HOUR":
+				return Duration.hours(amount);
+			case "DAY":
+				return Duration.days(amount);
+			case "WEEK":
+				return Duration.weeks(amount);
+			case "MONTH":
+				return Duration.months(amount);
+			case "YEAR":
+				return Duration.years(amount);
+			default:
+				throw error("unknown units '" + units + "'");
+		}
+	}
+	
+	private Date parseDate() {
+		String value = nextValue();
+		if (!DATE.matcher(value).matches()) {
+			throw error("expected a date of the form yyyy-MM-dd instead of '" + value + "'");
+		}
+		return toDate(value);
+	}
+	
+	private Date toDate(String value) {
+		try {
+			return new SimpleDateFormat("yyyy-MM-dd").parse(value);
+		}
+		catch (ParseException e) {
+			throw error("invalid date '" + value + "'");
+		}
+	}
+	
+	private Double peekNumber() {
+		if (position >= tokens.size() || quoted.get(position)) {
+			return null;
+		}
+		try {
+			return Double.valueOf(tokens.get(position));
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private boolean isKeyword(int index, String keyword) {
+		return index < tokens.size() && !quoted.get(index) && tokens.get(index).equalsIgnoreCase(keyword);
+	}
+	
+	private boolean accept(String keyword) {
+		if (isKeyword(position, keyword)) {
+			position++;
+			return true;
+		}
+		return false;
+	}
+	
+	private void expect(String keyword) {
+		if (!accept(keyword)) {
+			throw error("expected " + keyword);
+		}
+	}
+	
+	private String next() {
+		if (position >= tokens.size()) {
+			throw error("unexpected end");
+		}
+		return tokens.get(position++);
+	}
+	
+	private String nextValue() {
+		if (position < tokens.size() && !quoted.get(position) && ("(".equals(tokens.get(position)) || ")".equals(tokens
+		        .get(position)))) {
+			throw error("unexpected '" + tokens.get(position) + "'");
+		}
+		return next();
+	}
+	
+	private LogicException error(String message) {
+		return new LogicException("Invalid criteria \"" + criteria + "\": " + message);
+	}
+}
@@ -0,0 +1,94 @@
+package org.mrs.logic.impl;
+
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.op.ComparisonOperator;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.Operator;
+
+/**
+ * A logic expression of the form <code>(Operand Operator Operand)</code>. The left operand is the
+ * expression being restricted, e.g. <code>('CD4 COUNT' &lt; 200)</code>, or being combined with
+ * another expression by {@link Operator#AND} or {@link Operator#OR}.
+ *
+ * @since 2.3.0
+ */
+public class LogicExpressionBinary implements LogicExpression {
+	
+	private Operand leftOperand;
+	
+	private Operator operator;
+	
+	private Operand rightOperand;
+	
+	private LogicTransform transform;
+	
+	public LogicExpressionBinary(Operand leftOperand, Operator operator, Operand rightOperand) {
+		this.leftOperand = leftOperand;
+		this.operator = operator;
+		this.rightOperand = rightOperand;
+	}
+	
+	public Operand getLeftOperand() {
+		return leftOperand;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getOperator()
+	 */
+	@Override
+	public Operator getOperator() {
+		return operator;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getRootToken()
+	 */
+	@Override
+	public String getRootToken() {
+		return leftOperand instanceof LogicExpression ? ((LogicExpression) leftOperand).getRootToken() : null;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getRightOperand()
+	 */
+	@Override
+	public Operand getRightOperand() {
+		return rightOperand;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getTransform()
+	 */
+	@Override
+	public LogicTransform getTransform() {
+		return transform;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#setTransform(org.mrs.logic.LogicTransform)
+	 */
+	@Override
+	public void setTransform(LogicTransform transform) {
+		this.transform = transform;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		if (transform != null) {
+			result.append(transform).append(" ");
+		}
+		return result.append("(").append(leftOperand).append(" ").append(operator).append(" ").append(rightOperand)
+		        .append(")").toString();
+	}
+	
+}
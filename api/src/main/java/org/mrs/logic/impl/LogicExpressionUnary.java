@@ -0,0 +1,100 @@
+package org.mrs.logic.impl;
+
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.op.ComparisonOperator;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+
+/**
+ * A logic expression with a single operand: either a bare token (no operator) or an operator such
+ * as {@link Operator#NOT} applied to another expression
+ *
+ * @since 2.3.0
+ */
+public class LogicExpressionUnary implements LogicExpression {
+	
+	private Operand operand;
+	
+	private Operator operator;
+	
+	private LogicTransform transform;
+	
+	public LogicExpressionUnary(Operand operand, Operator operator) {
+		this.operand = operand;
+		this.operator = operator;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getOperator()
+	 */
+	@Override
+	public Operator getOperator() {
+		return operator;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getRootToken()
+	 */
+	@Override
+	public String getRootToken() {
+		if (operand instanceof LogicExpression) {
+			return ((LogicExpression) operand).getRootToken();
+		}
+		if (operand instanceof OperandString) {
+			return ((OperandString) operand).getValue();
+		}
+		return null;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getRightOperand()
+	 */
+	@Override
+	public Operand getRightOperand() {
+		return operand;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#getTransform()
+	 */
+	@Override
+	public LogicTransform getTransform() {
+		return transform;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicExpression#setTransform(org.mrs.logic.LogicTransform)
+	 */
+	@Override
+	public void setTransform(LogicTransform transform) {
+		this.transform = transform;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return false;
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		if (transform != null) {
+			result.append(transform).append(" ");
+		}
+		if (operator != null) {
+			result.append(operator).append(" ");
+		}
+		if (operand instanceof LogicExpression) {
+			result.append("(").append(operand).append(")");
+		} else {
+			result.append(operand);
+		}
+		return result.toString();
+	}
+	
+}
@@ -0,0 +1,226 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Hibernate;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.proxy.HibernateProxy;
+import org.mrs.Concept;
+import org.mrs.OpenmrsObject;
+import org.mrs.logic.result.Result;
+import org.springframework.cache.Cache;
+import org.springframework.cache.Cache.ValueWrapper;
+import org.springframework.cache.CacheManager;
+
+import net.sf.ehcache.Ehcache;
+import net.sf.ehcache.Element;
+
+/**
+ * Caches logic results per criteria, parameters, patient and index date. Each entry lives as long as
+ * the time to live of the rule or data source that produced it, results with a time to live of zero
+ * or less are not cached.
+ * <p>
+ * The results are held in the <code>logicResults</code> cache of ehcache-api.xml, which bounds the
+ * number of entries. Because a cached result outlives the session that loaded it, only the ids of
+ * its coded values and persistent result objects are cached, they are loaded from the current
+ * session again when the result is read from the cache.
+ *
+ * @since 2.3.0
+ */
+public class LogicResultCache {
+	
+	public static final String CACHE_NAME = "logicResults";
+	
+	private Cache cache;
+	
+	private SessionFactory sessionFactory;
+	
+	private final AtomicLong hitCount = new AtomicLong();
+	
+	private final AtomicLong missCount = new AtomicLong();
+	
+	public void setCacheManager(CacheManager cacheManager) {
+		this.cache = cacheManager.getCache(CACHE_NAME);
+	}
+	
+	public void setSessionFactory(SessionFactory sessionFactory) {
+		this.sessionFactory = sessionFactory;
+	}
+	
+	/**
+	 * @param criteria the criteria or data source key and criteria the result is for
+	 * @param parameters the parameters the result was evaluated with
+	 * @param patientId the patient
+	 * @param indexDate the index date the result was evaluated as of
+	 * @return the cached result or null if there is none that is still valid
+	 */
+	public Result get(String criteria, Map<String, Object> parameters, Integer patientId, Date indexDate) {
+		if (cache == null) {
+			return null;
+		}
+		
+		ValueWrapper cached = cache.get(new Key(criteria, parameters, patientId, indexDate));
+		if (cached == null) {
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return attach((Result) cached.get());
+	}
+	
+	/**
+	 * @param ttl the number of seconds the result is valid for
+	 * @see #get(String, Map, Integer, Date)
+	 */
+	public void put(String criteria, Map<String, Object> parameters, Integer patientId, Date indexDate, Result result,
+	        int ttl) {
+		if (cache == null || ttl <= 0) {
+			return;
+		}
+		
+		Key key = new Key(criteria, parameters, patientId, indexDate);
+		result = detach(result);
+		Object nativeCache = cache.getNativeCache();
+		if (nativeCache instanceof Ehcache) {
+			Element element = new Element(key, result);
+			element.setTimeToLive(ttl);
+			((Ehcache) nativeCache).put(element);
+		} else {
+			cache.put(key, result);
+		}
+	}
+	
+	public void clear() {
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+	
+	public long getHitCount() {
+		return hitCount.get();
+	}
+	
+	public long getMissCount() {
+		return missCount.get();
+	}
+	
+	public void resetStatistics() {
+		hitCount.set(0);
+		missCount.set(0);
+	}
+	
+	/**
+	 * Copies the result replacing its coded values with unsaved concepts that only hold the concept
+	 * id and its persistent result objects with references to them, so that the cached copy holds
+	 * nothing that belongs to the current session.
+	 */
+	private Result detach(Result result) {
+		if (sessionFactory == null) {
+			return result;
+		}
+		return result.copy(concept -> {
+			Integer conceptId = getId(concept);
+			return conceptId == null ? concept : new Concept(conceptId);
+		}, object -> {
+			Class<?> type = Hibernate.getClass(object);
+			if (object instanceof OpenmrsObject && sessionFactory.getClassMetadata(type) != null) {
+				Serializable id = getId(object);
+				if (id != null) {
+					return new EntityReference(type, id);
+				}
+			}
+			return object;
+		});
+	}
+	
+	/**
+	 * Copies a cached result loading its coded values and referenced result objects from the
+	 * current session.
+	 */
+	private Result attach(Result cached) {
+		if (sessionFactory == null) {
+			return cached;
+		}
+		Session session = sessionFactory.getCurrentSession();
+		return cached.copy(concept -> {
+			if (concept.getConceptId() == null) {
+				return concept;
+			}
+			return (Concept) session.get(Concept.class, concept.getConceptId());
+		}, object -> {
+			if (object instanceof EntityReference) {
+				EntityReference reference = (EntityReference) object;
+				return session.load(reference.type, reference.id);
+			}
+			return object;
+		});
+	}
+	
+	private static Integer getId(Object object) {
+		if (object instanceof HibernateProxy) {
+			return (Integer) ((HibernateProxy) object).getHibernateLazyInitializer().getIdentifier();
+		}
+		return ((OpenmrsObject) object).getId();
+	}
+	
+	private static final class EntityReference implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final Class<?> type;
+		
+		private final Serializable id;
+		
+		EntityReference(Class<?> type, Serializable id) {
+			this.type = type;
+			this.id = id;
+		}
+	}
+	
+	private static final class Key {
+		
+		private final String criteria;
+		
+		private final String parameters;
+		
+		private final Integer patientId;
+		
+		private final long indexDate;
+		
+		Key(String criteria, Map<String, Object> parameters, Integer patientId, Date indexDate) {
+			this.criteria = criteria;
+			this.parameters = parameters == null || parameters.isEmpty() ? "" : parameters.toString();
+			this.patientId = patientId;
+			this.indexDate = indexDate.getTime();
+		}
+		
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return indexDate == other.indexDate && Objects.equals(patientId, other.patientId)
+			        && criteria.equals(other.criteria) && parameters.equals(other.parameters);
+		}
+		
+		@Override
+		public int hashCode() {
+			return Objects.hash(criteria, parameters, patientId, indexDate);
+		}
+	}
+}
@@ -0,0 +1,394 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mrs.Cohort;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicService;
+import org.mrs.logic.Rule;
+import org.mrs.logic.datasource.LogicDataSource;
+import org.mrs.logic.result.Result;
+import org.mrs.logic.result.Result.Datatype;
+import org.mrs.logic.rule.ReferenceRule;
+import org.mrs.logic.rule.RuleParameterInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Default implementation of the {@link LogicService}. Criteria are evaluated for a whole cohort at
+ * a time: criteria on a data source key are handed to the data source once for all patients, and
+ * rules evaluated patient by patient read their data source keys for all patients of the cohort the
+ * first time they need them (see {@link LogicContextImpl}). Results are cached by the
+ * {@link LogicResultCache} for the time to live of the rule or data source they come from.
+ * <p>
+ * Rules and token tags are registered in memory, typically by the modules providing the rules when
+ * they are started.
+ *
+ * @since 2.3.0
+ */
+@Transactional(readOnly = true)
+public class LogicServiceImpl implements LogicService {
+	
+	private static final Logger log = LoggerFactory.getLogger(LogicServiceImpl.class);
+	
+	private final Map<String, Rule> rules = new ConcurrentHashMap<>();
+	
+	private final Map<String, Set<String>> tokenTags = new ConcurrentHashMap<>();
+	
+	private Map<String, LogicDataSource> logicDataSources = new LinkedHashMap<>();
+	
+	private LogicResultCache resultCache;
+	
+	public void setLogicDataSources(Map<String, LogicDataSource> logicDataSources) {
+		this.logicDataSources = new LinkedHashMap<>(logicDataSources);
+	}
+	
+	public void setResultCache(LogicResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+	
+	public LogicResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getAllTokens()
+	 */
+	@Override
+	public List<String> getAllTokens() {
+		return new ArrayList<>(new TreeSet<>(rules.keySet()));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getTokens(java.lang.String)
+	 */
+	@Override
+	public List<String> getTokens(String partialToken) {
+		List<String> tokens = new ArrayList<>();
+		for (String token : getAllTokens()) {
+			if (StringUtils.containsIgnoreCase(token, StringUtils.defaultString(partialToken))) {
+				tokens.add(token);
+			}
+		}
+		return tokens;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#addRule(java.lang.String, org.mrs.logic.Rule)
+	 */
+	@Override
+	public void addRule(String token, Rule rule) throws LogicException {
+		if (StringUtils.isBlank(token) || rule == null) {
+			throw new LogicException("A token and a rule are required");
+		}
+		rules.put(token, rule);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#addRule(java.lang.String, java.lang.String[],
+	 *      org.mrs.logic.Rule)
+	 */
+	@Override
+	public void addRule(String token, String[] tags, Rule rule) throws LogicException {
+		addRule(token, rule);
+		if (tags != null) {
+			for (String tag : tags) {
+				addTokenTag(token, tag);
+			}
+		}
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getRule(java.lang.String)
+	 */
+	@Override
+	public Rule getRule(String token) throws LogicException {
+		if (token == null) {
+			throw new LogicException("A token is required");
+		}
+		
+		Rule rule = rules.get(token);
+		if (rule != null) {
+			return rule;
+		}
+		
+		if (ReferenceRule.isReference(token)) {
+			String name = ReferenceRule.getDataSourceName(token);
+			LogicDataSource dataSource = getLogicDataSource(name);
+			if (dataSource == null) {
+				throw new LogicException("No logic data source registered as '" + name + "'");
+			}
+			return new ReferenceRule(name, dataSource, ReferenceRule.getKey(token));
+		}
+		
+		for (Map.Entry<String, LogicDataSource> entry : logicDataSources.entrySet()) {
+			if (entry.getValue().hasKey(token)) {
+				return new ReferenceRule(entry.getKey(), entry.getValue(), token);
+			}
+		}
+		throw new LogicException("No rule registered for token '" + token + "'");
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#updateRule(java.lang.String, org.mrs.logic.Rule)
+	 */
+	@Override
+	public void updateRule(String token, Rule rule) throws LogicException {
+		if (!rules.containsKey(token)) {
+			throw new LogicException("No rule registered for token '" + token + "'");
+		}
+		addRule(token, rule);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#removeRule(java.lang.String)
+	 */
+	@Override
+	public void removeRule(String token) throws LogicException {
+		rules.remove(token);
+		tokenTags.remove(token);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, java.lang.String)
+	 */
+	@Override
+	public Result eval(Integer patientId, String expression) throws LogicException {
+		return eval(patientId, parse(expression), null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, java.lang.String, java.util.Map)
+	 */
+	@Override
+	public Result eval(Integer patientId, String expression, Map<String, Object> parameters) throws LogicException {
+		return eval(patientId, parse(expression), parameters);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public Result eval(Integer patientId, LogicCriteria criteria) throws LogicException {
+		return eval(patientId, criteria, null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, org.mrs.logic.LogicCriteria,
+	 *      java.util.Map)
+	 */
+	@Override
+	public Result eval(Integer patientId, LogicCriteria criteria, Map<String, Object> parameters) throws LogicException {
+		LogicContextImpl context = new LogicContextImpl(this, new Cohort(Collections.singleton(patientId)));
+		return context.eval(patientId, criteria, getParameters(criteria, parameters));
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, java.util.Map, java.lang.String[])
+	 */
+	@Override
+	public Map<String, Result> eval(Integer patientId, Map<String, Object> parameters, String... expressions)
+	        throws LogicException {
+		LogicContextImpl context = new LogicContextImpl(this, new Cohort(Collections.singleton(patientId)));
+		Map<String, Result> results = new LinkedHashMap<>();
+		for (String expression : expressions) {
+			LogicCriteria criteria = parse(expression);
+			results.put(expression, context.eval(patientId, criteria, getParameters(criteria, parameters)));
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(java.lang.Integer, java.util.Map,
+	 *      org.mrs.logic.LogicCriteria[])
+	 */
+	@Override
+	public Map<LogicCriteria, Result> eval(Integer patientId, Map<String, Object> parameters, LogicCriteria... criteria)
+	        throws LogicException {
+		LogicContextImpl context = new LogicContextImpl(this, new Cohort(Collections.singleton(patientId)));
+		Map<LogicCriteria, Result> results = new LinkedHashMap<>();
+		for (LogicCriteria c : criteria) {
+			results.put(c, context.eval(patientId, c, getParameters(c, parameters)));
+		}
+		return results;
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(org.mrs.Cohort, java.lang.String)
+	 */
+	@Override
+	public Map<Integer, Result> eval(Cohort who, String expression) throws LogicException {
+		return eval(who, parse(expression), null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(org.mrs.Cohort, java.lang.String, java.util.Map)
+	 */
+	@Override
+	public Map<Integer, Result> eval(Cohort who, String expression, Map<String, Object> parameters)
+	        throws LogicException {
+		return eval(who, parse(expression), parameters);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(org.mrs.Cohort, org.mrs.logic.LogicCriteria)
+	 */
+	@Override
+	public Map<Integer, Result> eval(Cohort who, LogicCriteria criteria) throws LogicException {
+		return eval(who, criteria, null);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(org.mrs.Cohort, org.mrs.logic.LogicCriteria,
+	 *      java.util.Map)
+	 */
+	@Override
+	public Map<Integer, Result> eval(Cohort who, LogicCriteria criteria, Map<String, Object> parameters)
+	        throws LogicException {
+		return eval(who, Collections.singletonList(criteria), parameters).get(criteria);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#eval(org.mrs.Cohort, java.util.List)
+	 */
+	@Override
+	public Map<LogicCriteria, Map<Integer, Result>> eval(Cohort who, List<LogicCriteria> criterias)
+	        throws LogicException {
+		return eval(who, criterias, null);
+	}
+	
+	private Map<LogicCriteria, Map<Integer, Result>> eval(Cohort who, List<LogicCriteria> criterias,
+	        Map<String, Object> parameters) throws LogicException {
+		long start = System.currentTimeMillis();
+		LogicContextImpl context = new LogicContextImpl(this, who);
+		Map<LogicCriteria, Map<Integer, Result>> results = new LinkedHashMap<>();
+		for (LogicCriteria criteria : criterias) {
+			results.put(criteria, context.eval(who, criteria, getParameters(criteria, parameters)));
+		}
+		log.debug("Evaluated {} criteria for {} patients in {} ms", criterias.size(), who.size(),
+		    System.currentTimeMillis() - start);
+		return results;
+	}
+	
+	private Map<String, Object> getParameters(LogicCriteria criteria, Map<String, Object> parameters) {
+		return parameters != null ? parameters : criteria.getLogicParameters();
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#addTokenTag(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void addTokenTag(String token, String tag) {
+		tokenTags.computeIfAbsent(token, t -> ConcurrentHashMap.newKeySet()).add(tag);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#removeTokenTag(java.lang.String, java.lang.String)
+	 */
+	@Override
+	public void removeTokenTag(String token, String tag) {
+		Set<String> tags = tokenTags.get(token);
+		if (tags != null) {
+			tags.remove(tag);
+		}
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getTokenTags(java.lang.String)
+	 */
+	@Override
+	public Set<String> getTokenTags(String token) {
+		Set<String> tags = tokenTags.get(token);
+		return tags == null ? new HashSet<>() : new HashSet<>(tags);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getTokensWithTag(java.lang.String)
+	 */
+	@Override
+	public List<String> getTokensWithTag(String tag) {
+		Set<String> tokens = new TreeSet<>();
+		for (Map.Entry<String, Set<String>> entry : tokenTags.entrySet()) {
+			if (entry.getValue().contains(tag)) {
+				tokens.add(entry.getKey());
+			}
+		}
+		return new ArrayList<>(tokens);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getTags(java.lang.String)
+	 */
+	@Override
+	public List<String> getTags(String partialTag) {
+		Set<String> tags = new TreeSet<>();
+		for (Set<String> tokenTagSet : tokenTags.values()) {
+			for (String tag : tokenTagSet) {
+				if (StringUtils.containsIgnoreCase(tag, StringUtils.defaultString(partialTag))) {
+					tags.add(tag);
+				}
+			}
+		}
+		return new ArrayList<>(tags);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getDefaultDatatype(java.lang.String)
+	 */
+	@Override
+	public Datatype getDefaultDatatype(String token) {
+		return getRule(token).getDefaultDatatype();
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getParameterList(java.lang.String)
+	 */
+	@Override
+	public Set<RuleParameterInfo> getParameterList(String token) {
+		return getRule(token).getParameterList();
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getLogicDataSources()
+	 */
+	@Override
+	public Map<String, LogicDataSource> getLogicDataSources() {
+		return Collections.unmodifiableMap(logicDataSources);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#getLogicDataSource(java.lang.String)
+	 */
+	@Override
+	public LogicDataSource getLogicDataSource(String name) {
+		return logicDataSources.get(name);
+	}
+	
+	/**
+	 * @see org.mrs.logic.LogicService#parse(java.lang.String)
+	 */
+	@Override
+	public LogicCriteria parse(String criteria) {
+		return LogicCriteriaParser.parse(criteria);
+	}
+}
@@ -0,0 +1,280 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Function;
+
+import org.mrs.Concept;
+import org.mrs.ConceptName;
+import org.mrs.logic.Duration;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicTransform;
+import org.mrs.logic.op.Operand;
+import org.mrs.logic.op.OperandCollection;
+import org.mrs.logic.op.OperandDate;
+import org.mrs.logic.op.OperandNumeric;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+import org.mrs.logic.result.EmptyResult;
+import org.mrs.logic.result.Result;
+
+/**
+ * Applies the operators and transforms of a logic expression to results that are already in
+ * memory, e.g. the results of a rule or the part of an expression a data source could not push
+ * down into its query. The results of AND and OR are true/false results.
+ *
+ * @since 2.3.0
+ */
+public class ResultFilter {
+	
+	private static final Comparator<Result> BY_RESULT_DATE = Comparator.comparing(Result::getResultDate, Comparator
+	        .nullsFirst(Comparator.naturalOrder()));
+	
+	private ResultFilter() {
+	}
+	
+	/**
+	 * Evaluates an expression for one patient
+	 *
+	 * @param expression the expression to evaluate
+	 * @param source returns the result of the sub expressions it knows of, with their transforms
+	 *            applied, and null for the others. Must know the result of every token.
+	 * @param indexDate the date the expression is evaluated as of
+	 * @return the result
+	 * @throws LogicException if the expression uses an unsupported operator
+	 */
+	public static Result evaluate(LogicExpression expression, Function<LogicExpression, Result> source, Date indexDate)
+	        throws LogicException {
+		return evaluateNode(expression, source, getIndexDate(expression, indexDate));
+	}
+	
+	/**
+	 * @param expression an expression
+	 * @param indexDate the index date of the evaluation
+	 * @return the date of the first {@link Operator#ASOF} restriction of the expression, else the
+	 *         given index date
+	 */
+	public static Date getIndexDate(LogicExpression expression, Date indexDate) {
+		if (Operator.ASOF.equals(expression.getOperator()) && expression.getRightOperand() instanceof OperandDate) {
+			return ((OperandDate) expression.getRightOperand()).asDate();
+		}
+		
+		Operand nested = expression instanceof LogicExpressionBinary ? ((LogicExpressionBinary) expression)
+		        .getLeftOperand() : expression.getRightOperand();
+		return nested instanceof LogicExpression ? getIndexDate((LogicExpression) nested, indexDate) : indexDate;
+	}
+	
+	private static Result evaluateNode(LogicExpression expression, Function<LogicExpression, Result> source,
+	        Date indexDate) {
+		Result result = source.apply(expression);
+		if (result != null) {
+			return result;
+		}
+		
+		Operator operator = expression.getOperator();
+		Operand right = expression.getRightOperand();
+		if (expression instanceof LogicExpressionUnary) {
+			if (!(right instanceof LogicExpression)) {
+				throw new LogicException("No result for " + expression);
+			}
+			result = evaluateNode((LogicExpression) right, source, indexDate);
+			if (Operator.NOT.equals(operator)) {
+				result = new Result(!result.exists());
+			} else if (operator != null) {
+				throw new LogicException(operator + " is not supported as a unary operator");
+			}
+		} else {
+			Operand left = ((LogicExpressionBinary) expression).getLeftOperand();
+			result = evaluateNode((LogicExpression) left, source, indexDate);
+			if (Operator.AND.equals(operator)) {
+				result = new Result(result.exists() && evaluateNode((LogicExpression) right, source, indexDate).exists());
+			} else if (Operator.OR.equals(operator)) {
+				result = new Result(result.exists() || evaluateNode((LogicExpression) right, source, indexDate).exists());
+			} else {
+				result = filter(result, operator, right, indexDate);
+			}
+		}
+		return applyTransform(result, expression.getTransform());
+	}
+	
+	/**
+	 * @param result a single result or a list of results
+	 * @param operator a comparison operator or {@link Operator#ASOF}
+	 * @param operand the value to compare with
+	 * @param indexDate the date that {@link Operator#WITHIN} counts back from
+	 * @return the results matching the comparison
+	 */
+	public static Result filter(Result result, Operator operator, Operand operand, Date indexDate) throws LogicException {
+		List<Result> matching = new ArrayList<>();
+		for (Result item : toList(result)) {
+			if (matches(item, operator, operand, indexDate)) {
+				matching.add(item);
+			}
+		}
+		if (result.size() < 1) {
+			return matching.isEmpty() ? Result.emptyResult() : result;
+		}
+		return matching.isEmpty() ? Result.emptyResult() : new Result(matching);
+	}
+	
+	/**
+	 * @param result a single result or a list of results
+	 * @param transform the transform to apply, may be null
+	 * @return the transformed result
+	 */
+	public static Result applyTransform(Result result, LogicTransform transform) {
+		if (transform == null) {
+			return result;
+		}
+		
+		Operator operator = transform.getTransformOperator();
+		List<Result> items = toList(result);
+		if (Operator.COUNT.equals(operator)) {
+			return new Result(items.size());
+		} else if (Operator.EXISTS.equals(operator)) {
+			return new Result(!items.isEmpty());
+		} else if (Operator.NOT_EXISTS.equals(operator)) {
+			return new Result(items.isEmpty());
+		} else if (Operator.DISTINCT.equals(operator)) {
+			return items.isEmpty() ? Result.emptyResult() : new Result(items).unique();
+		} else if (Operator.AVERAGE.equals(operator)) {
+			double sum = 0;
+			int count = 0;
+			for (Result item : items) {
+				Double value = item.toNumber();
+				if (value != null) {
+					sum += value;
+					count++;
+				}
+			}
+			return count == 0 ? Result.emptyResult() : new Result(sum / count);
+		} else if (Operator.LAST.equals(operator) || Operator.FIRST.equals(operator)) {
+			List<Result> sorted = new ArrayList<>(items);
+			sorted.sort(Operator.LAST.equals(operator) ? BY_RESULT_DATE.reversed() : BY_RESULT_DATE);
+			int numResults = transform.getNumResults() == null ? 1 : transform.getNumResults();
+			if (sorted.size() > numResults) {
+				sorted = sorted.subList(0, numResults);
+			}
+			if (sorted.isEmpty()) {
+				return Result.emptyResult();
+			}
+			return numResults == 1 ? sorted.get(0) : new Result(sorted);
+		}
+		throw new LogicException(operator + " is not a transform operator");
+	}
+	
+	/**
+	 * @param result a single result or a list of results
+	 * @return the results in the list, the result itself if it is a single one, or an empty list if
+	 *         it is empty
+	 */
+	public static List<Result> toList(Result result) {
+		if (result == null || result instanceof EmptyResult || result.isNull()) {
+			return Collections.emptyList();
+		}
+		if (result.size() < 1) {
+			return Collections.singletonList(result);
+		}
+		return new ArrayList<>(result);
+	}
+	
+	private static boolean matches(Result item, Operator operator, Operand operand, Date indexDate) {
+		Date resultDate = item.getResultDate();
+		if (Operator.WITHIN.equals(operator)) {
+			long from = indexDate.getTime() - ((Duration) operand).getDurationInMillis();
+			return resultDate != null && resultDate.getTime() >= from && !resultDate.after(indexDate);
+		} else if (Operator.BEFORE.equals(operator)) {
+			return resultDate != null && resultDate.before(((OperandDate) operand).asDate());
+		} else if (Operator.AFTER.equals(operator)) {
+			return resultDate != null && resultDate.after(((OperandDate) operand).asDate());
+		} else if (Operator.ASOF.equals(operator)) {
+			return resultDate == null || !resultDate.after(((OperandDate) operand).asDate());
+		} else if (Operator.CONTAINS.equals(operator)) {
+			return containsValue(item, operand);
+		} else if (Operator.IN.equals(operator)) {
+			for (Object value : ((OperandCollection) operand).asCollection()) {
+				if (value instanceof Concept ? value.equals(item.toConcept()) : equalsValue(item, toOperand(value))) {
+					return true;
+				}
+			}
+			return false;
+		} else if (Operator.EQUALS.equals(operator)) {
+			return equalsValue(item, operand);
+		}
+		
+		Integer comparison = compare(item, operand);
+		if (comparison == null) {
+			return false;
+		} else if (Operator.GT.equals(operator)) {
+			return comparison > 0;
+		} else if (Operator.GTE.equals(operator)) {
+			return comparison >= 0;
+		} else if (Operator.LT.equals(operator)) {
+			return comparison < 0;
+		} else if (Operator.LTE.equals(operator)) {
+			return comparison <= 0;
+		}
+		throw new LogicException(operator + " is not a comparison operator");
+	}
+	
+	private static boolean equalsValue(Result item, Operand operand) {
+		if (operand instanceof OperandString) {
+			return item.toString().equalsIgnoreCase(((OperandString) operand).getValue());
+		}
+		Integer comparison = compare(item, operand);
+		return comparison != null && comparison == 0;
+	}
+	
+	private static Integer compare(Result item, Operand operand) {
+		if (operand instanceof OperandNumeric) {
+			Double value = item.toNumber();
+			return value == null ? null : value.compareTo(((OperandNumeric) operand).asDouble());
+		} else if (operand instanceof OperandDate) {
+			Date value = item.toDatetime();
+			return value == null ? null : value.compareTo(((OperandDate) operand).asDate());
+		} else if (operand instanceof OperandString) {
+			return item.toString().compareToIgnoreCase(((OperandString) operand).getValue());
+		}
+		throw new LogicException("'" + operand + "' can't be compared with a result");
+	}
+	
+	private static boolean containsValue(Result item, Operand operand) {
+		Concept concept = item.toConcept();
+		if (operand instanceof OperandNumeric) {
+			return concept != null && concept.getConceptId() != null
+			        && concept.getConceptId() == ((OperandNumeric) operand).asDouble().intValue();
+		}
+		String value = ((OperandString) operand).getValue();
+		if (concept != null) {
+			for (ConceptName name : concept.getNames()) {
+				if (name.getName().equalsIgnoreCase(value)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		return item.toString().toLowerCase().contains(value.toLowerCase());
+	}
+	
+	private static Operand toOperand(Object value) {
+		if (value instanceof Number) {
+			return new OperandNumeric(((Number) value).doubleValue());
+		} else if (value instanceof Date) {
+			return new OperandDate((Date) value);
+		}
+		return new OperandString(String.valueOf(value));
+	}
+}
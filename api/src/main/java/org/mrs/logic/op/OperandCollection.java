@@ -0,0 +1,55 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.op;
+
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * The values of an {@link In} comparison
+ *
+ * @since 2.3.0
+ */
+public class OperandCollection implements Operand {
+	
+	private Collection<?> value;
+	
+	public OperandCollection(Collection<?> value) {
+		this.value = new ArrayList<>(value);
+	}
+	
+	public Collection<?> asCollection() {
+		return value;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return ComparisonOperator.IN.equals(operator);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof OperandCollection && value.equals(((OperandCollection) obj).value);
+	}
+	
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return value.toString();
+	}
+	
+}
@@ -0,0 +1,59 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.op;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * A date used in a logic expression, e.g. the date in
+ * <code>new LogicCriteriaImpl("CD4 COUNT").before(date)</code>
+ *
+ * @since 2.3.0
+ */
+public class OperandDate implements Operand {
+	
+	private Date value;
+	
+	public OperandDate(Date value) {
+		this.value = value;
+	}
+	
+	public Date asDate() {
+		return value;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return ComparisonOperator.BEFORE.equals(operator) || ComparisonOperator.AFTER.equals(operator)
+		        || ComparisonOperator.EQUALS.equals(operator) || ComparisonOperator.GT.equals(operator)
+		        || ComparisonOperator.GTE.equals(operator) || ComparisonOperator.LT.equals(operator)
+		        || ComparisonOperator.LTE.equals(operator);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof OperandDate && value.equals(((OperandDate) obj).value);
+	}
+	
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(value);
+	}
+	
+}
@@ -0,0 +1,63 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.op;
+
+/**
+ * A numeric value used on the right side of a comparison, e.g. the 200 in
+ * <code>new LogicCriteriaImpl("CD4 COUNT").lt(200)</code>
+ *
+ * @since 2.3.0
+ */
+public class OperandNumeric implements Operand {
+	
+	private Double value;
+	
+	public OperandNumeric(Double value) {
+		this.value = value;
+	}
+	
+	public OperandNumeric(Integer value) {
+		this.value = value.doubleValue();
+	}
+	
+	public OperandNumeric(Float value) {
+		this.value = value.doubleValue();
+	}
+	
+	public Double asDouble() {
+		return value;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return ComparisonOperator.CONTAINS.equals(operator) || ComparisonOperator.EQUALS.equals(operator)
+		        || ComparisonOperator.GT.equals(operator) || ComparisonOperator.GTE.equals(operator)
+		        || ComparisonOperator.LT.equals(operator) || ComparisonOperator.LTE.equals(operator);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof OperandNumeric && value.equals(((OperandNumeric) obj).value);
+	}
+	
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return value % 1 == 0 ? String.valueOf(value.longValue()) : String.valueOf(value);
+	}
+	
+}
@@ -0,0 +1,54 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.op;
+
+/**
+ * A text value used in a logic expression, either the token a criteria is built upon or the value
+ * of a comparison, e.g. the "CD4 COUNT" in <code>new LogicCriteriaImpl("CD4 COUNT")</code>
+ *
+ * @since 2.3.0
+ */
+public class OperandString implements Operand {
+	
+	private String value;
+	
+	public OperandString(String value) {
+		this.value = value;
+	}
+	
+	public String getValue() {
+		return value;
+	}
+	
+	/**
+	 * @see org.mrs.logic.op.Operand#supports(org.mrs.logic.op.ComparisonOperator)
+	 */
+	@Override
+	public boolean supports(ComparisonOperator operator) {
+		return ComparisonOperator.CONTAINS.equals(operator) || ComparisonOperator.EQUALS.equals(operator)
+		        || ComparisonOperator.LT.equals(operator) || ComparisonOperator.GT.equals(operator);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof OperandString && value.equals(((OperandString) obj).value);
+	}
+	
+	@Override
+	public int hashCode() {
+		return value.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return "'" + value + "'";
+	}
+	
+}
@@ -14,6 +14,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.builder.HashCodeBuilder;
 import org.mrs.Concept;
@@ -425,6 +426,30 @@ public class Result extends ArrayList<Result> {
 		this.resultObject = object;
 	}
 	
+	/**
+	 * Copies this result and its members, passing the coded value and the result object of every
+	 * copied result through the given functions. This lets a result that references persistent
+	 * objects be rebuilt without them (e.g. before it is cached) and later be rebuilt with objects
+	 * from another session.
+	 * 
+	 * @param conceptCopier maps each non-null coded value to the one used by the copy
+	 * @param objectCopier maps each non-null result object to the one used by the copy
+	 * @return the copy of this result
+	 * @since 2.3.0
+	 */
+	public Result copy(Function<Concept, Concept> conceptCopier, Function<Object, Object> objectCopier) {
+		if (isNull()) {
+			return emptyResult();
+		}
+		Result copy = new Result(resultDatetime, datatype, valueBoolean, valueCoded == null ? null : conceptCopier
+		        .apply(valueCoded), valueDatetime, valueNumeric, valueText, resultObject == null ? null : objectCopier
+		        .apply(resultObject));
+		for (Result member : this) {
+			copy.add(member.copy(conceptCopier, objectCopier));
+		}
+		return copy;
+	}
+	
 	/**
 	 * @return boolean representation of the result. For non-boolean results, this will either be
 	 *         the overridden boolean value (if specifically defined) or a boolean representation of
@@ -0,0 +1,119 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.rule;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mrs.logic.LogicContext;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.Rule;
+import org.mrs.logic.datasource.LogicDataSource;
+import org.mrs.logic.result.Result;
+import org.mrs.logic.result.Result.Datatype;
+
+/**
+ * A rule that reads a key of a logic data source, returned for tokens of the form
+ * <em>@dataSource.key</em> and for tokens that a data source has a key for
+ *
+ * @since 2.3.0
+ */
+public class ReferenceRule implements Rule {
+	
+	private final String dataSourceName;
+	
+	private final String key;
+	
+	private final int ttl;
+	
+	public ReferenceRule(String dataSourceName, LogicDataSource dataSource, String key) {
+		this.dataSourceName = dataSourceName;
+		this.key = key;
+		this.ttl = dataSource.getDefaultTTL();
+	}
+	
+	/**
+	 * @param token a token
+	 * @return true if the token is of the form <em>@dataSource.key</em>
+	 */
+	public static boolean isReference(String token) {
+		return token != null && token.startsWith("@") && token.indexOf('.') > 1;
+	}
+	
+	/**
+	 * @param token a token of the form <em>@dataSource.key</em>
+	 * @return the name of the data source
+	 */
+	public static String getDataSourceName(String token) {
+		if (!isReference(token)) {
+			throw new LogicException("'" + token + "' does not reference a data source");
+		}
+		return token.substring(1, token.indexOf('.'));
+	}
+	
+	/**
+	 * @param token a token, possibly of the form <em>@dataSource.key</em>
+	 * @return the key part of a reference or else the token itself
+	 */
+	public static String getKey(String token) {
+		return isReference(token) ? StringUtils.substringAfter(token, ".") : token;
+	}
+	
+	public String getDataSourceName() {
+		return dataSourceName;
+	}
+	
+	public String getKey() {
+		return key;
+	}
+	
+	/**
+	 * @see org.mrs.logic.Rule#eval(org.mrs.logic.LogicContext, java.lang.Integer, java.util.Map)
+	 */
+	@Override
+	public Result eval(LogicContext context, Integer patientId, Map<String, Object> parameters) throws LogicException {
+		return context.read(patientId, context.getLogicDataSource(dataSourceName), key);
+	}
+	
+	/**
+	 * @see org.mrs.logic.Rule#getParameterList()
+	 */
+	@Override
+	public Set<RuleParameterInfo> getParameterList() {
+		return Collections.emptySet();
+	}
+	
+	/**
+	 * @see org.mrs.logic.Rule#getDependencies()
+	 */
+	@Override
+	public String[] getDependencies() {
+		return new String[0];
+	}
+	
+	/**
+	 * @see org.mrs.logic.Rule#getTTL()
+	 */
+	@Override
+	public int getTTL() {
+		return ttl;
+	}
+	
+	/**
+	 * @see org.mrs.logic.Rule#getDefaultDatatype()
+	 */
+	@Override
+	public Datatype getDefaultDatatype() {
+		return null;
+	}
+	
+}
@@ -0,0 +1,328 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.module;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.mrs.util.OpenmrsUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps what is extracted from module files in the application data directory across restarts, so
+ * that an unchanged module is not extracted again each time it is loaded and started. Every module
+ * file gets a folder named after the checksum of its content, holding:
+ * <ul>
+ * <li>the config.xml read by {@link ModuleFileParser}</li>
+ * <li>the copy of the module file and the expanded lib folder used by {@link ModuleClassLoader}</li>
+ * <li>the list of packages each of these jars provides</li>
+ * </ul>
+ * The folders of other versions of a module are removed as soon as a new version is expanded, and
+ * the folders of modules that are no longer in the module repository when the modules are loaded.
+ *
+ * @since 2.3.0
+ */
+public class ModuleArchiveCache {
+	
+	private static final Logger log = LoggerFactory.getLogger(ModuleArchiveCache.class);
+	
+	// name of the folder in the application data directory
+	private static final String CACHE_FOLDER_NAME = ".mrs-module-cache";
+	
+	private static final String CONFIG_XML = "config.xml";
+	
+	private static final String LIB = "lib";
+	
+	// holds the id of the module once the module file has been expanded
+	private static final String EXPANDED_MARKER = "module.id";
+	
+	private static final String PACKAGES_SUFFIX = ".packages";
+	
+	private static final Map<String, FileChecksum> checksums = new ConcurrentHashMap<>();
+	
+	private static final Map<String, Object> entryLocks = new ConcurrentHashMap<>();
+	
+	private ModuleArchiveCache() {
+	}
+	
+	/**
+	 * @return the folder holding the cached module files
+	 */
+	public static File getCacheFolder() {
+		return new File(OpenmrsUtil.getApplicationDataDirectory(), CACHE_FOLDER_NAME);
+	}
+	
+	/**
+	 * Computes the SHA-1 checksum of a module file. The result is remembered for as long as the
+	 * length and last modified date of the file stay the same.
+	 *
+	 * @param moduleFile the module file
+	 * @return the checksum as hexadecimal string
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String getChecksum(File moduleFile) throws IOException {
+		String path = moduleFile.getAbsolutePath();
+		long length = moduleFile.length();
+		long lastModified = moduleFile.lastModified();
+		
+		FileChecksum checksum = checksums.get(path);
+		if (checksum == null || checksum.length != length || checksum.lastModified != lastModified) {
+			MessageDigest digest;
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+			
+			try (InputStream in = new DigestInputStream(Files.newInputStream(moduleFile.toPath()), digest)) {
+				byte[] buffer = new byte[8192];
+				while (in.read(buffer) != -1) {
+					// the digest is updated while reading
+				}
+			}
+			
+			checksum = new FileChecksum(length, lastModified, String.format("%040x", new BigInteger(1, digest.digest())));
+			checksums.put(path, checksum);
+		}
+		return checksum.checksum;
+	}
+	
+	/**
+	 * @param moduleFile the module file
+	 * @return the config.xml of the module file if it is cached, else null
+	 * @throws IOException if the checksum of the module file cannot be computed
+	 */
+	public static File getConfigXml(File moduleFile) throws IOException {
+		File configXml = new File(getEntry(moduleFile), CONFIG_XML);
+		return configXml.isFile() ? configXml : null;
+	}
+	
+	/**
+	 * Caches the config.xml of a module file
+	 *
+	 * @param moduleFile the module file
+	 * @param configXml the content of its config.xml
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void putConfigXml(File moduleFile, byte[] configXml) throws IOException {
+		File entry = getEntry(moduleFile);
+		entry.mkdirs();
+		
+		File tmpFile = File.createTempFile(CONFIG_XML, ".tmp", entry);
+		try {
+			Files.write(tmpFile.toPath(), configXml);
+			move(tmpFile, new File(entry, CONFIG_XML));
+		}
+		finally {
+			FileUtils.deleteQuietly(tmpFile);
+		}
+	}
+	
+	/**
+	 * Returns the folder holding a copy of the module file named <i>moduleId</i>.jar and its
+	 * expanded lib folder, expanding the module file if that has not been done before for its
+	 * content.
+	 *
+	 * @param module the module, with its file set
+	 * @return the folder
+	 * @throws IOException if the module file cannot be read or expanded
+	 */
+	public static File getExpandedArchive(Module module) throws IOException {
+		File moduleFile = module.getFile();
+		if (moduleFile == null) {
+			throw new IOException("Module " + module.getModuleId() + " has no file");
+		}
+		
+		File entry = getEntry(moduleFile);
+		File marker = new File(entry, EXPANDED_MARKER);
+		if (marker.isFile()) {
+			return entry;
+		}
+		
+		synchronized (entryLocks.computeIfAbsent(entry.getName(), k -> new Object())) {
+			if (!marker.isFile()) {
+				log.debug("Expanding module {} into the module cache", module.getModuleId());
+				
+				// start over, in case an earlier attempt was interrupted
+				File moduleJar = new File(entry, module.getModuleId() + ".jar");
+				File libDir = new File(entry, LIB);
+				FileUtils.deleteQuietly(moduleJar);
+				FileUtils.deleteDirectory(libDir);
+				entry.mkdirs();
+				
+				FileUtils.copyFile(moduleFile, moduleJar);
+				ModuleUtil.expandJar(moduleFile, entry, LIB, true);
+				
+				// written last, to mark the folder as complete
+				File tmpMarker = File.createTempFile(EXPANDED_MARKER, ".tmp", entry);
+				try {
+					Files.write(tmpMarker.toPath(), module.getModuleId().getBytes(StandardCharsets.UTF_8));
+					move(tmpMarker, marker);
+				}
+				finally {
+					FileUtils.deleteQuietly(tmpMarker);
+				}
+				
+				evictOtherVersions(module.getModuleId(), entry);
+			}
+		}
+		return entry;
+	}
+	
+	/**
+	 * Returns the packages a jar provides. For jars in the module cache the list is computed once
+	 * and stored next to the jar.
+	 *
+	 * @param jarFile the jar
+	 * @return the names of the packages
+	 * @see ModuleUtil#getPackagesFromFile(File)
+	 */
+	public static Collection<String> getPackages(File jarFile) {
+		if (!isInCache(jarFile)) {
+			return ModuleUtil.getPackagesFromFile(jarFile);
+		}
+		
+		File packagesFile = new File(jarFile.getPath() + PACKAGES_SUFFIX);
+		if (packagesFile.isFile()) {
+			try {
+				return Files.readAllLines(packagesFile.toPath(), StandardCharsets.UTF_8);
+			}
+			catch (IOException e) {
+				log.warn("Unable to read cached packages of " + jarFile, e);
+			}
+		}
+		
+		Collection<String> packages = ModuleUtil.getPackagesFromFile(jarFile);
+		File tmpFile = null;
+		try {
+			tmpFile = File.createTempFile(jarFile.getName(), ".tmp", jarFile.getParentFile());
+			Files.write(tmpFile.toPath(), packages, StandardCharsets.UTF_8);
+			move(tmpFile, packagesFile);
+		}
+		catch (IOException e) {
+			log.warn("Unable to cache packages of " + jarFile, e);
+		}
+		finally {
+			FileUtils.deleteQuietly(tmpFile);
+		}
+		return packages;
+	}
+	
+	/**
+	 * Removes the cached files of all module files but the ones of the given modules
+	 *
+	 * @param modules the modules whose cached files are kept
+	 */
+	public static void evictUnused(Collection<Module> modules) {
+		Set<String> used = new HashSet<>();
+		for (Module module : modules) {
+			if (module.getFile() != null) {
+				try {
+					used.add(getChecksum(module.getFile()));
+				}
+				catch (IOException e) {
+					log.debug("Unable to compute the checksum of " + module.getFile(), e);
+				}
+			}
+		}
+		
+		for (File entry : listEntries()) {
+			if (!used.contains(entry.getName())) {
+				log.debug("Removing unused module cache folder {}", entry);
+				FileUtils.deleteQuietly(entry);
+			}
+		}
+	}
+	
+	private static void evictOtherVersions(String moduleId, File keep) {
+		for (File entry : listEntries()) {
+			File marker = new File(entry, EXPANDED_MARKER);
+			if (entry.equals(keep) || !marker.isFile()) {
+				continue;
+			}
+			
+			try {
+				if (moduleId.equals(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8))) {
+					log.debug("Removing module cache folder {} of another version of module {}", entry, moduleId);
+					FileUtils.deleteQuietly(entry);
+				}
+			}
+			catch (IOException e) {
+				log.debug("Unable to read " + marker, e);
+			}
+		}
+	}
+	
+	private static List<File> listEntries() {
+		List<File> entries = new ArrayList<>();
+		File[] files = getCacheFolder().listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.isDirectory()) {
+					entries.add(file);
+				}
+			}
+		}
+		return entries;
+	}
+	
+	private static File getEntry(File moduleFile) throws IOException {
+		return new File(getCacheFolder(), getChecksum(moduleFile));
+	}
+	
+	private static boolean isInCache(File file) {
+		String cacheFolder = getCacheFolder().getAbsolutePath() + File.separator;
+		return file.getAbsolutePath().startsWith(cacheFolder);
+	}
+	
+	private static void move(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE,
+			    StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	private static class FileChecksum {
+		
+		private final long length;
+		
+		private final long lastModified;
+		
+		private final String checksum;
+		
+		private FileChecksum(long length, long lastModified, String checksum) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.checksum = checksum;
+		}
+	}
+}
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -56,6 +57,16 @@ public class ModuleClassLoader extends URLClassLoader {
 	
 	private static final Logger log = LoggerFactory.getLogger(ModuleClassLoader.class);
 	
+	/**
+	 * The number of class names a module class loader remembers not finding, it forgets them all
+	 * when more are added
+	 */
+	private static final int MAX_MISSING_CLASSES = 10000;
+	
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+	
 	private final Module module;
 	
 	private Module[] requiredModules;
@@ -69,6 +80,9 @@ public class ModuleClassLoader extends URLClassLoader {
 	private Set<String> providedPackages = new LinkedHashSet<>();
 	
 	private boolean disposed = false;
+	
+	// names of classes that neither this module nor its imports have, with the package index version
+	private final Map<String, Long> missingClasses = new ConcurrentHashMap<>();
 
 	
 	/**
@@ -123,10 +137,11 @@ public class ModuleClassLoader extends URLClassLoader {
 					addClassFilePackages(files, dir.getAbsolutePath().length() + 1);
 				}
 			}
-		} else {
-			for (URL url : urls) {
-				providedPackages.addAll(ModuleUtil.getPackagesFromFile(OpenmrsUtil.url2file(url)));
-			}
+		}
+		
+		// also covers the libraries of modules in development, as the package index must be complete
+		for (URL url : urls) {
+			providedPackages.addAll(ModuleArchiveCache.getPackages(OpenmrsUtil.url2file(url)));
 		}
 	}
 	
@@ -228,8 +243,22 @@ public class ModuleClassLoader extends URLClassLoader {
 		
 		File tmpModuleDir = getLibCacheFolderForModule(module);
 		
-		//add module jar to classpath only if we are not in dev mode
+		// unless in dev mode, the module jar and its libraries are taken from the module cache,
+		// which only expands the module file if its content has changed since the last time
+		File expandedModuleDir = null;
 		if (devDir == null) {
+			try {
+				File archiveDir = ModuleArchiveCache.getExpandedArchive(module);
+				result.add(ModuleUtil.file2url(new File(archiveDir, module.getModuleId() + ".jar")));
+				expandedModuleDir = archiveDir;
+			}
+			catch (IOException e) {
+				log.warn("Unable to use the module cache for module " + module.getModuleId() + ", expanding it again", e);
+			}
+		}
+		
+		//add module jar to classpath only if we are not in dev mode
+		if (devDir == null && expandedModuleDir == null) {
 			File tmpModuleJar = new File(tmpModuleDir, module.getModuleId() + ".jar");
 			
 			if (!tmpModuleJar.exists()) {
@@ -280,8 +309,11 @@ public class ModuleClassLoader extends URLClassLoader {
 				log.debug("Expanding /lib folder in module");
 			}
 			
-			ModuleUtil.expandJar(module.getFile(), tmpModuleDir, "lib", true);
-			File libdir = new File(tmpModuleDir, "lib");
+			if (expandedModuleDir == null) {
+				ModuleUtil.expandJar(module.getFile(), tmpModuleDir, "lib", true);
+				expandedModuleDir = tmpModuleDir;
+			}
+			File libdir = new File(expandedModuleDir, "lib");
 			
 			if (libdir != null && libdir.exists()) {
 				Map<String, String> startedRelatedModules = new HashMap<>();
@@ -597,6 +629,12 @@ public class ModuleClassLoader extends URLClassLoader {
 	/**
 	 * Custom loadClass implementation to allow for loading from a given ModuleClassLoader and skip
 	 * the modules that have been tried already
+	 * <p>
+	 * Module class loaders are parallel capable, only the loading of one class name by this class
+	 * loader is locked. A class whose package no started module provides is rejected after one
+	 * lookup in the package index of {@link ModuleFactory#getModuleClassLoadersForPackage(String)},
+	 * and classes that were not found in this module and its imports are remembered until a module
+	 * is started or stopped.
 	 * 
 	 * @param name String path and name of the class to load
 	 * @param resolve boolean whether or not to resolve this class before returning
@@ -605,7 +643,7 @@ public class ModuleClassLoader extends URLClassLoader {
 	 * @return Class that has been loaded
 	 * @throws ClassNotFoundException if no class found
 	 */
-	protected synchronized Class<?> loadClass(final String name, final boolean resolve, final ModuleClassLoader requestor,
+	protected Class<?> loadClass(final String name, final boolean resolve, final ModuleClassLoader requestor,
 	        Set<String> seenModules) throws ClassNotFoundException {
 		
 		if (log.isTraceEnabled()) {
@@ -637,16 +675,23 @@ public class ModuleClassLoader extends URLClassLoader {
 			throw new ClassNotFoundException(msg);
 		}
 		
-		// Check if the class has already been loaded by this class loader
-		Class<?> result = findLoadedClass(name);
+		// classes in the default package are not in the package index
+		int indexOfLastDot = name.lastIndexOf('.');
+		String packageName = indexOfLastDot > 0 ? name.substring(0, indexOfLastDot) : null;
 		
-		// Try loading the class with this class loader 
-		if (result == null) {
-			try {
-				result = findClass(name);
-			}
-			catch (ClassNotFoundException e) {
-				// Continue trying...
+		Class<?> result;
+		synchronized (getClassLoadingLock(name)) {
+			// Check if the class has already been loaded by this class loader
+			result = findLoadedClass(name);
+			
+			// Try loading the class with this class loader 
+			if (result == null && (packageName == null || providedPackages.contains(packageName))) {
+				try {
+					result = findClass(name);
+				}
+				catch (ClassNotFoundException e) {
+					// Continue trying...
+				}
 			}
 		}
 		
@@ -657,10 +702,21 @@ public class ModuleClassLoader extends URLClassLoader {
 			return result;
 		}
 		
+		// no other module can have the class either
+		if (packageName != null && ModuleFactory.getModuleClassLoadersForPackage(packageName).isEmpty()) {
+			throw new ClassNotFoundException(name);
+		}
+		
 		// Look through this module's imports to see if the class
 		// can be loaded from them.
 		
-		if (seenModules == null) {
+		boolean firstModuleTried = seenModules == null;
+		long packagesVersion = ModuleFactory.getProvidedPackagesVersion();
+		if (firstModuleTried) {
+			Long missingVersion = missingClasses.get(name);
+			if (missingVersion != null && missingVersion == packagesVersion) {
+				throw new ClassNotFoundException(name);
+			}
 			seenModules = new HashSet<>();
 		}
 		
@@ -695,6 +751,14 @@ public class ModuleClassLoader extends URLClassLoader {
 			}
 		}
 		
+		// only the outcome of a search that started here does not depend on the modules seen before
+		if (firstModuleTried) {
+			if (missingClasses.size() >= MAX_MISSING_CLASSES) {
+				missingClasses.clear();
+			}
+			missingClasses.put(name, packagesVersion);
+		}
+		
 		throw new ClassNotFoundException(name);
 	}
 	
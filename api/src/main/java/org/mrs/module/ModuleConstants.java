@@ -78,6 +78,15 @@ public class ModuleConstants {
 	 */
 	public static final String REPOSITORY_FOLDER_RUNTIME_PROPERTY = "module.repository_folder";
 	
+	/**
+	 * Name of the runtime property that sets how many modules may be started at the same time at
+	 * startup. Defaults to the number of available processors, a value of 1 starts the modules one
+	 * by one.
+	 *
+	 * @since 2.3.0
+	 */
+	public static final String RUNTIMEPROPERTY_STARTUP_THREADS = "module.startup_threads";
+	
 	/**
 	 * A module message.properties file containing this key mapped to "true" will be allowed to define messages outside of the module's namespace.
 	 *
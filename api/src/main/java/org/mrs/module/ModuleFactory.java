@@ -29,13 +29,22 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.aopalliance.aop.Advice;
 import org.mrs.GlobalProperty;
 import org.mrs.Privilege;
 import org.mrs.api.AdministrationService;
 import org.mrs.api.OpenmrsService;
+import org.mrs.api.cache.GlobalPropertyCache;
 import org.mrs.api.context.Context;
 import org.mrs.api.context.Daemon;
 import org.mrs.module.Extension.MEDIA_TYPE;
@@ -65,15 +74,18 @@ public class ModuleFactory {
 	
 	protected static volatile Map<String, Module> loadedModules = new WeakHashMap<>();
 	
-	protected static volatile Map<String, Module> startedModules = new WeakHashMap<>();
+	protected static volatile Map<String, Module> startedModules = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	protected static volatile Map<String, List<Extension>> extensionMap = new HashMap<>();
 	
 	// maps to keep track of the memory and objects to free/close
-	protected static volatile Map<Module, ModuleClassLoader> moduleClassLoaders = new WeakHashMap<>();
+	protected static volatile Map<Module, ModuleClassLoader> moduleClassLoaders = Collections.synchronizedMap(new WeakHashMap<>());
 	
 	private static Map<String, Set<ModuleClassLoader>> providedPackages = new ConcurrentHashMap<>();
 	
+	// changes whenever the packages provided by module class loaders change
+	private static final AtomicLong providedPackagesVersion = new AtomicLong();
+	
 	// the name of the file within a module file
 	private static final String MODULE_CHANGELOG_FILENAME = "liquibase.xml";
 	
@@ -81,6 +93,12 @@ public class ModuleFactory {
 	
 	private static volatile Set<String> actualStartupOrder;
 	
+	// the time in milliseconds each module took to start in the last call to startModules()
+	private static final Map<String, Long> moduleStartupTimes = new ConcurrentHashMap<>();
+	
+	// modules starting in parallel run their database updates one at a time
+	private static final Object moduleDatabaseLock = new Object();
+	
 	/**
 	 * Add a module (in the form of a jar file) to the list of mrs modules Returns null if an
 	 * error occurred and/or module was not successfully loaded
@@ -171,6 +189,9 @@ public class ModuleFactory {
 		File[] files = modulesFolder.listFiles();
 		if (modulesFolder.isDirectory() && files != null) {
 			loadModules(Arrays.asList(files));
+			
+			// drop what was cached for modules that have been removed or replaced
+			ModuleArchiveCache.evictUnused(getLoadedModules());
 		} else {
 			log.error("modules folder: '" + modulesFolder.getAbsolutePath() + "' is not a directory or IO error occurred");
 		}
@@ -223,7 +244,12 @@ public class ModuleFactory {
 	 * Try to start all of the loaded modules that have the global property <i>moduleId</i>.started
 	 * is set to "true" or the property does not exist. Otherwise, leave it as only "loaded"<br>
 	 * <br>
-	 * Modules that are already started will be skipped.
+	 * Modules that are already started will be skipped. Modules that neither require nor are aware
+	 * of each other are started in parallel, by as many threads as the
+	 * {@link ModuleConstants#RUNTIMEPROPERTY_STARTUP_THREADS} runtime property allows. A module is
+	 * only started once all the modules it depends on are done starting, so it sees them the same
+	 * way it would when the modules are started one by one. The time each module took to start is
+	 * logged and kept in {@link #getModuleStartupTimes()}.
 	 */
 	public static void startModules() {
 		
@@ -231,6 +257,7 @@ public class ModuleFactory {
 		if (!getLoadedModules().isEmpty()) {
 			
 			List<Module> modules = getModulesThatShouldStart();
+			boolean hasCycle = false;
 			
 			try {
 				modules = getModulesInStartupOrder(modules);
@@ -240,37 +267,193 @@ public class ModuleFactory {
 				log.error(message, ex);
 				notifySuperUsersAboutCyclicDependencies(ex);
 				modules = (List<Module>)ex.getExtraData();
+				hasCycle = true;
 			}
 			
-			// try and start the modules that should be started
-			for (Module mod : modules) {
-				
-				if (mod.isStarted()) {
-					// skip over modules that are already started
-					continue;
+			long start = System.currentTimeMillis();
+			int threads = Math.min(getStartupThreads(), modules.size());
+			
+			// modules in a cycle would wait for each other forever, start them in the fallback order
+			if (threads > 1 && !hasCycle) {
+				startModulesInParallel(modules, threads);
+			} else {
+				for (Module mod : modules) {
+					startModuleAndRecordTime(mod);
 				}
-				
-				// Skip module if required ones are not started
-				if (!requiredModulesStarted(mod)) {
-					String message = getFailedToStartModuleMessage(mod);
-					log.error(message);
-					mod.setStartupErrorMessage(message);
-					notifySuperUsersAboutModuleFailure(mod);
-					continue;
+			}
+			
+			log.info("Started modules in {} ms using {} thread(s)", System.currentTimeMillis() - start, Math.max(threads, 1));
+		}
+	}
+	
+	/**
+	 * Starts the given modules, which must be in startup order, with the given number of threads.
+	 * Each module is handed to a thread as soon as all the modules among the given ones that it
+	 * requires or is aware of have been started or have failed to start.
+	 * 
+	 * @param modules the modules to start, sorted by {@link #getModulesInStartupOrder(Collection)}
+	 * @param threads the number of modules to start at the same time
+	 */
+	private static void startModulesInParallel(List<Module> modules, int threads) {
+		Map<String, Module> modulesByPackage = new HashMap<>();
+		for (Module mod : modules) {
+			modulesByPackage.put(mod.getPackageName(), mod);
+		}
+		
+		// the modules each module is waiting for and the modules waiting for each module
+		Map<Module, Set<Module>> dependencies = new HashMap<>();
+		Map<Module, List<Module>> dependents = new HashMap<>();
+		for (Module mod : modules) {
+			Set<String> dependencyPackages = new HashSet<>();
+			if (mod.getRequiredModules() != null) {
+				dependencyPackages.addAll(mod.getRequiredModules());
+			}
+			if (mod.getAwareOfModules() != null) {
+				dependencyPackages.addAll(mod.getAwareOfModules());
+			}
+			
+			Set<Module> modDependencies = new HashSet<>();
+			for (String dependencyPackage : dependencyPackages) {
+				Module dependency = modulesByPackage.get(dependencyPackage);
+				if (dependency != null && !dependency.equals(mod)) {
+					modDependencies.add(dependency);
+					dependents.computeIfAbsent(dependency, k -> new ArrayList<>()).add(mod);
 				}
+			}
+			dependencies.put(mod, modDependencies);
+		}
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ModuleStartupThreadFactory());
+		CompletionService<Module> completionService = new ExecutorCompletionService<>(executor);
+		try {
+			int running = 0;
+			for (Module mod : modules) {
+				if (dependencies.get(mod).isEmpty()) {
+					submitModuleStartup(completionService, mod);
+					running++;
+				}
+			}
+			
+			while (running > 0) {
+				Module finished = completionService.take().get();
+				running--;
 				
-				try {
-					if (log.isDebugEnabled()) {
-						log.debug("starting module: " + mod.getModuleId());
+				for (Module dependent : dependents.getOrDefault(finished, Collections.emptyList())) {
+					Set<Module> waitingFor = dependencies.get(dependent);
+					waitingFor.remove(finished);
+					if (waitingFor.isEmpty()) {
+						submitModuleStartup(completionService, dependent);
+						running++;
 					}
-					startModule(mod);
-				}
-				catch (Exception e) {
-					log.error("Error while starting module: " + mod.getName(), e);
-					mod.setStartupErrorMessage("Error while starting module", e);
-					notifySuperUsersAboutModuleFailure(mod);
 				}
-			}		
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ModuleException("Interrupted while starting modules", e);
+		}
+		catch (ExecutionException e) {
+			throw new ModuleException("Error while starting modules", e.getCause());
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private static void submitModuleStartup(CompletionService<Module> completionService, Module mod) {
+		completionService.submit(() -> {
+			// the alerts sent for modules that fail to start need a session
+			Context.openSession();
+			try {
+				startModuleAndRecordTime(mod);
+			}
+			finally {
+				Context.closeSession();
+			}
+			return mod;
+		});
+	}
+	
+	/**
+	 * Starts a module unless it is started already or a module it requires is not, recording how
+	 * long it took
+	 * 
+	 * @param mod the module to start
+	 */
+	private static void startModuleAndRecordTime(Module mod) {
+		if (mod.isStarted()) {
+			// skip over modules that are already started
+			return;
+		}
+		
+		// Skip module if required ones are not started
+		if (!requiredModulesStarted(mod)) {
+			String message = getFailedToStartModuleMessage(mod);
+			log.error(message);
+			mod.setStartupErrorMessage(message);
+			notifySuperUsersAboutModuleFailure(mod);
+			return;
+		}
+		
+		long start = System.currentTimeMillis();
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("starting module: " + mod.getModuleId());
+			}
+			startModule(mod);
+		}
+		catch (Exception e) {
+			log.error("Error while starting module: " + mod.getName(), e);
+			mod.setStartupErrorMessage("Error while starting module", e);
+			notifySuperUsersAboutModuleFailure(mod);
+		}
+		
+		long elapsed = System.currentTimeMillis() - start;
+		moduleStartupTimes.put(mod.getModuleId(), elapsed);
+		log.info("Module {} {} in {} ms", mod.getModuleId(), mod.isStarted() ? "started" : "failed to start", elapsed);
+	}
+	
+	/**
+	 * @return the number of threads to start modules with, read from the
+	 *         {@link ModuleConstants#RUNTIMEPROPERTY_STARTUP_THREADS} runtime property
+	 */
+	private static int getStartupThreads() {
+		String threads = Context.getRuntimeProperties().getProperty(ModuleConstants.RUNTIMEPROPERTY_STARTUP_THREADS);
+		if (StringUtils.hasText(threads)) {
+			try {
+				return Math.max(Integer.parseInt(threads.trim()), 1);
+			}
+			catch (NumberFormatException e) {
+				log.warn("Invalid value for runtime property " + ModuleConstants.RUNTIMEPROPERTY_STARTUP_THREADS + ": "
+				        + threads);
+			}
+		}
+		return Runtime.getRuntime().availableProcessors();
+	}
+	
+	/**
+	 * Returns how long each module took to start, in milliseconds, when it was last started by
+	 * {@link #startModules()}. The time of a module that failed to start is the time it took to fail.
+	 * 
+	 * @return a read only map of module id to startup time in milliseconds
+	 * @since 2.3.0
+	 */
+	public static Map<String, Long> getModuleStartupTimes() {
+		return Collections.unmodifiableMap(moduleStartupTimes);
+	}
+	
+	/**
+	 * Names the threads modules are started by
+	 */
+	private static class ModuleStartupThreadFactory implements ThreadFactory {
+		
+		private final AtomicInteger count = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "module-startup-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
 		}
 	}
 	
@@ -483,13 +666,14 @@ public class ModuleFactory {
 	}
 	
 	/**
-	 * Returns the modules that have been successfully started
+	 * Returns the modules that have been successfully started. The returned collection is a copy,
+	 * as modules may be started by several threads at the same time.
 	 * 
 	 * @return <code>Collection&lt;Module&gt;</code> of the started modules
 	 */
 	public static Collection<Module> getStartedModules() {
 		if (getStartedModulesMap().size() > 0) {
-			return getStartedModulesMap().values();
+			return new ArrayList<>(getStartedModulesMap().values());
 		}
 		
 		return Collections.emptyList();
@@ -498,7 +682,11 @@ public class ModuleFactory {
 	public static List<Module> getStartedModulesInOrder() {
 		List<Module> modules = new ArrayList<>();
 		if (actualStartupOrder != null) {
-			for (String moduleId : actualStartupOrder) {
+			List<String> moduleIds;
+			synchronized (ModuleFactory.class) {
+				moduleIds = new ArrayList<>(actualStartupOrder);
+			}
+			for (String moduleId : moduleIds) {
 				modules.add(getStartedModulesMap().get(moduleId));
 			}
 		} else {
@@ -515,7 +703,7 @@ public class ModuleFactory {
 	 */
 	public static Map<String, Module> getStartedModulesMap() {
 		if (startedModules == null) {
-			startedModules = new WeakHashMap<>();
+			startedModules = Collections.synchronizedMap(new WeakHashMap<>());
 		}
 		
 		return startedModules;
@@ -688,11 +876,13 @@ public class ModuleFactory {
 					sortedModuleExtensions.sort(sortOrder);
 					
 					// Get existing extensions, and append the ones from the new module
-					List<Extension> extensions = getExtensionMap()
-							.computeIfAbsent(moduleExtensionEntry.getKey(), k -> new ArrayList<>());
-					for (Extension ext : sortedModuleExtensions) {
-						log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
-						extensions.add(ext);
+					synchronized (ModuleFactory.class) {
+						List<Extension> extensions = getExtensionMap()
+								.computeIfAbsent(moduleExtensionEntry.getKey(), k -> new ArrayList<>());
+						for (Extension ext : sortedModuleExtensions) {
+							log.debug("Adding to mapping ext: " + ext.getExtensionId() + " ext.class: " + ext.getClass());
+							extensions.add(ext);
+						}
 					}
 				}
 				
@@ -702,35 +892,40 @@ public class ModuleFactory {
 				// calls that might hinder startup
 				SortedMap<String, String> diffs = SqlDiffFileParser.getSqlDiffs(module);
 				
-				try {
-					// this method must check and run queries against the database.
-					// to do this, it must be "authenticated".  Give the current
-					// "user" the proxy privilege so this can be done. ("user" might
-					// be nobody because this is being run at startup)
-					Context.addProxyPrivilege("");
-					
-					for (Map.Entry<String, String> entry : diffs.entrySet()) {
-						String version = entry.getKey();
-						String sql = entry.getValue();
-						if (StringUtils.hasText(sql)) {
-							runDiff(module, version, sql);
+				// schema changes of modules started in parallel must not interleave
+				synchronized (moduleDatabaseLock) {
+					try {
+						// this method must check and run queries against the database.
+						// to do this, it must be "authenticated".  Give the current
+						// "user" the proxy privilege so this can be done. ("user" might
+						// be nobody because this is being run at startup)
+						Context.addProxyPrivilege("");
+						
+						for (Map.Entry<String, String> entry : diffs.entrySet()) {
+							String version = entry.getKey();
+							String sql = entry.getValue();
+							if (StringUtils.hasText(sql)) {
+								runDiff(module, version, sql);
+							}
 						}
 					}
-				}
-				finally {
-					// take the "authenticated" privilege away from the current "user"
-					Context.removeProxyPrivilege("");
+					finally {
+						// take the "authenticated" privilege away from the current "user"
+						Context.removeProxyPrivilege("");
+					}
+					
+					// run module's optional liquibase.xml immediately after sqldiff.xml
+					runLiquibase(module);
 				}
 				
-				// run module's optional liquibase.xml immediately after sqldiff.xml
-				runLiquibase(module);
-				
 				// effectively mark this module as started successfully
-				getStartedModulesMap().put(moduleId, module);
-				if (actualStartupOrder == null) {
-					actualStartupOrder = new LinkedHashSet<>();
+				synchronized (ModuleFactory.class) {
+					getStartedModulesMap().put(moduleId, module);
+					if (actualStartupOrder == null) {
+						actualStartupOrder = new LinkedHashSet<>();
+					}
+					actualStartupOrder.add(moduleId);
 				}
-				actualStartupOrder.add(moduleId);
 				
 				try {
 					// save the state of this module for future restarts
@@ -755,7 +950,9 @@ public class ModuleFactory {
 				// done at initial app startup)
 				if (!module.getPrivileges().isEmpty() || !module.getGlobalProperties().isEmpty()) {
 					log.debug("Updating core dataset");
-					Context.checkCoreDataset();
+					synchronized (moduleDatabaseLock) {
+						Context.checkCoreDataset();
+					}
 					// checkCoreDataset() currently doesn't throw an error. If
 					// it did, it needs to be
 					// caught and the module needs to be stopped and given a
@@ -814,41 +1011,63 @@ public class ModuleFactory {
 	
 	private static void registerProvidedPackages(ModuleClassLoader moduleClassLoader) {
 		for (String providedPackage : moduleClassLoader.getProvidedPackages()) {
-			Set<ModuleClassLoader> newSet = new HashSet<>();
-			
-			Set<ModuleClassLoader> set = providedPackages.get(providedPackage);
-			if (set != null) {
-				newSet.addAll(set);
-			}
-			
-			newSet.add(moduleClassLoader);
-			providedPackages.put(providedPackage, newSet);
+			// copy on write, computed atomically as modules may be started in parallel
+			providedPackages.compute(providedPackage, (key, set) -> {
+				Set<ModuleClassLoader> newSet = new HashSet<>();
+				if (set != null) {
+					newSet.addAll(set);
+				}
+				
+				newSet.add(moduleClassLoader);
+				return Collections.unmodifiableSet(newSet);
+			});
 		}
+		providedPackagesVersion.incrementAndGet();
 	}
 	
 	private static void unregisterProvidedPackages(ModuleClassLoader moduleClassLoader) {
 		for (String providedPackage : moduleClassLoader.getProvidedPackages()) {
-			Set<ModuleClassLoader> newSet = new HashSet<>();
-			
-			Set<ModuleClassLoader> set = providedPackages.get(providedPackage);
-			if (set != null) {
-				newSet.addAll(set);
-			}
-			newSet.remove(moduleClassLoader);
-			
-			providedPackages.put(providedPackage, newSet);
+			providedPackages.compute(providedPackage, (key, set) -> {
+				Set<ModuleClassLoader> newSet = new HashSet<>();
+				if (set != null) {
+					newSet.addAll(set);
+				}
+				newSet.remove(moduleClassLoader);
+				
+				return newSet.isEmpty() ? null : Collections.unmodifiableSet(newSet);
+			});
 		}
+		providedPackagesVersion.incrementAndGet();
 	}
 	
+	/**
+	 * Looks up the class loaders of the started modules that provide classes of a package. The sets
+	 * in the index are replaced rather than changed, so the returned set is not copied.
+	 * 
+	 * @param packageName the name of the package
+	 * @return the read only set of class loaders providing the package, empty if there are none
+	 */
 	public static Set<ModuleClassLoader> getModuleClassLoadersForPackage(String packageName) {
 		Set<ModuleClassLoader> set = providedPackages.get(packageName);
 		if (set == null) {
 			return Collections.emptySet();
 		} else {
-			return new HashSet<>(set);
+			return set;
 		}
 	}
 	
+	/**
+	 * Class loaders that remember classes they could not find must forget them when this value
+	 * changes, as it does every time a module class loader is added to or removed from the package
+	 * index.
+	 * 
+	 * @return the version of the index of packages provided by module class loaders
+	 * @since 2.3.0
+	 */
+	public static long getProvidedPackagesVersion() {
+		return providedPackagesVersion.get();
+	}
+	
 	/**
 	 * Gets the error message of a module which fails to start.
 	 * 
@@ -992,6 +1211,9 @@ public class ModuleFactory {
 			catch (Exception e) {
 				throw new ModuleException("Unable to update data model using liquibase.xml.", module.getName(), e);
 			}
+			
+			// change sets may have inserted or updated global properties with plain sql
+			Context.getRegisteredComponent("globalPropertyCache", GlobalPropertyCache.class).clear();
 		}
 	}
 	
@@ -1078,11 +1300,13 @@ public class ModuleFactory {
 				}
 			}
 			
-			getStartedModulesMap().remove(moduleId);
-			if (actualStartupOrder != null) {
-				actualStartupOrder.remove(moduleId);
-				for (Module depModule : dependentModulesStopped) {
-					actualStartupOrder.remove(depModule.getModuleId());
+			synchronized (ModuleFactory.class) {
+				getStartedModulesMap().remove(moduleId);
+				if (actualStartupOrder != null) {
+					actualStartupOrder.remove(moduleId);
+					for (Module depModule : dependentModulesStopped) {
+						actualStartupOrder.remove(depModule.getModuleId());
+					}
 				}
 			}
 			
@@ -1124,9 +1348,11 @@ public class ModuleFactory {
 					for (Extension ext : mod.getExtensions()) {
 						String extId = ext.getExtensionId();
 						try {
-							List<Extension> tmpExtensions = getExtensions(extId);
-							tmpExtensions.remove(ext);
-							getExtensionMap().put(extId, tmpExtensions);
+							synchronized (ModuleFactory.class) {
+								List<Extension> tmpExtensions = getExtensions(extId);
+								tmpExtensions.remove(ext);
+								getExtensionMap().put(extId, tmpExtensions);
+							}
 						}
 						catch (Exception exterror) {
 							log.warn("Error while getting extension: " + ext, exterror);
@@ -1395,7 +1621,7 @@ public class ModuleFactory {
 	public static Collection<ModuleClassLoader> getModuleClassLoaders() {
 		Map<Module, ModuleClassLoader> classLoaders = getModuleClassLoaderMap();
 		if (classLoaders.size() > 0) {
-			return classLoaders.values();
+			return new ArrayList<>(classLoaders.values());
 		}
 		
 		return Collections.emptyList();
@@ -1408,7 +1634,7 @@ public class ModuleFactory {
 	 */
 	public static Map<Module, ModuleClassLoader> getModuleClassLoaderMap() {
 		if (moduleClassLoaders == null) {
-			moduleClassLoaders = new WeakHashMap<>();
+			moduleClassLoaders = Collections.synchronizedMap(new WeakHashMap<>());
 		}
 		
 		return moduleClassLoaders;
@@ -12,8 +12,10 @@ package org.mrs.module;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -31,6 +33,7 @@ import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.zip.ZipEntry;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.mrs.GlobalProperty;
 import org.mrs.Privilege;
@@ -215,7 +218,11 @@ public class ModuleFileParser {
 	}
 
 	private Document getModuleConfigXml(File moduleFile) {
-		Document config;
+		Document config = getCachedModuleConfigXml(moduleFile);
+		if (config != null) {
+			return config;
+		}
+
 		try (JarFile jarfile = new JarFile(moduleFile)) {
 			ZipEntry configEntry = getConfigXmlZipEntry(jarfile, moduleFile);
 			config = parseConfigXml(jarfile, configEntry, moduleFile);
@@ -227,6 +234,28 @@ public class ModuleFileParser {
 		return config;
 	}
 
+	/**
+	 * Parses the config.xml of the module file from the module cache, to avoid opening the module
+	 * file if its config.xml has been read before.
+	 * 
+	 * @return the parsed config.xml or null if it is not cached
+	 * @see ModuleArchiveCache
+	 */
+	private Document getCachedModuleConfigXml(File moduleFile) {
+		try {
+			File configXml = ModuleArchiveCache.getConfigXml(moduleFile);
+			if (configXml != null) {
+				try (InputStream configStream = new FileInputStream(configXml)) {
+					return parseConfigXmlStream(configStream, moduleFile);
+				}
+			}
+		}
+		catch (IOException e) {
+			log.debug("Unable to read the cached " + MODULE_CONFIG_XML_FILENAME + " of " + moduleFile.getName(), e);
+		}
+		return null;
+	}
+
 	private ZipEntry getConfigXmlZipEntry(JarFile jarfile, File moduleFile) {
 		ZipEntry config = jarfile.getEntry(MODULE_CONFIG_XML_FILENAME);
 		if (config == null) {
@@ -239,7 +268,15 @@ public class ModuleFileParser {
 	private Document parseConfigXml(JarFile jarfile, ZipEntry configEntry, File moduleFile) {
 		Document config;
 		try (InputStream configStream = jarfile.getInputStream(configEntry)) {
-			config = parseConfigXmlStream(configStream, moduleFile);
+			byte[] configXml = IOUtils.toByteArray(configStream);
+			config = parseConfigXmlStream(new ByteArrayInputStream(configXml), moduleFile);
+
+			try {
+				ModuleArchiveCache.putConfigXml(moduleFile, configXml);
+			}
+			catch (IOException e) {
+				log.warn("Unable to cache the " + MODULE_CONFIG_XML_FILENAME + " of " + moduleFile.getName(), e);
+			}
 		}
 		catch (IOException e) {
 			throw new ModuleException(messageSourceService.getMessage(
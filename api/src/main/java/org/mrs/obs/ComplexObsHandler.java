@@ -9,6 +9,10 @@
  */
 package org.mrs.obs;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
 import org.mrs.Obs;
 import org.mrs.api.APIException;
 
@@ -93,4 +97,31 @@ public interface ComplexObsHandler {
 	 * @since 1.12
 	 */
 	public boolean supportsView(String view);
+	
+	/**
+	 * Opens a stream over the stored complex data of the obs, so that large data does not have to
+	 * be read into memory. The caller must close the stream. By default this returns the data of the
+	 * {@link #RAW_VIEW}, handlers storing the data in files should stream the file instead.
+	 *
+	 * @param obs an obs without complex data filled in
+	 * @return a stream over the stored data or null if there is none
+	 * @throws IOException if the data cannot be read
+	 * @since 2.3.0
+	 */
+	public default InputStream getComplexDataStream(Obs obs) throws IOException {
+		Obs complexObs = getObs(obs, RAW_VIEW);
+		if (complexObs == null || complexObs.getComplexData() == null) {
+			return null;
+		}
+		
+		Object data = complexObs.getComplexData().getData();
+		if (data == null) {
+			return null;
+		} else if (data instanceof InputStream) {
+			return (InputStream) data;
+		} else if (data instanceof byte[]) {
+			return new ByteArrayInputStream((byte[]) data);
+		}
+		throw new APIException("Obs.error.unable.stream.complex.data", new Object[] { data.getClass().getName() });
+	}
 }
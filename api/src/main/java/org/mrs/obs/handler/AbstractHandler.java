@@ -10,13 +10,16 @@
 package org.mrs.obs.handler;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.text.NumberFormat;
 import java.util.Arrays;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.mrs.Obs;
+import org.mrs.api.APIException;
 import org.mrs.api.context.Context;
 import org.mrs.obs.ComplexData;
 import org.mrs.util.OpenmrsConstants;
@@ -27,6 +30,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Abstract handler for some convenience methods Files are stored in the location specified by the
  * global property: "obs.complex_obs_dir"
+ * <p>
+ * Since 2.3.0 new files are written to two levels of subdirectories named after a hash of the file
+ * name, e.g. <code>3f/a2/scan_&lt;uuid&gt;.jpg</code>, and the path relative to the complex obs
+ * directory is kept in the value complex. Files referenced by older values are looked up directly
+ * in the complex obs directory and then in their hashed subdirectory, so they can be moved there.
  * 
  * @since 1.5
  */
@@ -34,6 +42,8 @@ public class AbstractHandler {
 	
 	private static final Logger log = LoggerFactory.getLogger(AbstractHandler.class);
 	
+	private static volatile ComplexObsDir complexObsDir;
+	
 	protected NumberFormat nf;
 	
 	/**
@@ -49,7 +59,9 @@ public class AbstractHandler {
 	/**
 	 * Returns a {@link File} for the given obs complex data to be written to. The output file
 	 * location is determined off of the {@link OpenmrsConstants#GLOBAL_PROPERTY_COMPLEX_OBS_DIR}
-	 * and the file name is determined off the current obs.getComplexData().getTitle().
+	 * and the file name is determined off the current obs.getComplexData().getTitle(). The file is
+	 * placed in the hashed subdirectory for its name, which is created if needed, use
+	 * {@link #getComplexDataPath(File)} for the value to store.
 	 * 
 	 * @param obs the Obs with a non-null complex data on it
 	 * @return File that the complex data should be written to
@@ -67,13 +79,64 @@ public class AbstractHandler {
 			filename = uuid + extension;
 		}
 		
-		File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(
-		    Context.getAdministrationService().getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
+		File dir = new File(getComplexObsDirectory(), getShardPath(filename));
+		if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+			throw new IOException("Unable to create directory " + dir.getAbsolutePath());
+		}
 		File outputfile = new File(dir, filename);
 		
 		return outputfile;
 	}
 	
+	/**
+	 * Gets the path of a file written to the complex obs directory relative to that directory, using
+	 * '/' as separator. This is the part of the value complex after the '|' that
+	 * {@link #getComplexDataFile(Obs)} resolves.
+	 * 
+	 * @param file a file returned by {@link #getOutputFileToWrite(Obs)}
+	 * @return the relative path of the file
+	 * @since 2.3.0
+	 */
+	public static String getComplexDataPath(File file) {
+		String dir = getComplexObsDirectory().getAbsolutePath();
+		String path = file.getAbsolutePath();
+		if (path.startsWith(dir + File.separator)) {
+			return FilenameUtils.separatorsToUnix(path.substring(dir.length() + 1));
+		}
+		return file.getName();
+	}
+	
+	/**
+	 * Gets the subdirectory a file is stored in, which is made of the low two bytes of the hash of
+	 * its name so that files spread evenly over 65536 directories.
+	 * 
+	 * @param filename the name of the file
+	 * @return the path of the subdirectory, e.g. "3f/a2"
+	 * @since 2.3.0
+	 */
+	public static String getShardPath(String filename) {
+		int hash = filename.hashCode();
+		hash ^= hash >>> 16;
+		return String.format("%02x/%02x", (hash >>> 8) & 0xff, hash & 0xff);
+	}
+	
+	/**
+	 * Gets the directory complex obs are stored in. The resolved directory is kept until the value
+	 * of the global property changes, so that it isn't looked up on the file system for every file.
+	 * 
+	 * @return the complex obs directory
+	 */
+	private static File getComplexObsDirectory() {
+		String gpValue = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR);
+		ComplexObsDir current = complexObsDir;
+		if (current == null || !StringUtils.equals(current.gpValue, gpValue)) {
+			current = new ComplexObsDir(gpValue, OpenmrsUtil.getDirectoryInApplicationDataDirectory(gpValue));
+			complexObsDir = current;
+		}
+		return current.dir;
+	}
+	
 	/**
 	 * Get the extension for a given filename if it exists, else return the filename. If there is no
 	 * filename in the input string, "raw" is returned. 
@@ -103,26 +166,39 @@ public class AbstractHandler {
 	}
 	
 	/**
+	 * Reads the whole file into a byte array, use {@link #getComplexDataStream(Obs)} for data that
+	 * should not be held in memory.
+	 * 
 	 * @see org.mrs.obs.ComplexObsHandler#getObs(Obs, String)
 	 */
 	public Obs getObs(Obs obs, String view) {
 		File file = BinaryDataHandler.getComplexDataFile(obs);
-		log.debug("value complex: " + obs.getValueComplex());
-		log.debug("file path: " + file.getAbsolutePath());
+		log.debug("value complex: {}", obs.getValueComplex());
+		log.debug("file path: {}", file.getAbsolutePath());
 		ComplexData complexData = null;
 		try {
 			complexData = new ComplexData(file.getName(), OpenmrsUtil.getFileAsBytes(file));
+			complexData.setMimeType(OpenmrsUtil.getFileMimeType(file));
 		}
 		catch (IOException e) {
 			log.error("Trying to read file: " + file.getAbsolutePath(), e);
 		}
-		String mimeType = OpenmrsUtil.getFileMimeType(file);
-		complexData.setMimeType(mimeType);
 		obs.setComplexData(complexData);
 		
 		return obs;
 	}
 	
+	/**
+	 * @see org.mrs.obs.ComplexObsHandler#getComplexDataStream(Obs)
+	 */
+	public InputStream getComplexDataStream(Obs obs) throws IOException {
+		File file = getComplexDataFile(obs);
+		if (!file.exists()) {
+			return null;
+		}
+		return new FileInputStream(file);
+	}
+	
 	/**
 	 * @see org.mrs.obs.ComplexObsHandler#purgeComplexData(org.mrs.Obs)
 	 */
@@ -141,17 +217,34 @@ public class AbstractHandler {
 	}
 	
 	/**
-	 * Convenience method to create and return a file for the stored ComplexData.data Object
+	 * Convenience method to create and return a file for the stored ComplexData.data Object. Values
+	 * holding just a file name, as written before 2.3.0, resolve to the file in the complex obs
+	 * directory or else to the one in its hashed subdirectory.
 	 * 
 	 * @param obs
 	 * @return File object
 	 */
 	public static File getComplexDataFile(Obs obs) {
 		String[] names = obs.getValueComplex().split("\\|");
-		String filename = names.length < 2 ? names[0] : names[names.length - 1];
-		File dir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(
-		    Context.getAdministrationService().getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
-		return new File(dir, filename);
+		String path = names.length < 2 ? names[0] : names[names.length - 1];
+		File dir = getComplexObsDirectory();
+		
+		String normalizedPath = FilenameUtils.normalize(path.trim(), true);
+		if (normalizedPath == null) {
+			throw new APIException("Obs.error.invalid.complex.path", new Object[] { path });
+		}
+		if (normalizedPath.indexOf('/') >= 0) {
+			return new File(dir, normalizedPath);
+		}
+		
+		File file = new File(dir, normalizedPath);
+		if (!file.exists()) {
+			File shardedFile = new File(new File(dir, getShardPath(normalizedPath)), normalizedPath);
+			if (shardedFile.exists()) {
+				return shardedFile;
+			}
+		}
+		return file;
 	}
 	
 	/**
@@ -168,4 +261,19 @@ public class AbstractHandler {
 		return Arrays.asList(getSupportedViews()).contains(view);
 	}
 	
+	/**
+	 * The complex obs directory resolved for a value of the global property
+	 */
+	private static class ComplexObsDir {
+		
+		private final String gpValue;
+		
+		private final File dir;
+		
+		ComplexObsDir(String gpValue, File dir) {
+			this.gpValue = gpValue;
+			this.dir = dir;
+		}
+	}
+	
 }
@@ -127,7 +127,7 @@ public class BinaryDataHandler extends AbstractHandler implements ComplexObsHand
 			}
 			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(outfile.getName() + " file |" + outfile.getName());
+			obs.setValueComplex(outfile.getName() + " file |" + getComplexDataPath(outfile));
 			
 			// Remove the ComplexData from the Obs
 			obs.setComplexData(null);
@@ -118,7 +118,7 @@ public class BinaryStreamHandler extends AbstractHandler implements ComplexObsHa
 			
 			// Store the filename in the Obs
 			obs.setComplexData(null);
-			obs.setValueComplex(fileName + "|" + outfile.getName());
+			obs.setValueComplex(fileName + "|" + getComplexDataPath(outfile));
 			
 			// close the stream
 			out.close();
@@ -164,7 +164,7 @@ public class ImageHandler extends AbstractHandler implements ComplexObsHandler {
 			ImageIO.write(img, extension, outfile);
 			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(extension + " image |" + outfile.getName());
+			obs.setValueComplex(extension + " image |" + getComplexDataPath(outfile));
 			
 			// Remove the ComlexData from the Obs
 			obs.setComplexData(null);
@@ -107,7 +107,7 @@ public class MediaHandler extends AbstractHandler implements ComplexObsHandler {
 			
 			// Store the filename in the Obs
 			obs.setComplexData(null);
-			obs.setValueComplex(fileName + "|" + outfile.getName());
+			obs.setValueComplex(fileName + "|" + getComplexDataPath(outfile));
 			
 			// close the stream
 			out.close();
@@ -150,7 +150,7 @@ public class TextHandler extends AbstractHandler implements ComplexObsHandler {
 			}
 			
 			// Set the Title and URI for the valueComplex
-			obs.setValueComplex(outfile.getName() + " file |" + outfile.getName());
+			obs.setValueComplex(outfile.getName() + " file |" + getComplexDataPath(outfile));
 			
 			// Remove the ComplexData from the Obs
 			obs.setComplexData(null);
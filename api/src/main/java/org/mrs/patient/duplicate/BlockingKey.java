@@ -0,0 +1,108 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.patient.duplicate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The attributes that patients are grouped by before they are compared. Only the patients that
+ * share a block, i.e. the same value of every key of a blocking pass, are compared with each other.
+ *
+ * @since 2.3.0
+ */
+public enum BlockingKey {
+	
+	/**
+	 * Any normalized name token, a patient is in one block per token
+	 */
+	NAME,
+	
+	/**
+	 * The year of birth
+	 */
+	BIRTH_YEAR,
+	
+	/**
+	 * The gender
+	 */
+	GENDER,
+	
+	/**
+	 * Any normalized identifier, a patient is in one block per identifier
+	 */
+	IDENTIFIER;
+	
+	/**
+	 * @param candidate a patient
+	 * @return the values of this key for the patient, empty if the patient has none
+	 */
+	public Collection<String> getValues(DuplicatePatientCandidate candidate) {
+		switch (this) {
+			case NAME:
+				return candidate.getNameTokens();
+			case BIRTH_YEAR:
+				Integer birthYear = candidate.getBirthYear();
+				return birthYear == null ? Collections.emptySet() : Collections.singleton(birthYear.toString());
+			case GENDER:
+				String gender = candidate.getGender();
+				return gender == null ? Collections.emptySet() : Collections.singleton(gender);
+			default:
+				return candidate.getIdentifiers();
+		}
+	}
+	
+	/**
+	 * Parses blocking passes written as keys joined by '+', passes being separated by commas, e.g.
+	 * <code>NAME+BIRTH_YEAR, IDENTIFIER</code>
+	 *
+	 * @param passes the passes
+	 * @return the keys of each pass
+	 * @throws IllegalArgumentException if a key is unknown or no pass is given
+	 */
+	public static List<Set<BlockingKey>> parsePasses(String passes) {
+		List<Set<BlockingKey>> parsed = new ArrayList<>();
+		for (String pass : StringUtils.split(StringUtils.defaultString(passes), ',')) {
+			Set<BlockingKey> keys = EnumSet.noneOf(BlockingKey.class);
+			for (String key : StringUtils.split(pass, '+')) {
+				if (StringUtils.isNotBlank(key)) {
+					keys.add(valueOf(key.trim().toUpperCase(Locale.ROOT)));
+				}
+			}
+			if (!keys.isEmpty()) {
+				parsed.add(keys);
+			}
+		}
+		if (parsed.isEmpty()) {
+			throw new IllegalArgumentException("No blocking keys in '" + passes + "'");
+		}
+		return parsed;
+	}
+	
+	/**
+	 * @param passes the keys of each pass
+	 * @return the passes in the format read by {@link #parsePasses(String)}
+	 */
+	public static String formatPasses(List<Set<BlockingKey>> passes) {
+		Set<String> formatted = new LinkedHashSet<>();
+		for (Set<BlockingKey> pass : passes) {
+			formatted.add(StringUtils.join(pass, '+'));
+		}
+		return StringUtils.join(formatted, ',');
+	}
+}
@@ -0,0 +1,123 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.patient.duplicate;
+
+import java.text.Normalizer;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The attributes of a patient that duplicate detection compares, read without loading the patient.
+ * Names and identifiers are normalized when they are added: names are split in lower case tokens
+ * without accents or punctuation, identifiers are upper cased without separators, so that e.g.
+ * "José-Maria" and "jose maria" or "123-45" and "12345" agree.
+ *
+ * @since 2.3.0
+ */
+public class DuplicatePatientCandidate {
+	
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+	
+	private static final Pattern NOT_LETTERS = Pattern.compile("[^\\p{L}]+");
+	
+	private static final Pattern NOT_ALPHANUMERICS = Pattern.compile("[^\\p{Alnum}]+");
+	
+	private final Integer patientId;
+	
+	private final String gender;
+	
+	private final Date birthdate;
+	
+	private final Set<String> nameTokens = new TreeSet<>();
+	
+	private final Set<String> identifiers = new TreeSet<>();
+	
+	public DuplicatePatientCandidate(Integer patientId, String gender, Date birthdate) {
+		this.patientId = patientId;
+		this.gender = StringUtils.upperCase(StringUtils.trimToNull(gender));
+		this.birthdate = birthdate;
+	}
+	
+	/**
+	 * @param name a given, middle or family name, may be null
+	 */
+	public void addName(String name) {
+		if (name == null) {
+			return;
+		}
+		String normalized = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+		for (String token : NOT_LETTERS.split(normalized.toLowerCase(Locale.ROOT))) {
+			// initials say too little to block or match on
+			if (token.length() > 1) {
+				nameTokens.add(token);
+			}
+		}
+	}
+	
+	/**
+	 * @param identifier an identifier of the patient, may be null
+	 */
+	public void addIdentifier(String identifier) {
+		if (identifier != null) {
+			String normalized = NOT_ALPHANUMERICS.matcher(identifier).replaceAll("").toUpperCase(Locale.ROOT);
+			if (!normalized.isEmpty()) {
+				identifiers.add(normalized);
+			}
+		}
+	}
+	
+	public Integer getPatientId() {
+		return patientId;
+	}
+	
+	/**
+	 * @return the upper case gender, null if unknown
+	 */
+	public String getGender() {
+		return gender;
+	}
+	
+	public Date getBirthdate() {
+		return birthdate;
+	}
+	
+	/**
+	 * @return the year of birth, null if the birthdate is unknown
+	 */
+	public Integer getBirthYear() {
+		if (birthdate == null) {
+			return null;
+		}
+		Calendar calendar = Calendar.getInstance();
+		calendar.setTime(birthdate);
+		return calendar.get(Calendar.YEAR);
+	}
+	
+	/**
+	 * @return the normalized tokens of all names, sorted
+	 */
+	public Set<String> getNameTokens() {
+		return Collections.unmodifiableSet(nameTokens);
+	}
+	
+	/**
+	 * @return the normalized identifiers, sorted
+	 */
+	public Set<String> getIdentifiers() {
+		return Collections.unmodifiableSet(identifiers);
+	}
+}
@@ -0,0 +1,276 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.patient.duplicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.time.DateUtils;
+import org.mrs.DuplicatePatientMatch;
+import org.mrs.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds likely duplicate patients among candidates that are streamed to it once, ordered or not.
+ * Each candidate is put in the blocks of its blocking keys (see {@link BlockingKey}), then the
+ * candidates of each block are compared pairwise and scored from 0 to 1:
+ * <ul>
+ * <li>0.4 times the share of name tokens they have in common</li>
+ * <li>0.25 for the same birthdate, 0.1 for the same year of birth</li>
+ * <li>0.1 for the same gender</li>
+ * <li>0.25 for a common identifier</li>
+ * </ul>
+ * Blocks larger than the maximum block size, e.g. of a very common name, are skipped since the
+ * number of comparisons grows with the square of their size. Patients sharing such a block are
+ * still found through their other blocks.
+ * <p>
+ * To bound the memory used on large databases the blocks can be split in shards, a detector only
+ * keeping the blocks, and the candidates in them, of its own shard. Running one detector per shard
+ * over the same candidates finds the same pairs as a single detector, though a pair sharing blocks
+ * of several shards is found by each of them.
+ *
+ * @since 2.3.0
+ */
+public class DuplicatePatientDetector {
+	
+	private static final Logger log = LoggerFactory.getLogger(DuplicatePatientDetector.class);
+	
+	public static final String DEFAULT_BLOCKING_KEYS = "NAME+BIRTH_YEAR,IDENTIFIER";
+	
+	public static final double DEFAULT_MIN_SCORE = 0.6;
+	
+	public static final int DEFAULT_MAX_BLOCK_SIZE = 500;
+	
+	private static final double NAME_WEIGHT = 0.4;
+	
+	private static final double BIRTHDATE_WEIGHT = 0.25;
+	
+	private static final double BIRTH_YEAR_WEIGHT = 0.1;
+	
+	private static final double GENDER_WEIGHT = 0.1;
+	
+	private static final double IDENTIFIER_WEIGHT = 0.25;
+	
+	private final List<Set<BlockingKey>> passes;
+	
+	private final int shards;
+	
+	private final int shard;
+	
+	private double minScore = DEFAULT_MIN_SCORE;
+	
+	private int maxBlockSize = DEFAULT_MAX_BLOCK_SIZE;
+	
+	private final Map<Integer, DuplicatePatientCandidate> candidates = new HashMap<>();
+	
+	private final Map<String, IntList> blocks = new HashMap<>();
+	
+	private long comparisons;
+	
+	/**
+	 * Creates a detector keeping all blocks
+	 *
+	 * @param passes the keys of each blocking pass, see {@link BlockingKey#parsePasses(String)}
+	 */
+	public DuplicatePatientDetector(List<Set<BlockingKey>> passes) {
+		this(passes, 1, 0);
+	}
+	
+	/**
+	 * @param passes the keys of each blocking pass, see {@link BlockingKey#parsePasses(String)}
+	 * @param shards the number of shards the blocks are split in
+	 * @param shard the shard of this detector, from 0 to shards - 1
+	 */
+	public DuplicatePatientDetector(List<Set<BlockingKey>> passes, int shards, int shard) {
+		if (shards < 1 || shard < 0 || shard >= shards) {
+			throw new IllegalArgumentException("Invalid shard " + shard + " of " + shards);
+		}
+		this.passes = new ArrayList<>(passes);
+		this.shards = shards;
+		this.shard = shard;
+	}
+	
+	/**
+	 * @param minScore the minimum score of the pairs to report
+	 */
+	public void setMinScore(double minScore) {
+		this.minScore = minScore;
+	}
+	
+	/**
+	 * @param maxBlockSize the number of candidates above which a block is skipped
+	 */
+	public void setMaxBlockSize(int maxBlockSize) {
+		this.maxBlockSize = maxBlockSize;
+	}
+	
+	/**
+	 * Puts a candidate in the blocks of the shard of this detector
+	 *
+	 * @param candidate the candidate to add
+	 */
+	public void add(DuplicatePatientCandidate candidate) {
+		boolean blocked = false;
+		for (String key : getBlockKeys(candidate)) {
+			if (Math.floorMod(key.hashCode(), shards) == shard) {
+				blocks.computeIfAbsent(key, k -> new IntList()).add(candidate.getPatientId());
+				blocked = true;
+			}
+		}
+		if (blocked) {
+			candidates.put(candidate.getPatientId(), candidate);
+		}
+	}
+	
+	/**
+	 * Compares the candidates of each block
+	 *
+	 * @return the pairs scoring at least the minimum score, by descending score. The patients of the
+	 *         matches only have their id set.
+	 */
+	public List<DuplicatePatientMatch> detect() {
+		Map<Long, DuplicatePatientMatch> matches = new LinkedHashMap<>();
+		int skippedBlocks = 0;
+		for (Map.Entry<String, IntList> block : blocks.entrySet()) {
+			int[] patientIds = block.getValue().toArray();
+			if (patientIds.length > maxBlockSize) {
+				log.debug("Skipping block {} of {} patients", block.getKey(), patientIds.length);
+				skippedBlocks++;
+				continue;
+			}
+			
+			Arrays.sort(patientIds);
+			for (int i = 0; i < patientIds.length; i++) {
+				for (int j = i + 1; j < patientIds.length; j++) {
+					long pair = ((long) patientIds[i] << 32) | patientIds[j];
+					if (matches.containsKey(pair)) {
+						continue;
+					}
+					comparisons++;
+					double score = score(candidates.get(patientIds[i]), candidates.get(patientIds[j]));
+					if (score >= minScore) {
+						matches.put(pair, new DuplicatePatientMatch(new Patient(patientIds[i]), new Patient(patientIds[j]),
+						        score));
+					}
+				}
+			}
+		}
+		log.info("Compared {} pairs of patients in {} blocks, skipped {} blocks larger than {}, found {} matches",
+		    comparisons, blocks.size() - skippedBlocks, skippedBlocks, maxBlockSize, matches.size());
+		
+		List<DuplicatePatientMatch> sorted = new ArrayList<>(matches.values());
+		sorted.sort((a, b) -> b.getScore().compareTo(a.getScore()));
+		return sorted;
+	}
+	
+	/**
+	 * @return the number of candidates kept in the blocks of this detector
+	 */
+	public int getCandidateCount() {
+		return candidates.size();
+	}
+	
+	/**
+	 * @return the number of pairs compared by {@link #detect()}
+	 */
+	public long getComparisons() {
+		return comparisons;
+	}
+	
+	/**
+	 * @param a a patient
+	 * @param b another patient
+	 * @return how likely, from 0 to 1, both are the same person
+	 */
+	public static double score(DuplicatePatientCandidate a, DuplicatePatientCandidate b) {
+		double score = NAME_WEIGHT * getSharedShare(a.getNameTokens(), b.getNameTokens());
+		if (a.getBirthdate() != null && b.getBirthdate() != null) {
+			if (DateUtils.isSameDay(a.getBirthdate(), b.getBirthdate())) {
+				score += BIRTHDATE_WEIGHT;
+			} else if (a.getBirthYear().equals(b.getBirthYear())) {
+				score += BIRTH_YEAR_WEIGHT;
+			}
+		}
+		if (a.getGender() != null && a.getGender().equals(b.getGender())) {
+			score += GENDER_WEIGHT;
+		}
+		if (!Collections.disjoint(a.getIdentifiers(), b.getIdentifiers())) {
+			score += IDENTIFIER_WEIGHT;
+		}
+		return score;
+	}
+	
+	/**
+	 * @return the number of common elements divided by the number of distinct elements
+	 */
+	private static double getSharedShare(Set<String> a, Set<String> b) {
+		if (a.isEmpty() || b.isEmpty()) {
+			return 0;
+		}
+		int shared = 0;
+		for (String element : a) {
+			if (b.contains(element)) {
+				shared++;
+			}
+		}
+		return (double) shared / (a.size() + b.size() - shared);
+	}
+	
+	/**
+	 * @return the keys of the blocks of the candidate in every pass, prefixed with the pass
+	 */
+	private List<String> getBlockKeys(DuplicatePatientCandidate candidate) {
+		List<String> keys = new ArrayList<>();
+		for (int pass = 0; pass < passes.size(); pass++) {
+			List<String> passKeys = Collections.singletonList(String.valueOf(pass));
+			for (BlockingKey blockingKey : passes.get(pass)) {
+				Collection<String> values = blockingKey.getValues(candidate);
+				List<String> combined = new ArrayList<>(passKeys.size() * values.size());
+				for (String passKey : passKeys) {
+					for (String value : values) {
+						combined.add(passKey + '|' + value);
+					}
+				}
+				passKeys = combined;
+			}
+			keys.addAll(passKeys);
+		}
+		return keys;
+	}
+	
+	/**
+	 * A growable list of primitive ints, blocks being mostly small
+	 */
+	private static final class IntList {
+		
+		private int[] values = new int[2];
+		
+		private int size;
+		
+		void add(int value) {
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size++] = value;
+		}
+		
+		int[] toArray() {
+			return Arrays.copyOf(values, size);
+		}
+	}
+}
@@ -27,6 +27,8 @@ public class AutoCloseVisitsTask extends AbstractTask {
 	
 	private static final Logger log = LoggerFactory.getLogger(AutoCloseVisitsTask.class);
 	
+	private volatile int stoppedCount;
+	
 	/**
 	 * @see org.mrs.scheduler.tasks.AbstractTask#execute()
 	 */
@@ -38,8 +40,14 @@ public class AutoCloseVisitsTask extends AbstractTask {
 			}
 			
 			startExecuting();
+			long start = System.currentTimeMillis();
+			stoppedCount = 0;
 			try {
-				Context.getVisitService().stopVisits(new Date());
+				stoppedCount = Context.getVisitService().stopVisits(new Date(), stopped -> {
+					stoppedCount = stopped;
+					log.debug("Stopped {} visits so far", stopped);
+				});
+				log.info("Auto closed {} visits in {} ms", stoppedCount, System.currentTimeMillis() - start);
 			}
 			catch (Exception e) {
 				log.error("Error while auto closing visits:", e);
@@ -49,4 +57,12 @@ public class AutoCloseVisitsTask extends AbstractTask {
 			}
 		}
 	}
+	
+	/**
+	 * @return the number of visits stopped by the current or last run of the task
+	 * @since 2.3.0
+	 */
+	public int getStoppedCount() {
+		return stoppedCount;
+	}
 }
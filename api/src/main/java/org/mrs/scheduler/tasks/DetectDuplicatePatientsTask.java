@@ -0,0 +1,222 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.scheduler.tasks;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.time.DateUtils;
+import org.mrs.DuplicatePatientMatch;
+import org.mrs.GlobalProperty;
+import org.mrs.api.AdministrationService;
+import org.mrs.api.PatientService;
+import org.mrs.api.context.Context;
+import org.mrs.patient.duplicate.BlockingKey;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
+import org.mrs.patient.duplicate.DuplicatePatientDetector;
+import org.mrs.util.OpenmrsConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduled task that finds likely duplicate patients with a {@link DuplicatePatientDetector}
+ * and saves them with {@link PatientService#saveDuplicatePatientMatches(java.util.Collection)}.
+ * The patients are streamed in batches once per shard, so only the blocks of one shard are held in
+ * memory at a time, and the completed shards are recorded in the global property
+ * {@link OpenmrsConstants#GP_DUPLICATE_PATIENT_DETECTION_POSITION}. A shard is detected as a whole,
+ * so an interrupted run resumes at the start of the shard it was detecting. It reads these
+ * optional task properties:
+ * <ul>
+ * <li>blockingKeys: the blocking passes, see {@link BlockingKey#parsePasses(String)}</li>
+ * <li>minScore and maxBlockSize: see {@link DuplicatePatientDetector}</li>
+ * <li>shards: the number of shards the blocks are split into, {@value #DEFAULT_SHARDS} by
+ * default</li>
+ * <li>shardsPerRun: the number of shards a run detects before it stops, the next run resumes with
+ * the following shards, all by default</li>
+ * <li>batchSize: the number of patients read at a time</li>
+ * <li>includeVoided: true to also compare voided patients</li>
+ * <li>resume: false to start over instead of continuing an interrupted run</li>
+ * </ul>
+ * The matches saved by earlier runs are kept until a run has detected all shards, then the ones it
+ * didn't find again are purged.
+ *
+ * @since 2.3.0
+ */
+public class DetectDuplicatePatientsTask extends AbstractTask {
+	
+	private static final Logger log = LoggerFactory.getLogger(DetectDuplicatePatientsTask.class);
+	
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	
+	public static final int DEFAULT_SHARDS = 4;
+	
+	/**
+	 * @see org.mrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			log.debug("Starting Detect Duplicate Patients Task...");
+			
+			startExecuting();
+			try {
+				detectDuplicatePatients();
+			}
+			catch (Exception e) {
+				log.error("Error while detecting duplicate patients:", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+	
+	void detectDuplicatePatients() {
+		String blockingKeys = StringUtils.defaultIfBlank(getProperty("blockingKeys"),
+		    DuplicatePatientDetector.DEFAULT_BLOCKING_KEYS);
+		List<Set<BlockingKey>> passes = BlockingKey.parsePasses(blockingKeys);
+		int shards = Math.max(1, getIntProperty("shards", DEFAULT_SHARDS));
+		int shardsPerRun = Math.max(1, getIntProperty("shardsPerRun", shards));
+		int batchSize = Math.max(1, getIntProperty("batchSize", DEFAULT_BATCH_SIZE));
+		double minScore = getDoubleProperty("minScore", DuplicatePatientDetector.DEFAULT_MIN_SCORE);
+		int maxBlockSize = getIntProperty("maxBlockSize", DuplicatePatientDetector.DEFAULT_MAX_BLOCK_SIZE);
+		boolean includeVoided = "true".equalsIgnoreCase(StringUtils.trim(getProperty("includeVoided")));
+		boolean resume = !"false".equalsIgnoreCase(StringUtils.trim(getProperty("resume")));
+		
+		PatientService ps = Context.getPatientService();
+		String passesKey = "/" + shards + ":" + BlockingKey.formatPasses(passes);
+		RunPosition position = resume ? getInterruptedRun(passesKey) : null;
+		int shard = 0;
+		Date started;
+		if (position != null) {
+			shard = position.completedShards;
+			started = position.started;
+			log.info("Resuming duplicate patient detection at shard {} of {}", shard + 1, shards);
+		} else {
+			// the dates the matches are saved with are stored to the second
+			started = DateUtils.truncate(new Date(), Calendar.SECOND);
+		}
+		
+		int endShard = Math.min(shards, shard + shardsPerRun);
+		for (; shard < endShard && isExecuting; shard++) {
+			DuplicatePatientDetector detector = new DuplicatePatientDetector(passes, shards, shard);
+			detector.setMinScore(minScore);
+			detector.setMaxBlockSize(maxBlockSize);
+			
+			Integer after = null;
+			List<DuplicatePatientCandidate> batch;
+			do {
+				batch = ps.getDuplicatePatientCandidates(after, batchSize, includeVoided);
+				for (DuplicatePatientCandidate candidate : batch) {
+					detector.add(candidate);
+					after = candidate.getPatientId();
+				}
+				Context.clearSession();
+			} while (batch.size() == batchSize);
+			
+			List<DuplicatePatientMatch> matches = detector.detect();
+			ps.saveDuplicatePatientMatches(matches);
+			Context.clearSession();
+			
+			if (shard + 1 < shards) {
+				setPosition(started.getTime() + ":" + (shard + 1) + passesKey);
+			} else {
+				// the matches saved before this run started were not found again
+				ps.purgeDuplicatePatientMatches(started);
+				setPosition("");
+			}
+		}
+	}
+	
+	/**
+	 * @param passesKey the number of shards and blocking keys of the run, as stored after the
+	 *            completed shards
+	 * @return the position of an interrupted run with the same shards and blocking keys, null if
+	 *         there is none
+	 */
+	private RunPosition getInterruptedRun(String passesKey) {
+		String position = Context.getAdministrationService().getGlobalProperty(
+		    OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION, "");
+		if (!position.endsWith(passesKey)) {
+			return null;
+		}
+		String[] startedAndCompleted = position.substring(0, position.length() - passesKey.length()).split(":");
+		if (startedAndCompleted.length != 2) {
+			return null;
+		}
+		try {
+			return new RunPosition(new Date(Long.parseLong(startedAndCompleted[0])), Integer
+			        .parseInt(startedAndCompleted[1]));
+		}
+		catch (NumberFormatException e) {
+			return null;
+		}
+	}
+	
+	private void setPosition(String position) {
+		AdministrationService as = Context.getAdministrationService();
+		GlobalProperty gp = as.getGlobalPropertyObject(OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION);
+		if (gp == null) {
+			gp = new GlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION);
+		}
+		gp.setPropertyValue(position);
+		as.saveGlobalProperty(gp);
+	}
+	
+	private String getProperty(String name) {
+		return taskDefinition == null ? null : taskDefinition.getProperty(name);
+	}
+	
+	private int getIntProperty(String name, int defaultValue) {
+		String value = StringUtils.trim(getProperty(name));
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			log.warn("Ignoring invalid value '{}' of task property {}", value, name);
+			return defaultValue;
+		}
+	}
+	
+	private double getDoubleProperty(String name, double defaultValue) {
+		String value = StringUtils.trim(getProperty(name));
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Double.parseDouble(value);
+		}
+		catch (NumberFormatException e) {
+			log.warn("Ignoring invalid value '{}' of task property {}", value, name);
+			return defaultValue;
+		}
+	}
+	
+	/**
+	 * Where an interrupted run stopped
+	 */
+	private static class RunPosition {
+		
+		private final Date started;
+		
+		private final int completedShards;
+		
+		RunPosition(Date started, int completedShards) {
+			this.started = started;
+			this.completedShards = completedShards;
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.scheduler.tasks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.SearchIndexProgress;
+import org.mrs.api.db.SearchIndexRebuildOptions;
+import org.mrs.util.OpenmrsClassLoader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A scheduled task that rebuilds the search index with
+ * {@link Context#rebuildSearchIndex(SearchIndexRebuildOptions)}. It reads these optional task
+ * properties:
+ * <ul>
+ * <li>types: comma separated class names of the types to index, all indexed types if not set</li>
+ * <li>loaderThreads, batchSize and fetchSize: see {@link SearchIndexRebuildOptions}</li>
+ * <li>resume: false to start over instead of continuing an interrupted rebuild</li>
+ * </ul>
+ *
+ * @since 2.3.0
+ */
+public class RebuildSearchIndexTask extends AbstractTask {
+	
+	private static final Logger log = LoggerFactory.getLogger(RebuildSearchIndexTask.class);
+	
+	/**
+	 * @see org.mrs.scheduler.tasks.AbstractTask#execute()
+	 */
+	@Override
+	public void execute() {
+		if (!isExecuting) {
+			log.debug("Starting Rebuild Search Index Task...");
+			
+			startExecuting();
+			try {
+				Context.rebuildSearchIndex(getOptions());
+			}
+			catch (Exception e) {
+				log.error("Error while rebuilding the search index:", e);
+			}
+			finally {
+				stopExecuting();
+			}
+		}
+	}
+	
+	/**
+	 * @return the progress of each type of the current or last run of the task
+	 */
+	public List<SearchIndexProgress> getProgress() {
+		return Context.getSearchIndexProgress();
+	}
+	
+	SearchIndexRebuildOptions getOptions() throws ClassNotFoundException {
+		SearchIndexRebuildOptions options = new SearchIndexRebuildOptions();
+		
+		List<Class<?>> types = new ArrayList<>();
+		for (String type : StringUtils.split(StringUtils.defaultString(getProperty("types")), ',')) {
+			if (StringUtils.isNotBlank(type)) {
+				types.add(OpenmrsClassLoader.getInstance().loadClass(type.trim()));
+			}
+		}
+		options.setTypes(types);
+		
+		options.setLoaderThreads(getIntProperty("loaderThreads", SearchIndexRebuildOptions.DEFAULT_LOADER_THREADS));
+		options.setBatchSize(getIntProperty("batchSize", SearchIndexRebuildOptions.DEFAULT_BATCH_SIZE));
+		options.setFetchSize(getIntProperty("fetchSize", SearchIndexRebuildOptions.DEFAULT_FETCH_SIZE));
+		options.setResume(!"false".equalsIgnoreCase(StringUtils.trim(getProperty("resume"))));
+		return options;
+	}
+	
+	private String getProperty(String name) {
+		return taskDefinition == null ? null : taskDefinition.getProperty(name);
+	}
+	
+	private int getIntProperty(String name, int defaultValue) {
+		String value = StringUtils.trim(getProperty(name));
+		if (StringUtils.isEmpty(value)) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e) {
+			log.warn("Ignoring invalid value '{}' of task property {}", value, name);
+			return defaultValue;
+		}
+	}
+}
@@ -0,0 +1,672 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A compressed set of non negative int ids, e.g. the patient ids of a cohort, that does not box its
+ * members. Ids are grouped by their 16 high bits, as in Roaring bitmaps: the low 16 bits of up to
+ * {@value #MAX_ARRAY_SIZE} ids of a group are kept in a sorted char array, those of larger groups in
+ * a 65536 bit bitmap. A set of a million ids takes about 2 MB, the same ids in a
+ * <code>TreeSet&lt;Integer&gt;</code> about 50 MB.
+ * <p>
+ * Union, intersection and difference work group by group, on the arrays or the bitmap words. The
+ * ids are iterated in ascending order. This class is not thread safe.
+ *
+ * @since 2.3.0
+ */
+public class IdBitmap implements Iterable<Integer>, Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	/**
+	 * Above this many ids a group is kept as a bitmap, which then takes less space than the array
+	 */
+	static final int MAX_ARRAY_SIZE = 4096;
+	
+	private static final int BITMAP_WORDS = 1024;
+	
+	// the high 16 bits of the groups, ascending
+	private char[] keys = new char[4];
+	
+	private Container[] containers = new Container[4];
+	
+	private int groups;
+	
+	public IdBitmap() {
+	}
+	
+	/**
+	 * @param ids the ids to add, nulls are ignored
+	 * @return a new set of the given ids
+	 */
+	public static IdBitmap of(Collection<Integer> ids) {
+		IdBitmap bitmap = new IdBitmap();
+		for (Integer id : ids) {
+			if (id != null) {
+				bitmap.add(id);
+			}
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * @param ids the ids to add
+	 * @return a new set of the given ids
+	 */
+	public static IdBitmap of(int... ids) {
+		IdBitmap bitmap = new IdBitmap();
+		for (int id : ids) {
+			bitmap.add(id);
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * @param id the id to add
+	 * @return true if the set did not contain the id
+	 * @throws IllegalArgumentException if the id is negative
+	 */
+	public boolean add(int id) {
+		if (id < 0) {
+			throw new IllegalArgumentException("Ids must not be negative: " + id);
+		}
+		char key = (char) (id >>> 16);
+		int index = Arrays.binarySearch(keys, 0, groups, key);
+		if (index < 0) {
+			index = -index - 1;
+			insertGroup(index, key, new ArrayContainer());
+		}
+		int cardinality = containers[index].cardinality;
+		containers[index] = containers[index].add((char) id);
+		return containers[index].cardinality > cardinality;
+	}
+	
+	/**
+	 * @param id the id to remove
+	 * @return true if the set contained the id
+	 */
+	public boolean remove(int id) {
+		int index = id < 0 ? -1 : Arrays.binarySearch(keys, 0, groups, (char) (id >>> 16));
+		if (index < 0) {
+			return false;
+		}
+		int cardinality = containers[index].cardinality;
+		Container container = containers[index].remove((char) id);
+		if (container.cardinality == 0) {
+			removeGroup(index);
+		} else {
+			containers[index] = container;
+		}
+		return container.cardinality < cardinality;
+	}
+	
+	/**
+	 * @param id an id
+	 * @return true if the set contains the id
+	 */
+	public boolean contains(int id) {
+		int index = id < 0 ? -1 : Arrays.binarySearch(keys, 0, groups, (char) (id >>> 16));
+		return index >= 0 && containers[index].contains((char) id);
+	}
+	
+	/**
+	 * @return the number of ids in the set
+	 */
+	public int size() {
+		int size = 0;
+		for (int i = 0; i < groups; i++) {
+			size += containers[i].cardinality;
+		}
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return groups == 0;
+	}
+	
+	/**
+	 * @return a new bitmap with the same ids, which can be changed without changing this one
+	 */
+	public IdBitmap copy() {
+		IdBitmap copy = new IdBitmap();
+		for (int i = 0; i < groups; i++) {
+			copy.appendGroup(keys[i], containers[i].copy());
+		}
+		return copy;
+	}
+	
+	/**
+	 * @return the ids of either set
+	 */
+	public static IdBitmap or(IdBitmap a, IdBitmap b) {
+		IdBitmap result = new IdBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.groups || j < b.groups) {
+			if (j == b.groups || (i < a.groups && a.keys[i] < b.keys[j])) {
+				result.appendGroup(a.keys[i], a.containers[i].copy());
+				i++;
+			} else if (i == a.groups || b.keys[j] < a.keys[i]) {
+				result.appendGroup(b.keys[j], b.containers[j].copy());
+				j++;
+			} else {
+				result.appendGroup(a.keys[i], a.containers[i].or(b.containers[j]));
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the ids of both sets
+	 */
+	public static IdBitmap and(IdBitmap a, IdBitmap b) {
+		IdBitmap result = new IdBitmap();
+		int i = 0;
+		int j = 0;
+		while (i < a.groups && j < b.groups) {
+			if (a.keys[i] < b.keys[j]) {
+				i++;
+			} else if (b.keys[j] < a.keys[i]) {
+				j++;
+			} else {
+				Container container = a.containers[i].and(b.containers[j]);
+				if (container.cardinality > 0) {
+					result.appendGroup(a.keys[i], container);
+				}
+				i++;
+				j++;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the ids of the first set that are not in the second
+	 */
+	public static IdBitmap andNot(IdBitmap a, IdBitmap b) {
+		IdBitmap result = new IdBitmap();
+		int j = 0;
+		for (int i = 0; i < a.groups; i++) {
+			while (j < b.groups && b.keys[j] < a.keys[i]) {
+				j++;
+			}
+			Container container = j < b.groups && b.keys[j] == a.keys[i] ? a.containers[i].andNot(b.containers[j])
+			        : a.containers[i].copy();
+			if (container.cardinality > 0) {
+				result.appendGroup(a.keys[i], container);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the ids in ascending order
+	 */
+	@Override
+	public PrimitiveIterator.OfInt iterator() {
+		return new PrimitiveIterator.OfInt() {
+			
+			private int group = 0;
+			
+			private int next = nextInGroup(0, 0);
+			
+			private int nextInGroup(int from, int low) {
+				for (group = from; group < groups; group++, low = 0) {
+					int found = containers[group].next(low);
+					if (found >= 0) {
+						return (keys[group] << 16) | found;
+					}
+				}
+				return -1;
+			}
+			
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+			
+			@Override
+			public int nextInt() {
+				if (next < 0) {
+					throw new NoSuchElementException();
+				}
+				int current = next;
+				int low = (current & 0xFFFF) + 1;
+				next = low > 0xFFFF ? nextInGroup(group + 1, 0) : nextInGroup(group, low);
+				return current;
+			}
+		};
+	}
+	
+	/**
+	 * @return the ids in ascending order
+	 */
+	public IntStream stream() {
+		return StreamSupport.intStream(Spliterators.spliterator(iterator(), size(), Spliterator.ORDERED
+		        | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * @return the ids in ascending order
+	 */
+	public int[] toArray() {
+		return stream().toArray();
+	}
+	
+	/**
+	 * @return the ids boxed in a new sorted set
+	 */
+	public Set<Integer> toSet() {
+		Set<Integer> set = new TreeSet<>();
+		stream().forEach(set::add);
+		return set;
+	}
+	
+	/**
+	 * Splits the ids in ascending lists of at most the given size, e.g. to restrict queries to the
+	 * ids with <code>in</code> clauses of a size the database accepts. Only the ids of the current
+	 * list are boxed.
+	 *
+	 * @param size the maximum number of ids per list
+	 * @return the lists of ids
+	 */
+	public Iterable<List<Integer>> chunks(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("The chunk size must be positive: " + size);
+		}
+		return () -> new Iterator<List<Integer>>() {
+			
+			private final PrimitiveIterator.OfInt ids = iterator();
+			
+			@Override
+			public boolean hasNext() {
+				return ids.hasNext();
+			}
+			
+			@Override
+			public List<Integer> next() {
+				if (!ids.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				List<Integer> chunk = new ArrayList<>(size);
+				while (ids.hasNext() && chunk.size() < size) {
+					chunk.add(ids.nextInt());
+				}
+				return chunk;
+			}
+		};
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof IdBitmap)) {
+			return false;
+		}
+		IdBitmap other = (IdBitmap) obj;
+		if (groups != other.groups) {
+			return false;
+		}
+		for (int i = 0; i < groups; i++) {
+			if (keys[i] != other.keys[i] || !containers[i].sameIds(other.containers[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		PrimitiveIterator.OfInt ids = iterator();
+		while (ids.hasNext()) {
+			hash = 31 * hash + ids.nextInt();
+		}
+		return hash;
+	}
+	
+	@Override
+	public String toString() {
+		return "IdBitmap size=" + size();
+	}
+	
+	private void insertGroup(int index, char key, Container container) {
+		if (groups == keys.length) {
+			keys = Arrays.copyOf(keys, groups * 2);
+			containers = Arrays.copyOf(containers, groups * 2);
+		}
+		System.arraycopy(keys, index, keys, index + 1, groups - index);
+		System.arraycopy(containers, index, containers, index + 1, groups - index);
+		keys[index] = key;
+		containers[index] = container;
+		groups++;
+	}
+	
+	private void appendGroup(char key, Container container) {
+		insertGroup(groups, key, container);
+	}
+	
+	private void removeGroup(int index) {
+		System.arraycopy(keys, index + 1, keys, index, groups - index - 1);
+		System.arraycopy(containers, index + 1, containers, index, groups - index - 1);
+		groups--;
+		containers[groups] = null;
+	}
+	
+	/**
+	 * The low 16 bits of the ids of a group. The mutating methods return the container to use
+	 * afterwards, which is another kind of container when the size crosses {@link #MAX_ARRAY_SIZE}.
+	 */
+	private abstract static class Container implements Serializable {
+		
+		private static final long serialVersionUID = 1L;
+		
+		int cardinality;
+		
+		abstract Container add(char low);
+		
+		abstract Container remove(char low);
+		
+		abstract boolean contains(char low);
+		
+		/**
+		 * @return the smallest id of the container greater than or equal to from, -1 if none
+		 */
+		abstract int next(int from);
+		
+		abstract Container copy();
+		
+		abstract BitmapContainer toBitmap();
+		
+		Container or(Container other) {
+			if (this instanceof ArrayContainer && other instanceof ArrayContainer) {
+				return ((ArrayContainer) this).union((ArrayContainer) other);
+			}
+			BitmapContainer result = toBitmap();
+			if (other instanceof BitmapContainer) {
+				long[] words = ((BitmapContainer) other).words;
+				for (int i = 0; i < BITMAP_WORDS; i++) {
+					result.words[i] |= words[i];
+				}
+				result.cardinality = countBits(result.words);
+			} else {
+				ArrayContainer array = (ArrayContainer) other;
+				for (int i = 0; i < array.cardinality; i++) {
+					result.add(array.values[i]);
+				}
+			}
+			return result.compact();
+		}
+		
+		Container and(Container other) {
+			if (this instanceof BitmapContainer && other instanceof BitmapContainer) {
+				long[] words = new long[BITMAP_WORDS];
+				for (int i = 0; i < BITMAP_WORDS; i++) {
+					words[i] = ((BitmapContainer) this).words[i] & ((BitmapContainer) other).words[i];
+				}
+				return new BitmapContainer(words).compact();
+			}
+			ArrayContainer array = (ArrayContainer) (this instanceof ArrayContainer ? this : other);
+			Container filter = array == this ? other : this;
+			ArrayContainer result = new ArrayContainer(array.cardinality);
+			for (int i = 0; i < array.cardinality; i++) {
+				if (filter.contains(array.values[i])) {
+					result.values[result.cardinality++] = array.values[i];
+				}
+			}
+			return result;
+		}
+		
+		Container andNot(Container other) {
+			if (this instanceof ArrayContainer) {
+				ArrayContainer array = (ArrayContainer) this;
+				ArrayContainer result = new ArrayContainer(array.cardinality);
+				for (int i = 0; i < array.cardinality; i++) {
+					if (!other.contains(array.values[i])) {
+						result.values[result.cardinality++] = array.values[i];
+					}
+				}
+				return result;
+			}
+			BitmapContainer result = (BitmapContainer) copy();
+			if (other instanceof BitmapContainer) {
+				for (int i = 0; i < BITMAP_WORDS; i++) {
+					result.words[i] &= ~((BitmapContainer) other).words[i];
+				}
+				result.cardinality = countBits(result.words);
+			} else {
+				ArrayContainer array = (ArrayContainer) other;
+				for (int i = 0; i < array.cardinality; i++) {
+					result.clear(array.values[i]);
+				}
+			}
+			return result.compact();
+		}
+		
+		boolean sameIds(Container other) {
+			if (cardinality != other.cardinality) {
+				return false;
+			}
+			for (int low = next(0); low >= 0; low = low < 0xFFFF ? next(low + 1) : -1) {
+				if (!other.contains((char) low)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static final class ArrayContainer extends Container {
+		
+		private static final long serialVersionUID = 1L;
+		
+		char[] values;
+		
+		ArrayContainer() {
+			this(4);
+		}
+		
+		ArrayContainer(int capacity) {
+			values = new char[capacity];
+		}
+		
+		@Override
+		Container add(char low) {
+			int index = Arrays.binarySearch(values, 0, cardinality, low);
+			if (index >= 0) {
+				return this;
+			}
+			if (cardinality == MAX_ARRAY_SIZE) {
+				BitmapContainer bitmap = toBitmap();
+				bitmap.add(low);
+				return bitmap;
+			}
+			index = -index - 1;
+			if (cardinality == values.length) {
+				values = Arrays.copyOf(values, Math.min(MAX_ARRAY_SIZE, cardinality * 2));
+			}
+			System.arraycopy(values, index, values, index + 1, cardinality - index);
+			values[index] = low;
+			cardinality++;
+			return this;
+		}
+		
+		@Override
+		Container remove(char low) {
+			int index = Arrays.binarySearch(values, 0, cardinality, low);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, cardinality - index - 1);
+				cardinality--;
+			}
+			return this;
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return Arrays.binarySearch(values, 0, cardinality, low) >= 0;
+		}
+		
+		@Override
+		int next(int from) {
+			int index = Arrays.binarySearch(values, 0, cardinality, (char) from);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			return index < cardinality ? values[index] : -1;
+		}
+		
+		@Override
+		Container copy() {
+			ArrayContainer copy = new ArrayContainer(Math.max(cardinality, 1));
+			System.arraycopy(values, 0, copy.values, 0, cardinality);
+			copy.cardinality = cardinality;
+			return copy;
+		}
+		
+		@Override
+		BitmapContainer toBitmap() {
+			BitmapContainer bitmap = new BitmapContainer(new long[BITMAP_WORDS]);
+			for (int i = 0; i < cardinality; i++) {
+				bitmap.add(values[i]);
+			}
+			return bitmap;
+		}
+		
+		Container union(ArrayContainer other) {
+			if (cardinality + other.cardinality > MAX_ARRAY_SIZE) {
+				return toBitmap().or(other);
+			}
+			ArrayContainer result = new ArrayContainer(Math.max(cardinality + other.cardinality, 1));
+			int i = 0;
+			int j = 0;
+			while (i < cardinality || j < other.cardinality) {
+				char value;
+				if (j == other.cardinality || (i < cardinality && values[i] < other.values[j])) {
+					value = values[i++];
+				} else if (i == cardinality || other.values[j] < values[i]) {
+					value = other.values[j++];
+				} else {
+					value = values[i++];
+					j++;
+				}
+				result.values[result.cardinality++] = value;
+			}
+			return result;
+		}
+	}
+	
+	private static final class BitmapContainer extends Container {
+		
+		private static final long serialVersionUID = 1L;
+		
+		final long[] words;
+		
+		BitmapContainer(long[] words) {
+			this.words = words;
+			this.cardinality = countBits(words);
+		}
+		
+		@Override
+		Container add(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) == 0) {
+				words[low >>> 6] |= bit;
+				cardinality++;
+			}
+			return this;
+		}
+		
+		@Override
+		Container remove(char low) {
+			clear(low);
+			return compact();
+		}
+		
+		void clear(char low) {
+			long bit = 1L << low;
+			if ((words[low >>> 6] & bit) != 0) {
+				words[low >>> 6] &= ~bit;
+				cardinality--;
+			}
+		}
+		
+		@Override
+		boolean contains(char low) {
+			return (words[low >>> 6] & (1L << low)) != 0;
+		}
+		
+		@Override
+		int next(int from) {
+			int index = from >>> 6;
+			if (index >= BITMAP_WORDS) {
+				return -1;
+			}
+			long word = words[index] & (-1L << from);
+			while (word == 0) {
+				if (++index == BITMAP_WORDS) {
+					return -1;
+				}
+				word = words[index];
+			}
+			return index * 64 + Long.numberOfTrailingZeros(word);
+		}
+		
+		@Override
+		Container copy() {
+			return new BitmapContainer(words.clone());
+		}
+		
+		@Override
+		BitmapContainer toBitmap() {
+			return (BitmapContainer) copy();
+		}
+		
+		/**
+		 * @return an array container of the same ids if they are few enough, else this
+		 */
+		Container compact() {
+			if (cardinality > MAX_ARRAY_SIZE) {
+				return this;
+			}
+			ArrayContainer array = new ArrayContainer(Math.max(cardinality, 1));
+			for (int low = next(0); low >= 0; low = low < 0xFFFF ? next(low + 1) : -1) {
+				array.values[array.cardinality++] = (char) low;
+			}
+			return array;
+		}
+	}
+	
+	private static int countBits(long[] words) {
+		int count = 0;
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+		return count;
+	}
+}
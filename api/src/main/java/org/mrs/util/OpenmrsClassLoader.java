@@ -54,6 +54,16 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	
 	private static Logger log = LoggerFactory.getLogger(OpenmrsClassLoader.class);
 	
+	/**
+	 * The number of class names this class loader remembers not finding, it forgets them all when
+	 * more are added
+	 */
+	private static final int MAX_MISSING_CLASSES = 10000;
+	
+	static {
+		ClassLoader.registerAsParallelCapable();
+	}
+	
 	private static File libCacheFolder;
 	
 	private static boolean libCacheFolderInitialized = false;
@@ -67,6 +77,14 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 */
 	private Map<String, WeakReference<Class<?>>> cachedClasses = new ConcurrentHashMap<>();
 	
+	/**
+	 * Holds the names of classes that neither the modules nor the web container have, with the
+	 * version of the module package index they were looked up with.
+	 * 
+	 * @see ModuleFactory#getProvidedPackagesVersion()
+	 */
+	private Map<String, Long> missingClasses = new ConcurrentHashMap<>();
+	
 	// suffix of the OpenMRS required library cache folder
 	private static final String LIBCACHESUFFIX = ".mrs-lib-cache";
 	
@@ -133,6 +151,9 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	/**
 	 * It loads classes from the web container class loader first (parent class loader) and then
 	 * tries module class loaders.
+	 * <p>
+	 * This class loader is parallel capable and does not lock, as it defines no classes itself. Names
+	 * of classes that are not found are remembered until a module is started or stopped.
 	 * 
 	 * @see java.lang.ClassLoader#loadClass(java.lang.String, boolean)
 	 * @should load class from cache second time
@@ -141,10 +162,16 @@ public class OpenmrsClassLoader extends URLClassLoader {
 	 * @should load class if two module class loaders have same packages
 	 */
 	@Override
-	public synchronized Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
+	public Class<?> loadClass(String name, final boolean resolve) throws ClassNotFoundException {
 		// Check if the class has already been requested from this class loader
 		Class<?> c = getCachedClass(name);
 		if (c == null) {
+			long packagesVersion = ModuleFactory.getProvidedPackagesVersion();
+			Long missingVersion = missingClasses.get(name);
+			if (missingVersion != null && missingVersion == packagesVersion) {
+				throw new ClassNotFoundException(name);
+			}
+			
 			// We do not try to load classes using this.findClass on purpose.
 			// All classes are loaded by web container or by module class loaders.
 			
@@ -166,7 +193,16 @@ public class OpenmrsClassLoader extends URLClassLoader {
 			
 			if (c == null) {
 				// Finally try loading from web container
-				c = getParent().loadClass(name);
+				try {
+					c = getParent().loadClass(name);
+				}
+				catch (ClassNotFoundException e) {
+					if (missingClasses.size() >= MAX_MISSING_CLASSES) {
+						missingClasses.clear();
+					}
+					missingClasses.put(name, packagesVersion);
+					throw e;
+				}
 			}
 			
 			cacheClass(name, c);
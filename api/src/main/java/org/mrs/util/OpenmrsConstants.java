@@ -315,6 +315,12 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_COMPLEX_OBS_DIR = "obs.complex_obs_dir";
 	
+	/**
+	 * The number of obs written by {@link org.mrs.api.ObsService#saveObs(java.util.Collection, String)}
+	 * before the session is flushed and cleared
+	 */
+	public static final String GP_OBS_BULK_SAVE_BATCH_SIZE = "obs.bulkSaveBatchSize";
+	
 	public static final String GLOBAL_PROPERTY_MIN_SEARCH_CHARACTERS = "minSearchCharacters";
 	
 	public static final int GLOBAL_PROPERTY_DEFAULT_MIN_SEARCH_CHARACTERS = 2;
@@ -345,6 +351,16 @@ public final class OpenmrsConstants {
 	
 	public static final String GLOBAL_PROPERTY_IGNORE_MISSING_NONLOCAL_PATIENTS = "hl7_processor.ignore_missing_patient_non_local";
 	
+	/**
+	 * The number of threads used by {@link org.mrs.hl7.HL7InQueueProcessor} to process queue items
+	 */
+	public static final String GP_HL7_PROCESSOR_THREADS = "hl7_processor.threads";
+	
+	/**
+	 * The number of pending queue items {@link org.mrs.hl7.HL7InQueueProcessor} claims at a time
+	 */
+	public static final String GP_HL7_PROCESSOR_BATCH_SIZE = "hl7_processor.batchSize";
+	
 	public static final String GLOBAL_PROPERTY_TRUE_CONCEPT = "concept.true";
 	
 	public static final String GLOBAL_PROPERTY_FALSE_CONCEPT = "concept.false";
@@ -556,6 +572,14 @@ public final class OpenmrsConstants {
 	 */
 	public static final String GP_VISIT_TYPES_TO_AUTO_CLOSE = "visits.autoCloseVisitType";
 	
+	/**
+	 * Global property name for the number of visits stopped with a single update when auto closing
+	 * visits
+	 * 
+	 * @since 2.3.0
+	 */
+	public static final String GP_VISITS_AUTO_CLOSE_BATCH_SIZE = "visits.autoClose.batchSize";
+	
 	/**
 	 * The name of the scheduled task that automatically stops the active visits
 	 */
@@ -574,6 +598,11 @@ public final class OpenmrsConstants {
 	
 	public static final String GP_NEXT_ORDER_NUMBER_SEED = "order.nextOrderNumberSeed";
 	
+	/**
+	 * The number of order number seeds reserved from {@link #GP_NEXT_ORDER_NUMBER_SEED} at a time
+	 */
+	public static final String GP_ORDER_NUMBER_SEED_BLOCK_SIZE = "order.orderNumberSeedBlockSize";
+	
 	public static final String GP_ORDER_NUMBER_GENERATOR_BEAN_ID = "order.orderNumberGeneratorBeanId";
 	
 	/**
@@ -596,12 +625,27 @@ public final class OpenmrsConstants {
 	 */
 	public static final String GP_SEARCH_INDEX_VERSION = "search.indexVersion";
 	
+	/**
+	 * @since 2.3.0
+	 */
+	public static final String GP_SEARCH_INDEX_REBUILD_POSITION = "search.indexRebuildPosition";
+	
+	/**
+	 * @since 2.3.0
+	 */
+	public static final String GP_CONCEPT_DICTIONARY_SNAPSHOT_ENABLED = "concept.dictionarySnapshot.enabled";
+	
+	/**
+	 * @since 2.3.0
+	 */
+	public static final String GP_DUPLICATE_PATIENT_DETECTION_POSITION = "patient.duplicateDetectionPosition";
+	
 	/**
 	 * Indicates the version of the search index. The index will be rebuilt, if the version changes.
 	 * 
 	 * @since 1.11
 	 */
-	public static final Integer SEARCH_INDEX_VERSION = 7;
+	public static final Integer SEARCH_INDEX_VERSION = 8;
 
 	/**
 	 * @since 1.12
@@ -841,6 +885,10 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_COMPLEX_OBS_DIR, "complex_obs",
 		        "Default directory for storing complex obs."));
 		
+		props.add(new GlobalProperty(GP_OBS_BULK_SAVE_BATCH_SIZE, "500",
+		        "The number of obs saved in bulk after which the changes are flushed to the database and the session "
+		                + "is cleared, it should be a multiple of hibernate.jdbc.batch_size"));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_ENCOUNTER_FORM_OBS_SORT_ORDER,
@@ -896,6 +944,13 @@ public final class OpenmrsConstants {
 		        "If true, hl7 messages for patients that are not found and are non-local will silently be dropped/ignored",
 		        BooleanDatatype.class, null));
 		
+		props.add(new GlobalProperty(GP_HL7_PROCESSOR_THREADS, "1",
+		        "The number of threads processing the hl7 inbound queue. Messages for the same patient are always "
+		                + "processed by the same thread in the order they were queued"));
+		
+		props.add(new GlobalProperty(GP_HL7_PROCESSOR_BATCH_SIZE, "100",
+		        "The number of pending hl7 inbound queue entries the processor marks as processing at a time"));
+		
 		props
 		        .add(new GlobalProperty(
 		                GLOBAL_PROPERTY_SHOW_PATIENT_NAME,
@@ -989,6 +1044,9 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GP_VISIT_TYPES_TO_AUTO_CLOSE, "",
 		        "comma-separated list of the visit type(s) to automatically close"));
 		
+		props.add(new GlobalProperty(GP_VISITS_AUTO_CLOSE_BATCH_SIZE, "1000",
+		        "The number of visits stopped with a single update when automatically closing visits"));
+		
 		props.add(new GlobalProperty(GP_ALLOWED_FAILED_LOGINS_BEFORE_LOCKOUT, "7",
 		        "Maximum number of failed logins allowed after which username is locked out"));
 		
@@ -1026,6 +1084,16 @@ public final class OpenmrsConstants {
 		props.add(new GlobalProperty(GP_SEARCH_INDEX_VERSION, "",
 		        "Indicates the index version. If it is blank, the index needs to be rebuilt."));
 		
+		props.add(new GlobalProperty(GP_SEARCH_INDEX_REBUILD_POSITION, "",
+		        "The id of the last object of each type indexed by an unfinished search index rebuild, as type=id pairs separated by commas"));
+		
+		props.add(new GlobalProperty(GP_CONCEPT_DICTIONARY_SNAPSHOT_ENABLED, "false",
+		        "true/false whether to look up concepts by uuid, name and mapping in an in-memory snapshot of the dictionary",
+		        BooleanDatatype.class, null));
+		
+		props.add(new GlobalProperty(GP_DUPLICATE_PATIENT_DETECTION_POSITION, "",
+		        "The start time in milliseconds and the shards completed of an unfinished duplicate patient detection, as start:completed/total:blocking keys"));
+		
 		props.add(new GlobalProperty(GLOBAL_PROPERTY_ALLOW_OVERLAPPING_VISITS, "true",
 		        "true/false whether or not to allow visits of a given patient to overlap", BooleanDatatype.class, null));
 		
@@ -1043,6 +1111,10 @@ public final class OpenmrsConstants {
 		
 		props.add(new GlobalProperty(GP_NEXT_ORDER_NUMBER_SEED, "1", "The next order number available for assignment"));
 		
+		props.add(new GlobalProperty(GP_ORDER_NUMBER_SEED_BLOCK_SIZE, "1",
+		        "The number of order numbers to reserve from the next order number seed at a time, larger values reduce "
+		                + "contention when saving orders concurrently but unused numbers are skipped after a restart"));
+		
 		props.add(new GlobalProperty(GP_ORDER_NUMBER_GENERATOR_BEAN_ID, "",
 		        "Specifies spring bean id of the order generator to use when assigning order numbers"));
 		
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -203,6 +204,96 @@ public class CohortTest {
 		assertFalse(cohort.contains(12));
 	}
 	
+	@Test
+	public void getMemberIdBitmap_shouldOnlyIncludeVoidedMembersIfAsked() {
+		
+		Cohort cohort = new Cohort("name", "description", ids);
+		
+		CohortMembership cohortMembershipOne = new CohortMembership(12, new Date());
+		cohortMembershipOne.setVoided(true);
+		cohort.addMembership(cohortMembershipOne);
+		
+		assertEquals(3, cohort.getMemberIdBitmap(false).size());
+		assertFalse(cohort.getMemberIdBitmap(false).contains(12));
+		assertTrue(cohort.getMemberIdBitmap(true).contains(12));
+		assertEquals(cohort.getMemberIds(), cohort.getMemberIdBitmap(true).toSet());
+	}
+	
+	@Test
+	public void getActiveMemberIdBitmap_shouldOnlyIncludeMembersActiveAsOfTheDate() {
+		
+		Cohort cohort = new Cohort();
+		Date startDate = new GregorianCalendar(2017, Calendar.JANUARY, 1).getTime();
+		CohortMembership ended = new CohortMembership(7, startDate);
+		ended.setEndDate(new GregorianCalendar(2017, Calendar.FEBRUARY, 1).getTime());
+		cohort.addMembership(ended);
+		cohort.addMembership(new CohortMembership(8, startDate));
+		
+		assertEquals(2, cohort.getActiveMemberIdBitmap(new GregorianCalendar(2017, Calendar.JANUARY, 15).getTime()).size());
+		assertArrayEquals(new int[] { 8 }, cohort.getActiveMemberIdBitmap(null).toArray());
+	}
+	
+	@Test
+	public void getMemberIdBitmap_shouldSeeMembershipsChangedAfterItWasBuilt() {
+		
+		Cohort cohort = new Cohort("name", "description", ids);
+		assertArrayEquals(new int[] { 1, 2, 3 }, cohort.getMemberIdBitmap(true).toArray());
+		
+		cohort.addMember(4);
+		cohort.removeMembership(cohort.getMemberships().stream().filter(m -> m.getPatientId() == 1).findFirst().get());
+		assertArrayEquals(new int[] { 2, 3, 4 }, cohort.getMemberIdBitmap(true).toArray());
+		
+		cohort.setMemberships(new HashSet<>(Arrays.asList(new CohortMembership(5))));
+		assertArrayEquals(new int[] { 5 }, cohort.getMemberIdBitmap(true).toArray());
+		
+		cohort.getMemberIdBitmap(true).add(6);
+		assertEquals(new HashSet<>(Arrays.asList(5)), cohort.getMemberIds());
+	}
+	
+	@Test
+	public void intersect_shouldKeepTheMembershipsOfTheFirstCohortOfThePatientsInBoth() {
+		
+		Cohort cohortOne = new Cohort();
+		Cohort cohortTwo = new Cohort();
+		for (int id = 1; id <= 1000; id++) {
+			cohortOne.addMember(id);
+			if (id % 3 == 0) {
+				cohortTwo.addMember(id);
+			}
+		}
+		cohortTwo.addMember(5000);
+		
+		Cohort cohortIntersect = Cohort.intersect(cohortOne, cohortTwo);
+		
+		Set<Integer> expected = new HashSet<>();
+		for (int id = 3; id <= 1000; id += 3) {
+			expected.add(id);
+		}
+		assertEquals(expected, cohortIntersect.getMemberIds());
+		assertEquals(expected.size(), cohortIntersect.getMemberships().size());
+		cohortIntersect.getMemberships().forEach(m -> {
+			assertTrue(expected.contains(m.getPatientId()));
+			assertTrue(cohortOne.getMemberships().contains(m));
+		});
+	}
+	
+	@Test
+	public void subtract_shouldTakeTheMembershipsOfTheResultOfAnotherSetOperation() {
+		
+		Cohort cohortOne = new Cohort("one", null, new Integer[] { 1, 2, 3 });
+		Cohort cohortTwo = new Cohort("two", null, new Integer[] { 3, 4, 5 });
+		Cohort cohortThree = new Cohort("three", null, new Integer[] { 2, 5 });
+		
+		Cohort cohortSubtract = Cohort.subtract(Cohort.union(cohortOne, cohortTwo), cohortThree);
+		
+		assertArrayEquals(new int[] { 1, 3, 4 }, cohortSubtract.getMemberIdBitmap(true).toArray());
+		// patient 3 has a membership of each cohort of the union
+		assertEquals(4, cohortSubtract.getMemberships().size());
+		
+		cohortSubtract.addMember(6);
+		assertArrayEquals(new int[] { 1, 3, 4, 6 }, cohortSubtract.getMemberIdBitmap(true).toArray());
+	}
+	
 	@Test
 	public void size_shouldOnlyCountNonVoidedMembers() {
 		
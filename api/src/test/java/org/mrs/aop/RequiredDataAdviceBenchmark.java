@@ -0,0 +1,150 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.aop;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.mrs.Encounter;
+import org.mrs.Obs;
+import org.mrs.OpenmrsObject;
+import org.mrs.User;
+import org.mrs.annotation.Handler;
+import org.mrs.annotation.Independent;
+import org.mrs.api.context.Context;
+import org.mrs.api.context.ServiceContext;
+import org.mrs.api.handler.SaveHandler;
+import org.mrs.util.HandlerUtil;
+import org.mrs.util.Reflect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.context.support.StaticApplicationContext;
+
+/**
+ * Compares handling an encounter with many obs using the cached traversal plans of
+ * {@link RequiredDataAdvice} with the previous traversal which looked up fields, annotations and
+ * getters reflectively for every object. A handler that does nothing is registered so that only the
+ * traversal is measured. Run with {@link #main(String[])} from the test classpath, it is not picked
+ * up by surefire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequiredDataAdviceBenchmark {
+
+	@Handler(supports = OpenmrsObject.class)
+	public static class NoOpSaveHandler implements SaveHandler<OpenmrsObject> {
+
+		@Override
+		public void handle(OpenmrsObject object, User creator, Date dateCreated, String other) {
+		}
+	}
+
+	/**
+	 * Number of obs in the encounter, a fifth of them are obs groups with four members each
+	 */
+	@Param({ "500" })
+	private int obsCount;
+
+	private Encounter encounter;
+
+	private final User user = new User(1);
+
+	private final Date date = new Date();
+
+	@Setup
+	public void setUp() {
+		StaticApplicationContext applicationContext = new StaticApplicationContext();
+		applicationContext.registerSingleton("noOpSaveHandler", NoOpSaveHandler.class);
+		applicationContext.refresh();
+
+		ServiceContext serviceContext = ServiceContext.getInstance();
+		serviceContext.setApplicationContext(applicationContext);
+		Context.setContext(serviceContext);
+		HandlerUtil.clearCachedHandlers();
+
+		encounter = new Encounter();
+		encounter.setEncounterDatetime(date);
+		for (int i = 0; i < obsCount / 5; i++) {
+			Obs group = new Obs();
+			for (int j = 0; j < 4; j++) {
+				group.addGroupMember(new Obs());
+			}
+			encounter.addObs(group);
+		}
+	}
+
+	@Benchmark
+	public Encounter compiledPlan() {
+		RequiredDataAdvice.recursivelyHandle(SaveHandler.class, encounter, user, date, null, null);
+		return encounter;
+	}
+
+	@Benchmark
+	public Encounter reflectiveTraversal() throws Exception {
+		reflectivelyHandle(encounter, new ArrayList<>());
+		return encounter;
+	}
+
+	/**
+	 * Mirrors the traversal as it was before the child collections were cached per class
+	 */
+	@SuppressWarnings("unchecked")
+	private void reflectivelyHandle(OpenmrsObject openmrsObject, List<OpenmrsObject> alreadyHandled) throws Exception {
+		Class<? extends OpenmrsObject> openmrsObjectClass = openmrsObject.getClass();
+		for (SaveHandler handler : HandlerUtil.getHandlersForType(SaveHandler.class, openmrsObjectClass)) {
+			handler.handle(openmrsObject, user, date, null);
+		}
+		alreadyHandled.add(openmrsObject);
+
+		Reflect reflect = new Reflect(OpenmrsObject.class);
+		for (Field field : reflect.getInheritedFields(openmrsObjectClass)) {
+			if (Reflect.isAnnotationPresent(openmrsObjectClass, field.getName(), Independent.class)) {
+				continue;
+			}
+
+			if (reflect.isCollectionField(field) && !RequiredDataAdvice.isHandlerMarkedAsDisabled(SaveHandler.class, field)) {
+				Collection<OpenmrsObject> childCollection = RequiredDataAdvice.getChildCollection(openmrsObject, field);
+				if (childCollection != null) {
+					for (Object collectionElement : childCollection) {
+						if (!alreadyHandled.contains(collectionElement)) {
+							reflectivelyHandle((OpenmrsObject) collectionElement, alreadyHandled);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(RequiredDataAdviceBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}
@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -654,6 +655,45 @@ public class RequiredDataAdviceTest extends BaseContextMockTest {
 		
 	}
 	
+	/**
+	 * @see RequiredDataAdvice#getTraversalPlan(Class, Class)
+	 */
+	@Test
+	public void getTraversalPlan_shouldOnlyIncludeCollectionsNotDisabledForTheHandlerType() {
+		ClassWithDisableHandlersAnnotation openmrsObject = new ClassWithDisableHandlersAnnotation();
+		List<Person> persons = new ArrayList<>();
+		List<Person> notAnnotatedPersons = new ArrayList<>();
+		openmrsObject.setPersons(persons);
+		openmrsObject.setNotAnnotatedPersons(notAnnotatedPersons);
+		
+		List<RequiredDataAdvice.ChildCollectionAccessor> voidPlan = RequiredDataAdvice.getTraversalPlan(
+		    VoidHandler.class, ClassWithDisableHandlersAnnotation.class);
+		Assert.assertEquals(1, voidPlan.size());
+		Assert.assertSame(notAnnotatedPersons, voidPlan.get(0).get(openmrsObject));
+		
+		Assert.assertEquals(2, RequiredDataAdvice.getTraversalPlan(RetireHandler.class,
+		    ClassWithDisableHandlersAnnotation.class).size());
+		Assert.assertSame(voidPlan, RequiredDataAdvice.getTraversalPlan(VoidHandler.class,
+		    ClassWithDisableHandlersAnnotation.class));
+	}
+	
+	/**
+	 * @see RequiredDataAdvice#recursivelyHandle(Class, OpenmrsObject, User, Date, String, List)
+	 */
+	@Test
+	public void recursivelyHandle_shouldHandleEachObjectInTheGraphOnce() {
+		ClassWithDisableHandlersAnnotation openmrsObject = new ClassWithDisableHandlersAnnotation();
+		Person person = new Person();
+		openmrsObject.setNotAnnotatedPersons(Arrays.asList(person, person));
+		
+		List<OpenmrsObject> alreadyHandled = new ArrayList<>();
+		RequiredDataAdvice.recursivelyHandle(VoidHandler.class, openmrsObject, null, new Date(), "reason",
+		    alreadyHandled);
+		
+		verify(voidHandler, times(1)).handle(eq(person), Matchers.anyObject(), Matchers.anyObject(), anyString());
+		Assert.assertEquals(Arrays.asList(openmrsObject, person), alreadyHandled);
+	}
+	
 	class SomeOpenmrsData extends BaseOpenmrsData {
 		
 		@Override
@@ -2182,7 +2182,7 @@ public class EncounterServiceTest extends BaseContextSensitiveTest {
 		encounter.setLocation(new Location(1));
 		encounter.setEncounterDatetime(new Date());
 		encounter.setPatient(Context.getPatientService().getPatient(3));
-		EncounterType encounterType = new EncounterType(1);
+		EncounterType encounterType = encounterService.getEncounterType(1);
 		encounterType.setViewPrivilege(Context.getUserService().getPrivilege("Some Privilege For View Encounter Types"));
 		encounter.setEncounterType(encounterType);
 		
@@ -2218,6 +2218,60 @@ public class EncounterServiceTest extends BaseContextSensitiveTest {
 		assertTrue(!patientEncounters.contains(encounter));
 	}
 	
+	/**
+	 * @see EncounterService#getEncounters(EncounterSearchCriteria, Integer, Integer)
+	 */
+	@Test
+	public void getEncounters_shouldReturnTheRequestedPageOfEncounters() {
+		EncounterService encounterService = Context.getEncounterService();
+		EncounterSearchCriteria encounterSearchCriteria = new EncounterSearchCriteriaBuilder().setIncludeVoided(false)
+		        .createEncounterSearchCriteria();
+		
+		List<Encounter> allEncounters = encounterService.getEncounters(encounterSearchCriteria);
+		List<Encounter> page = encounterService.getEncounters(encounterSearchCriteria, 2, 3);
+		
+		assertEquals(allEncounters.subList(2, 5), page);
+	}
+	
+	/**
+	 * @see EncounterService#getEncounters(EncounterSearchCriteria, Integer, Integer)
+	 * @see EncounterService#getCountOfEncounters(EncounterSearchCriteria)
+	 */
+	@Test
+	public void getEncounters_shouldExcludeEncountersTheUserIsNotAllowedToView() {
+		EncounterService encounterService = Context.getEncounterService();
+		EncounterSearchCriteria encounterSearchCriteria = new EncounterSearchCriteriaBuilder().setIncludeVoided(false)
+		        .createEncounterSearchCriteria();
+		List<Encounter> allEncounters = encounterService.getEncounters(encounterSearchCriteria);
+		assertEquals(Long.valueOf(allEncounters.size()), encounterService.getCountOfEncounters(encounterSearchCriteria));
+		
+		EncounterType encounterType = allEncounters.get(0).getEncounterType();
+		encounterType.setViewPrivilege(Context.getUserService().getPrivilege("Some Privilege For View Encounter Types"));
+		encounterService.saveEncounterType(encounterType);
+		int viewable = 0;
+		for (Encounter encounter : allEncounters) {
+			if (!encounterType.equals(encounter.getEncounterType())) {
+				viewable++;
+			}
+		}
+		
+		Context.logout();
+		Context.authenticate("test_user", "test");
+		Context.addProxyPrivilege(PrivilegeConstants.GET_ENCOUNTERS);
+		
+		List<Encounter> encounters = encounterService.getEncounters(encounterSearchCriteria, 0, 100);
+		Long count = encounterService.getCountOfEncounters(encounterSearchCriteria);
+		
+		Context.removeProxyPrivilege(PrivilegeConstants.GET_ENCOUNTERS);
+		Context.logout();
+		
+		assertEquals(viewable, encounters.size());
+		assertEquals(Long.valueOf(viewable), count);
+		for (Encounter encounter : encounters) {
+			assertFalse(encounterType.equals(encounter.getEncounterType()));
+		}
+	}
+	
 	/**
 	 * @see EncounterService#filterEncountersByViewPermissions(List, User)
 	 */
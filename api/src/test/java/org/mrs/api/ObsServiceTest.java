@@ -57,6 +57,7 @@ import org.mrs.api.context.Context;
 import org.mrs.api.impl.ObsServiceImpl;
 import org.mrs.obs.ComplexData;
 import org.mrs.obs.ComplexObsHandler;
+import org.mrs.obs.handler.AbstractHandler;
 import org.mrs.obs.handler.BinaryDataHandler;
 import org.mrs.obs.handler.ImageHandler;
 import org.mrs.obs.handler.TextHandler;
@@ -109,7 +110,7 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		expectedException.expect(APIException.class);
 		expectedException.expectMessage(Context.getMessageSourceService().getMessage("Obs.error.cannot.be.null"));
 		ObsService os = Context.getObsService();
-		os.saveObs(null,"Null Obs");
+		os.saveObs((Obs) null, "Null Obs");
 	}
 	
 	/**
@@ -658,7 +659,7 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		String filename = "nameOfFile_" + obsToSave.getUuid() + ".txt";
 		File complexObsDir = OpenmrsUtil.getDirectoryInApplicationDataDirectory(as
 	        .getGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_COMPLEX_OBS_DIR));
-		File createdFile = new File(complexObsDir, filename);
+		File createdFile = new File(new File(complexObsDir, AbstractHandler.getShardPath(filename)), filename);
 		if (createdFile.exists()) {
 			createdFile.delete();
 		}
@@ -1975,4 +1976,92 @@ public class ObsServiceTest extends BaseContextSensitiveTest {
 		assertThat(existing.getVoided(), is(true));
 		assertThat(newObs.getStatus(), is(Obs.Status.FINAL));
 	}
+	
+	/**
+	 * @see ObsService#saveObs(java.util.Collection,String)
+	 */
+	@Test
+	public void saveObs_shouldSaveNewObsAndTheirGroupMembers() {
+		ObsService obsService = Context.getObsService();
+		Concept concept = Context.getConceptService().getConcept(3);
+		
+		List<Obs> obsToSave = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Obs parentObs = new Obs(new Patient(2), concept, new Date(), new Location(1));
+			Obs groupMember = new Obs(new Patient(2), concept, new Date(), new Location(1));
+			groupMember.setValueNumeric((double) i);
+			parentObs.addGroupMember(groupMember);
+			obsToSave.add(parentObs);
+		}
+		
+		List<Obs> savedObs = obsService.saveObs(obsToSave, null);
+		
+		assertEquals(obsToSave, savedObs);
+		for (Obs obs : savedObs) {
+			assertNotNull(obs.getObsId());
+			assertNotNull(obs.getCreator());
+			Obs groupMember = obs.getGroupMembers().iterator().next();
+			assertNotNull(groupMember.getObsId());
+			assertNotNull(obsService.getObs(groupMember.getObsId()));
+		}
+	}
+	
+	/**
+	 * @see ObsService#saveObs(java.util.Collection,String)
+	 */
+	@Test
+	public void saveObs_shouldVoidThePreviousVersionsOfEditedObsAndTheirGroupMembers() {
+		executeDataSet(INITIAL_OBS_XML);
+		ObsService obsService = Context.getObsService();
+		
+		Obs groupObs = obsService.getObs(2);
+		Set<Integer> originalMemberIds = new HashSet<>();
+		for (Obs member : groupObs.getGroupMembers()) {
+			originalMemberIds.add(member.getObsId());
+		}
+		groupObs.setComment("bulk edit");
+		Obs obs = obsService.getObs(7);
+		obs.setValueNumeric(1.0);
+		
+		List<Obs> savedObs = obsService.saveObs(Arrays.asList(groupObs, obs), "bulk change");
+		
+		Obs newGroupObs = obsService.getObs(savedObs.get(0).getObsId());
+		assertEquals("bulk edit", newGroupObs.getComment());
+		assertEquals(originalMemberIds.size(), newGroupObs.getGroupMembers().size());
+		assertEquals(Integer.valueOf(2), newGroupObs.getPreviousVersion().getObsId());
+		assertEquals(1.0, obsService.getObs(savedObs.get(1).getObsId()).getValueNumeric(), 0);
+		
+		Obs previousGroupObs = obsService.getObs(2);
+		assertTrue(previousGroupObs.getVoided());
+		assertEquals("bulk change", previousGroupObs.getVoidReason());
+		for (Integer memberId : originalMemberIds) {
+			assertTrue(obsService.getObs(memberId).getVoided());
+		}
+		assertTrue(obsService.getObs(7).getVoided());
+	}
+	
+	/**
+	 * @see ObsService#saveObs(java.util.Collection,String)
+	 */
+	@Test(expected = APIException.class)
+	public void saveObs_shouldFailIfAnExistingObsIsSavedWithoutAChangeMessage() {
+		Obs obs = Context.getObsService().getObs(7);
+		obs.setValueNumeric(1.0);
+		
+		Context.getObsService().saveObs(Collections.singletonList(obs), null);
+	}
+	
+	/**
+	 * @see ObsService#saveObs(java.util.Collection,String)
+	 */
+	@Test
+	public void saveObs_shouldNotVoidObsWithoutChanges() {
+		ObsService obsService = Context.getObsService();
+		Obs obs = obsService.getObs(7);
+		
+		List<Obs> savedObs = obsService.saveObs(Collections.singletonList(obs), "no change");
+		
+		assertEquals(Integer.valueOf(7), savedObs.get(0).getObsId());
+		assertFalse(obsService.getObs(7).getVoided());
+	}
 }
@@ -3523,4 +3523,25 @@ public class OrderServiceTest extends BaseContextSensitiveTest {
 		expectedException.expectMessage("Cannot add a member which is out of range of the list");
 		secondSavedOrderGroup.addOrder(newOrderWithInvalidPosition, secondSavedOrderGroup.getOrders().size() + 1);
 	}
+	
+	/**
+	 * @see OrderService#getNextOrderNumberSeedSequenceValue()
+	 */
+	@Test
+	public void getNextOrderNumberSeedSequenceValue_shouldReserveSeedsInBlocksOfTheConfiguredSize() {
+		adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE, "10"));
+		try {
+			Long first = orderService.getNextOrderNumberSeedSequenceValue();
+			String reservedUpTo = adminService.getGlobalProperty(OpenmrsConstants.GP_NEXT_ORDER_NUMBER_SEED);
+			assertEquals(String.valueOf(first + 10), reservedUpTo);
+			
+			for (int i = 1; i < 10; i++) {
+				assertEquals(Long.valueOf(first + i), orderService.getNextOrderNumberSeedSequenceValue());
+			}
+			assertEquals(reservedUpTo, adminService.getGlobalProperty(OpenmrsConstants.GP_NEXT_ORDER_NUMBER_SEED));
+		}
+		finally {
+			adminService.saveGlobalProperty(new GlobalProperty(OpenmrsConstants.GP_ORDER_NUMBER_SEED_BLOCK_SIZE, "1"));
+		}
+	}
 }
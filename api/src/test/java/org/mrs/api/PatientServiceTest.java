@@ -23,6 +23,7 @@ import static org.mrs.test.TestUtil.assertCollectionContentsEquals;
 import static org.mrs.util.AddressMatcher.containsAddress;
 import static org.mrs.util.NameMatcher.containsFullName;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -31,6 +32,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.ArgumentMatcher;
 import org.mrs.Concept;
+import org.mrs.DuplicatePatientMatch;
 import org.mrs.Encounter;
 import org.mrs.GlobalProperty;
 import org.mrs.Location;
@@ -42,6 +44,7 @@ import org.mrs.PatientIdentifier;
 import org.mrs.PatientIdentifierType;
 import org.mrs.PatientIdentifierType.UniquenessBehavior;
 import org.mrs.PatientProgram;
+import org.mrs.PatientSearchResult;
 import org.mrs.Person;
 import org.mrs.PersonAddress;
 import org.mrs.PersonAttribute;
@@ -55,6 +58,7 @@ import org.mrs.api.impl.PatientServiceImpl;
 import org.mrs.api.impl.PatientServiceImplTest;
 import org.mrs.comparator.PatientIdentifierTypeDefaultComparator;
 import org.mrs.patient.IdentifierValidator;
+import org.mrs.patient.duplicate.DuplicatePatientCandidate;
 import org.mrs.patient.impl.LuhnIdentifierValidator;
 import org.mrs.person.PersonMergeLog;
 import org.mrs.person.PersonMergeLogData;
@@ -64,6 +68,7 @@ import org.mrs.test.SkipBaseSetup;
 import org.mrs.test.TestUtil;
 import org.mrs.util.OpenmrsConstants;
 import org.mrs.util.OpenmrsUtil;
+import org.mrs.util.PrivilegeConstants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -3257,4 +3262,178 @@ public class PatientServiceTest extends BaseContextSensitiveTest {
 		assertEquals(2, encounterService.getEncounter(57).getObsAtTopLevel(true).size());
 	}
 
+	/**
+	 * @see PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	@Test
+	public void getPatientSearchResults_shouldReturnTheSamePatientsInTheSameOrderAsGetPatients() throws Exception {
+		updateSearchIndex();
+		
+		List<Patient> patients = patientService.getPatients("Test", false, 0, 10);
+		List<PatientSearchResult> results = patientService.getPatientSearchResults("Test", false, 0, 10);
+		
+		assertFalse(patients.isEmpty());
+		assertEquals(patients.size(), results.size());
+		for (int i = 0; i < patients.size(); i++) {
+			assertEquals(patients.get(i).getPatientId(), results.get(i).getPatientId());
+		}
+	}
+	
+	/**
+	 * @see PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	@Test
+	public void getPatientSearchResults_shouldReturnThePreferredNameAndIdentifier() throws Exception {
+		updateSearchIndex();
+		
+		List<PatientSearchResult> results = patientService.getPatientSearchResults("Test", false, 0, 10);
+		
+		assertFalse(results.isEmpty());
+		for (PatientSearchResult result : results) {
+			Patient patient = patientService.getPatient(result.getPatientId());
+			assertEquals(patient.getGivenName(), result.getGivenName());
+			assertEquals(patient.getFamilyName(), result.getFamilyName());
+			assertEquals(patient.getPatientIdentifier().getIdentifier(), result.getIdentifier());
+			assertEquals(patient.getGender(), result.getGender());
+		}
+	}
+	
+	/**
+	 * @see PatientService#getPatientSearchResults(String, boolean, Integer, Integer)
+	 */
+	@Test
+	public void getPatientSearchResults_shouldReturnEmptyListIfQueryIsBlank() throws Exception {
+		assertTrue(patientService.getPatientSearchResults(" ", false, 0, 10).isEmpty());
+	}
+	
+	/**
+	 * @see PatientService#getDuplicatePatientCandidates(Integer, int, boolean)
+	 */
+	@Test
+	public void getDuplicatePatientCandidates_shouldReturnBatchesOfCandidatesInPatientIdOrder() throws Exception {
+		List<DuplicatePatientCandidate> first = patientService.getDuplicatePatientCandidates(null, 2, false);
+		assertEquals(2, first.size());
+		assertTrue(first.get(0).getPatientId() < first.get(1).getPatientId());
+		
+		Patient patient = patientService.getPatient(first.get(0).getPatientId());
+		assertTrue(first.get(0).getNameTokens().contains(patient.getGivenName().toLowerCase()));
+		assertEquals(patient.getGender(), first.get(0).getGender());
+		
+		List<DuplicatePatientCandidate> next = patientService.getDuplicatePatientCandidates(first.get(1).getPatientId(),
+		    2, false);
+		assertFalse(next.isEmpty());
+		assertTrue(next.get(0).getPatientId() > first.get(1).getPatientId());
+	}
+	
+	/**
+	 * @see PatientService#saveDuplicatePatientMatches(Collection)
+	 */
+	@Test
+	public void saveDuplicatePatientMatches_shouldUpdatePairsAlreadySavedAndPageByDescendingScore() throws Exception {
+		patientService.saveDuplicatePatientMatches(Arrays.asList(new DuplicatePatientMatch(new Patient(7),
+		        new Patient(2), 0.7), new DuplicatePatientMatch(new Patient(6), new Patient(8), 0.9)));
+		patientService.saveDuplicatePatientMatches(Collections.singletonList(new DuplicatePatientMatch(new Patient(2),
+		        new Patient(7), 0.75)));
+		
+		assertEquals(2, patientService.getCountOfDuplicatePatientMatches(null).intValue());
+		assertEquals(1, patientService.getCountOfDuplicatePatientMatches(0.8).intValue());
+		
+		List<DuplicatePatientMatch> matches = patientService.getDuplicatePatientMatches(null, 1, 1);
+		assertEquals(1, matches.size());
+		assertEquals(2, matches.get(0).getPatientA().getPatientId().intValue());
+		assertEquals(7, matches.get(0).getPatientB().getPatientId().intValue());
+		assertEquals(0.75, matches.get(0).getScore(), 0);
+		
+		patientService.purgeDuplicatePatientMatches();
+		assertEquals(0, patientService.getCountOfDuplicatePatientMatches(null).intValue());
+	}
+	
+	/**
+	 * @see PatientService#purgeDuplicatePatientMatches(Date)
+	 */
+	@Test
+	public void purgeDuplicatePatientMatches_shouldOnlyDeleteThePairsSavedBeforeTheDate() throws Exception {
+		Date runStarted = new Date();
+		DuplicatePatientMatch earlier = new DuplicatePatientMatch(new Patient(6), new Patient(8), 0.9);
+		earlier.setDateCreated(DateUtils.addDays(runStarted, -1));
+		DuplicatePatientMatch foundAgain = new DuplicatePatientMatch(new Patient(2), new Patient(7), 0.7);
+		foundAgain.setDateCreated(DateUtils.addDays(runStarted, -1));
+		patientService.saveDuplicatePatientMatches(Arrays.asList(earlier, foundAgain));
+		patientService.saveDuplicatePatientMatches(Collections.singletonList(new DuplicatePatientMatch(new Patient(2),
+		        new Patient(7), 0.7)));
+		
+		patientService.purgeDuplicatePatientMatches(runStarted);
+		
+		List<DuplicatePatientMatch> matches = patientService.getDuplicatePatientMatches(null, null, null);
+		assertEquals(1, matches.size());
+		assertEquals(2, matches.get(0).getPatientA().getPatientId().intValue());
+		assertEquals(7, matches.get(0).getPatientB().getPatientId().intValue());
+	}
+	
+	/**
+	 * @see PatientService#purgePatient(Patient)
+	 */
+	@SkipBaseSetup
+	@Test
+	public void purgePatient_shouldDeleteTheDuplicatePatientMatchesOfThePatient() throws Exception {
+		initializeInMemoryDatabase();
+		executeDataSet(FIND_PATIENTS_XML);
+		authenticate();
+		patientService.saveDuplicatePatientMatches(Arrays.asList(new DuplicatePatientMatch(new Patient(2),
+		        new Patient(3), 0.7), new DuplicatePatientMatch(new Patient(4), new Patient(5), 0.8)));
+		
+		patientService.purgePatient(patientService.getPatient(2));
+		
+		assertNull(patientService.getPatient(2));
+		List<DuplicatePatientMatch> matches = patientService.getDuplicatePatientMatches(null, null, null);
+		assertEquals(1, matches.size());
+		assertEquals(4, matches.get(0).getPatientA().getPatientId().intValue());
+	}
+	
+	/**
+	 * @see PatientService#mergePatients(Patient,Patient)
+	 */
+	@Test
+	public void mergePatients_shouldDeleteTheDuplicatePatientMatchesOfTheNotPreferredPatient() throws Exception {
+		patientService.saveDuplicatePatientMatches(Arrays.asList(new DuplicatePatientMatch(new Patient(2),
+		        new Patient(6), 0.7), new DuplicatePatientMatch(new Patient(2), new Patient(7), 0.6),
+		    new DuplicatePatientMatch(new Patient(6), new Patient(7), 0.8)));
+		
+		Patient notPreferred = patientService.getPatient(2);
+		voidOrders(Collections.singleton(notPreferred));
+		patientService.mergePatients(patientService.getPatient(6), notPreferred);
+		
+		List<DuplicatePatientMatch> matches = patientService.getDuplicatePatientMatches(null, null, null);
+		assertEquals(1, matches.size());
+		assertEquals(6, matches.get(0).getPatientA().getPatientId().intValue());
+		assertEquals(7, matches.get(0).getPatientB().getPatientId().intValue());
+	}
+	
+	/**
+	 * @see PatientService#saveDuplicatePatientMatches(Collection)
+	 */
+	@Test
+	public void saveDuplicatePatientMatches_shouldSaveAPairRepeatedInTheMatchesOnce() throws Exception {
+		patientService.saveDuplicatePatientMatches(Arrays.asList(new DuplicatePatientMatch(new Patient(2),
+		        new Patient(7), 0.7), new DuplicatePatientMatch(new Patient(7), new Patient(2), 0.7)));
+		
+		assertEquals(1, patientService.getCountOfDuplicatePatientMatches(null).intValue());
+	}
+	
+	/**
+	 * @see PatientService#purgeDuplicatePatientMatches()
+	 */
+	@Test(expected = APIAuthenticationException.class)
+	public void purgeDuplicatePatientMatches_shouldRequirePurgePatientsPrivilege() throws Exception {
+		Context.logout();
+		Context.authenticate("test_user", "test");
+		Context.addProxyPrivilege(PrivilegeConstants.GET_PATIENTS);
+		try {
+			patientService.getCountOfDuplicatePatientMatches(null);
+			patientService.purgeDuplicatePatientMatches();
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.GET_PATIENTS);
+		}
+	}
 }
@@ -20,13 +20,16 @@ import static org.junit.Assert.assertTrue;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
@@ -46,6 +49,8 @@ import org.mrs.test.BaseContextSensitiveTest;
 import org.mrs.test.TestUtil;
 import org.mrs.util.GlobalPropertiesTestHelper;
 import org.mrs.util.OpenmrsConstants;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.context.ConfigurableApplicationContext;
 
 /**
  * Tests methods in the {@link VisitService}
@@ -873,6 +878,79 @@ public class VisitServiceTest extends BaseContextSensitiveTest {
 		assertTrue("Not all active unvoided vists were closed", activeVisitCount == 0);
 	}
 	
+	/**
+	 * @see VisitService#stopVisits(Date,IntConsumer)
+	 */
+	@Test
+	public void stopVisits_shouldReportTheNumberOfStoppedVisits() {
+		executeDataSet("org/openmrs/api/include/VisitServiceTest-includeVisitsAndTypeToAutoClose.xml");
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GP_VISITS_AUTO_CLOSE_BATCH_SIZE, "1");
+		String openVisitsQuery = "SELECT visit_id FROM visit WHERE voided = 0 AND date_stopped IS NULL AND visit_type_id IN (1, 4)";
+		int activeVisitCount = Context.getAdministrationService().executeSQL(openVisitsQuery, true).size();
+		//sanity check
+		assertTrue("There should be more than one active visit for this test to be valid", activeVisitCount > 1);
+		
+		List<Integer> progress = new ArrayList<>();
+		int stopped = visitService.stopVisits(null, progress::add);
+		
+		assertEquals(activeVisitCount, stopped);
+		assertEquals(activeVisitCount, progress.size());
+		assertEquals(Integer.valueOf(stopped), progress.get(progress.size() - 1));
+		assertEquals(0, Context.getAdministrationService().executeSQL(openVisitsQuery, true).size());
+	}
+	
+	/**
+	 * @see VisitService#stopVisits(Date,IntConsumer)
+	 */
+	@Test
+	public void stopVisits_shouldCallTheVisitStopListenersForEachStoppedVisit() {
+		executeDataSet("org/openmrs/api/include/VisitServiceTest-includeVisitsAndTypeToAutoClose.xml");
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GP_VISITS_AUTO_CLOSE_BATCH_SIZE, "1");
+		String openVisitsQuery = "SELECT visit_id FROM visit WHERE voided = 0 AND date_stopped IS NULL AND visit_type_id IN (1, 4)";
+		Set<Integer> openVisitIds = new HashSet<>();
+		for (List<Object> row : Context.getAdministrationService().executeSQL(openVisitsQuery, true)) {
+			openVisitIds.add(((Number) row.get(0)).intValue());
+		}
+		//sanity check
+		assertTrue("There should be more than one active visit for this test to be valid", openVisitIds.size() > 1);
+		
+		List<Visit> stoppedVisits = new ArrayList<>();
+		DefaultListableBeanFactory beanFactory = (DefaultListableBeanFactory) ((ConfigurableApplicationContext) applicationContext)
+		        .getBeanFactory();
+		beanFactory.registerSingleton("testVisitStopListener", (VisitStopListener) stoppedVisits::add);
+		try {
+			visitService.stopVisits(null, null);
+		}
+		finally {
+			beanFactory.destroySingleton("testVisitStopListener");
+		}
+		
+		Set<Integer> stoppedVisitIds = new HashSet<>();
+		for (Visit visit : stoppedVisits) {
+			assertNotNull(visit.getStopDatetime());
+			stoppedVisitIds.add(visit.getVisitId());
+		}
+		assertEquals(openVisitIds.size(), stoppedVisits.size());
+		assertEquals(openVisitIds, stoppedVisitIds);
+	}
+	
+	/**
+	 * @see VisitService#stopVisitsById(Collection,Date)
+	 */
+	@Test
+	public void stopVisitsById_shouldStopTheActiveVisitsWithTheGivenIds() {
+		executeDataSet("org/openmrs/api/include/VisitServiceTest-includeVisitsAndTypeToAutoClose.xml");
+		Date stopDate = new Date();
+		
+		assertEquals(2, visitService.stopVisitsById(Arrays.asList(102, 105, 106), stopDate));
+		
+		for (Integer visitId : Arrays.asList(105, 106)) {
+			Visit visit = visitService.getVisit(visitId);
+			assertEquals(stopDate.getTime() / 1000, visit.getStopDatetime().getTime() / 1000);
+			assertEquals(Context.getAuthenticatedUser(), visit.getChangedBy());
+		}
+	}
+	
 	/**
 	 * @see VisitService#saveVisit(Visit)
 	 */
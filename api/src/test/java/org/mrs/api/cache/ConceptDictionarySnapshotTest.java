@@ -0,0 +1,196 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.Locale;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.Concept;
+import org.mrs.ConceptName;
+import org.mrs.GlobalProperty;
+import org.mrs.api.ConceptService;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.ConceptDAO;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.mrs.util.OpenmrsConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public class ConceptDictionarySnapshotTest extends BaseContextSensitiveTest {
+	
+	private static final String CONCEPT_NAMES_XML = "org/openmrs/api/include/ConceptDictionarySnapshotTest-names.xml";
+	
+	@Autowired
+	private ConceptDictionarySnapshot conceptDictionarySnapshot;
+	
+	private ConceptService conceptService;
+	
+	@Before
+	public void before() {
+		conceptService = Context.getConceptService();
+		Context.getAdministrationService().saveGlobalProperty(
+		    new GlobalProperty(OpenmrsConstants.GP_CONCEPT_DICTIONARY_SNAPSHOT_ENABLED, "true"));
+	}
+	
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+		// the committed concepts are gone, rebuild the snapshot for the next tests
+		conceptDictionarySnapshot.invalidate();
+	}
+	
+	@Test
+	public void getConceptByUuid_shouldFindTheConceptInTheSnapshot() {
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		assertEquals(5089, conceptDictionarySnapshot.getConceptIdByUuid("c607c80f-1ea9-4da3-bb88-6276ce8868dd")
+		        .intValue());
+		
+		assertEquals(5089, conceptService.getConceptByUuid("c607c80f-1ea9-4da3-bb88-6276ce8868dd").getId().intValue());
+		assertNull(conceptService.getConceptByUuid("some invalid uuid"));
+	}
+	
+	@Test
+	public void getConceptByMapping_shouldFindTheConceptBySourceNameAndHl7Code() {
+		assertEquals(5089, conceptService.getConceptByMapping("WGT234", "SSTRM").getId().intValue());
+		assertEquals(5089, conceptService.getConceptByMapping("WGT234", "Some Standardized Terminology").getId()
+		        .intValue());
+		assertEquals(24, conceptService.getConceptByMapping("454545", "SSTRM").getId().intValue());
+		assertNull(conceptService.getConceptByMapping("A random concept code", "SSTRM"));
+	}
+	
+	@Test
+	public void isAvailable_shouldNotBeUsedForAConceptChangedInTheCurrentTransaction() {
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		
+		Concept concept = conceptService.getConcept(5089);
+		conceptService.retireConcept(concept, "test");
+		
+		assertFalse(conceptDictionarySnapshot.isAvailable());
+		assertTrue(conceptService.getConceptByMapping("WGT234", "SSTRM", true).getRetired());
+	}
+	
+	@Test
+	public void getConceptByName_shouldFindTheConceptWithTheNameInTheLanguageOfTheLocale() {
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		assertEquals(5089, conceptDictionarySnapshot.getConceptIdByName("weight (kg)", Locale.UK).intValue());
+		assertEquals(5089, conceptDictionarySnapshot.getConceptIdByName("WEIGHT (KG)", Locale.ENGLISH).intValue());
+		assertNull(conceptDictionarySnapshot.getConceptIdByName("VOIDED", Locale.UK));
+		assertNull(conceptDictionarySnapshot.getConceptIdByName("WEIGHT (KG)", Locale.FRENCH));
+		
+		Context.setLocale(Locale.UK);
+		assertEquals(5089, conceptService.getConceptByName("Wt").getId().intValue());
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void getConceptByName_shouldPickTheConceptWithTheNameInExactlyTheLocaleLikeTheDAO() {
+		loadCommittedConcepts();
+		
+		assertConceptByName(7002, "Ambiguous Name", Locale.UK);
+		assertConceptByName(7001, "ambiguous name", Locale.ENGLISH);
+		assertConceptByName(null, "Ambiguous Name", Locale.US);
+		assertConceptByName(7003, "Indexed Name", Locale.UK);
+		assertConceptByName(7001, "Indexed Name", Locale.ENGLISH);
+		assertConceptByName(7003, "Third Concept", Locale.US);
+		assertConceptByName(null, "Retired Concept", Locale.UK);
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void conceptChanged_shouldRefreshTheNamesOfAConceptSavedByACommittedTransaction() {
+		loadCommittedConcepts();
+		
+		Concept concept = conceptService.getConcept(7003);
+		concept.addName(new ConceptName("New Synonym", Locale.UK));
+		for (ConceptName name : concept.getIndexTerms()) {
+			name.setVoided(true);
+			name.setVoidReason("test");
+		}
+		conceptService.saveConcept(concept);
+		
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		assertEquals(7003, conceptDictionarySnapshot.getConceptIdByName("New Synonym", Locale.UK).intValue());
+		// only the concept with the name in another locale is left
+		assertEquals(7001, conceptDictionarySnapshot.getConceptIdByName("Indexed Name", Locale.UK).intValue());
+		assertEquals(7003, conceptDictionarySnapshot.getConceptIdByName("Third Concept", Locale.UK).intValue());
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void conceptChanged_shouldRefreshAConceptRetiredByACommittedTransaction() {
+		loadCommittedConcepts();
+		
+		conceptService.retireConcept(conceptService.getConcept(7002), "test");
+		
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		assertTrue(conceptDictionarySnapshot.isRetired(7002));
+		assertEquals(7002, conceptDictionarySnapshot.getConceptIdByUuid("0d5f8e32-5c1b-4a7e-9f26-7002a3c4b5d2")
+		        .intValue());
+		// only the concept with the name in another locale is left
+		assertEquals(7001, conceptDictionarySnapshot.getConceptIdByName("Ambiguous Name", Locale.UK).intValue());
+	}
+	
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void conceptChanged_shouldRemoveAConceptPurgedByACommittedTransaction() {
+		loadCommittedConcepts();
+		int size = conceptDictionarySnapshot.size();
+		
+		conceptService.purgeConcept(conceptService.getConcept(7004));
+		
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+		assertEquals(size - 1, conceptDictionarySnapshot.size());
+		assertNull(conceptDictionarySnapshot.getConceptIdByUuid("0d5f8e32-5c1b-4a7e-9f26-7004a3c4b5d4"));
+		assertFalse(conceptDictionarySnapshot.isRetired(7004));
+	}
+	
+	/**
+	 * Commits the concepts of the data set and rebuilds the snapshot with them
+	 */
+	private void loadCommittedConcepts() {
+		executeDataSet(CONCEPT_NAMES_XML);
+		try {
+			getConnection().commit();
+		}
+		catch (SQLException e) {
+			throw new RuntimeException(e);
+		}
+		conceptDictionarySnapshot.invalidate();
+		assertTrue(conceptDictionarySnapshot.isAvailable());
+	}
+	
+	/**
+	 * Asserts that the snapshot and {@link ConceptDAO#getConceptByName(String)} find the same
+	 * concept for the name in the locale
+	 */
+	private void assertConceptByName(Integer expectedConceptId, String name, Locale locale) {
+		assertEquals(expectedConceptId, conceptDictionarySnapshot.getConceptIdByName(name, locale));
+		
+		ConceptDAO dao = (ConceptDAO) applicationContext.getBean("conceptDAO");
+		Locale previousLocale = Context.getLocale();
+		Context.setLocale(locale);
+		try {
+			Concept concept = dao.getConceptByName(name);
+			assertEquals(expectedConceptId, concept == null ? null : concept.getConceptId());
+		}
+		finally {
+			Context.setLocale(previousLocale);
+		}
+	}
+}
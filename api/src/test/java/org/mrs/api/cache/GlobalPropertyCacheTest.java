@@ -0,0 +1,99 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.GlobalProperty;
+import org.mrs.api.AdministrationService;
+import org.mrs.api.context.Context;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+public class GlobalPropertyCacheTest extends BaseContextSensitiveTest {
+	
+	@Autowired
+	private GlobalPropertyCache globalPropertyCache;
+	
+	private AdministrationService adminService;
+	
+	@Before
+	public void before() {
+		adminService = Context.getAdministrationService();
+		adminService.saveGlobalProperty(new GlobalProperty("cache.test.property", "initial"));
+		globalPropertyCache.resetStatistics();
+	}
+	
+	@Test
+	public void getValue_shouldServeRepeatedReadsFromTheCache() {
+		globalPropertyCache.clear();
+		adminService.getGlobalProperty("another.property");
+		globalPropertyCache.resetStatistics();
+		
+		adminService.getGlobalProperty("another.property");
+		adminService.getGlobalProperty("another.property");
+		
+		assertEquals(2, globalPropertyCache.getHitCount());
+		assertEquals(0, globalPropertyCache.getMissCount());
+	}
+	
+	@Test
+	public void getValue_shouldReturnTheValueSavedInTheCurrentTransaction() {
+		adminService.getGlobalProperty("cache.test.property");
+		
+		adminService.saveGlobalProperty(new GlobalProperty("cache.test.property", "changed"));
+		
+		assertEquals("changed", adminService.getGlobalProperty("cache.test.property"));
+		assertEquals("changed", adminService.getGlobalProperty("CACHE.TEST.PROPERTY"));
+	}
+	
+	@Test
+	public void getValue_shouldNotReturnAPurgedProperty() {
+		adminService.getGlobalProperty("cache.test.property");
+		
+		adminService.purgeGlobalProperty(adminService.getGlobalPropertyObject("cache.test.property"));
+		
+		assertNull(adminService.getGlobalProperty("cache.test.property"));
+	}
+	
+	@Test
+	public void invalidate_shouldNotCacheAPropertyChangedInTheCurrentTransaction() {
+		globalPropertyCache.invalidate("cache.test.property");
+		
+		adminService.getGlobalProperty("cache.test.property");
+		adminService.getGlobalProperty("cache.test.property");
+		
+		assertEquals(0, globalPropertyCache.getHitCount());
+	}
+	
+	@Test
+	public void load_shouldPutAllPropertiesIntoTheCacheSoThatReadsDontGoToTheDatabase() {
+		GlobalPropertyCache cache = new GlobalPropertyCache();
+		cache.setCacheManager(new ConcurrentMapCacheManager());
+		
+		cache.load(() -> Collections.singletonList(new GlobalProperty("loaded.property", "loaded")));
+		
+		assertEquals("loaded", cache.getValue("LOADED.PROPERTY", () -> {
+			fail("All properties should have been loaded already");
+			return null;
+		}, name -> {
+			fail("The property should have been loaded already");
+			return null;
+		}));
+		assertEquals(1, cache.getHitCount());
+	}
+}
@@ -26,10 +26,11 @@ public class OpenmrsCacheManagerFactoryBeanTest extends BaseContextSensitiveTest
     CacheManager cacheManager;
     
     @Test
-    public void shouldContainsThreeCacheConfigurations(){
+    public void shouldContainsFourCacheConfigurations(){
         Collection<String> cacheNames = cacheManager.getCacheNames();
-        assertThat(cacheNames.size(), is(3));
+        assertThat(cacheNames.size(), is(4));
         cacheNames.forEach(cn ->
-                assertThat(cn, anyOf(is("conceptDatatype"), is("subscription"), is("userSearchLocales"))));
+                assertThat(cn, anyOf(is("conceptDatatype"), is("subscription"), is("userSearchLocales"),
+                        is("globalProperties"))));
     }
 }
@@ -0,0 +1,98 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the lock-free {@link ServiceContext#getService(Class)} with the previous lookup which
+ * entered a global monitor on every call. Run with {@link #main(String[])} from the test classpath,
+ * it is not picked up by surefire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(16)
+public class ServiceContextBenchmark {
+
+	public interface BenchmarkService {
+
+		String getName();
+	}
+
+	public static class BenchmarkServiceImpl implements BenchmarkService {
+
+		@Override
+		public String getName() {
+			return "benchmark";
+		}
+	}
+
+	private final Object legacyLock = new Object();
+
+	private boolean legacyRefreshing = false;
+
+	private Map<Class, Object> legacyServices;
+
+	private ServiceContext serviceContext;
+
+	@Setup
+	public void setUp() {
+		serviceContext = ServiceContext.getInstance();
+		serviceContext.setService(BenchmarkService.class, new BenchmarkServiceImpl());
+
+		legacyServices = new HashMap<>();
+		legacyServices.put(BenchmarkService.class, serviceContext.getService(BenchmarkService.class));
+	}
+
+	@Benchmark
+	public Object snapshotLookup() {
+		return serviceContext.getService(BenchmarkService.class);
+	}
+
+	/**
+	 * Mirrors the lookup as it was before services were published through an immutable snapshot
+	 */
+	@Benchmark
+	public Object synchronizedLookup() throws InterruptedException {
+		synchronized (legacyLock) {
+			while (legacyRefreshing) {
+				legacyLock.wait();
+			}
+		}
+		return legacyServices.get(BenchmarkService.class);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(ServiceContextBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.context;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.api.APIException;
+
+public class ServiceContextTest {
+
+	public interface SampleService {
+
+		String getName();
+	}
+
+	private static class SampleServiceImpl implements SampleService {
+
+		private final String name;
+
+		SampleServiceImpl(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public String getName() {
+			return name;
+		}
+	}
+
+	@After
+	public void after() {
+		ServiceContext.getInstance().doneRefreshingContext();
+	}
+
+	/**
+	 * @see ServiceContext#getService(Class)
+	 */
+	@Test
+	public void getService_shouldReturnTheLatestServiceSet() {
+		ServiceContext serviceContext = ServiceContext.getInstance();
+		serviceContext.setService(SampleService.class, new SampleServiceImpl("first"));
+		assertEquals("first", serviceContext.getService(SampleService.class).getName());
+
+		serviceContext.setService(SampleService.class, new SampleServiceImpl("second"));
+		assertEquals("second", serviceContext.getService(SampleService.class).getName());
+	}
+
+	/**
+	 * @see ServiceContext#getService(Class)
+	 */
+	@Test(expected = APIException.class)
+	public void getService_shouldFailForAServiceThatWasNotSet() {
+		ServiceContext.getInstance().getService(Runnable.class);
+	}
+
+	/**
+	 * @see ServiceContext#getService(Class)
+	 */
+	@Test
+	public void getService_shouldWaitUntilTheContextIsDoneRefreshing() throws Exception {
+		final ServiceContext serviceContext = ServiceContext.getInstance();
+		serviceContext.setService(SampleService.class, new SampleServiceImpl("before"));
+		serviceContext.startRefreshingContext();
+
+		final CountDownLatch done = new CountDownLatch(1);
+		final AtomicReference<String> name = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			name.set(serviceContext.getService(SampleService.class).getName());
+			done.countDown();
+		});
+		reader.start();
+
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+		serviceContext.setService(SampleService.class, new SampleServiceImpl("after"));
+		serviceContext.doneRefreshingContext();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals("after", name.get());
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.context;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.mrs.Privilege;
+import org.mrs.Role;
+import org.mrs.api.UserService;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.mrs.util.PrivilegeConstants;
+
+public class UserContextTest extends BaseContextSensitiveTest {
+
+	private static final String TEST_PRIVILEGE = "Some Test Privilege";
+
+	/**
+	 * Methods in this class become a different user, so log that user out after this whole junit
+	 * class is done.
+	 */
+	@AfterClass
+	public static void logOutAfterThisTestClass() {
+		Context.logout();
+	}
+
+	private Privilege createTestPrivilege() {
+		return Context.getUserService().savePrivilege(new Privilege(TEST_PRIVILEGE, "For testing"));
+	}
+
+	/**
+	 * @see UserContext#hasPrivilege(String)
+	 */
+	@Test
+	public void hasPrivilege_shouldAuthorizeIfAuthenticatedUserHasSpecifiedPrivilege() {
+		UserService userService = Context.getUserService();
+		Role role = userService.getRole("Provider");
+		role.addPrivilege(createTestPrivilege());
+		userService.saveRole(role);
+
+		Context.becomeUser("butch");
+
+		assertTrue(Context.hasPrivilege(TEST_PRIVILEGE));
+		assertTrue(Context.hasPrivilege(TEST_PRIVILEGE.toUpperCase()));
+		assertFalse(Context.hasPrivilege(PrivilegeConstants.MANAGE_ROLES));
+	}
+
+	/**
+	 * @see UserContext#hasPrivilege(String)
+	 */
+	@Test
+	public void hasPrivilege_shouldReflectPrivilegesAddedToARoleAfterTheyWereChecked() {
+		Privilege privilege = createTestPrivilege();
+		Context.becomeUser("butch");
+		assertFalse(Context.hasPrivilege(TEST_PRIVILEGE.toLowerCase()));
+
+		UserService userService = Context.getUserService();
+		Role role = userService.getRole("Provider");
+		role.addPrivilege(privilege);
+		Context.addProxyPrivilege(PrivilegeConstants.MANAGE_ROLES);
+		Context.addProxyPrivilege(TEST_PRIVILEGE);
+		try {
+			userService.saveRole(role);
+		}
+		finally {
+			Context.removeProxyPrivilege(PrivilegeConstants.MANAGE_ROLES);
+			Context.removeProxyPrivilege(TEST_PRIVILEGE);
+		}
+
+		assertTrue(Context.hasPrivilege(TEST_PRIVILEGE.toLowerCase()));
+	}
+
+	/**
+	 * @see UserContext#hasPrivilege(String)
+	 */
+	@Test
+	public void hasPrivilege_shouldNotAuthorizeIfAuthenticatedUserDoesNotHaveSpecifiedPrivilege() {
+		createTestPrivilege();
+		Context.becomeUser("butch");
+
+		assertFalse(Context.hasPrivilege(TEST_PRIVILEGE));
+
+		Context.logout();
+		assertFalse(Context.hasPrivilege(TEST_PRIVILEGE));
+	}
+}
@@ -0,0 +1,34 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.mrs.PersonName;
+
+public class SearchIndexProgressTest {
+	
+	/**
+	 * @see SearchIndexProgress#getEstimatedTimeRemaining()
+	 */
+	@Test
+	public void getEstimatedTimeRemaining_shouldEstimateTheRemainingTimeFromTheIndexingRate() {
+		SearchIndexProgress progress = new SearchIndexProgress(PersonName.class, 1000, 0);
+		assertEquals(-1, progress.getEstimatedTimeRemaining(10000));
+		
+		progress.addIndexed(250);
+		assertEquals(25.0, progress.getDocumentsPerSecond(10000), 0.001);
+		assertEquals(30000, progress.getEstimatedTimeRemaining(10000));
+		
+		progress.addIndexed(750);
+		assertEquals(0, progress.getEstimatedTimeRemaining(20000));
+	}
+}
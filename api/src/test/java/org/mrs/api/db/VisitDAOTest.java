@@ -10,13 +10,17 @@
 package org.mrs.api.db;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Date;
 
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+import org.mrs.Visit;
 import org.mrs.VisitType;
 import org.mrs.api.VisitService;
+import org.mrs.api.context.Context;
 import org.mrs.test.BaseContextSensitiveTest;
 
 /**
@@ -75,4 +79,55 @@ public class VisitDAOTest extends BaseContextSensitiveTest {
 		cal.set(Calendar.MILLISECOND, 999);
 		Assert.assertEquals(105, dao.getNextVisit(dao.getVisit(1), visitTypes, cal.getTime()).getVisitId().intValue());
 	}
+	
+	/**
+	 * @see VisitDAO#getNextVisitIds(Integer,Collection<VisitType>,Date,int)
+	 */
+	@Test
+	public void getNextVisitIds_shouldReturnTheIdsOfTheNextUnvoidedActiveVisitsMatchingTheSpecifiedTypesAndStartDate() {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		ArrayList<VisitType> visitTypes = new ArrayList<>();
+		visitTypes.add(dao.getVisitType(4));
+		Calendar cal = Calendar.getInstance();
+		cal.set(2005, 0, 4, 23, 59, 59);
+		cal.set(Calendar.MILLISECOND, 999);
+		Assert.assertEquals(Arrays.asList(105, 106), dao.getNextVisitIds(null, visitTypes, cal.getTime(), 10));
+		Assert.assertEquals(Arrays.asList(105), dao.getNextVisitIds(null, visitTypes, cal.getTime(), 1));
+		Assert.assertEquals(Arrays.asList(106), dao.getNextVisitIds(105, visitTypes, cal.getTime(), 1));
+		Assert.assertTrue(dao.getNextVisitIds(106, visitTypes, cal.getTime(), 1).isEmpty());
+	}
+	
+	/**
+	 * @see VisitDAO#stopVisits(Collection<Integer>,Date,User)
+	 */
+	@Test
+	public void stopVisits_shouldStopTheActiveVisitsWithTheGivenIds() {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		Date stopDate = new Date();
+		
+		Assert.assertEquals(2, dao.stopVisits(Arrays.asList(102, 105, 106), stopDate, Context.getAuthenticatedUser()));
+		Context.clearSession();
+		
+		Visit visit = dao.getVisit(105);
+		Assert.assertEquals(stopDate.getTime() / 1000, visit.getStopDatetime().getTime() / 1000);
+		Assert.assertEquals(Context.getAuthenticatedUser(), visit.getChangedBy());
+		Assert.assertNotNull(visit.getDateChanged());
+		Assert.assertNotEquals(stopDate.getTime() / 1000, dao.getVisit(102).getStopDatetime().getTime() / 1000);
+	}
+	
+	/**
+	 * @see VisitDAO#stopVisits(Collection<Integer>,Date,User)
+	 */
+	@Test
+	public void stopVisits_shouldRefreshTheVisitsLoadedInTheSession() {
+		executeDataSet(VISITS_INCLUDE_VISITS_TO_AUTO_CLOSE_XML);
+		Visit visit = dao.getVisit(105);
+		Assert.assertNull(visit.getStopDatetime());
+		Date stopDate = new Date();
+		
+		dao.stopVisits(Arrays.asList(105), stopDate, Context.getAuthenticatedUser());
+		
+		Assert.assertSame(visit, dao.getVisit(105));
+		Assert.assertEquals(stopDate.getTime() / 1000, visit.getStopDatetime().getTime() / 1000);
+	}
 }
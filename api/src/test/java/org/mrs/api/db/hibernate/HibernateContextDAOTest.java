@@ -0,0 +1,215 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.hibernate.SessionFactory;
+import org.hibernate.search.FullTextSession;
+import org.hibernate.search.Search;
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.GlobalProperty;
+import org.mrs.PersonName;
+import org.mrs.api.APIException;
+import org.mrs.api.AdministrationService;
+import org.mrs.api.GlobalPropertyListener;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.SearchIndexProgress;
+import org.mrs.api.db.SearchIndexRebuildOptions;
+import org.mrs.api.db.hibernate.search.SearchIndexQueue;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.mrs.util.OpenmrsConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class HibernateContextDAOTest extends BaseContextSensitiveTest {
+	
+	private static final String POSITION_PREFIX = PersonName.class.getName() + "=";
+	
+	private static final String COLLET_NAME_UUID = "a65c347e-1384-493a-a55b-d325924acd94";
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	@Autowired
+	private SearchIndexQueue searchIndexQueue;
+	
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+	
+	/**
+	 * @see HibernateContextDAO#rebuildSearchIndex(SearchIndexRebuildOptions)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void rebuildSearchIndex_shouldResumeAnInterruptedRebuildAfterTheLastIndexedObject() {
+		long names = countNames(null);
+		purgeNameIndex();
+		
+		// stops the rebuild the second time it saves its position
+		AdministrationService as = Context.getAdministrationService();
+		GlobalPropertyListener interrupter = new GlobalPropertyListener() {
+			
+			private int changes = 0;
+			
+			@Override
+			public boolean supportsPropertyName(String propertyName) {
+				return OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION.equals(propertyName);
+			}
+			
+			@Override
+			public void globalPropertyChanged(GlobalProperty newValue) {
+				if (++changes == 2) {
+					throw new APIException("Interrupted");
+				}
+			}
+			
+			@Override
+			public void globalPropertyDeleted(String propertyName) {
+			}
+		};
+		as.addGlobalPropertyListener(interrupter);
+		try {
+			Context.rebuildSearchIndex(getNameRebuildOptions(true));
+			fail("The rebuild should have been interrupted");
+		}
+		catch (APIException e) {
+			// expected
+		}
+		finally {
+			as.removeGlobalPropertyListener(interrupter);
+		}
+		
+		String position = as.getGlobalProperty(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION, "");
+		assertTrue(position, position.startsWith(POSITION_PREFIX));
+		Integer lastId = Integer.valueOf(position.substring(POSITION_PREFIX.length()));
+		
+		Context.rebuildSearchIndex(getNameRebuildOptions(true));
+		
+		List<SearchIndexProgress> progress = Context.getSearchIndexProgress();
+		assertEquals(1, progress.size());
+		assertTrue(progress.get(0).isFinished());
+		assertEquals(countNames(lastId), progress.get(0).getTotal());
+		assertEquals(countNames(lastId), progress.get(0).getIndexed());
+		assertTrue(StringUtils.isEmpty(as.getGlobalProperty(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION, "")));
+		assertEquals(names, countIndexedNames());
+	}
+	
+	/**
+	 * @see HibernateContextDAO#rebuildSearchIndex(SearchIndexRebuildOptions)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void rebuildSearchIndex_shouldStartOverIfNotResuming() {
+		long names = countNames(null);
+		purgeNameIndex();
+		AdministrationService as = Context.getAdministrationService();
+		GlobalProperty gp = as.getGlobalPropertyObject(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION);
+		if (gp == null) {
+			gp = new GlobalProperty(OpenmrsConstants.GP_SEARCH_INDEX_REBUILD_POSITION);
+		}
+		gp.setPropertyValue(POSITION_PREFIX + Integer.MAX_VALUE);
+		as.saveGlobalProperty(gp);
+		
+		Context.rebuildSearchIndex(getNameRebuildOptions(false));
+		
+		assertEquals(names, Context.getSearchIndexProgress().get(0).getTotal());
+		assertEquals(names, countIndexedNames());
+	}
+	
+	/**
+	 * @see HibernateContextDAO#updateSearchIndexForObject(Object)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void updateSearchIndexForObject_shouldQueueTheObjectOnlyOnceTheTransactionIsCommitted() throws Exception {
+		waitForSearchIndex();
+		long indexedBefore = searchIndexQueue.getIndexedCount();
+		
+		new TransactionTemplate(transactionManager).execute(status -> {
+			PersonName name = Context.getPersonService().getPersonNameByUuid(COLLET_NAME_UUID);
+			Context.updateSearchIndexForObject(name);
+			assertEquals(0, searchIndexQueue.getQueueSize());
+			return null;
+		});
+		
+		waitForSearchIndex();
+		assertEquals(indexedBefore + 1, searchIndexQueue.getIndexedCount());
+	}
+	
+	/**
+	 * @see HibernateContextDAO#updateSearchIndexForObject(Object)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void updateSearchIndexForObject_shouldNotQueueTheObjectIfTheTransactionIsRolledBack() throws Exception {
+		waitForSearchIndex();
+		long indexedBefore = searchIndexQueue.getIndexedCount();
+		
+		new TransactionTemplate(transactionManager).execute(status -> {
+			PersonName name = Context.getPersonService().getPersonNameByUuid(COLLET_NAME_UUID);
+			Context.updateSearchIndexForObject(name);
+			status.setRollbackOnly();
+			return null;
+		});
+		
+		waitForSearchIndex();
+		assertEquals(indexedBefore, searchIndexQueue.getIndexedCount());
+	}
+	
+	private SearchIndexRebuildOptions getNameRebuildOptions(boolean resume) {
+		SearchIndexRebuildOptions options = new SearchIndexRebuildOptions();
+		options.setTypes(Collections.singletonList(PersonName.class));
+		options.setLoaderThreads(1);
+		options.setBatchSize(1);
+		options.setResume(resume);
+		return options;
+	}
+	
+	/**
+	 * @param afterId the id the names must be greater than, null for all names
+	 */
+	private long countNames(Integer afterId) {
+		return (Long) sessionFactory.getCurrentSession().createQuery(
+		    "select count(*) from PersonName where personNameId > :afterId").setParameter("afterId",
+		    afterId == null ? Integer.MIN_VALUE : afterId).uniqueResult();
+	}
+	
+	private long countIndexedNames() {
+		return Search.getFullTextSession(sessionFactory.getCurrentSession()).createFullTextQuery(new MatchAllDocsQuery(),
+		    PersonName.class).getResultSize();
+	}
+	
+	private void purgeNameIndex() {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			FullTextSession session = Search.getFullTextSession(sessionFactory.getCurrentSession());
+			session.purgeAll(PersonName.class);
+			session.flushToIndexes();
+			return null;
+		});
+		assertEquals(0, countIndexedNames());
+	}
+}
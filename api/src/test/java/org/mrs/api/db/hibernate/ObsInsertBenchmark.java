@@ -0,0 +1,203 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.MappedSuperclass;
+import javax.persistence.Table;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures how fast hibernate saves obs rows whose id comes from an identity column, where every
+ * insert is executed as soon as the obs is saved to read the generated key, against rows whose id
+ * comes from {@link PooledLoIfNotAssignedGenerator}, where the inserts are delayed until the
+ * session is flushed and sent in JDBC batches of <code>hibernate.jdbc.batch_size</code>. Both
+ * entities are mapped to a table with the columns of obs that are not null. An in-memory H2
+ * database is used, the difference is larger against a database server where every executed
+ * statement is a round trip. Run with {@link #main(String[])} from the test classpath, it is not
+ * picked up by surefire.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObsInsertBenchmark {
+
+	private static final int OBS_PER_INVOCATION = 500;
+
+	private static final int BATCH_SIZE = 50;
+
+	private SessionFactory sessionFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		Configuration configuration = new Configuration().addAnnotatedClass(IdentityObs.class).addAnnotatedClass(
+		    PooledObs.class);
+		configuration.setProperty(AvailableSettings.DIALECT, H2Dialect.class.getName());
+		configuration.setProperty(AvailableSettings.DRIVER, "org.h2.Driver");
+		configuration.setProperty(AvailableSettings.URL, "jdbc:h2:mem:obsInsertBenchmark;DB_CLOSE_DELAY=-1");
+		configuration.setProperty(AvailableSettings.USER, "sa");
+		configuration.setProperty(AvailableSettings.PASS, "");
+		configuration.setProperty(AvailableSettings.HBM2DDL_AUTO, "create");
+		configuration.setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(BATCH_SIZE));
+		sessionFactory = configuration.buildSessionFactory(new StandardServiceRegistryBuilder().applySettings(
+		    configuration.getProperties()).build());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		sessionFactory.close();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OBS_PER_INVOCATION)
+	public void identitySaves() {
+		save(IdentityObs::new);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(OBS_PER_INVOCATION)
+	public void pooledSaves() {
+		save(PooledObs::new);
+	}
+
+	/**
+	 * Saves the obs in one transaction, flushing and clearing the session after each batch the way
+	 * bulk saves in the services do
+	 */
+	private void save(Supplier<BenchmarkObs> newObs) {
+		Session session = sessionFactory.openSession();
+		try {
+			Transaction transaction = session.beginTransaction();
+			for (int i = 0; i < OBS_PER_INVOCATION; i++) {
+				BenchmarkObs obs = newObs.get();
+				obs.setValues(i);
+				session.save(obs);
+				if ((i + 1) % BATCH_SIZE == 0) {
+					session.flush();
+					session.clear();
+				}
+			}
+			transaction.commit();
+		}
+		finally {
+			session.close();
+		}
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder().include(ObsInsertBenchmark.class.getSimpleName()).build();
+		new Runner(options).run();
+	}
+
+	@MappedSuperclass
+	public abstract static class BenchmarkObs {
+
+		@Column(name = "person_id", nullable = false)
+		private Integer personId;
+
+		@Column(name = "concept_id", nullable = false)
+		private Integer conceptId;
+
+		@Column(name = "encounter_id")
+		private Integer encounterId;
+
+		@Column(name = "obs_datetime", nullable = false)
+		private Date obsDatetime;
+
+		@Column(name = "value_numeric")
+		private Double valueNumeric;
+
+		@Column(name = "creator", nullable = false)
+		private Integer creator;
+
+		@Column(name = "date_created", nullable = false)
+		private Date dateCreated;
+
+		@Column(name = "voided", nullable = false)
+		private Boolean voided;
+
+		@Column(name = "uuid", length = 38, nullable = false)
+		private String uuid;
+
+		void setValues(int i) {
+			Date now = new Date();
+			personId = 2;
+			conceptId = 5089;
+			encounterId = 3;
+			obsDatetime = now;
+			valueNumeric = (double) i;
+			creator = 1;
+			dateCreated = now;
+			voided = false;
+			uuid = UUID.randomUUID().toString();
+		}
+	}
+
+	@Entity
+	@Table(name = "obs_identity")
+	public static class IdentityObs extends BenchmarkObs {
+
+		@Id
+		@GeneratedValue(strategy = GenerationType.IDENTITY)
+		@Column(name = "obs_id")
+		private Integer obsId;
+	}
+
+	@Entity
+	@Table(name = "obs_pooled")
+	public static class PooledObs extends BenchmarkObs {
+
+		@Id
+		@GeneratedValue(generator = "obs_pooled_id_generator")
+		@GenericGenerator(name = "obs_pooled_id_generator",
+		    strategy = "org.mrs.api.db.hibernate.PooledLoIfNotAssignedGenerator",
+		    parameters = @Parameter(name = PooledLoIfNotAssignedGenerator.INCREMENT_SIZE, value = "" + BATCH_SIZE))
+		@Column(name = "obs_id")
+		private Integer obsId;
+	}
+}
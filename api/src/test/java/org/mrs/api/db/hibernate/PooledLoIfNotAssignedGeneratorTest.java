@@ -0,0 +1,208 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.type.IntegerType;
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.Concept;
+import org.mrs.Person;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class PooledLoIfNotAssignedGeneratorTest extends BaseContextSensitiveTest {
+	
+	private static final int INCREMENT_SIZE = 5;
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	private PooledLoIfNotAssignedGenerator generator;
+	
+	@Before
+	public void createGenerator() {
+		generator = createGenerator(Person.class, "person", "person_id");
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#generate(SessionImplementor,Object)
+	 */
+	@Test
+	public void generate_shouldKeepAnIdThatWasAssignedBeforeSaving() {
+		assertEquals(12345, generate(new Person(12345)));
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#generate(SessionImplementor,Object)
+	 */
+	@Test
+	public void generate_shouldHandOutConsecutiveIdsAboveTheMaximumIdFromABlock() {
+		int maxId = getMaxPersonId();
+		
+		int first = generate(new Person());
+		assertTrue(first > maxId);
+		for (int i = 1; i < INCREMENT_SIZE; i++) {
+			assertEquals(first + i, generate(new Person()));
+		}
+		assertEquals(first + INCREMENT_SIZE, getNextIdOfNextBlock());
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#generate(SessionImplementor,Object)
+	 */
+	@Test
+	public void generate_shouldReserveANewBlockWhenTheCurrentOneIsUsedUp() {
+		int first = generate(new Person());
+		for (int i = 1; i < INCREMENT_SIZE; i++) {
+			generate(new Person());
+		}
+		assertEquals(first + INCREMENT_SIZE, getNextIdOfNextBlock());
+		
+		int firstOfNextBlock = generate(new Person());
+		
+		assertTrue(firstOfNextBlock >= first + INCREMENT_SIZE);
+		assertEquals(firstOfNextBlock + INCREMENT_SIZE, getNextIdOfNextBlock());
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#discardReservedBlocks()
+	 */
+	@Test
+	public void discardReservedBlocks_shouldMakeGeneratorsSkipRowsInsertedInsideTheirBlock() {
+		int first = generate(new Person());
+		
+		// a row taking an id from the middle of the block without going through hibernate
+		int inserted = first + 2;
+		sessionFactory.getCurrentSession().createSQLQuery(
+		    "insert into person (person_id, gender, dead, creator, date_created, voided, uuid) "
+		            + "values (:id, 'F', false, 1, current_timestamp, false, :uuid)").setInteger("id", inserted)
+		        .setString("uuid", UUID.randomUUID().toString()).executeUpdate();
+		
+		PooledLoIfNotAssignedGenerator.discardReservedBlocks();
+		
+		assertTrue(generate(new Person()) > inserted);
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#generate(SessionImplementor,Object)
+	 */
+	@Test
+	public void generate_shouldNeverHandOutTheSameIdToConcurrentCallers() throws Exception {
+		final int callers = 4;
+		final int idsPerCaller = 50;
+		
+		List<Callable<List<Integer>>> tasks = new ArrayList<>();
+		for (int i = 0; i < callers; i++) {
+			tasks.add(() -> {
+				List<Integer> ids = new ArrayList<>();
+				Session session = sessionFactory.openSession();
+				try {
+					for (int j = 0; j < idsPerCaller; j++) {
+						ids.add((Integer) generator.generate((SessionImplementor) session, new Person()));
+					}
+				}
+				finally {
+					session.close();
+				}
+				return ids;
+			});
+		}
+		
+		Set<Integer> ids = Collections.synchronizedSet(new HashSet<>());
+		ExecutorService executor = Executors.newFixedThreadPool(callers);
+		try {
+			for (Future<List<Integer>> result : executor.invokeAll(tasks)) {
+				ids.addAll(result.get());
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		assertEquals(callers * idsPerCaller, ids.size());
+	}
+	
+	/**
+	 * @see PooledLoIfNotAssignedGenerator#generate(SessionImplementor,Object)
+	 */
+	@Test
+	public void generate_shouldStartABlockAboveTheNextValueOfTheAutoIncrementColumn() {
+		// the concept_id column is auto incremented in the test database
+		PooledLoIfNotAssignedGenerator conceptGenerator = createGenerator(Concept.class, "concept", "concept_id");
+		Session session = sessionFactory.getCurrentSession();
+		Number maxId = (Number) session.createSQLQuery("select max(concept_id) from concept").uniqueResult();
+		Number nextId = (Number) session.createSQLQuery(
+		    "select next_id from " + PooledLoIfNotAssignedGenerator.ALLOCATION_TABLE + " where table_name = 'concept'")
+		        .uniqueResult();
+		int inserted = Math.max(maxId.intValue(), nextId == null ? 0 : nextId.intValue()) + 1000;
+		
+		// a row inserted and deleted again without going through hibernate, the auto increment of
+		// the column has moved past it but the maximum id of the table hasn't
+		session.createSQLQuery(
+		    "insert into concept (concept_id, retired, is_set, datatype_id, class_id, creator, date_created, uuid) "
+		            + "values (:id, false, false, 1, 1, 1, current_timestamp, :uuid)").setInteger("id", inserted)
+		        .setString("uuid", UUID.randomUUID().toString()).executeUpdate();
+		session.createSQLQuery("delete from concept where concept_id = :id").setInteger("id", inserted).executeUpdate();
+		
+		Serializable id = conceptGenerator.generate((SessionImplementor) session, new Concept());
+		
+		assertTrue((Integer) id > inserted);
+	}
+	
+	private PooledLoIfNotAssignedGenerator createGenerator(Class<?> entityClass, String table, String pk) {
+		PooledLoIfNotAssignedGenerator newGenerator = new PooledLoIfNotAssignedGenerator();
+		Properties params = new Properties();
+		params.setProperty(PersistentIdentifierGenerator.ENTITY_NAME, entityClass.getName());
+		params.setProperty(PersistentIdentifierGenerator.TABLE, table);
+		params.setProperty(PersistentIdentifierGenerator.PK, pk);
+		params.setProperty(PooledLoIfNotAssignedGenerator.INCREMENT_SIZE, String.valueOf(INCREMENT_SIZE));
+		newGenerator.configure(IntegerType.INSTANCE, params, ((SessionFactoryImplementor) sessionFactory).getDialect());
+		return newGenerator;
+	}
+	
+	private int generate(Person person) {
+		Serializable id = generator.generate((SessionImplementor) sessionFactory.getCurrentSession(), person);
+		return (Integer) id;
+	}
+	
+	private int getMaxPersonId() {
+		Number maxId = (Number) sessionFactory.getCurrentSession().createSQLQuery("select max(person_id) from person")
+		        .uniqueResult();
+		return maxId == null ? 0 : maxId.intValue();
+	}
+	
+	private int getNextIdOfNextBlock() {
+		Number nextId = (Number) sessionFactory.getCurrentSession().createSQLQuery(
+		    "select next_id from " + PooledLoIfNotAssignedGenerator.ALLOCATION_TABLE + " where table_name = 'person'")
+		        .uniqueResult();
+		return nextId.intValue();
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate;
+
+import static org.junit.Assert.assertEquals;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.PersonName;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.hibernate.search.LuceneQuery;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class SearchIndexInterceptorTest extends BaseContextSensitiveTest {
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+	
+	/**
+	 * @see SearchIndexInterceptor#afterTransactionCompletion(org.hibernate.Transaction)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void afterTransactionCompletion_shouldKeepTheChangesOfAnOuterTransactionAcrossANestedTransaction()
+	        throws Exception {
+		new TransactionTemplate(transactionManager).execute(status -> {
+			PersonName name = Context.getPersonService().getPersonNameByUuid("a65c347e-1384-493a-a55b-d325924acd94");
+			name.setGivenName("Zacharias");
+			Context.flushSession();
+			
+			// runs in a new transaction on the same thread
+			Context.getOrderService().getNextOrderNumberSeedSequenceValue();
+			return null;
+		});
+		
+		waitForSearchIndex();
+		
+		assertEquals(1, LuceneQuery.newQuery(PersonName.class, sessionFactory.getCurrentSession(),
+		    "givenNameExact:Zacharias").resultSize());
+	}
+}
@@ -0,0 +1,131 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.hibernate.SessionFactory;
+import org.junit.Test;
+import org.mrs.PersonName;
+import org.mrs.collection.ListPart;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class LuceneQueryTest extends BaseContextSensitiveTest {
+	
+	private static final String PERSON_ID = "person.personId";
+	
+	private static final String HORNBLOWERS = "familyNameExact:hornblower OR familyNameExact:hornblower2 OR familyNameExact:hornblower3";
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	/**
+	 * @see LuceneQuery#skipSame(String)
+	 */
+	@Test
+	public void skipSame_shouldReturnOneNameForEachPerson() {
+		Set<Integer> personIds = new LinkedHashSet<>(getPersonIds(newQuery("").list()));
+		assertTrue("The test data should have persons with more than one name", newQuery("").resultSize() > personIds
+		        .size());
+		
+		LuceneQuery<PersonName> query = newQuery("").skipSame(PERSON_ID);
+		List<Integer> skipSamePersonIds = getPersonIds(query.list());
+		
+		assertEquals(personIds.size(), skipSamePersonIds.size());
+		assertEquals(personIds, new LinkedHashSet<>(skipSamePersonIds));
+		assertEquals(personIds.size(), query.resultSize());
+	}
+	
+	/**
+	 * @see LuceneQuery#skipSame(String)
+	 */
+	@Test
+	public void skipSame_shouldReturnTheBestMatchingNameOfAPerson() {
+		LuceneQuery<PersonName> query = newQuery(HORNBLOWERS + "^10").skipSame(PERSON_ID);
+		
+		List<PersonName> names = query.list();
+		
+		assertEquals(1, names.size());
+		assertEquals("Hornblower3", names.get(0).getFamilyName());
+		assertEquals("Hornblower3", query.uniqueResult().getFamilyName());
+	}
+	
+	/**
+	 * @see LuceneQuery#skipSame(String,LuceneQuery)
+	 */
+	@Test
+	public void skipSame_shouldSkipThePersonsReturnedByTheGivenQuery() {
+		LuceneQuery<PersonName> hornblowers = newQuery(HORNBLOWERS).skipSame(PERSON_ID);
+		List<Integer> hornblowerIds = getPersonIds(hornblowers.list());
+		assertEquals(1, hornblowerIds.size());
+		
+		List<Integer> personIds = getPersonIds(newQuery("").skipSame(PERSON_ID, hornblowers).list());
+		
+		assertEquals(new LinkedHashSet<>(getPersonIds(newQuery("").list())).size() - 1, personIds.size());
+		assertFalse(personIds.contains(hornblowerIds.get(0)));
+	}
+	
+	/**
+	 * @see LuceneQuery#skipSame(String,LuceneQuery)
+	 */
+	@Test
+	public void skipSame_shouldReturnNothingIfTheGivenQueryReturnedAllPersons() {
+		LuceneQuery<PersonName> all = newQuery("").skipSame(PERSON_ID);
+		
+		LuceneQuery<PersonName> query = newQuery(HORNBLOWERS).skipSame(PERSON_ID, all);
+		
+		assertTrue(query.list().isEmpty());
+		assertEquals(0, query.resultSize());
+		assertNull(query.uniqueResult());
+		assertTrue(query.listPart(0L, 10L).getList().isEmpty());
+	}
+	
+	/**
+	 * @see LuceneQuery#listPart(Long,Long)
+	 */
+	@Test
+	public void listPart_shouldPageThroughOneNameForEachPerson() {
+		LuceneQuery<PersonName> query = newQuery("").skipSame(PERSON_ID);
+		List<Integer> allPersonIds = getPersonIds(query.list());
+		
+		List<Integer> pagedPersonIds = new ArrayList<>();
+		long pageSize = 3;
+		for (long first = 0; first < allPersonIds.size(); first += pageSize) {
+			ListPart<PersonName> page = query.listPart(first, pageSize);
+			assertEquals(Long.valueOf(allPersonIds.size()), page.getTotalElements());
+			assertTrue(page.getList().size() <= pageSize);
+			pagedPersonIds.addAll(getPersonIds(page.getList()));
+		}
+		
+		assertEquals(allPersonIds, pagedPersonIds);
+		assertTrue(query.listPart((long) allPersonIds.size(), pageSize).getList().isEmpty());
+	}
+	
+	private LuceneQuery<PersonName> newQuery(String query) {
+		return LuceneQuery.newQuery(PersonName.class, sessionFactory.getCurrentSession(), query);
+	}
+	
+	private List<Integer> getPersonIds(List<PersonName> names) {
+		List<Integer> personIds = new ArrayList<>();
+		for (PersonName name : names) {
+			personIds.add(name.getPerson().getPersonId());
+		}
+		return personIds;
+	}
+}
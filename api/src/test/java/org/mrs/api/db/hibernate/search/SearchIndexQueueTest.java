@@ -0,0 +1,198 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.HibernateException;
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.Concept;
+import org.mrs.Location;
+import org.mrs.Patient;
+import org.mrs.Person;
+import org.mrs.PersonName;
+import org.mrs.api.PersonService;
+import org.mrs.api.context.Context;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public class SearchIndexQueueTest extends BaseContextSensitiveTest {
+	
+	private static final String COLLET_NAME_UUID = "a65c347e-1384-493a-a55b-d325924acd94";
+	
+	private static final String HORNBLOWER3_NAME_UUID = "399e3a7b-6482-487d-94ce-c07bb3ca3c2c";
+	
+	@Autowired
+	private SearchIndexQueue searchIndexQueue;
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	/**
+	 * The tests not running in a transaction commit their changes
+	 */
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+	
+	/**
+	 * @see SearchIndexQueue#isIndexRelevant(Class)
+	 */
+	@Test
+	public void isIndexRelevant_shouldReturnTrueForIndexedAndContainingTypesOnly() {
+		assertTrue(SearchIndexQueue.isIndexRelevant(PersonName.class));
+		assertTrue(SearchIndexQueue.isIndexRelevant(Patient.class));
+		assertTrue(SearchIndexQueue.isIndexRelevant(Concept.class));
+		assertFalse(SearchIndexQueue.isIndexRelevant(Location.class));
+	}
+	
+	/**
+	 * @see SearchIndexQueue#waitForIndex(long)
+	 */
+	@Test
+	public void waitForIndex_shouldReturnRightAwayIfNothingIsQueued() throws Exception {
+		SearchIndexQueue queue = new SearchIndexQueue();
+		
+		assertTrue(queue.waitForIndex(0));
+		assertEquals(0, queue.getQueueSize());
+		assertEquals(0, queue.getLag());
+	}
+	
+	/**
+	 * @see SearchIndexQueue#add(java.util.Collection)
+	 */
+	@Test
+	public void add_shouldRetryObjectsThatFailedToBeIndexedAndGiveUpAfterMaxAttempts() throws Exception {
+		SessionFactory failingSessionFactory = mock(SessionFactory.class);
+		when(failingSessionFactory.openSession()).thenThrow(new HibernateException("unavailable"));
+		SearchIndexQueue queue = new SearchIndexQueue();
+		queue.setSessionFactory(failingSessionFactory);
+		queue.setFlushInterval(1);
+		queue.setRetryDelay(1);
+		queue.setMaxAttempts(3);
+		try {
+			queue.add(new Location(1));
+			
+			assertTrue(queue.waitForIndex(TimeUnit.SECONDS.toMillis(10)));
+			assertEquals(1, queue.getFailedCount());
+			assertEquals(0, queue.getIndexedCount());
+			assertEquals(0, queue.getQueueSize());
+			verify(failingSessionFactory, times(3)).openSession();
+		}
+		finally {
+			queue.shutdown();
+		}
+	}
+	
+	/**
+	 * @see SearchIndexQueue#add(java.util.Collection)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void add_shouldMakeCommittedChangesSearchable() throws Exception {
+		PersonService personService = Context.getPersonService();
+		PersonName name = personService.getPersonNameByUuid(COLLET_NAME_UUID);
+		name.setGivenName("Zacharias");
+		personService.savePersonName(name);
+		
+		waitForSearchIndex();
+		
+		assertEquals(1, countNames("givenNameExact:Zacharias"));
+		assertEquals(0, countNames("givenNameExact:Collet"));
+	}
+	
+	/**
+	 * @see SearchIndexQueue#add(java.util.Collection)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void add_shouldCoalesceRepeatedChangesToTheSameObject() throws Exception {
+		PersonService personService = Context.getPersonService();
+		long flushInterval = searchIndexQueue.getFlushInterval();
+		// keeps the worker from taking the changes before both are committed
+		searchIndexQueue.setFlushInterval(TimeUnit.MINUTES.toMillis(1));
+		try {
+			PersonName name = personService.getPersonNameByUuid(COLLET_NAME_UUID);
+			name.setGivenName("Zacharias");
+			personService.savePersonName(name);
+			int queueSize = searchIndexQueue.getQueueSize();
+			assertTrue(queueSize > 0);
+			
+			name = personService.getPersonNameByUuid(COLLET_NAME_UUID);
+			name.setGivenName("Zebedee");
+			personService.savePersonName(name);
+			assertEquals(queueSize, searchIndexQueue.getQueueSize());
+		}
+		finally {
+			searchIndexQueue.setFlushInterval(flushInterval);
+		}
+		
+		waitForSearchIndex();
+		
+		assertEquals(0, countNames("givenNameExact:Zacharias"));
+		assertEquals(1, countNames("givenNameExact:Zebedee"));
+	}
+	
+	/**
+	 * @see SearchIndexQueue#add(java.util.Collection)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void add_shouldPurgeDeletedObjectsFromTheIndex() throws Exception {
+		assertEquals(1, countNames("familyNameExact:Hornblower3"));
+		
+		PersonService personService = Context.getPersonService();
+		PersonName name = personService.getPersonNameByUuid(HORNBLOWER3_NAME_UUID);
+		Person person = name.getPerson();
+		person.removeName(name);
+		personService.savePerson(person);
+		
+		waitForSearchIndex();
+		
+		assertEquals(0, countNames("familyNameExact:Hornblower3"));
+		assertEquals(1, countNames("familyNameExact:Hornblower2"));
+	}
+	
+	/**
+	 * @see SearchIndexQueue#add(java.util.Collection)
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void add_shouldReindexTheObjectsAChangedObjectIsContainedIn() throws Exception {
+		assertEquals(1, countNames("givenNameExact:Collet AND person.gender:F"));
+		
+		PersonService personService = Context.getPersonService();
+		Person person = personService.getPersonNameByUuid(COLLET_NAME_UUID).getPerson();
+		person.setGender("M");
+		personService.savePerson(person);
+		
+		waitForSearchIndex();
+		
+		assertEquals(0, countNames("givenNameExact:Collet AND person.gender:F"));
+		assertEquals(1, countNames("givenNameExact:Collet AND person.gender:M"));
+	}
+	
+	private long countNames(String query) {
+		return LuceneQuery.newQuery(PersonName.class, sessionFactory.getCurrentSession(), query).resultSize();
+	}
+}
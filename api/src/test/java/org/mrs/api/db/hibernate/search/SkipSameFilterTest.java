@@ -0,0 +1,233 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.api.db.hibernate.search;
+
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field.Store;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.junit.After;
+import org.junit.Test;
+
+public class SkipSameFilterTest {
+	
+	private List<IndexReader> readers = new ArrayList<>();
+	
+	@After
+	public void closeReaders() throws IOException {
+		for (IndexReader reader : readers) {
+			reader.close();
+		}
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldLetThroughOneDocumentForEachValue() throws IOException {
+		IndexReader reader = createIndex(Arrays.asList(doc("1", "1-first", "a"), doc("2", "2", "a"), doc("1", "1-second",
+		    "a")));
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", null, null);
+		
+		assertFalse(filter.isEmpty());
+		assertEquals(Arrays.asList("1-first", "2"), search(reader, filter));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldChooseTheBestScoringDocumentOfAValueAcrossSegments() throws IOException {
+		IndexReader reader = createIndex(Arrays.asList(doc("1", "1-first", "a"), doc("2", "2", "a")), Arrays.asList(doc(
+		    "1", "1-best", "a", "best"), doc("3", "3", "a")));
+		assertEquals(2, reader.leaves().size());
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", null, null);
+		
+		List<String> names = search(reader, filter);
+		assertEquals("1-best", names.get(0));
+		assertThat(names, containsInAnyOrder("1-best", "2", "3"));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldKeepTheDocumentOfTheEarliestSegmentForEqualScores() throws IOException {
+		IndexReader reader = createIndex(Arrays.asList(doc("1", "1-first", "a")), Arrays.asList(doc("1", "1-second", "a"),
+		    doc("2", "2", "a")), Arrays.asList(doc("1", "1-third", "a")));
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", null, null);
+		
+		assertThat(search(reader, filter), containsInAnyOrder("1-first", "2"));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldNotLetThroughValuesChosenByTheSkipFilter() throws IOException {
+		IndexReader skipReader = createIndex(Arrays.asList(doc("2", "other-2", "a")), Arrays.asList(doc("4", "other-4",
+		    "a"), doc("5", "other-5", "none")));
+		SkipSameFilter skipFilter = SkipSameFilter.build(skipReader, getQuery(), null, "id", null, null);
+		
+		IndexReader reader = createIndex(Arrays.asList(doc("1", "1", "a"), doc("2", "2", "a")), Arrays.asList(doc("3",
+		    "3", "a"), doc("4", "4", "a"), doc("5", "5", "a")));
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", skipFilter, skipReader);
+		
+		// 5 was not chosen by the skip filter as it didn't match its query
+		assertThat(search(reader, filter), containsInAnyOrder("1", "3", "5"));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldBeEmptyIfAllValuesAreSkipped() throws IOException {
+		IndexReader skipReader = createIndex(Arrays.asList(doc("1", "other-1", "a"), doc("2", "other-2", "a")));
+		SkipSameFilter skipFilter = SkipSameFilter.build(skipReader, getQuery(), null, "id", null, null);
+		
+		IndexReader reader = createIndex(Arrays.asList(doc("2", "2", "a")), Arrays.asList(doc("1", "1", "a")));
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", skipFilter, skipReader);
+		
+		assertTrue(filter.isEmpty());
+		assertTrue(search(reader, filter).isEmpty());
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldChooseTheBestDocumentOfEachOfManyValues() throws IOException {
+		List<Document> first = new ArrayList<>();
+		List<Document> second = new ArrayList<>();
+		List<String> expected = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			String id = String.valueOf(i);
+			boolean bestInSecond = i % 3 == 0;
+			first.add(bestInSecond ? doc(id, id + "-other", "a") : doc(id, id + "-best", "a", "best"));
+			first.add(doc(id, id + "-other", "a"));
+			second.add(bestInSecond ? doc(id, id + "-best", "a", "best") : doc(id, id + "-other", "a"));
+			expected.add(id + "-best");
+		}
+		IndexReader reader = createIndex(first, second);
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", null, null);
+		
+		assertThat(search(reader, filter), containsInAnyOrder(expected.toArray()));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldLeaveOutDocumentsWithoutAValue() throws IOException {
+		Document withoutId = new Document();
+		withoutId.add(new StringField("name", "no-id", Store.YES));
+		withoutId.add(new StringField("tag", "a", Store.NO));
+		IndexReader reader = createIndex(Arrays.asList(withoutId, doc("1", "1", "a")));
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, getQuery(), null, "id", null, null);
+		
+		assertEquals(Arrays.asList("1"), search(reader, filter));
+	}
+	
+	/**
+	 * @see SkipSameFilter#build(IndexReader,Query,org.apache.lucene.search.Filter,String,SkipSameFilter,IndexReader)
+	 */
+	@Test
+	public void build_shouldBeEmptyIfNothingMatches() throws IOException {
+		IndexReader reader = createIndex(Arrays.asList(doc("1", "1", "a")));
+		
+		SkipSameFilter filter = SkipSameFilter.build(reader, new TermQuery(new Term("tag", "none")), null, "id", null,
+		    null);
+		
+		assertTrue(filter.isEmpty());
+	}
+	
+	/**
+	 * Matches documents tagged with a, documents also tagged with best score higher
+	 */
+	private Query getQuery() {
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term("tag", "a")), Occur.SHOULD);
+		TermQuery best = new TermQuery(new Term("tag", "best"));
+		best.setBoost(10f);
+		query.add(best, Occur.SHOULD);
+		return query;
+	}
+	
+	private Document doc(String id, String name, String... tags) {
+		Document doc = new Document();
+		doc.add(new StringField("id", id, Store.NO));
+		doc.add(new StringField("name", name, Store.YES));
+		for (String tag : tags) {
+			doc.add(new StringField("tag", tag, Store.NO));
+		}
+		return doc;
+	}
+	
+	/**
+	 * Creates an index with a segment for each of the given lists of documents
+	 */
+	@SafeVarargs
+	private final IndexReader createIndex(List<Document>... segments) throws IOException {
+		Directory directory = new RAMDirectory();
+		IndexWriterConfig config = new IndexWriterConfig(Version.LUCENE_CURRENT, new KeywordAnalyzer());
+		try (IndexWriter writer = new IndexWriter(directory, config)) {
+			for (List<Document> segment : segments) {
+				writer.addDocuments(segment);
+				writer.commit();
+			}
+		}
+		
+		IndexReader reader = DirectoryReader.open(directory);
+		readers.add(reader);
+		return reader;
+	}
+	
+	/**
+	 * @return the names of the documents let through by the filter, best scoring first
+	 */
+	private List<String> search(IndexReader reader, SkipSameFilter filter) throws IOException {
+		IndexSearcher searcher = new IndexSearcher(reader);
+		List<String> names = new ArrayList<>();
+		for (ScoreDoc scoreDoc : searcher.search(getQuery(), filter, 1000).scoreDocs) {
+			names.add(searcher.doc(scoreDoc.doc).get("name"));
+		}
+		return names;
+	}
+}
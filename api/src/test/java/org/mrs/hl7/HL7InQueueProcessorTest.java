@@ -0,0 +1,146 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.api.context.Context;
+import org.mrs.api.context.Daemon;
+import org.mrs.scheduler.Task;
+import org.mrs.scheduler.tasks.ProcessHL7InQueueTask;
+import org.mrs.scheduler.timer.TimerSchedulerTask;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.mrs.util.OpenmrsConstants;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public class HL7InQueueProcessorTest extends BaseContextSensitiveTest {
+
+	private static final String ORU_R01 = "MSH|^~\\&|FORMENTRY|AMRS.ELD|HL7LISTENER|AMRS.ELD|20080226102656||ORU^R01|JqnfhKKtouEz8kzTk6Zo|P|2.5|1||||||||16^AMRS.ELD.FORMID\r"
+	        + "PID|||3^^^^~7TU-8^^^^||Collet^Test^Chebaskwony||\r"
+	        + "PV1||O|1^Unknown Location||||1^Super User (1-8)|||||||||||||||||||||||||||||||||||||20080212|||||||V\r"
+	        + "ORC|RE||||||||20080226102537|1^Super User\r"
+	        + "OBR|1|||1238^MEDICAL RECORD OBSERVATIONS^99DCT\r"
+	        + "OBX|1|NM|5497^CD4, BY FACS^99DCT||450|||||||||20080206";
+
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+
+	/**
+	 * @see HL7InQueueProcessor#getPatientIdentifier(String)
+	 */
+	@Test
+	public void getPatientIdentifier_shouldReturnTheIdNumberOfTheFirstPatientIdentifier() {
+		assertEquals("3", HL7InQueueProcessor.getPatientIdentifier(ORU_R01));
+		assertEquals("3", HL7InQueueProcessor.getPatientIdentifier(ORU_R01.replace('\r', '\n')));
+	}
+
+	/**
+	 * @see HL7InQueueProcessor#getPatientIdentifier(String)
+	 */
+	@Test
+	public void getPatientIdentifier_shouldReturnNullIfTheMessageHasNoPatientIdentifier() {
+		assertNull(HL7InQueueProcessor.getPatientIdentifier("dummy data"));
+		assertNull(HL7InQueueProcessor.getPatientIdentifier(ORU_R01.replace("3^^^^~7TU-8^^^^", "")));
+		assertNull(HL7InQueueProcessor.getPatientIdentifier(ORU_R01.replaceAll("PID[^\r]*\r", "")));
+	}
+
+	/**
+	 * @see HL7InQueueProcessor#processHL7InQueue()
+	 */
+	@Test
+	public void processHL7InQueue_shouldProcessAllPendingQueueItems() throws Exception {
+		HL7Service hl7service = Context.getHL7Service();
+		for (int i = 0; i < 3; i++) {
+			HL7InQueue hl7 = new HL7InQueue();
+			hl7.setHL7Data("dummy data " + i);
+			hl7.setHL7Source(new HL7Source(1));
+			hl7.setHL7SourceKey("key " + i);
+			hl7service.saveHL7InQueue(hl7);
+		}
+		Context.flushSession();
+		int errorsBefore = hl7service.getAllHL7InErrors().size();
+		long processedBefore = hl7service.getHL7InQueueStatistics().getProcessedCount();
+
+		new HL7InQueueProcessor().processHL7InQueue();
+
+		assertTrue(hl7service.getHL7InQueueByState(HL7Constants.HL7_STATUS_PENDING).isEmpty());
+		assertEquals(errorsBefore + 3, hl7service.getAllHL7InErrors().size());
+		assertEquals(processedBefore + 3, hl7service.getHL7InQueueStatistics().getProcessedCount());
+	}
+
+	/**
+	 * @see HL7InQueueProcessor#processHL7InQueue()
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void processHL7InQueue_shouldProcessTheEntriesOfAPatientInQueueOrderOnParallelWorkers() throws Throwable {
+		HL7Service hl7service = Context.getHL7Service();
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GP_HL7_PROCESSOR_THREADS, "3");
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GP_HL7_PROCESSOR_BATCH_SIZE, "2");
+		int patients = 3;
+		int messagesPerPatient = 5;
+		Map<String, List<String>> queuedKeys = new LinkedHashMap<>();
+		for (int i = 0; i < messagesPerPatient; i++) {
+			for (int patient = 0; patient < patients; patient++) {
+				String identifier = "patient-" + patient;
+				HL7InQueue hl7 = new HL7InQueue();
+				hl7.setHL7Data(ORU_R01.replace("3^^^^~7TU-8^^^^", identifier + "^^^^"));
+				hl7.setHL7Source(new HL7Source(1));
+				hl7.setHL7SourceKey(identifier + "-" + i);
+				hl7service.saveHL7InQueue(hl7);
+				queuedKeys.computeIfAbsent(identifier, key -> new ArrayList<>()).add(hl7.getHL7SourceKey());
+			}
+		}
+
+		new AsDaemonTask(new ProcessHL7InQueueTask()).runTheTask();
+
+		// the messages are about unknown patients, so each of them ends up in the errors in the
+		// order it was processed
+		List<HL7InError> errors = new ArrayList<>(hl7service.getAllHL7InErrors());
+		errors.sort(Comparator.comparing(HL7InError::getHL7InErrorId));
+		Map<String, List<String>> processedKeys = new LinkedHashMap<>();
+		for (HL7InError error : errors) {
+			String identifier = HL7InQueueProcessor.getPatientIdentifier(error.getHL7Data());
+			if (queuedKeys.containsKey(identifier)) {
+				processedKeys.computeIfAbsent(identifier, key -> new ArrayList<>()).add(error.getHL7SourceKey());
+			}
+		}
+		assertEquals(queuedKeys, processedKeys);
+		assertTrue(hl7service.getHL7InQueueByState(HL7Constants.HL7_STATUS_PENDING).isEmpty());
+		assertTrue(hl7service.getHL7InQueueByState(HL7Constants.HL7_STATUS_PROCESSING).isEmpty());
+	}
+
+	private class AsDaemonTask extends TimerSchedulerTask {
+
+		private Task task;
+
+		public AsDaemonTask(Task task) {
+			super(task);
+			this.task = task;
+		}
+
+		public void runTheTask() throws Throwable {
+			Daemon.executeScheduledTask(this.task);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.mrs.PatientIdentifier;
+import org.mrs.Person;
+import org.mrs.api.PatientService;
+import org.mrs.api.context.Context;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+import ca.uhn.hl7v2.HL7Exception;
+import ca.uhn.hl7v2.model.v25.datatype.CX;
+import ca.uhn.hl7v2.model.v25.message.ORU_R01;
+
+public class HL7ResolutionCacheInterceptorTest extends BaseContextSensitiveTest {
+	
+	private static final String OLD_IDENTIFICATION_NUMBER = "Old Identification Number";
+	
+	private static final String OPENMRS_IDENTIFICATION_NUMBER = "OpenMRS Identification Number";
+	
+	@Autowired
+	@Qualifier("hl7ResolutionCache")
+	private HL7ResolutionCache resolutionCache;
+	
+	/**
+	 * @see HL7ResolutionCacheInterceptor#onFlushDirty(Object,java.io.Serializable,Object[],Object[],String[],org.hibernate.type.Type[])
+	 */
+	@Test
+	public void onFlushDirty_shouldOnlyEvictThePersonLookupsOfTheChangedIdentifier() throws HL7Exception {
+		assertEquals(6, resolvePersonId("12345K", OLD_IDENTIFICATION_NUMBER).intValue());
+		assertEquals(7, resolvePersonId("6TS-4", OPENMRS_IDENTIFICATION_NUMBER).intValue());
+		
+		PatientService ps = Context.getPatientService();
+		PatientIdentifier identifier = ps.getPatientIdentifier(3);
+		identifier.setIdentifier("54321K");
+		ps.savePatientIdentifier(identifier);
+		Context.flushSession();
+		
+		assertNull(resolvePersonId("12345K", OLD_IDENTIFICATION_NUMBER));
+		assertEquals(6, resolvePersonId("54321K", OLD_IDENTIFICATION_NUMBER).intValue());
+		long hits = resolutionCache.getHitCount();
+		assertEquals(7, resolvePersonId("6TS-4", OPENMRS_IDENTIFICATION_NUMBER).intValue());
+		assertEquals(hits + 1, resolutionCache.getHitCount());
+	}
+	
+	/**
+	 * @see HL7ResolutionCacheInterceptor#onDelete(Object,java.io.Serializable,Object[],String[],org.hibernate.type.Type[])
+	 */
+	@Test
+	public void onDelete_shouldEvictThePersonLookupsOfTheDeletedIdentifier() throws HL7Exception {
+		assertEquals(6, resolvePersonId("12345K", OLD_IDENTIFICATION_NUMBER).intValue());
+		
+		PatientService ps = Context.getPatientService();
+		ps.purgePatientIdentifier(ps.getPatientIdentifier(3));
+		Context.flushSession();
+		
+		assertNull(resolvePersonId("12345K", OLD_IDENTIFICATION_NUMBER));
+	}
+	
+	private Integer resolvePersonId(String idNumber, String assigningAuthority) throws HL7Exception {
+		CX identifier = new CX(new ORU_R01());
+		identifier.getIDNumber().setValue(idNumber);
+		identifier.getAssigningAuthority().getNamespaceID().setValue(assigningAuthority);
+		Person person = Context.getHL7Service().resolvePersonFromIdentifiers(new CX[] { identifier });
+		return person == null ? null : person.getPersonId();
+	}
+}
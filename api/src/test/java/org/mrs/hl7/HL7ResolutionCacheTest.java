@@ -0,0 +1,117 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.hl7;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.hl7.HL7ResolutionCache.Type;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+public class HL7ResolutionCacheTest {
+
+	private HL7ResolutionCache cache;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		cache = new HL7ResolutionCache();
+		cache.setCacheManager(new ConcurrentMapCacheManager(Type.CONCEPT.getCacheName(), Type.LOCATION.getCacheName()));
+	}
+
+	private Integer load(Integer id) {
+		loads.incrementAndGet();
+		return id;
+	}
+
+	/**
+	 * @see HL7ResolutionCache#getId(Type, String, HL7ResolutionCache.IdLoader)
+	 */
+	@Test
+	public void getId_shouldLoadEachKeyOnlyOnce() {
+		assertEquals(Integer.valueOf(5089), cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089)));
+		assertEquals(Integer.valueOf(5089), cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089)));
+		assertEquals(Integer.valueOf(5497), cache.getId(Type.CONCEPT, "99DCT|5497", () -> load(5497)));
+
+		assertEquals(2, loads.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	/**
+	 * @see HL7ResolutionCache#getId(Type, String, HL7ResolutionCache.IdLoader)
+	 */
+	@Test
+	public void getId_shouldNotCacheLookupsThatFoundNothing() {
+		assertNull(cache.getId(Type.CONCEPT, "SNOMED|1", () -> load(null)));
+		assertNull(cache.getId(Type.CONCEPT, "SNOMED|1", () -> load(null)));
+
+		assertEquals(2, loads.get());
+	}
+
+	/**
+	 * @see HL7ResolutionCache#getId(Type, String, HL7ResolutionCache.IdLoader)
+	 */
+	@Test
+	public void getId_shouldAlwaysLoadTypesWithoutACache() {
+		cache.getId(Type.PERSON, "3^^~", () -> load(2));
+		cache.getId(Type.PERSON, "3^^~", () -> load(2));
+
+		assertEquals(2, loads.get());
+	}
+
+	/**
+	 * @see HL7ResolutionCache#invalidate(Type)
+	 */
+	@Test
+	public void invalidate_shouldOnlyRemoveTheIdsOfTheGivenType() {
+		cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089));
+		cache.getId(Type.LOCATION, "1|null", () -> load(1));
+
+		cache.invalidate(Type.CONCEPT);
+		cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089));
+		cache.getId(Type.LOCATION, "1|null", () -> load(1));
+
+		assertEquals(3, loads.get());
+	}
+
+	/**
+	 * @see HL7ResolutionCache#evict(Type, java.util.Collection)
+	 */
+	@Test
+	public void evict_shouldOnlyRemoveTheIdsOfTheGivenKeys() {
+		cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089));
+		cache.getId(Type.CONCEPT, "99DCT|5497", () -> load(5497));
+
+		cache.evict(Type.CONCEPT, Collections.singleton("99DCT|5089"));
+		cache.getId(Type.CONCEPT, "99DCT|5089", () -> load(5089));
+		cache.getId(Type.CONCEPT, "99DCT|5497", () -> load(5497));
+
+		assertEquals(3, loads.get());
+	}
+
+	/**
+	 * @see HL7ResolutionCache#getPersonKey(String, String, String)
+	 */
+	@Test
+	public void getPersonKey_shouldOnlyIncludeTheIdentifierTypeCodeOfLocalIds() {
+		assertEquals("2^L^PN", HL7ResolutionCache.getPersonKey("2", HL7Constants.HL7_AUTHORITY_LOCAL, "PN"));
+		assertEquals("2^L^PI", HL7ResolutionCache.getPersonKey("2", HL7Constants.HL7_AUTHORITY_LOCAL, "PI"));
+		assertEquals("2^L", HL7ResolutionCache.getPersonKey("2", HL7Constants.HL7_AUTHORITY_LOCAL, "XX"));
+		assertEquals("101-6^OpenMRS Identification Number", HL7ResolutionCache.getPersonKey("101-6",
+		    "OpenMRS Identification Number", "PT"));
+	}
+}
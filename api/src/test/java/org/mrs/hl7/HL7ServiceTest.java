@@ -15,6 +15,7 @@ import static org.junit.Assert.assertThat;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
@@ -136,6 +137,36 @@ public class HL7ServiceTest extends BaseContextSensitiveTest {
 		hl7service.processHL7InQueue(queueItem);
 	}
 	
+	/**
+	 * @see HL7Service#processClaimedHL7InQueue(HL7InQueue)
+	 */
+	@Test
+	public void processClaimedHL7InQueue_shouldProcessAClaimedQueueItem() throws HL7Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		HL7Service hl7service = Context.getHL7Service();
+		Assert.assertEquals(0, hl7service.getAllHL7InErrors().size());
+		HL7InQueue queueItem = hl7service.getHL7InQueue(2);
+		queueItem.setMessageState(HL7Constants.HL7_STATUS_PROCESSING);
+		
+		hl7service.processClaimedHL7InQueue(queueItem);
+		
+		Assert.assertEquals(1, hl7service.getAllHL7InErrors().size());
+		Assert.assertNull(hl7service.getHL7InQueue(2));
+	}
+	
+	/**
+	 * @see HL7Service#processClaimedHL7InQueue(HL7InQueue)
+	 */
+	@Test(expected = HL7Exception.class)
+	public void processClaimedHL7InQueue_shouldFailIfTheGivenInQueueWasNotClaimed() throws HL7Exception {
+		executeDataSet("org/openmrs/hl7/include/ORUTest-initialData.xml");
+		
+		HL7Service hl7service = Context.getHL7Service();
+		HL7InQueue queueItem = hl7service.getHL7InQueue(1);
+		queueItem.setMessageState(HL7Constants.HL7_STATUS_PENDING);
+		hl7service.processClaimedHL7InQueue(queueItem);
+	}
+	
 	/**
 	 * @throws HL7Exception
 	 * @see HL7Service#processHL7Message(Message)
@@ -801,4 +832,90 @@ public class HL7ServiceTest extends BaseContextSensitiveTest {
 		Integer userId = hl7service.resolveUserId(xcn);
 		assertThat(userId, is(502));
 	}
+	
+	/**
+	 * @see HL7Service#claimHL7InQueueBatch(int)
+	 */
+	@Test
+	public void claimHL7InQueueBatch_shouldClaimPendingQueueItemsInOrder() {
+		HL7Service hl7service = Context.getHL7Service();
+		HL7InQueue first = hl7service.saveHL7InQueue(createHL7InQueue("first", HL7Constants.HL7_STATUS_PENDING));
+		HL7InQueue second = hl7service.saveHL7InQueue(createHL7InQueue("second", HL7Constants.HL7_STATUS_PENDING));
+		HL7InQueue third = hl7service.saveHL7InQueue(createHL7InQueue("third", HL7Constants.HL7_STATUS_PENDING));
+		Context.flushSession();
+		Context.clearSession();
+		
+		List<HL7InQueue> claimed = hl7service.claimHL7InQueueBatch(2);
+		
+		assertEquals(2, claimed.size());
+		assertEquals(first.getHL7InQueueId(), claimed.get(0).getHL7InQueueId());
+		assertEquals(second.getHL7InQueueId(), claimed.get(1).getHL7InQueueId());
+		assertEquals(HL7Constants.HL7_STATUS_PROCESSING, claimed.get(0).getMessageState());
+		
+		claimed = hl7service.claimHL7InQueueBatch(2);
+		assertEquals(1, claimed.size());
+		assertEquals(third.getHL7InQueueId(), claimed.get(0).getHL7InQueueId());
+		Assert.assertTrue(hl7service.claimHL7InQueueBatch(2).isEmpty());
+	}
+	
+	/**
+	 * @see HL7Service#claimHL7InQueueBatch(int)
+	 */
+	@Test
+	public void claimHL7InQueueBatch_shouldNotClaimQueueItemsThatAreNotPending() {
+		HL7Service hl7service = Context.getHL7Service();
+		for (HL7InQueue pending : hl7service.getHL7InQueueByState(HL7Constants.HL7_STATUS_PENDING)) {
+			pending.setMessageState(HL7Constants.HL7_STATUS_ERROR);
+		}
+		hl7service.saveHL7InQueue(createHL7InQueue("processing", HL7Constants.HL7_STATUS_PROCESSING));
+		Context.flushSession();
+		Context.clearSession();
+		
+		Assert.assertTrue(hl7service.claimHL7InQueueBatch(10).isEmpty());
+	}
+	
+	/**
+	 * @see HL7Service#releaseHL7InQueueClaims(java.util.Collection)
+	 */
+	@Test
+	public void releaseHL7InQueueClaims_shouldMarkTheGivenClaimedQueueItemsAsPending() {
+		HL7Service hl7service = Context.getHL7Service();
+		HL7InQueue first = hl7service.saveHL7InQueue(createHL7InQueue("first", HL7Constants.HL7_STATUS_PROCESSING));
+		HL7InQueue second = hl7service.saveHL7InQueue(createHL7InQueue("second", HL7Constants.HL7_STATUS_PROCESSING));
+		HL7InQueue third = hl7service.saveHL7InQueue(createHL7InQueue("third", HL7Constants.HL7_STATUS_PROCESSING));
+		Context.flushSession();
+		
+		assertEquals(2, hl7service.releaseHL7InQueueClaims(Arrays.asList(first.getHL7InQueueId(), third
+		        .getHL7InQueueId())));
+		Context.clearSession();
+		
+		assertEquals(HL7Constants.HL7_STATUS_PENDING, hl7service.getHL7InQueue(first.getHL7InQueueId()).getMessageState());
+		assertEquals(HL7Constants.HL7_STATUS_PROCESSING, hl7service.getHL7InQueue(second.getHL7InQueueId())
+		        .getMessageState());
+		assertEquals(HL7Constants.HL7_STATUS_PENDING, hl7service.getHL7InQueue(third.getHL7InQueueId()).getMessageState());
+	}
+	
+	/**
+	 * @see HL7Service#releaseHL7InQueueClaims(java.util.Collection)
+	 */
+	@Test
+	public void releaseHL7InQueueClaims_shouldNotChangeQueueItemsThatAreNotMarkedAsProcessing() {
+		HL7Service hl7service = Context.getHL7Service();
+		HL7InQueue error = hl7service.saveHL7InQueue(createHL7InQueue("error", HL7Constants.HL7_STATUS_ERROR));
+		Context.flushSession();
+		
+		assertEquals(0, hl7service.releaseHL7InQueueClaims(Arrays.asList(error.getHL7InQueueId())));
+		Context.clearSession();
+		
+		assertEquals(HL7Constants.HL7_STATUS_ERROR, hl7service.getHL7InQueue(error.getHL7InQueueId()).getMessageState());
+	}
+	
+	private HL7InQueue createHL7InQueue(String sourceKey, Integer messageState) {
+		HL7InQueue hl7 = new HL7InQueue();
+		hl7.setHL7Data("dummy data");
+		hl7.setHL7Source(new HL7Source(1));
+		hl7.setHL7SourceKey(sourceKey);
+		hl7.setMessageState(messageState);
+		return hl7;
+	}
 }
@@ -0,0 +1,165 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.text.SimpleDateFormat;
+
+import org.junit.Test;
+import org.mrs.logic.Duration;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.op.OperandDate;
+import org.mrs.logic.op.OperandNumeric;
+import org.mrs.logic.op.OperandString;
+import org.mrs.logic.op.Operator;
+
+public class LogicCriteriaParserTest {
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldBindAndTighterThanOrAndNotTighterThanAnd() {
+		LogicExpression or = LogicCriteriaParser.parse("'A' AND NOT 'B' OR 'C'").getExpression();
+		
+		assertEquals(Operator.OR, or.getOperator());
+		assertEquals("C", ((LogicExpression) or.getRightOperand()).getRootToken());
+		LogicExpression and = getLeft(or);
+		assertEquals(Operator.AND, and.getOperator());
+		assertEquals("A", getLeft(and).getRootToken());
+		LogicExpression not = (LogicExpression) and.getRightOperand();
+		assertEquals(Operator.NOT, not.getOperator());
+		assertEquals("B", not.getRootToken());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldGroupParenthesizedCriteria() {
+		LogicExpression and = LogicCriteriaParser.parse("'A' AND ('B' OR 'C')").getExpression();
+		
+		assertEquals(Operator.AND, and.getOperator());
+		assertEquals(Operator.OR, ((LogicExpression) and.getRightOperand()).getOperator());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldApplyATransformWithANumberOfResults() {
+		LogicExpression expression = LogicCriteriaParser.parse("last 3 'WEIGHT (KG)'").getExpression();
+		
+		assertEquals(Operator.LAST, expression.getTransform().getTransformOperator());
+		assertEquals(3, expression.getTransform().getNumResults().intValue());
+		assertEquals("WEIGHT (KG)", expression.getRootToken());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldApplyATransformToParenthesizedCriteriaBeforeTheRestrictionsThatFollow() {
+		LogicExpression expression = LogicCriteriaParser.parse("COUNT ('CD4 COUNT' < 200) > 2").getExpression();
+		
+		assertEquals(Operator.GT, expression.getOperator());
+		assertNull(expression.getTransform());
+		LogicExpression counted = getLeft(expression);
+		assertEquals(Operator.COUNT, counted.getTransform().getTransformOperator());
+		assertEquals(Operator.LT, counted.getOperator());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldParseNotExistsAsATransform() {
+		LogicExpression expression = LogicCriteriaParser.parse("NOT EXISTS 'CD4 COUNT'").getExpression();
+		
+		assertEquals(Operator.NOT_EXISTS, expression.getTransform().getTransformOperator());
+		assertNull(expression.getOperator());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldChainDateAndDurationRestrictions() throws Exception {
+		LogicExpression asOf = LogicCriteriaParser.parse("'CD4 COUNT' WITHIN 6 MONTHS AFTER 2008-01-01 AS OF 2009-01-01")
+		        .getExpression();
+		
+		assertEquals(Operator.ASOF, asOf.getOperator());
+		assertEquals(new SimpleDateFormat("yyyy-MM-dd").parse("2009-01-01"), ((OperandDate) asOf.getRightOperand())
+		        .asDate());
+		LogicExpression after = getLeft(asOf);
+		assertEquals(Operator.AFTER, after.getOperator());
+		LogicExpression within = getLeft(after);
+		assertEquals(Operator.WITHIN, within.getOperator());
+		Duration duration = (Duration) within.getRightOperand();
+		assertEquals(Duration.Units.MONTHS, duration.getUnits());
+		assertEquals(6, duration.getDuration(), 0);
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldParseNumericValuesAndQuotedValuesAsText() {
+		LogicExpression numeric = LogicCriteriaParser.parse("'CD4 COUNT' >= 200.5").getExpression();
+		assertEquals(Operator.GTE, numeric.getOperator());
+		assertEquals(200.5, ((OperandNumeric) numeric.getRightOperand()).asDouble(), 0);
+		
+		LogicExpression text = LogicCriteriaParser.parse("'CD4 COUNT' = '200'").getExpression();
+		assertEquals("200", ((OperandString) text.getRightOperand()).getValue());
+		
+		LogicExpression contains = LogicCriteriaParser.parse("{FOOD ASSISTANCE} CONTAINS \"YES\"").getExpression();
+		assertEquals(Operator.CONTAINS, contains.getOperator());
+		assertEquals("FOOD ASSISTANCE", contains.getRootToken());
+		assertEquals("YES", ((OperandString) contains.getRightOperand()).getValue());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldNotTreatQuotedKeywordsAsKeywords() {
+		LogicCriteria criteria = LogicCriteriaParser.parse("'LAST' AND 'NOT'");
+		
+		assertEquals("LAST", criteria.getRootToken());
+		assertNull(getLeft(criteria.getExpression()).getTransform());
+		assertEquals("NOT", ((LogicExpression) criteria.getExpression().getRightOperand()).getRootToken());
+	}
+	
+	/**
+	 * @see LogicCriteriaParser#parse(String)
+	 */
+	@Test
+	public void parse_shouldFailForInvalidCriteria() {
+		for (String invalid : new String[] { "", "'A' AND", "('A'", "'A')", "'A' WITHIN 6 FORTNIGHTS",
+		        "'A' WITHIN MONTHS", "'A' BEFORE yesterday", "'A' < ", "'unterminated", "COUNT" }) {
+			try {
+				LogicCriteriaParser.parse(invalid);
+				fail("Parsed the invalid criteria " + invalid);
+			}
+			catch (LogicException e) {
+				// expected
+			}
+		}
+	}
+	
+	private LogicExpression getLeft(LogicExpression expression) {
+		return (LogicExpression) ((LogicExpressionBinary) expression).getLeftOperand();
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.logic.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.Cohort;
+import org.mrs.Concept;
+import org.mrs.Obs;
+import org.mrs.api.context.Context;
+import org.mrs.api.db.DAOException;
+import org.mrs.logic.LogicContext;
+import org.mrs.logic.LogicCriteria;
+import org.mrs.logic.LogicException;
+import org.mrs.logic.LogicExpression;
+import org.mrs.logic.LogicService;
+import org.mrs.logic.Rule;
+import org.mrs.logic.datasource.ObsDataSource;
+import org.mrs.logic.db.LogicObsDAO;
+import org.mrs.logic.op.Operator;
+import org.mrs.logic.result.Result;
+import org.mrs.logic.result.Result.Datatype;
+import org.mrs.logic.rule.RuleParameterInfo;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class LogicServiceImplTest extends BaseContextSensitiveTest {
+	
+	private static final String PATIENT_IN_LATER_CHUNK_XML = "org/openmrs/logic/include/LogicServiceImplTest-patientInLaterChunk.xml";
+	
+	private static final String WEIGHT_COUNT = "WEIGHT COUNT";
+	
+	@Autowired
+	private LogicResultCache logicResultCache;
+	
+	@Autowired
+	private LogicObsDAO logicObsDAO;
+	
+	private LogicService logicService;
+	
+	private final Cohort patients = new Cohort(Arrays.asList(2, 7));
+	
+	@Before
+	public void before() {
+		logicService = Context.getLogicService();
+		logicResultCache.clear();
+		logicResultCache.resetStatistics();
+	}
+	
+	/**
+	 * @see LogicServiceImpl#parse(String)
+	 */
+	@Test
+	public void parse_shouldParseTransformsAndRestrictions() {
+		LogicCriteria criteria = logicService.parse("LAST 'WEIGHT (KG)' > 55 WITHIN 6 MONTHS");
+		
+		assertEquals("WEIGHT (KG)", criteria.getRootToken());
+		assertEquals(Operator.WITHIN, criteria.getExpression().getOperator());
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldCountTheObservationsOfEachPatient() {
+		Map<Integer, Result> results = logicService.eval(patients, "COUNT 'WEIGHT (KG)'");
+		
+		assertEquals(3, results.get(7).toNumber().intValue());
+		assertEquals(0, results.get(2).toNumber().intValue());
+		
+		results = logicService.eval(patients, "COUNT ('WEIGHT (KG)' < 56)");
+		assertEquals(2, results.get(7).toNumber().intValue());
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldGetTheLastObservationOfEachPatient() {
+		Map<Integer, Result> results = logicService.eval(patients, "LAST 'WEIGHT (KG)'");
+		
+		assertEquals(61.0, results.get(7).toNumber(), 0);
+		assertFalse(results.get(2).exists());
+		
+		results = logicService.eval(patients, "LAST 'WEIGHT (KG)' AS OF 2008-08-16");
+		assertEquals(55.0, results.get(7).toNumber(), 0);
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldApplyRestrictionsAfterTheTransform() {
+		assertTrue(logicService.eval(patients, "LAST 'WEIGHT (KG)' > 60").get(7).exists());
+		assertFalse(logicService.eval(patients, "FIRST 'WEIGHT (KG)' > 60").get(7).exists());
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldReuseCachedResults() {
+		logicService.eval(patients, "LAST 'WEIGHT (KG)'");
+		assertEquals(0, logicResultCache.getHitCount());
+		
+		Map<Integer, Result> results = logicService.eval(patients, "LAST 'WEIGHT (KG)'");
+		assertEquals(2, logicResultCache.getHitCount());
+		assertEquals(61.0, results.get(7).toNumber(), 0);
+	}
+	
+	/**
+	 * @see LogicResultCache#get(String, Map, Integer, java.util.Date)
+	 */
+	@Test
+	public void eval_shouldReadCachedCodedResultsInANewSession() {
+		logicService.eval(patients, "LAST 'FOOD ASSISTANCE FOR ENTIRE FAMILY'");
+		Context.clearSession();
+		
+		Result result = logicService.eval(patients, "LAST 'FOOD ASSISTANCE FOR ENTIRE FAMILY'").get(7);
+		assertEquals(2, logicResultCache.getHitCount());
+		Concept valueCoded = result.toConcept();
+		assertEquals(22, valueCoded.getConceptId().intValue());
+		assertNotNull(valueCoded.getName());
+		assertEquals(21, ((Obs) result.getResultObject()).getConcept().getConceptId().intValue());
+		
+		Context.clearSession();
+		assertTrue(logicService.eval(patients, "LAST 'FOOD ASSISTANCE FOR ENTIRE FAMILY' CONTAINS 'UNKNOWN'").get(7)
+		        .exists());
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldGetTheLastNObservationsOfEachPatient() {
+		Map<Integer, Result> results = logicService.eval(patients, "LAST 2 'WEIGHT (KG)'");
+		
+		assertEquals(Arrays.asList(16, 10), getObsIds(results.get(7)));
+		assertFalse(results.get(2).exists());
+		
+		results = logicService.eval(patients, "FIRST 2 'WEIGHT (KG)' AS OF 2008-08-16");
+		assertEquals(Arrays.asList(7, 10), getObsIds(results.get(7)));
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldCombineCriteriaWithAndOrAndNot() {
+		Map<Integer, Result> results = logicService.eval(patients, "'WEIGHT (KG)' > 60 AND 'FOOD ASSISTANCE'");
+		assertTrue(results.get(7).exists());
+		assertFalse(results.get(2).exists());
+		
+		results = logicService.eval(patients, "'WEIGHT (KG)' > 100 AND 'FOOD ASSISTANCE'");
+		assertFalse(results.get(7).exists());
+		
+		results = logicService.eval(patients, "'WEIGHT (KG)' > 100 OR 'FOOD ASSISTANCE'");
+		assertTrue(results.get(7).exists());
+		assertFalse(results.get(2).exists());
+		
+		results = logicService.eval(patients, "NOT 'WEIGHT (KG)'");
+		assertFalse(results.get(7).exists());
+		assertTrue(results.get(2).exists());
+		
+		results = logicService.eval(patients, "NOT ('WEIGHT (KG)' > 100) AND 'WEIGHT (KG)'");
+		assertTrue(results.get(7).exists());
+		assertFalse(results.get(2).exists());
+	}
+	
+	/**
+	 * @see ObsDataSource#read(LogicContext, Cohort, LogicCriteria)
+	 */
+	@Test
+	public void read_shouldEvaluateWithinTheSameInTheDatabaseAsInMemory() throws Exception {
+		Map<Integer, Result> results = readPushedDown("'WEIGHT (KG)' WITHIN 45 DAYS", "2008-08-15");
+		assertEquals(Arrays.asList(7, 10), getObsIds(results.get(7)));
+		assertEquals(Collections.emptyList(), getObsIds(results.get(2)));
+		
+		results = readPushedDown("COUNT ('WEIGHT (KG)' WITHIN 44 DAYS)", "2008-08-15");
+		assertEquals(1, results.get(7).toNumber().intValue());
+		
+		results = readPushedDown("LAST ('WEIGHT (KG)' WITHIN 1 WEEK)", "2008-08-20");
+		assertEquals(Arrays.asList(16), getObsIds(results.get(7)));
+	}
+	
+	/**
+	 * @see ObsDataSource#read(LogicContext, Cohort, LogicCriteria)
+	 */
+	@Test
+	public void read_shouldEvaluateBeforeAndAfterTheSameInTheDatabaseAsInMemory() throws Exception {
+		Map<Integer, Result> results = readPushedDown("'WEIGHT (KG)' BEFORE 2008-08-15", "2008-09-01");
+		assertEquals(Arrays.asList(7), getObsIds(results.get(7)));
+		
+		results = readPushedDown("'WEIGHT (KG)' AFTER 2008-08-15", "2008-09-01");
+		assertEquals(Arrays.asList(16), getObsIds(results.get(7)));
+		
+		results = readPushedDown("FIRST ('WEIGHT (KG)' AFTER 2008-07-01 BEFORE 2008-08-19)", "2008-09-01");
+		assertEquals(Arrays.asList(10), getObsIds(results.get(7)));
+		
+		results = readPushedDown("EXISTS ('WEIGHT (KG)' AFTER 2008-08-19)", "2008-09-01");
+		assertFalse(results.get(7).exists());
+	}
+	
+	/**
+	 * @see ObsDataSource#read(LogicContext, Cohort, LogicCriteria)
+	 */
+	@Test
+	public void read_shouldEvaluateComparisonsAndTransformsTheSameInTheDatabaseAsInMemory() throws Exception {
+		Map<Integer, Result> results = readPushedDown("LAST 2 ('WEIGHT (KG)' > 50)", "2008-09-01");
+		assertEquals(Arrays.asList(16, 10), getObsIds(results.get(7)));
+		
+		results = readPushedDown("'WEIGHT (KG)' <= 55", "2008-09-01");
+		assertEquals(Arrays.asList(7, 10), getObsIds(results.get(7)));
+		
+		results = readPushedDown("EXISTS ('WEIGHT (KG)' = 61)", "2008-09-01");
+		assertTrue(results.get(7).exists());
+		assertFalse(results.get(2).exists());
+		
+		results = readPushedDown("AVERAGE ('WEIGHT (KG)' AS OF 2008-08-16)", "2008-09-01");
+		assertEquals(52.5, results.get(7).toNumber(), 0);
+	}
+	
+	/**
+	 * @see LogicContextImpl#read(Integer, String)
+	 */
+	@Test
+	public void eval_shouldReadTheTokensOfARuleForTheWholeCohortAtOnce() {
+		ObsDataSource obsDataSource = (ObsDataSource) logicService.getLogicDataSource(ObsDataSource.NAME);
+		LogicObsDAO countingDAO = spy(logicObsDAO);
+		obsDataSource.setLogicObsDAO(countingDAO);
+		logicService.addRule(WEIGHT_COUNT, new CountingRule("WEIGHT (KG)", 0));
+		try {
+			Map<Integer, Result> results = logicService.eval(patients, "'" + WEIGHT_COUNT + "'");
+			
+			assertEquals(3, results.get(7).toNumber().intValue());
+			assertEquals(0, results.get(2).toNumber().intValue());
+			verify(countingDAO, times(1)).getObservations(any(Cohort.class), any(Concept.class),
+			    any(LogicExpression.class), any(Date.class));
+		}
+		finally {
+			obsDataSource.setLogicObsDAO(logicObsDAO);
+			logicService.removeRule(WEIGHT_COUNT);
+		}
+	}
+	
+	/**
+	 * @see LogicServiceImpl#eval(Cohort, String)
+	 */
+	@Test
+	public void eval_shouldEvaluateCohortsLargerThanOneQueryChunk() throws Exception {
+		executeDataSet(PATIENT_IN_LATER_CHUNK_XML);
+		List<Integer> ids = new ArrayList<>();
+		for (int id = 1; id <= 2500; id++) {
+			ids.add(id);
+		}
+		Cohort cohort = new Cohort(ids);
+		
+		Map<Integer, Result> results = logicService.eval(cohort, "LAST 'WEIGHT (KG)'");
+		assertEquals(2500, results.size());
+		assertEquals(61.0, results.get(7).toNumber(), 0);
+		assertEquals(70.0, results.get(2500).toNumber(), 0);
+		assertFalse(results.get(1500).exists());
+		
+		results = logicService.eval(cohort, "COUNT ('WEIGHT (KG)' > 60)");
+		assertEquals(1, results.get(7).toNumber().intValue());
+		assertEquals(1, results.get(2500).toNumber().intValue());
+		assertEquals(0, results.get(1500).toNumber().intValue());
+	}
+	
+	/**
+	 * @see LogicResultCache#put(String, Map, Integer, Date, Result, int)
+	 */
+	@Test
+	public void eval_shouldEvaluateARuleAgainOnceItsResultExpired() throws Exception {
+		CountingRule rule = new CountingRule("WEIGHT (KG)", 1);
+		logicService.addRule(WEIGHT_COUNT, rule);
+		try {
+			logicService.eval(7, "'" + WEIGHT_COUNT + "'");
+			assertEquals(3, logicService.eval(7, "'" + WEIGHT_COUNT + "'").toNumber().intValue());
+			assertEquals(1, rule.evaluations);
+			
+			Thread.sleep(1500);
+			assertEquals(3, logicService.eval(7, "'" + WEIGHT_COUNT + "'").toNumber().intValue());
+			assertEquals(2, rule.evaluations);
+		}
+		finally {
+			logicService.removeRule(WEIGHT_COUNT);
+		}
+	}
+	
+	/**
+	 * Reads the criteria from the obs data source with its restrictions and transform evaluated by
+	 * the database, and checks that the results are the same as when only the observations of the
+	 * token are read from the database and the rest is evaluated in memory by {@link ResultFilter}
+	 */
+	private Map<Integer, Result> readPushedDown(String criteria, String indexDate) throws Exception {
+		LogicCriteria parsed = logicService.parse(criteria);
+		assertTrue(logicObsDAO.supports(parsed.getExpression()));
+		
+		LogicContext context = mock(LogicContext.class);
+		when(context.getIndexDate()).thenReturn(new SimpleDateFormat("yyyy-MM-dd").parse(indexDate));
+		ObsDataSource pushedDown = new ObsDataSource();
+		pushedDown.setLogicObsDAO(logicObsDAO);
+		ObsDataSource inMemory = new ObsDataSource();
+		inMemory.setLogicObsDAO(new TokenOnlyLogicObsDAO(logicObsDAO));
+		
+		Map<Integer, Result> results = pushedDown.read(context, patients, parsed);
+		assertEquals(describe(inMemory.read(context, patients, parsed)), describe(results));
+		return results;
+	}
+	
+	private String describe(Map<Integer, Result> results) {
+		StringBuilder description = new StringBuilder();
+		for (Integer patientId : new TreeSet<>(results.keySet())) {
+			description.append(patientId).append(":");
+			for (Result item : ResultFilter.toList(results.get(patientId))) {
+				Object object = item.getResultObject();
+				description.append(" ").append(object instanceof Obs ? "obs " + ((Obs) object).getObsId() : item);
+			}
+			description.append("\n");
+		}
+		return description.toString();
+	}
+	
+	private List<Integer> getObsIds(Result result) {
+		List<Integer> ids = new ArrayList<>();
+		for (Result item : ResultFilter.toList(result)) {
+			ids.add(((Obs) item.getResultObject()).getObsId());
+		}
+		return ids;
+	}
+	
+	/**
+	 * Only lets the database read all observations of a token, leaving every restriction and
+	 * transform to be evaluated in memory
+	 */
+	private static class TokenOnlyLogicObsDAO implements LogicObsDAO {
+		
+		private final LogicObsDAO logicObsDAO;
+		
+		TokenOnlyLogicObsDAO(LogicObsDAO logicObsDAO) {
+			this.logicObsDAO = logicObsDAO;
+		}
+		
+		@Override
+		public boolean supports(LogicExpression expression) {
+			return expression.getOperator() == null && expression.getTransform() == null
+			        && logicObsDAO.supports(expression);
+		}
+		
+		@Override
+		public Map<Integer, List<Obs>> getObservations(Cohort who, Concept concept, LogicExpression expression,
+		        Date indexDate) throws DAOException {
+			return logicObsDAO.getObservations(who, concept, expression, indexDate);
+		}
+		
+		@Override
+		public Map<Integer, Number> getAggregates(Cohort who, Concept concept, LogicExpression expression,
+		        Date indexDate) throws DAOException {
+			return logicObsDAO.getAggregates(who, concept, expression, indexDate);
+		}
+	}
+	
+	/**
+	 * Counts the results read for a token, and the times it was evaluated
+	 */
+	private static class CountingRule implements Rule {
+		
+		private final String token;
+		
+		private final int ttl;
+		
+		private int evaluations = 0;
+		
+		CountingRule(String token, int ttl) {
+			this.token = token;
+			this.ttl = ttl;
+		}
+		
+		@Override
+		public Result eval(LogicContext context, Integer patientId, Map<String, Object> parameters)
+		        throws LogicException {
+			evaluations++;
+			return new Result(ResultFilter.toList(context.read(patientId, token)).size());
+		}
+		
+		@Override
+		public Set<RuleParameterInfo> getParameterList() {
+			return Collections.emptySet();
+		}
+		
+		@Override
+		public String[] getDependencies() {
+			return new String[] { token };
+		}
+		
+		@Override
+		public int getTTL() {
+			return ttl;
+		}
+		
+		@Override
+		public Datatype getDefaultDatatype() {
+			return Datatype.NUMERIC;
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.module;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mrs.util.OpenmrsConstants;
+import org.mrs.util.OpenmrsUtil;
+
+public class ModuleArchiveCacheTest {
+	
+	private static final String MODULE1_PATH = "org/mrs/module/include/test1-1.0-SNAPSHOT.omod";
+	
+	private static final String MODULE1_UPDATE_PATH = "org/mrs/module/include/test1-2.0-SNAPSHOT.omod";
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	private String applicationDataDirectory;
+	
+	@Before
+	public void before() {
+		applicationDataDirectory = System.getProperty(OpenmrsConstants.KEY_OPENMRS_APPLICATION_DATA_DIRECTORY);
+		OpenmrsUtil.setApplicationDataDirectory(folder.getRoot().getAbsolutePath());
+	}
+	
+	@After
+	public void after() {
+		OpenmrsUtil.setApplicationDataDirectory(applicationDataDirectory);
+	}
+	
+	private Module newModule(String path) throws Exception {
+		File moduleFile = folder.newFile(new File(path).getName());
+		FileUtils.copyURLToFile(getClass().getClassLoader().getResource(path), moduleFile);
+		
+		Module module = new Module("Test", "test1", "org.mrs.module.test1", null, null, "1.0");
+		module.setFile(moduleFile);
+		return module;
+	}
+	
+	/**
+	 * @see ModuleArchiveCache#getExpandedArchive(Module)
+	 */
+	@Test
+	public void getExpandedArchive_shouldExpandAModuleFileOnlyOnce() throws Exception {
+		Module module = newModule(MODULE1_PATH);
+		
+		File expanded = ModuleArchiveCache.getExpandedArchive(module);
+		File moduleJar = new File(expanded, "test1.jar");
+		assertTrue(moduleJar.isFile());
+		assertEquals(ModuleArchiveCache.getChecksum(module.getFile()), expanded.getName());
+		
+		assertTrue(moduleJar.delete());
+		assertEquals(expanded, ModuleArchiveCache.getExpandedArchive(module));
+		assertFalse(moduleJar.exists());
+	}
+	
+	/**
+	 * @see ModuleArchiveCache#getExpandedArchive(Module)
+	 */
+	@Test
+	public void getExpandedArchive_shouldRemoveOtherVersionsOfTheModule() throws Exception {
+		File oldVersion = ModuleArchiveCache.getExpandedArchive(newModule(MODULE1_PATH));
+		File newVersion = ModuleArchiveCache.getExpandedArchive(newModule(MODULE1_UPDATE_PATH));
+		
+		assertNotEquals(oldVersion, newVersion);
+		assertFalse(oldVersion.exists());
+		assertTrue(newVersion.exists());
+	}
+	
+	/**
+	 * @see ModuleArchiveCache#evictUnused(java.util.Collection)
+	 */
+	@Test
+	public void evictUnused_shouldRemoveTheFilesOfModulesThatAreNotLoaded() throws Exception {
+		Module module = newModule(MODULE1_PATH);
+		ModuleArchiveCache.putConfigXml(module.getFile(), "<module/>".getBytes("UTF-8"));
+		assertNotNull(ModuleArchiveCache.getConfigXml(module.getFile()));
+		
+		ModuleArchiveCache.evictUnused(Collections.singletonList(module));
+		assertNotNull(ModuleArchiveCache.getConfigXml(module.getFile()));
+		
+		ModuleArchiveCache.evictUnused(Collections.emptyList());
+		assertEquals(0, ModuleArchiveCache.getCacheFolder().listFiles().length);
+	}
+}
@@ -10,13 +10,26 @@
 package org.mrs.module;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
 
 import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mrs.test.BaseContextSensitiveTest;
 
 public class ModuleFactoryTest extends BaseContextSensitiveTest {
@@ -32,6 +45,9 @@ public class ModuleFactoryTest extends BaseContextSensitiveTest {
 	protected static final String MODULE3 = "test3";
 	protected static final String MODULE3_PATH = "org/openmrs/module/include/test3-1.0-SNAPSHOT.omod";
 	
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+	
 	@Before
 	public void before() {
 		ModuleUtil.shutdown();
@@ -173,12 +189,210 @@ public class ModuleFactoryTest extends BaseContextSensitiveTest {
 		Assert.assertFalse(test3.isStarted());
 	}
 	
+	@Test
+	public void startModules_shouldStartModulesAfterTheModulesTheyDependOnAndRecordTheirStartupTimes() {
+		ModuleUtil.shutdown();
+		runtimeProperties.setProperty(ModuleConstants.RUNTIMEPROPERTY_MODULE_LIST_TO_LOAD,
+		    MODULE1_PATH + " " + MODULE2_PATH + " " + MODULE3_PATH);
+		ModuleUtil.startup(runtimeProperties);
+		
+		List<String> startupOrder = new ArrayList<>();
+		for (Module module : ModuleFactory.getStartedModulesInOrder()) {
+			startupOrder.add(module.getModuleId());
+		}
+		Assert.assertEquals(Arrays.asList(MODULE1, MODULE2, MODULE3), startupOrder);
+		Assert.assertTrue(ModuleFactory.getModuleStartupTimes().keySet().containsAll(startupOrder));
+	}
+	
+	@Test
+	public void startModules_shouldStartIndependentModulesAtTheSameTimeAndDependentModulesAfterThem() throws IOException {
+		List<File> modulesToLoad = new ArrayList<>();
+		modulesToLoad.add(createModule("parallela", ConcurrentActivator.class));
+		modulesToLoad.add(createModule("parallelb", ConcurrentActivator.class));
+		modulesToLoad.add(createModule("paralleldependent", RecordingActivator.class, "parallela", "parallelb"));
+		
+		// both independent modules have to be starting at the same time for either of them to start
+		ConcurrentActivator.reset(2);
+		startModulesInParallel(modulesToLoad);
+		
+		Assert.assertTrue(ModuleFactory.isModuleStarted("parallela"));
+		Assert.assertTrue(ModuleFactory.isModuleStarted("parallelb"));
+		Assert.assertTrue(ModuleFactory.isModuleStarted("paralleldependent"));
+		Assert.assertEquals(2, ConcurrentActivator.threads.size());
+		Assert.assertFalse(ConcurrentActivator.threads.contains(Thread.currentThread().getName()));
+		
+		List<String> startupOrder = new ArrayList<>();
+		for (Module module : ModuleFactory.getStartedModulesInOrder()) {
+			startupOrder.add(module.getModuleId());
+		}
+		Assert.assertEquals(3, startupOrder.size());
+		Assert.assertEquals("paralleldependent", startupOrder.get(2));
+		Assert.assertTrue(RecordingActivator.startedModulesSeen.containsAll(Arrays.asList("parallela", "parallelb")));
+	}
+	
+	@Test
+	public void startModules_shouldNotStartModulesRequiringAModuleThatFailedToStartInParallel() throws IOException {
+		List<File> modulesToLoad = new ArrayList<>();
+		modulesToLoad.add(createModule("parallelfailing", FailingActivator.class));
+		modulesToLoad.add(createModule("parallelindependent", RecordingActivator.class));
+		modulesToLoad.add(createModule("paralleldependent", RecordingActivator.class, "parallelfailing"));
+		
+		startModulesInParallel(modulesToLoad);
+		
+		Assert.assertTrue(ModuleFactory.isModuleStarted("parallelindependent"));
+		
+		Module failing = ModuleFactory.getModuleById("parallelfailing");
+		Assert.assertFalse(failing.isStarted());
+		Assert.assertNotNull(failing.getStartupErrorMessage());
+		
+		Module dependent = ModuleFactory.getModuleById("paralleldependent");
+		Assert.assertFalse(dependent.isStarted());
+		Assert.assertNotNull(dependent.getStartupErrorMessage());
+		
+		// only the independent module got as far as its activator
+		Assert.assertEquals(1, RecordingActivator.calls);
+	}
+	
+	@Test
+	public void stopModule_shouldRemoveTheClassLoaderFromThePackageIndex() {
+		Module test1 = ModuleFactory.getModuleById(MODULE1);
+		ModuleClassLoader classLoader = ModuleFactory.getModuleClassLoader(test1);
+		String providedPackage = classLoader.getProvidedPackages().iterator().next();
+		Assert.assertTrue(ModuleFactory.getModuleClassLoadersForPackage(providedPackage).contains(classLoader));
+		long version = ModuleFactory.getProvidedPackagesVersion();
+		
+		ModuleFactory.stopModule(test1);
+		
+		Assert.assertFalse(ModuleFactory.getModuleClassLoadersForPackage(providedPackage).contains(classLoader));
+		Assert.assertNotEquals(version, ModuleFactory.getProvidedPackagesVersion());
+	}
+	
 	private Module loadModule(String location, String moduleName, boolean replace) {
 		String moduleLocation = ModuleUtil.class.getClassLoader().getResource(location).getPath();
 
 		return ModuleFactory.loadModule(new File(moduleLocation), replace);
 	}
 	
+	/**
+	 * Loads the given modules in place of the ones loaded by {@link #before()} and starts them
+	 * with more than one thread
+	 */
+	private void startModulesInParallel(List<File> modulesToLoad) {
+		ModuleUtil.shutdown();
+		RecordingActivator.reset();
+		
+		runtimeProperties.setProperty(ModuleConstants.RUNTIMEPROPERTY_STARTUP_THREADS, "4");
+		try {
+			ModuleFactory.loadModules(modulesToLoad);
+			ModuleFactory.startModules();
+		}
+		finally {
+			runtimeProperties.remove(ModuleConstants.RUNTIMEPROPERTY_STARTUP_THREADS);
+		}
+	}
+	
+	/**
+	 * Creates an omod holding nothing but a config.xml, with the given activator and requiring
+	 * the modules with the given ids
+	 */
+	private File createModule(String moduleId, Class<? extends ModuleActivator> activator, String... requiredModuleIds)
+	        throws IOException {
+		StringBuilder config = new StringBuilder();
+		config.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		config.append("<module configVersion=\"1.2\">\n");
+		config.append("<id>").append(moduleId).append("</id>\n");
+		config.append("<name>").append(moduleId).append("</name>\n");
+		config.append("<version>1.0</version>\n");
+		config.append("<package>org.openmrs.module.").append(moduleId).append("</package>\n");
+		config.append("<author>OpenMRS Developer</author>\n");
+		config.append("<description>Module for testing parallel startup</description>\n");
+		config.append("<require_version>1.6.0</require_version>\n");
+		if (requiredModuleIds.length > 0) {
+			config.append("<require_modules>\n");
+			for (String requiredModuleId : requiredModuleIds) {
+				config.append("<require_module version=\"1.0\">org.openmrs.module.").append(requiredModuleId).append(
+				    "</require_module>\n");
+			}
+			config.append("</require_modules>\n");
+		}
+		config.append("<activator>").append(activator.getName()).append("</activator>\n");
+		config.append("</module>\n");
+		
+		File file = temporaryFolder.newFile(moduleId + "-1.0.omod");
+		try (JarOutputStream jar = new JarOutputStream(new FileOutputStream(file))) {
+			jar.putNextEntry(new ZipEntry("config.xml"));
+			jar.write(config.toString().getBytes(StandardCharsets.UTF_8));
+			jar.closeEntry();
+		}
+		return file;
+	}
+	
+	/**
+	 * Records the modules that were already started when it was called
+	 */
+	public static class RecordingActivator extends BaseModuleActivator {
+		
+		static volatile int calls;
+		
+		static volatile Set<String> startedModulesSeen;
+		
+		static void reset() {
+			calls = 0;
+			startedModulesSeen = Collections.emptySet();
+		}
+		
+		@Override
+		public void willStart() {
+			synchronized (RecordingActivator.class) {
+				calls++;
+				synchronized (ModuleFactory.getStartedModulesMap()) {
+					startedModulesSeen = new HashSet<>(ModuleFactory.getStartedModulesMap().keySet());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Only lets a module start once the given number of modules are starting at the same time
+	 */
+	public static class ConcurrentActivator extends BaseModuleActivator {
+		
+		static volatile CountDownLatch starting;
+		
+		static final Set<String> threads = Collections.synchronizedSet(new HashSet<>());
+		
+		static void reset(int modules) {
+			starting = new CountDownLatch(modules);
+			threads.clear();
+		}
+		
+		@Override
+		public void willStart() {
+			threads.add(Thread.currentThread().getName());
+			starting.countDown();
+			try {
+				if (!starting.await(10, TimeUnit.SECONDS)) {
+					throw new ModuleException("The other modules did not start at the same time");
+				}
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ModuleException("Interrupted while waiting for the other modules", e);
+			}
+		}
+	}
+	
+	/**
+	 * Fails to start the module
+	 */
+	public static class FailingActivator extends BaseModuleActivator {
+		
+		@Override
+		public void willStart() {
+			throw new ModuleException("Failing on purpose");
+		}
+	}
+	
 	private List<File> getModuleFiles() {
 		List<File> modulesToLoad = new ArrayList<>();
 		modulesToLoad.add(new File(ModuleUtil.class.getClassLoader().getResource(MODULE1_PATH).getPath()));
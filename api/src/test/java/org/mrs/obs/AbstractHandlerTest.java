@@ -10,6 +10,7 @@
 package org.mrs.obs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -21,6 +22,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
@@ -28,6 +30,7 @@ import java.text.ParseException;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -50,6 +53,8 @@ public class AbstractHandlerTest {
 	
 	private final String FILENAME = "mytxtfile.txt";
 	
+	private static final byte[] CONTENT = "some complex data".getBytes(StandardCharsets.UTF_8);
+	
 	private final AbstractHandler handler = new AbstractHandler();
 	
 	@Mock
@@ -58,11 +63,14 @@ public class AbstractHandlerTest {
 	@Rule
 	public TemporaryFolder complexObsTestFolder = new TemporaryFolder();
 	
+	private File complexObsDir;
+	
 	@Before
 	public void initializeContext() throws APIException, IOException {
+		complexObsDir = complexObsTestFolder.newFolder();
 		mockStatic(Context.class);
 		when(Context.getAdministrationService()).thenReturn(administrationService);
-		when(administrationService.getGlobalProperty(any())).thenReturn(complexObsTestFolder.newFolder().getAbsolutePath());
+		when(administrationService.getGlobalProperty(any())).thenReturn(complexObsDir.getAbsolutePath());
 	}
 	
 	@Test
@@ -163,4 +171,67 @@ public class AbstractHandlerTest {
 		assertEquals(uuidPartWithNullTitle, obsWithNullTitle.getUuid());
 	}
 	
+	@Test
+	public void getOutputFileToWrite_shouldPutTheFileInTheHashedSubdirectoryOfItsName() throws IOException {
+		Obs obs = new Obs();
+		obs.setComplexData(new ComplexData(FILENAME, null));
+		
+		File file = handler.getOutputFileToWrite(obs);
+		
+		File expectedDir = new File(complexObsDir, AbstractHandler.getShardPath(file.getName()));
+		assertEquals(expectedDir.getAbsolutePath(), file.getParentFile().getAbsolutePath());
+		assertEquals(AbstractHandler.getShardPath(file.getName()) + "/" + file.getName(),
+		    AbstractHandler.getComplexDataPath(file));
+	}
+	
+	@Test
+	public void getComplexDataFile_shouldFindFilesNamedWithoutTheirSubdirectory() throws IOException {
+		File flatFile = new File(complexObsDir, "flat.txt");
+		FileUtils.writeStringToFile(flatFile, "flat", StandardCharsets.UTF_8);
+		File shardedFile = new File(new File(complexObsDir, AbstractHandler.getShardPath("moved.txt")), "moved.txt");
+		FileUtils.writeStringToFile(shardedFile, "moved", StandardCharsets.UTF_8);
+		
+		Obs obs = new Obs();
+		obs.setValueComplex("flat.txt file |flat.txt");
+		assertEquals(flatFile.getAbsolutePath(), AbstractHandler.getComplexDataFile(obs).getAbsolutePath());
+		
+		obs.setValueComplex("moved.txt file |moved.txt");
+		assertEquals(shardedFile.getAbsolutePath(), AbstractHandler.getComplexDataFile(obs).getAbsolutePath());
+	}
+	
+	@Test(expected = APIException.class)
+	public void getComplexDataFile_shouldRejectPathsOutsideTheComplexObsDirectory() {
+		Obs obs = new Obs();
+		obs.setValueComplex("secret|../../secret.txt");
+		AbstractHandler.getComplexDataFile(obs);
+	}
+	
+	@Test
+	public void getObs_shouldReadTheFileIntoAByteArray() throws IOException {
+		Obs obs = createObsWithFile();
+		
+		ComplexData complexData = handler.getObs(obs, ComplexObsHandler.RAW_VIEW).getComplexData();
+		
+		assertArrayEquals(CONTENT, (byte[]) complexData.getData());
+	}
+	
+	@Test
+	public void getComplexDataStream_shouldStreamTheWholeFile() throws IOException {
+		Obs obs = createObsWithFile();
+		
+		try (InputStream in = handler.getComplexDataStream(obs)) {
+			assertArrayEquals(CONTENT, IOUtils.toByteArray(in));
+		}
+	}
+	
+	private Obs createObsWithFile() throws IOException {
+		Obs obs = new Obs();
+		obs.setComplexData(new ComplexData(FILENAME, null));
+		File file = handler.getOutputFileToWrite(obs);
+		FileUtils.writeByteArrayToFile(file, CONTENT);
+		obs.setValueComplex(FILENAME + "|" + AbstractHandler.getComplexDataPath(file));
+		obs.setComplexData(null);
+		return obs;
+	}
+	
 }
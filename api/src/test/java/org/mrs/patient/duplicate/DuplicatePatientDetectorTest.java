@@ -0,0 +1,121 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.patient.duplicate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.mrs.DuplicatePatientMatch;
+
+public class DuplicatePatientDetectorTest {
+	
+	private static final Date BIRTHDATE = new Date(315532800000L);
+	
+	private static DuplicatePatientCandidate candidate(int patientId, String name, String gender, Date birthdate,
+	        String identifier) {
+		DuplicatePatientCandidate candidate = new DuplicatePatientCandidate(patientId, gender, birthdate);
+		candidate.addName(name);
+		if (identifier != null) {
+			candidate.addIdentifier(identifier);
+		}
+		return candidate;
+	}
+	
+	private static List<DuplicatePatientCandidate> getCandidates() {
+		List<DuplicatePatientCandidate> candidates = new ArrayList<>();
+		candidates.add(candidate(1, "John Doe", "M", BIRTHDATE, "100-1"));
+		candidates.add(candidate(2, "Jöhn DOE", "m", BIRTHDATE, null));
+		candidates.add(candidate(3, "Jane Roe", "F", new Date(0), "1001"));
+		candidates.add(candidate(4, "Mary Major", "F", BIRTHDATE, null));
+		candidates.add(candidate(5, "Mary Major", "F", BIRTHDATE, null));
+		return candidates;
+	}
+	
+	private static Set<String> getPairs(List<DuplicatePatientMatch> matches) {
+		Set<String> pairs = new HashSet<>();
+		for (DuplicatePatientMatch match : matches) {
+			pairs.add(match.getPatientA().getPatientId() + "-" + match.getPatientB().getPatientId());
+		}
+		return pairs;
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#score(DuplicatePatientCandidate, DuplicatePatientCandidate)
+	 */
+	@Test
+	public void score_shouldWeighNamesBirthdateGenderAndIdentifiers() {
+		List<DuplicatePatientCandidate> candidates = getCandidates();
+		assertEquals(0.75, DuplicatePatientDetector.score(candidates.get(0), candidates.get(1)), 0.0001);
+		assertEquals(0.25, DuplicatePatientDetector.score(candidates.get(0), candidates.get(2)), 0.0001);
+		assertEquals(0.75, DuplicatePatientDetector.score(candidates.get(3), candidates.get(4)), 0.0001);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#detect()
+	 */
+	@Test
+	public void detect_shouldOnlyCompareCandidatesSharingABlock() {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector(
+		        BlockingKey.parsePasses(DuplicatePatientDetector.DEFAULT_BLOCKING_KEYS));
+		for (DuplicatePatientCandidate candidate : getCandidates()) {
+			detector.add(candidate);
+		}
+		
+		List<DuplicatePatientMatch> matches = detector.detect();
+		assertEquals(2, matches.size());
+		assertEquals(new HashSet<>(Arrays.asList("1-2", "4-5")), getPairs(matches));
+		assertTrue(detector.getComparisons() < 10);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#detect()
+	 */
+	@Test
+	public void detect_shouldFindTheSamePairsAcrossShards() {
+		List<Set<BlockingKey>> passes = BlockingKey.parsePasses("NAME,BIRTH_YEAR+GENDER");
+		DuplicatePatientDetector single = new DuplicatePatientDetector(passes);
+		for (DuplicatePatientCandidate candidate : getCandidates()) {
+			single.add(candidate);
+		}
+		
+		Set<String> sharded = new HashSet<>();
+		for (int shard = 0; shard < 3; shard++) {
+			DuplicatePatientDetector detector = new DuplicatePatientDetector(passes, 3, shard);
+			for (DuplicatePatientCandidate candidate : getCandidates()) {
+				detector.add(candidate);
+			}
+			sharded.addAll(getPairs(detector.detect()));
+		}
+		assertEquals(getPairs(single.detect()), sharded);
+	}
+	
+	/**
+	 * @see DuplicatePatientDetector#detect()
+	 */
+	@Test
+	public void detect_shouldSkipBlocksLargerThanTheMaximumBlockSize() {
+		DuplicatePatientDetector detector = new DuplicatePatientDetector(BlockingKey.parsePasses("GENDER"));
+		detector.setMaxBlockSize(1);
+		for (DuplicatePatientCandidate candidate : getCandidates()) {
+			detector.add(candidate);
+		}
+		
+		assertEquals(0, detector.detect().size());
+		assertEquals(0, detector.getComparisons());
+	}
+}
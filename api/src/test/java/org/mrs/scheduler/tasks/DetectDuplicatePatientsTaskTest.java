@@ -0,0 +1,103 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.scheduler.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mrs.api.AdministrationService;
+import org.mrs.api.context.Context;
+import org.mrs.scheduler.TaskDefinition;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.mrs.util.OpenmrsConstants;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public class DetectDuplicatePatientsTaskTest extends BaseContextSensitiveTest {
+	
+	private static final String DUPLICATE_PATIENTS_XML = "org/openmrs/scheduler/include/DetectDuplicatePatientsTaskTest.xml";
+	
+	@Before
+	public void runBeforeEachTest() throws Exception {
+		executeDataSet(DUPLICATE_PATIENTS_XML);
+		getConnection().commit();
+	}
+	
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+	
+	/**
+	 * @see DetectDuplicatePatientsTask#execute()
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void execute_shouldResumeAtTheFirstShardNotDetectedByTheLastRun() {
+		AdministrationService as = Context.getAdministrationService();
+		TaskDefinition definition = new TaskDefinition();
+		definition.setProperty("shards", "3");
+		definition.setProperty("shardsPerRun", "1");
+		definition.setProperty("batchSize", "3");
+		
+		newTask(definition).execute();
+		
+		String position = as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION, "");
+		assertTrue(position, position.contains(":1/3:"));
+		String started = position.substring(0, position.indexOf(':'));
+		assertTrue(getSavedPairs().contains("2-6"));
+		
+		newTask(definition).execute();
+		
+		position = as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION, "");
+		assertTrue(position, position.startsWith(started + ":2/3:"));
+		assertTrue(getSavedPairs().contains("2-6"));
+		
+		newTask(definition).execute();
+		
+		assertEquals("", as.getGlobalProperty(OpenmrsConstants.GP_DUPLICATE_PATIENT_DETECTION_POSITION, ""));
+		Set<String> pairs = getSavedPairs();
+		assertTrue(pairs.contains("500-501"));
+		assertFalse(pairs.contains("2-6"));
+		
+		TaskDefinition singleShard = new TaskDefinition();
+		singleShard.setProperty("shards", "1");
+		singleShard.setProperty("resume", "false");
+		newTask(singleShard).execute();
+		
+		assertEquals(getSavedPairs(), pairs);
+	}
+	
+	/**
+	 * @return the saved pairs as the patient ids of both patients joined by a dash
+	 */
+	private Set<String> getSavedPairs() {
+		Set<String> pairs = new HashSet<>();
+		for (List<Object> row : Context.getAdministrationService().executeSQL(
+		    "select patient_a, patient_b from duplicate_patient_match", true)) {
+			pairs.add(row.get(0) + "-" + row.get(1));
+		}
+		return pairs;
+	}
+	
+	private DetectDuplicatePatientsTask newTask(TaskDefinition definition) {
+		DetectDuplicatePatientsTask task = new DetectDuplicatePatientsTask();
+		task.initialize(definition);
+		return task;
+	}
+}
@@ -0,0 +1,108 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.scheduler.tasks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.mrs.Patient;
+import org.mrs.PersonName;
+import org.mrs.api.db.SearchIndexProgress;
+import org.mrs.api.db.SearchIndexRebuildOptions;
+import org.mrs.scheduler.TaskDefinition;
+import org.mrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+public class RebuildSearchIndexTaskTest extends BaseContextSensitiveTest {
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	@After
+	public void deleteCommittedData() {
+		deleteAllData();
+	}
+	
+	/**
+	 * @see RebuildSearchIndexTask#getOptions()
+	 */
+	@Test
+	public void getOptions_shouldReadTheOptionsFromTheTaskProperties() throws Exception {
+		TaskDefinition definition = new TaskDefinition();
+		definition.setProperty("types", " org.mrs.PersonName, org.mrs.Patient ,");
+		definition.setProperty("loaderThreads", "4");
+		definition.setProperty("batchSize", " 50 ");
+		definition.setProperty("fetchSize", "25");
+		definition.setProperty("resume", "False");
+		
+		SearchIndexRebuildOptions options = newTask(definition).getOptions();
+		
+		assertEquals(Arrays.asList(PersonName.class, Patient.class), options.getTypes());
+		assertEquals(4, options.getLoaderThreads());
+		assertEquals(50, options.getBatchSize());
+		assertEquals(25, options.getFetchSize());
+		assertFalse(options.isResume());
+	}
+	
+	/**
+	 * @see RebuildSearchIndexTask#getOptions()
+	 */
+	@Test
+	public void getOptions_shouldUseTheDefaultsForMissingAndInvalidProperties() throws Exception {
+		TaskDefinition definition = new TaskDefinition();
+		definition.setProperty("batchSize", "many");
+		
+		SearchIndexRebuildOptions options = newTask(definition).getOptions();
+		
+		assertTrue(options.getTypes().isEmpty());
+		assertEquals(SearchIndexRebuildOptions.DEFAULT_LOADER_THREADS, options.getLoaderThreads());
+		assertEquals(SearchIndexRebuildOptions.DEFAULT_BATCH_SIZE, options.getBatchSize());
+		assertEquals(SearchIndexRebuildOptions.DEFAULT_FETCH_SIZE, options.getFetchSize());
+		assertTrue(options.isResume());
+	}
+	
+	/**
+	 * @see RebuildSearchIndexTask#execute()
+	 */
+	@Test
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public void execute_shouldRebuildTheSearchIndexOfTheConfiguredTypes() {
+		TaskDefinition definition = new TaskDefinition();
+		definition.setProperty("types", PersonName.class.getName());
+		definition.setProperty("batchSize", "5");
+		RebuildSearchIndexTask task = newTask(definition);
+		
+		task.execute();
+		
+		assertFalse(task.isExecuting());
+		List<SearchIndexProgress> progress = task.getProgress();
+		assertEquals(1, progress.size());
+		assertEquals(PersonName.class, progress.get(0).getType());
+		assertTrue(progress.get(0).isFinished());
+		long names = (Long) sessionFactory.getCurrentSession().createQuery("select count(*) from PersonName")
+		        .uniqueResult();
+		assertEquals(names, progress.get(0).getIndexed());
+	}
+	
+	private RebuildSearchIndexTask newTask(TaskDefinition definition) {
+		RebuildSearchIndexTask task = new RebuildSearchIndexTask();
+		task.initialize(definition);
+		return task;
+	}
+}
@@ -33,6 +33,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Timer;
 import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -66,6 +67,7 @@ import org.hibernate.cfg.Environment;
 import org.hibernate.dialect.H2Dialect;
 import org.junit.After;
 import org.junit.AfterClass;
+import org.junit.Assert;
 import org.junit.Assume;
 import org.junit.Before;
 import org.mockito.InjectMocks;
@@ -78,11 +80,15 @@ import org.mrs.PersonAttribute;
 import org.mrs.PersonName;
 import org.mrs.User;
 import org.mrs.annotation.OpenmrsProfileExcludeFilter;
+import org.mrs.api.cache.GlobalPropertyCache;
 import org.mrs.api.context.Context;
 import org.mrs.api.context.ContextAuthenticationException;
 import org.mrs.api.context.ContextMockHelper;
 import org.mrs.api.context.Credentials;
 import org.mrs.api.context.UsernamePasswordCredentials;
+import org.mrs.api.db.hibernate.PooledLoIfNotAssignedGenerator;
+import org.mrs.api.db.hibernate.search.SearchIndexQueue;
+import org.mrs.hl7.HL7ResolutionCache;
 import org.mrs.module.ModuleConstants;
 import org.mrs.util.DatabaseUtil;
 import org.mrs.util.OpenmrsClassLoader;
@@ -817,6 +823,13 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 			//Do the actual update/insert:
 			//insert new rows, update existing rows, and leave others alone
 			DatabaseOperation.REFRESH.execute(dbUnitConn, dataset);
+			
+			//the data set may contain global properties
+			clearGlobalPropertyCache();
+			clearHL7ResolutionCache();
+			
+			//and rows with ids inside blocks the id generators have already reserved
+			PooledLoIfNotAssignedGenerator.discardReservedBlocks();
 		}
 		catch (DatabaseUnitException | SQLException e) {
 			throw new DatabaseUnitRuntimeException(e);
@@ -867,6 +880,9 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 			
 			connection.commit();
 			
+			clearGlobalPropertyCache();
+			clearHL7ResolutionCache();
+			
 			updateSearchIndex();
 			
 			isBaseSetup = false;
@@ -884,6 +900,24 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		SessionFactory sf = (SessionFactory) applicationContext.getBean("sessionFactory");
 		sf.getCache().evictCollectionRegions();
 		sf.getCache().evictEntityRegions();
+		clearGlobalPropertyCache();
+		clearHL7ResolutionCache();
+	}
+	
+	/**
+	 * Clears the cached global property values, needed after global properties were changed
+	 * without going through hibernate e.g. by running a data set
+	 */
+	public void clearGlobalPropertyCache() {
+		applicationContext.getBean("globalPropertyCache", GlobalPropertyCache.class).clear();
+	}
+	
+	/**
+	 * Clears the ids cached for codes in hl7 messages, needed after concepts, providers, locations
+	 * or persons were changed without going through hibernate e.g. by running a data set
+	 */
+	public void clearHL7ResolutionCache() {
+		applicationContext.getBean("hl7ResolutionCache", HL7ResolutionCache.class).clear();
 	}
 	
 	/**
@@ -959,6 +993,16 @@ public abstract class BaseContextSensitiveTest extends AbstractJUnit4SpringConte
 		}
 	}
 	
+	/**
+	 * Waits until the changes committed so far are indexed by the
+	 * {@link org.mrs.api.db.hibernate.search.SearchIndexQueue}. Only needed in tests that commit
+	 * their changes.
+	 */
+	public void waitForSearchIndex() throws InterruptedException {
+		SearchIndexQueue queue = Context.getRegisteredComponent("searchIndexQueue", SearchIndexQueue.class);
+		Assert.assertTrue("The search index is not up to date", queue.waitForIndex(TimeUnit.SECONDS.toMillis(30)));
+	}
+	
 	@After
 	public void clearSessionAfterEachTest() {
 		// clear the session to make sure nothing is cached, etc
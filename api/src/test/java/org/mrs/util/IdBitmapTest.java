@@ -0,0 +1,129 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class IdBitmapTest {
+	
+	/**
+	 * @see IdBitmap#add(int)
+	 */
+	@Test
+	public void add_shouldKeepIdsOfLargeGroupsInOrder() {
+		IdBitmap bitmap = new IdBitmap();
+		for (int id = 0; id < 3 * IdBitmap.MAX_ARRAY_SIZE; id += 2) {
+			assertTrue(bitmap.add(id));
+		}
+		assertFalse(bitmap.add(0));
+		bitmap.add(Integer.MAX_VALUE);
+		
+		assertEquals(3 * IdBitmap.MAX_ARRAY_SIZE / 2 + 1, bitmap.size());
+		assertTrue(bitmap.contains(IdBitmap.MAX_ARRAY_SIZE * 2));
+		assertFalse(bitmap.contains(IdBitmap.MAX_ARRAY_SIZE * 2 + 1));
+		assertEquals(Integer.MAX_VALUE, bitmap.toArray()[bitmap.size() - 1]);
+	}
+	
+	/**
+	 * @see IdBitmap#add(int)
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void add_shouldFailForNegativeIds() {
+		new IdBitmap().add(-1);
+	}
+	
+	/**
+	 * @see IdBitmap#remove(int)
+	 */
+	@Test
+	public void remove_shouldRemoveTheId() {
+		IdBitmap bitmap = IdBitmap.of(1, 70000, 140000);
+		
+		assertTrue(bitmap.remove(70000));
+		assertFalse(bitmap.remove(70000));
+		assertArrayEquals(new int[] { 1, 140000 }, bitmap.toArray());
+	}
+	
+	/**
+	 * @see IdBitmap#copy()
+	 */
+	@Test
+	public void copy_shouldNotShareTheIdsWithTheOriginal() {
+		IdBitmap bitmap = IdBitmap.of(1, 70000);
+		
+		IdBitmap copy = bitmap.copy();
+		copy.add(2);
+		copy.remove(70000);
+		
+		assertArrayEquals(new int[] { 1, 70000 }, bitmap.toArray());
+		assertArrayEquals(new int[] { 1, 2 }, copy.toArray());
+	}
+	
+	/**
+	 * @see IdBitmap#or(IdBitmap, IdBitmap)
+	 * @see IdBitmap#and(IdBitmap, IdBitmap)
+	 * @see IdBitmap#andNot(IdBitmap, IdBitmap)
+	 */
+	@Test
+	public void or_shouldGiveTheSameIdsAsSetOperations() {
+		Random random = new Random(42);
+		for (int round = 0; round < 20; round++) {
+			Set<Integer> a = new TreeSet<>();
+			Set<Integer> b = new TreeSet<>();
+			int range = round % 2 == 0 ? 20000 : 500000;
+			for (int i = 0; i < 15000; i++) {
+				a.add(random.nextInt(range));
+				b.add(random.nextInt(range));
+			}
+			IdBitmap bitmapA = IdBitmap.of(a);
+			IdBitmap bitmapB = IdBitmap.of(b);
+			
+			Set<Integer> union = new TreeSet<>(a);
+			union.addAll(b);
+			assertEquals(union, IdBitmap.or(bitmapA, bitmapB).toSet());
+			
+			Set<Integer> intersection = new TreeSet<>(a);
+			intersection.retainAll(b);
+			assertEquals(intersection, IdBitmap.and(bitmapA, bitmapB).toSet());
+			assertEquals(IdBitmap.of(intersection), IdBitmap.and(bitmapA, bitmapB));
+			
+			Set<Integer> difference = new TreeSet<>(a);
+			difference.removeAll(b);
+			assertEquals(difference, IdBitmap.andNot(bitmapA, bitmapB).toSet());
+		}
+	}
+	
+	/**
+	 * @see IdBitmap#chunks(int)
+	 */
+	@Test
+	public void chunks_shouldSplitTheIdsInAscendingLists() {
+		IdBitmap bitmap = IdBitmap.of(5, 3, 100000, 1, 4);
+		
+		List<List<Integer>> chunks = new ArrayList<>();
+		bitmap.chunks(2).forEach(chunks::add);
+		
+		assertEquals(3, chunks.size());
+		assertEquals(1, chunks.get(0).get(0).intValue());
+		assertEquals(3, chunks.get(0).get(1).intValue());
+		assertEquals(100000, chunks.get(2).get(0).intValue());
+	}
+}
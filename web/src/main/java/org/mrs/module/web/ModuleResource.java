@@ -0,0 +1,217 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.module.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A static file of a module served by {@link ModuleResourcesServlet}. The length and last modified
+ * date are read once when the resource is created. The entity tag is a digest of the content that
+ * is computed the first time it is asked for. Files of up to {@link #MAX_CACHED_SIZE} bytes of a
+ * cacheable resource are kept in memory once they have been served, as long as all cached content
+ * stays within {@link #MAX_TOTAL_CACHED_SIZE} bytes. Whoever creates a cacheable resource must
+ * {@link #evict()} it once it is no longer used.
+ *
+ * @since 2.3.0
+ */
+public class ModuleResource {
+	
+	/**
+	 * Files larger than this are always served from disk
+	 */
+	public static final int MAX_CACHED_SIZE = 64 * 1024;
+	
+	/**
+	 * The number of bytes all resources may keep in memory together
+	 */
+	public static final long MAX_TOTAL_CACHED_SIZE = 16 * 1024 * 1024;
+	
+	private static final AtomicLong totalCachedSize = new AtomicLong();
+	
+	private final File file;
+	
+	private final long length;
+	
+	private final long lastModified;
+	
+	private final boolean cacheable;
+	
+	private volatile String eTag;
+	
+	private volatile byte[] content;
+	
+	/**
+	 * Creates a cacheable resource
+	 *
+	 * @param file the file of the resource
+	 */
+	public ModuleResource(File file) {
+		this(file, true);
+	}
+	
+	/**
+	 * @param file the file of the resource
+	 * @param cacheable false if the content must always be read from the file, e.g. for a resource
+	 *            that is only used for one request
+	 */
+	public ModuleResource(File file, boolean cacheable) {
+		this.file = file;
+		this.cacheable = cacheable;
+		this.length = file.length();
+		// http dates have a precision of seconds
+		this.lastModified = file.lastModified() / 1000 * 1000;
+	}
+	
+	public File getFile() {
+		return file;
+	}
+	
+	public long getLength() {
+		return length;
+	}
+	
+	public long getLastModified() {
+		return lastModified;
+	}
+	
+	/**
+	 * @return a strong entity tag, quoted, made of a digest of the content
+	 * @throws IOException if the file cannot be read
+	 */
+	public String getETag() throws IOException {
+		String result = eTag;
+		if (result == null) {
+			MessageDigest digest = newDigest();
+			byte[] cached = getContent();
+			if (cached != null) {
+				digest.update(cached);
+			} else {
+				try (InputStream in = Files.newInputStream(file.toPath())) {
+					byte[] buffer = new byte[8192];
+					int read;
+					while ((read = in.read(buffer)) != -1) {
+						digest.update(buffer, 0, read);
+					}
+				}
+			}
+			result = "\"" + Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest()) + "\"";
+			eTag = result;
+		}
+		return result;
+	}
+	
+	/**
+	 * Writes part of the resource, from memory if it is cached and else by transferring it from the
+	 * file channel.
+	 *
+	 * @param out the stream to write to
+	 * @param start the offset of the first byte to write
+	 * @param count the number of bytes to write
+	 * @throws IOException if the file cannot be read or the stream written to
+	 */
+	public void writeTo(OutputStream out, long start, long count) throws IOException {
+		byte[] cached = getContent();
+		if (cached != null) {
+			out.write(cached, (int) start, (int) count);
+			return;
+		}
+		
+		WritableByteChannel target = Channels.newChannel(out);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long position = start;
+			long end = start + count;
+			while (position < end) {
+				long transferred = channel.transferTo(position, end - position, target);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+			}
+		}
+	}
+	
+	/**
+	 * @return the cached content, loading it if the resource is small enough and there is room
+	 * @throws IOException if the file cannot be read
+	 */
+	private byte[] getContent() throws IOException {
+		byte[] result = content;
+		if (result == null && cacheable && length <= MAX_CACHED_SIZE) {
+			synchronized (this) {
+				result = content;
+				if (result == null && reserve(length)) {
+					try {
+						result = Files.readAllBytes(file.toPath());
+					}
+					catch (IOException e) {
+						totalCachedSize.addAndGet(-length);
+						throw e;
+					}
+					if (result.length != length) {
+						// the file changed since the resource was created, don't serve it with the old length
+						totalCachedSize.addAndGet(-length);
+						return null;
+					}
+					content = result;
+				}
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Frees the memory taken by the cached content
+	 */
+	synchronized void evict() {
+		if (content != null) {
+			content = null;
+			totalCachedSize.addAndGet(-length);
+		}
+	}
+	
+	/**
+	 * @return the number of bytes all resources keep in memory together
+	 */
+	static long getTotalCachedSize() {
+		return totalCachedSize.get();
+	}
+	
+	private static boolean reserve(long size) {
+		long current;
+		do {
+			current = totalCachedSize.get();
+			if (current + size > MAX_TOTAL_CACHED_SIZE) {
+				return false;
+			}
+		} while (!totalCachedSize.compareAndSet(current, current + size));
+		return true;
+	}
+	
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.module.web;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the resource files of each started module, so that {@link ModuleResourcesServlet} can find
+ * them without going to the file system. The index of a module is built when
+ * {@link WebModuleUtil#startModule(org.mrs.module.Module, javax.servlet.ServletContext, boolean)} has
+ * copied its files into the webapp and removed when the module is stopped. Modules loaded from a
+ * development directory are not indexed because their files change while they run.
+ *
+ * @since 2.3.0
+ */
+public class ModuleResourceIndex {
+	
+	private static final Logger log = LoggerFactory.getLogger(ModuleResourceIndex.class);
+	
+	private static final Map<String, Map<String, ModuleResource>> resourcesByModule = new ConcurrentHashMap<>();
+	
+	private ModuleResourceIndex() {
+	}
+	
+	/**
+	 * Indexes the files in the resources directory of a module, replacing any previous index of it
+	 * and freeing the content the resources of that index keep in memory.
+	 *
+	 * @param moduleId the id of the module
+	 * @param resourcesDir the directory the resources of the module were copied to
+	 */
+	public static void index(String moduleId, File resourcesDir) {
+		Map<String, ModuleResource> resources = new HashMap<>();
+		if (resourcesDir.isDirectory()) {
+			addResources(resources, resourcesDir, "");
+		}
+		evict(resourcesByModule.put(moduleId, Collections.unmodifiableMap(resources)));
+		
+		log.debug("Indexed {} resources of module {}", resources.size(), moduleId);
+	}
+	
+	private static void addResources(Map<String, ModuleResource> resources, File dir, String path) {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		
+		for (File file : files) {
+			String filePath = path + "/" + file.getName();
+			if (file.isDirectory()) {
+				addResources(resources, file, filePath);
+			} else {
+				resources.put(filePath, new ModuleResource(file));
+			}
+		}
+	}
+	
+	/**
+	 * Removes the index of a module and frees the content its resources keep in memory
+	 *
+	 * @param moduleId the id of the module
+	 */
+	public static void remove(String moduleId) {
+		evict(resourcesByModule.remove(moduleId));
+	}
+	
+	private static void evict(Map<String, ModuleResource> resources) {
+		if (resources != null) {
+			for (ModuleResource resource : resources.values()) {
+				resource.evict();
+			}
+		}
+	}
+	
+	/**
+	 * @param moduleId the id of a module
+	 * @return true if the resources of the module are indexed
+	 */
+	public static boolean isIndexed(String moduleId) {
+		return resourcesByModule.containsKey(moduleId);
+	}
+	
+	/**
+	 * @param moduleId the id of an indexed module
+	 * @param path the path of the resource within the resources directory of the module, starting
+	 *            with "/"
+	 * @return the resource or null if the module has no resource with that path
+	 */
+	public static ModuleResource getResource(String moduleId, String path) {
+		Map<String, ModuleResource> resources = resourcesByModule.get(moduleId);
+		return resources == null ? null : resources.get(path);
+	}
+}
@@ -10,7 +10,6 @@
 package org.mrs.module.web;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 import javax.servlet.ServletException;
@@ -18,12 +17,23 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
 import org.mrs.module.Module;
 import org.mrs.module.ModuleUtil;
-import org.mrs.util.OpenmrsUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Serves the files in the web/module/resources directory of the started modules.
+ * <p>
+ * Files of modules started by {@link WebModuleUtil} are looked up in the {@link ModuleResourceIndex}
+ * instead of on disk, small ones are served from memory and others are transferred from their file
+ * channel. Files of other modules are looked up on disk for each request and never kept in memory.
+ * Responses carry a strong ETag and Last-Modified, conditional requests with If-None-Match or
+ * If-Modified-Since are answered with 304 and single byte ranges are supported. Requests with a
+ * query string, e.g. <code>/moduleResources/mymodule/app.js?v=1.2</code>, are taken to be versioned
+ * and are allowed to be cached for a year, others must be revalidated.
+ */
 public class ModuleResourcesServlet extends HttpServlet {
 	
 	private static final String MODULE_PATH = "/WEB-INF/view/module/";
@@ -32,44 +42,202 @@ public class ModuleResourcesServlet extends HttpServlet {
 	
 	private static final Logger log = LoggerFactory.getLogger(ModuleResourcesServlet.class);
 	
+	private static final String RESOURCE_ATTRIBUTE = ModuleResourcesServlet.class.getName() + ".resource";
+	
+	static final String VERSIONED_CACHE_CONTROL = "public, max-age=31536000, immutable";
+	
+	static final String UNVERSIONED_CACHE_CONTROL = "public, no-cache";
+	
 	/**
-	 * Used for caching purposes
+	 * Used for caching purposes, requests with an If-None-Match header are left to
+	 * {@link #doGet(HttpServletRequest, HttpServletResponse)} as that takes precedence over
+	 * If-Modified-Since
 	 *
 	 * @see javax.servlet.http.HttpServlet#getLastModified(javax.servlet.http.HttpServletRequest)
 	 */
 	@Override
 	protected long getLastModified(HttpServletRequest req) {
-		File f = getFile(req);
+		if (req.getHeader("If-None-Match") != null) {
+			return -1;
+		}
 		
-		if (f == null) {
+		ModuleResource resource = getResource(req);
+		
+		if (resource == null) {
 			return super.getLastModified(req);
 		}
 		
-		return f.lastModified();
+		return resource.getLastModified();
 	}
 	
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		
-		log.debug("In service method for module servlet: " + request.getPathInfo());
+		log.debug("In service method for module servlet: {}", request.getPathInfo());
 		
-		File f = getFile(request);
-		if (f == null) {
+		ModuleResource resource = getResource(request);
+		if (resource == null) {
 			response.setStatus(HttpServletResponse.SC_NOT_FOUND);
 			return;
 		}
 		
-		response.setDateHeader("Last-Modified", f.lastModified());
-		response.setContentLength(Long.valueOf(f.length()).intValue());
-		String mimeType = getServletContext().getMimeType(f.getName());
+		String eTag = resource.getETag();
+		response.setHeader("ETag", eTag);
+		response.setDateHeader("Last-Modified", resource.getLastModified());
+		response.setHeader("Cache-Control", request.getQueryString() != null ? VERSIONED_CACHE_CONTROL
+		        : UNVERSIONED_CACHE_CONTROL);
+		response.setHeader("Accept-Ranges", "bytes");
+		
+		if (matchesETag(request.getHeader("If-None-Match"), eTag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		String mimeType = getServletContext().getMimeType(resource.getFile().getName());
 		response.setContentType(mimeType);
 		
-		FileInputStream is = new FileInputStream(f);
+		long length = resource.getLength();
+		long start = 0;
+		long end = length - 1;
+		String range = request.getHeader("Range");
+		if (range != null && isIfRangeMatched(request, eTag, resource.getLastModified())) {
+			long[] byteRange = parseRange(range, length);
+			if (byteRange != null && byteRange.length == 0) {
+				response.setHeader("Content-Range", "bytes */" + length);
+				response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			} else if (byteRange != null) {
+				start = byteRange[0];
+				end = byteRange[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+			}
+		}
+		
+		response.setContentLength((int) (end - start + 1));
+		resource.writeTo(response.getOutputStream(), start, end - start + 1);
+	}
+	
+	/**
+	 * Gets the resource for the request, which is kept as a request attribute so that it is only
+	 * looked up once per request
+	 *
+	 * @param request the current http request
+	 * @return the resource being requested or null if not found
+	 * @since 2.3.0
+	 */
+	protected ModuleResource getResource(HttpServletRequest request) {
+		ModuleResource resource = (ModuleResource) request.getAttribute(RESOURCE_ATTRIBUTE);
+		if (resource != null) {
+			return resource;
+		}
+		
+		String path = request.getPathInfo();
+		Module module = ModuleUtil.getModuleForPath(path);
+		if (module == null) {
+			log.warn("No module handles the path: " + path);
+			return null;
+		}
+		
+		if (ModuleResourceIndex.isIndexed(module.getModuleId())) {
+			resource = ModuleResourceIndex.getResource(module.getModuleId(), ModuleUtil.getPathForResource(module, path));
+			if (resource == null) {
+				log.warn("No resource with path '{}' exists for module '{}'", path, module.getModuleId());
+			}
+		} else {
+			File f = getFile(request);
+			if (f != null) {
+				resource = new ModuleResource(f, false);
+			}
+		}
+		
+		if (resource != null) {
+			request.setAttribute(RESOURCE_ATTRIBUTE, resource);
+		}
+		return resource;
+	}
+	
+	/**
+	 * @param ifNoneMatch the value of the If-None-Match header, may be null
+	 * @param eTag the entity tag of the resource
+	 * @return true if the header matches the entity tag, using the weak comparison
+	 */
+	static boolean matchesETag(String ifNoneMatch, String eTag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		
+		for (String tag : ifNoneMatch.split(",")) {
+			tag = StringUtils.removeStart(tag.trim(), "W/");
+			if ("*".equals(tag) || tag.equals(eTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return false if the request has an If-Range header that does not match the resource, in which
+	 *         case the whole resource is sent
+	 */
+	private boolean isIfRangeMatched(HttpServletRequest request, String eTag, long lastModified) {
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		} else if (ifRange.startsWith("\"")) {
+			return ifRange.equals(eTag);
+		}
+		
 		try {
-			OpenmrsUtil.copyFile(is, response.getOutputStream());
+			return request.getDateHeader("If-Range") == lastModified;
+		}
+		catch (IllegalArgumentException e) {
+			return false;
 		}
-		finally {
-			OpenmrsUtil.closeStream(is);
+	}
+	
+	/**
+	 * Parses a Range header holding a single byte range.
+	 *
+	 * @param range the value of the Range header
+	 * @param length the length of the resource
+	 * @return the first and last byte position, an empty array if the range cannot be satisfied or
+	 *         null if the header is not a single byte range, which means it is ignored
+	 */
+	static long[] parseRange(String range, long length) {
+		if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+			return null;
+		}
+		
+		String spec = range.substring(6).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return null;
+		}
+		
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			if (first.isEmpty()) {
+				// a suffix range, i.e. the last n bytes
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0 || length == 0) {
+					return new long[0];
+				}
+				return new long[] { Math.max(0, length - suffixLength), length - 1 };
+			}
+			
+			long start = Long.parseLong(first);
+			long end = last.isEmpty() ? length - 1 : Long.parseLong(last);
+			if (start < 0 || end < start) {
+				return null;
+			} else if (start >= length) {
+				return new long[0];
+			}
+			return new long[] { start, Math.min(end, length - 1) };
+		}
+		catch (NumberFormatException e) {
+			return null;
 		}
 	}
 	
@@ -291,6 +291,11 @@ public class WebModuleUtil {
 			File outFile = new File(folderPath.replace("/", File.separator));
 			outFile.deleteOnExit();
 			
+			// index the resources served by the ModuleResourcesServlet, unless they come from a development directory
+			if (ModuleUtil.getDevelopmentDirectory(mod.getModuleId()) == null) {
+				ModuleResourceIndex.index(mod.getModuleId(), new File(outFile, "resources"));
+			}
+			
 			// additional checks on module needing a context refresh
 			if (!moduleNeedsContextRefresh && mod.getAdvicePoints() != null && !mod.getAdvicePoints().isEmpty()) {
 				
@@ -730,6 +735,8 @@ public class WebModuleUtil {
 			}
 		}
 		
+		ModuleResourceIndex.remove(moduleId);
+		
 		String realPath = getRealPath(servletContext);
 		
 		// delete the web files from the webapp
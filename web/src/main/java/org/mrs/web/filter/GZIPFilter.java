@@ -9,13 +9,20 @@
  */
 package org.mrs.web.filter;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
 
 import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.lang3.StringUtils;
 import org.mrs.api.APIException;
 import org.mrs.api.context.Context;
 import org.mrs.util.OpenmrsConstants;
@@ -28,15 +35,35 @@ import org.springframework.web.filter.OncePerRequestFilter;
  * href="http://www.onjava.com/pub/a/onjava/2003/11/19/filters.html">
  * http://www.onjava.com/pub/a/onjava/2003/11/19/filters.html</a>. &copy; 2003 Jayson Falkner You
  * may freely use the code both commercially and non-commercially.
+ * <p>
+ * Responses are compressed while they are written once they exceed the <code>threshold</code>
+ * init parameter (1024 bytes by default), smaller ones are sent uncompressed. Content types listed
+ * in the comma separated <code>excludedContentTypes</code> init parameter, which may end with "/*",
+ * are never compressed. A static resource that has a <code>.gz</code> file next to it, at least as
+ * recent as the resource, is answered with that file instead, unless the
+ * <code>servePrecompressed</code> init parameter is false.
  */
 public class GZIPFilter extends OncePerRequestFilter {
 	
 	private static final Logger log = LoggerFactory.getLogger(GZIPFilter.class);
 	
+	/**
+	 * Content types that are already compressed, by default
+	 */
+	public static final String DEFAULT_EXCLUDED_CONTENT_TYPES = "image/*,audio/*,video/*,application/zip,"
+	        + "application/gzip,application/x-gzip,application/x-compress,application/x-7z-compressed,"
+	        + "application/x-rar-compressed,application/pdf,application/font-woff,font/woff,font/woff2";
+	
 	private Boolean cachedGZipEnabledFlag = null;
 	
 	private String cachedGZipCompressedRequestForPathAccepted = null;
 	
+	private int threshold = GZIPResponseStream.DEFAULT_THRESHOLD;
+	
+	private List<String> excludedContentTypes = parseContentTypes(DEFAULT_EXCLUDED_CONTENT_TYPES);
+	
+	private boolean servePrecompressed = true;
+	
 	/**
 	 * @see org.springframework.web.filter.OncePerRequestFilter#doFilterInternal(javax.servlet.http.HttpServletRequest,
 	 *      javax.servlet.http.HttpServletResponse, javax.servlet.FilterChain)
@@ -52,9 +79,14 @@ public class GZIPFilter extends OncePerRequestFilter {
 			return;
 		}
 		if (isGZIPSupported(request) && isGZIPEnabled()) {
+			response.addHeader("Vary", "Accept-Encoding");
+			if (servePrecompressed && servePrecompressedResource(request, response)) {
+				return;
+			}
+			
 			log.debug("GZIP supported and enabled, compressing response");
 			
-			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response);
+			GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response, threshold, this::isCompressible);
 			
 			chain.doFilter(request, wrappedResponse);
 			wrappedResponse.finishResponse();
@@ -65,6 +97,124 @@ public class GZIPFilter extends OncePerRequestFilter {
 		chain.doFilter(request, response);
 	}
 	
+	/**
+	 * Answers the request with the <code>.gz</code> file next to the requested static resource if
+	 * there is one that is not older than the resource.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @return true if the request was answered
+	 * @throws IOException
+	 */
+	private boolean servePrecompressedResource(HttpServletRequest request, HttpServletResponse response)
+	        throws IOException {
+		String method = request.getMethod();
+		ServletContext servletContext = getServletContext();
+		if (servletContext == null || !("GET".equals(method) || "HEAD".equals(method))) {
+			return false;
+		}
+		
+		String path = request.getServletPath();
+		if (request.getPathInfo() != null) {
+			path += request.getPathInfo();
+		}
+		if (StringUtils.isBlank(path) || path.endsWith(".jsp")) {
+			return false;
+		}
+		
+		String realPath = servletContext.getRealPath(path);
+		if (realPath == null) {
+			return false;
+		}
+		File file = new File(realPath);
+		File gzipFile = new File(realPath + ".gz");
+		if (!file.isFile() || !gzipFile.isFile() || gzipFile.lastModified() < file.lastModified()) {
+			return false;
+		}
+		
+		log.debug("Serving precompressed {}", gzipFile);
+		
+		long lastModified = gzipFile.lastModified() / 1000 * 1000;
+		long ifModifiedSince;
+		try {
+			ifModifiedSince = request.getDateHeader("If-Modified-Since");
+		}
+		catch (IllegalArgumentException e) {
+			ifModifiedSince = -1;
+		}
+		response.setDateHeader("Last-Modified", lastModified);
+		if (ifModifiedSince >= lastModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return true;
+		}
+		
+		String mimeType = servletContext.getMimeType(path);
+		if (mimeType != null) {
+			response.setContentType(mimeType);
+		}
+		response.setHeader("Content-Encoding", "gzip");
+		response.setContentLength((int) gzipFile.length());
+		if ("GET".equals(method)) {
+			Files.copy(gzipFile.toPath(), response.getOutputStream());
+		}
+		return true;
+	}
+	
+	/**
+	 * @param contentType the content type of a response, may be null
+	 * @return false if the content type is excluded from compression
+	 */
+	private boolean isCompressible(String contentType) {
+		if (contentType == null) {
+			return true;
+		}
+		
+		String mimeType = StringUtils.substringBefore(contentType, ";").trim().toLowerCase(Locale.ENGLISH);
+		for (String excluded : excludedContentTypes) {
+			if (excluded.endsWith("/*") ? mimeType.startsWith(excluded.substring(0, excluded.length() - 1))
+			        : mimeType.equals(excluded)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	private static List<String> parseContentTypes(String contentTypes) {
+		List<String> result = new ArrayList<>();
+		for (String contentType : StringUtils.split(StringUtils.defaultString(contentTypes), ",")) {
+			if (StringUtils.isNotBlank(contentType)) {
+				result.add(contentType.trim().toLowerCase(Locale.ENGLISH));
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @param threshold the number of bytes a response must exceed to be compressed
+	 * @since 2.3.0
+	 */
+	public void setThreshold(int threshold) {
+		this.threshold = threshold;
+	}
+	
+	/**
+	 * @param excludedContentTypes comma separated content types that are not compressed, entries
+	 *            ending with "/*" match all subtypes
+	 * @since 2.3.0
+	 */
+	public void setExcludedContentTypes(String excludedContentTypes) {
+		this.excludedContentTypes = parseContentTypes(excludedContentTypes);
+	}
+	
+	/**
+	 * @param servePrecompressed whether to answer requests for static resources with their
+	 *            <code>.gz</code> file if there is one
+	 * @since 2.3.0
+	 */
+	public void setServePrecompressed(boolean servePrecompressed) {
+		this.servePrecompressed = servePrecompressed;
+	}
+	
 	/**
 	 * Supports GZIP requests
 	 * @param req request
@@ -9,9 +9,9 @@
  */
 package org.mrs.web.filter;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.function.Predicate;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletOutputStream;
@@ -19,13 +19,23 @@ import javax.servlet.http.HttpServletResponse;
 
 /**
  * Wraps Response Stream for GZipFilter
- * 
+ * <p>
+ * The first bytes written, up to the threshold, are held in a buffer. A response that is complete
+ * before the threshold is reached is sent as is, with its length set. Once the threshold is
+ * exceeded the buffer is written out and the rest of the response is streamed to the client, gzip
+ * compressed unless its content type is already compressed or a content encoding was set.
+ *
  * @author Matt Raible
  * @version $Revision: 1.3 $ $Date: 2004/05/16 02:17:00 $
  */
 public class GZIPResponseStream extends ServletOutputStream {
 	
-	// abstraction of the output stream used for compression
+	/**
+	 * The default number of bytes a response must exceed to be compressed
+	 */
+	public static final int DEFAULT_THRESHOLD = 1024;
+	
+	// the stream the content is written to once it is decided whether to compress it
 	protected OutputStream bufferedOutput;
 	
 	// state keeping variable for if close() has been called
@@ -37,15 +47,36 @@ public class GZIPResponseStream extends ServletOutputStream {
 	// reference to the output stream to the client's browser
 	protected ServletOutputStream output;
 	
-	// default size of the in-memory buffer
-	private int bufferSize = 50000;
+	// holds the start of the response until the threshold is exceeded
+	private byte[] buffer;
+	
+	private int count;
+	
+	private final Predicate<String> compressibleContentType;
+	
+	// content length set by the servlet, which only applies to uncompressed content
+	private int contentLength = -1;
 	
 	public GZIPResponseStream(HttpServletResponse response) throws IOException {
+		this(response, DEFAULT_THRESHOLD, contentType -> true);
+	}
+	
+	/**
+	 * @param response the response to write to
+	 * @param threshold the number of bytes a response must exceed to be compressed
+	 * @param compressibleContentType tells if content of a content type should be compressed, it is
+	 *            passed null if no content type is set
+	 * @throws IOException
+	 * @since 2.3.0
+	 */
+	public GZIPResponseStream(HttpServletResponse response, int threshold, Predicate<String> compressibleContentType)
+	        throws IOException {
 		super();
 		closed = false;
 		this.response = response;
 		this.output = response.getOutputStream();
-		bufferedOutput = new ByteArrayOutputStream();
+		this.buffer = new byte[Math.max(threshold, 0)];
+		this.compressibleContentType = compressibleContentType;
 	}
 	
 	@Override
@@ -55,42 +86,19 @@ public class GZIPResponseStream extends ServletOutputStream {
 			throw new IOException("This output stream has already been closed");
 		}
 		
-		// if we buffered everything in memory, gzip it
-		if (bufferedOutput instanceof ByteArrayOutputStream) {
-			// get the content
-			ByteArrayOutputStream baos = (ByteArrayOutputStream) bufferedOutput;
-			
-			// prepare a gzip stream
-			ByteArrayOutputStream compressedContent = new ByteArrayOutputStream();
-			GZIPOutputStream gzipstream = new GZIPOutputStream(compressedContent);
-			byte[] bytes = baos.toByteArray();
-			gzipstream.write(bytes);
-			gzipstream.finish();
-			
-			// get the compressed content
-			byte[] compressedBytes = compressedContent.toByteArray();
-			
-			// set appropriate HTTP headers
-			response.setContentLength(compressedBytes.length);
-			response.addHeader("Content-Encoding", "gzip");
-			output.write(compressedBytes);
-			output.flush();
-			output.close();
-			closed = true;
-		}
-		// if things were not buffered in memory, finish the GZIP stream and response
-		else if (bufferedOutput instanceof GZIPOutputStream) {
-			// cast to appropriate type
-			GZIPOutputStream gzipstream = (GZIPOutputStream) bufferedOutput;
-			
-			// finish the compression
-			gzipstream.finish();
-			
-			// finish the response
-			output.flush();
-			output.close();
-			closed = true;
+		// the whole response fit into the buffer, send it uncompressed
+		if (bufferedOutput == null) {
+			response.setContentLength(count);
+			output.write(buffer, 0, count);
+		} else if (bufferedOutput instanceof GZIPOutputStream) {
+			((GZIPOutputStream) bufferedOutput).finish();
 		}
+		
+		// finish the response
+		output.flush();
+		output.close();
+		buffer = null;
+		closed = true;
 	}
 	
 	@Override
@@ -99,7 +107,10 @@ public class GZIPResponseStream extends ServletOutputStream {
 			throw new IOException("Cannot flush a closed output stream");
 		}
 		
-		bufferedOutput.flush();
+		// while buffering, flushing would commit the response before it is known if it gets compressed
+		if (bufferedOutput != null) {
+			bufferedOutput.flush();
+		}
 	}
 	
 	@Override
@@ -111,32 +122,35 @@ public class GZIPResponseStream extends ServletOutputStream {
 		// make sure we aren't over the buffer's limit
 		checkBufferSize(1);
 		
-		// write the byte to the temporary output
-		bufferedOutput.write((byte) b);
+		if (bufferedOutput == null) {
+			buffer[count++] = (byte) b;
+		} else {
+			bufferedOutput.write(b);
+		}
 	}
 	
 	private void checkBufferSize(int length) throws IOException {
-		// check if we are buffering too large of a file
-		if (bufferedOutput instanceof ByteArrayOutputStream) {
-			ByteArrayOutputStream baos = (ByteArrayOutputStream) bufferedOutput;
-			
-			if ((baos.size() + length) > bufferSize) {
-				// files too large to keep in memory are sent to the client without Content-Length specified
+		if (bufferedOutput == null && count + length > buffer.length) {
+			if (isCompressible()) {
+				// responses sent while they are being written have no Content-Length
 				response.addHeader("Content-Encoding", "gzip");
-				
-				// get existing bytes
-				byte[] bytes = baos.toByteArray();
-				
-				// make new gzip stream using the response output stream
-				GZIPOutputStream gzipstream = new GZIPOutputStream(output);
-				gzipstream.write(bytes);
-				
-				// we are no longer buffering, send content via gzipstream
-				bufferedOutput = gzipstream;
+				bufferedOutput = new GZIPOutputStream(output, 8192, true);
+			} else {
+				if (contentLength >= 0) {
+					response.setContentLength(contentLength);
+				}
+				bufferedOutput = output;
 			}
+			
+			bufferedOutput.write(buffer, 0, count);
+			buffer = null;
 		}
 	}
 	
+	private boolean isCompressible() {
+		return !response.containsHeader("Content-Encoding") && compressibleContentType.test(response.getContentType());
+	}
+	
 	@Override
 	public void write(byte[] b) throws IOException {
 		write(b, 0, b.length);
@@ -152,15 +166,35 @@ public class GZIPResponseStream extends ServletOutputStream {
 		// make sure we aren't over the buffer's limit
 		checkBufferSize(len);
 		
-		// write the content to the buffer
-		bufferedOutput.write(b, off, len);
+		if (bufferedOutput == null) {
+			System.arraycopy(b, off, buffer, count, len);
+			count += len;
+		} else {
+			bufferedOutput.write(b, off, len);
+		}
+	}
+	
+	/**
+	 * Sets the length of the uncompressed content, which is passed on if the content is not
+	 * compressed.
+	 *
+	 * @param contentLength the content length set on the response
+	 * @since 2.3.0
+	 */
+	public void setContentLength(int contentLength) {
+		this.contentLength = contentLength;
 	}
 	
 	public boolean closed() {
 		return this.closed;
 	}
 	
+	/**
+	 * Discards the buffered content if none has been sent yet.
+	 */
 	public void reset() {
-		//noop
+		if (bufferedOutput == null) {
+			count = 0;
+		}
 	}
 }
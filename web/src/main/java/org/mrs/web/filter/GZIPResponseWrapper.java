@@ -12,6 +12,7 @@ package org.mrs.web.filter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.function.Predicate;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -29,6 +30,8 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	
 	private static final Logger log = LoggerFactory.getLogger(GZIPResponseWrapper.class);
 	
+	private static final String CONTENT_LENGTH = "Content-Length";
+	
 	protected HttpServletResponse origResponse;
 	
 	protected ServletOutputStream stream = null;
@@ -37,13 +40,33 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 	
 	protected int error = 0;
 	
+	private final int threshold;
+	
+	private final Predicate<String> compressibleContentType;
+	
+	private int contentLength = -1;
+	
 	public GZIPResponseWrapper(HttpServletResponse response) {
+		this(response, GZIPResponseStream.DEFAULT_THRESHOLD, contentType -> true);
+	}
+	
+	/**
+	 * @param response the response to wrap
+	 * @param threshold the number of bytes the content must exceed to be compressed
+	 * @param compressibleContentType tells if content of a content type should be compressed
+	 * @since 2.3.0
+	 */
+	public GZIPResponseWrapper(HttpServletResponse response, int threshold, Predicate<String> compressibleContentType) {
 		super(response);
 		origResponse = response;
+		this.threshold = threshold;
+		this.compressibleContentType = compressibleContentType;
 	}
 	
 	public ServletOutputStream createOutputStream() throws IOException {
-		return new GZIPResponseStream(origResponse);
+		GZIPResponseStream gzipStream = new GZIPResponseStream(origResponse, threshold, compressibleContentType);
+		gzipStream.setContentLength(contentLength);
+		return gzipStream;
 	}
 	
 	public void finishResponse() {
@@ -53,6 +76,8 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 			} else {
 				if (stream != null) {
 					stream.close();
+				} else if (contentLength >= 0) {
+					origResponse.setContentLength(contentLength);
 				}
 			}
 		}
@@ -61,6 +86,84 @@ public class GZIPResponseWrapper extends HttpServletResponseWrapper {
 		}
 	}
 	
+	/**
+	 * The content length is only known once it is decided whether the content gets compressed, so
+	 * it is held back until then.
+	 * 
+	 * @see javax.servlet.ServletResponseWrapper#setContentLength(int)
+	 */
+	@Override
+	public void setContentLength(int len) {
+		contentLength = len;
+		if (stream instanceof GZIPResponseStream) {
+			((GZIPResponseStream) stream).setContentLength(len);
+		}
+	}
+	
+	/**
+	 * Servlet 3.1 containers, e.g. the default servlet of Tomcat 8, set the content length of static
+	 * files with this method, so it is held back like {@link #setContentLength(int)}. Lengths which
+	 * don't fit an int are treated as unknown. Not annotated with {@link Override} as the method
+	 * only exists since servlet 3.1.
+	 * 
+	 * @param len the length of the uncompressed content
+	 * @since 2.3.0
+	 */
+	public void setContentLengthLong(long len) {
+		setContentLength(len <= Integer.MAX_VALUE ? (int) len : -1);
+	}
+	
+	@Override
+	public void setHeader(String name, String value) {
+		if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			setContentLength(Integer.parseInt(value));
+		} else {
+			super.setHeader(name, value);
+		}
+	}
+	
+	@Override
+	public void addHeader(String name, String value) {
+		if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			setContentLength(Integer.parseInt(value));
+		} else {
+			super.addHeader(name, value);
+		}
+	}
+	
+	@Override
+	public void setIntHeader(String name, int value) {
+		if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.setIntHeader(name, value);
+		}
+	}
+	
+	@Override
+	public void addIntHeader(String name, int value) {
+		if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			setContentLength(value);
+		} else {
+			super.addIntHeader(name, value);
+		}
+	}
+	
+	@Override
+	public void reset() {
+		super.reset();
+		contentLength = -1;
+		resetBuffer();
+	}
+	
+	@Override
+	public void resetBuffer() {
+		super.resetBuffer();
+		if (stream instanceof GZIPResponseStream) {
+			((GZIPResponseStream) stream).reset();
+		}
+	}
+	
 	@Override
 	public void flushBuffer() throws IOException {
 		if (stream != null) {
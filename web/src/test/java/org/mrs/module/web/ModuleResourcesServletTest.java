@@ -0,0 +1,195 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.mrs.module.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mrs.module.Module;
+import org.mrs.module.ModuleUtil;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(ModuleUtil.class)
+public class ModuleResourcesServletTest {
+	
+	private static final String CONTENT = "var mymodule = {};";
+	
+	@Rule
+	public TemporaryFolder resourcesFolder = new TemporaryFolder();
+	
+	private ModuleResourcesServlet servlet;
+	
+	@Before
+	public void setUp() throws Exception {
+		FileUtils.writeStringToFile(new File(resourcesFolder.getRoot(), "scripts/app.js"), CONTENT, StandardCharsets.UTF_8);
+		ModuleResourceIndex.index("mymodule", resourcesFolder.getRoot());
+		
+		Module module = new Module("My Module", "mymodule", "org.mrs.module.mymodule", null, null, "1.0");
+		mockStatic(ModuleUtil.class);
+		when(ModuleUtil.getModuleForPath("/mymodule/scripts/app.js")).thenReturn(module);
+		when(ModuleUtil.getPathForResource(module, "/mymodule/scripts/app.js")).thenReturn("/scripts/app.js");
+		
+		servlet = new ModuleResourcesServlet();
+		servlet.init(new MockServletConfig(new MockServletContext()));
+	}
+	
+	@After
+	public void tearDown() {
+		ModuleResourceIndex.remove("mymodule");
+	}
+	
+	private MockHttpServletRequest newRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/moduleResources/mymodule/scripts/app.js");
+		request.setPathInfo("/mymodule/scripts/app.js");
+		return request;
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(javax.servlet.http.HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldServeAnIndexedResourceWithCacheHeaders() throws Exception {
+		MockHttpServletRequest request = newRequest();
+		request.setQueryString("v=1.0");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.service(request, response);
+		
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals(CONTENT.length(), response.getContentLength());
+		assertEquals(ModuleResourcesServlet.VERSIONED_CACHE_CONTROL, response.getHeader("Cache-Control"));
+		assertEquals(ModuleResourceIndex.getResource("mymodule", "/scripts/app.js").getETag(), response.getHeader("ETag"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(javax.servlet.http.HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldReturnNotModifiedIfTheETagMatches() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		servlet.service(newRequest(), response);
+		
+		MockHttpServletRequest request = newRequest();
+		request.addHeader("If-None-Match", response.getHeader("ETag"));
+		response = new MockHttpServletResponse();
+		servlet.service(request, response);
+		
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+		assertEquals(ModuleResourcesServlet.UNVERSIONED_CACHE_CONTROL, response.getHeader("Cache-Control"));
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(javax.servlet.http.HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldServeTheRequestedByteRange() throws Exception {
+		MockHttpServletRequest request = newRequest();
+		request.addHeader("Range", "bytes=4-11");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.service(request, response);
+		
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("bytes 4-11/" + CONTENT.length(), response.getHeader("Content-Range"));
+		assertEquals(CONTENT.substring(4, 12), response.getContentAsString());
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(javax.servlet.http.HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldReturnNotFoundForResourcesMissingFromTheIndex() throws Exception {
+		Module module = ModuleUtil.getModuleForPath("/mymodule/scripts/app.js");
+		when(ModuleUtil.getModuleForPath("/mymodule/missing.js")).thenReturn(module);
+		when(ModuleUtil.getPathForResource(module, "/mymodule/missing.js")).thenReturn("/missing.js");
+		MockHttpServletRequest request = newRequest();
+		request.setPathInfo("/mymodule/missing.js");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.service(request, response);
+		
+		assertEquals(HttpServletResponse.SC_NOT_FOUND, response.getStatus());
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#doGet(javax.servlet.http.HttpServletRequest, HttpServletResponse)
+	 */
+	@Test
+	public void doGet_shouldNotKeepTheContentOfResourcesOfModulesThatAreNotIndexed() throws Exception {
+		ModuleResourceIndex.remove("mymodule");
+		servlet = new ModuleResourcesServlet() {
+			
+			@Override
+			protected File getFile(HttpServletRequest request) {
+				return new File(resourcesFolder.getRoot(), "scripts/app.js");
+			}
+		};
+		servlet.init(new MockServletConfig(new MockServletContext()));
+		long cachedSize = ModuleResource.getTotalCachedSize();
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		
+		servlet.service(newRequest(), response);
+		
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals(cachedSize, ModuleResource.getTotalCachedSize());
+	}
+	
+	/**
+	 * @see ModuleResourceIndex#index(String, File)
+	 */
+	@Test
+	public void index_shouldFreeTheContentKeptByThePreviousIndexOfTheModule() throws Exception {
+		long cachedSize = ModuleResource.getTotalCachedSize();
+		servlet.service(newRequest(), new MockHttpServletResponse());
+		assertEquals(cachedSize + CONTENT.length(), ModuleResource.getTotalCachedSize());
+		
+		ModuleResourceIndex.index("mymodule", resourcesFolder.getRoot());
+		
+		assertEquals(cachedSize, ModuleResource.getTotalCachedSize());
+	}
+	
+	/**
+	 * @see ModuleResourcesServlet#parseRange(String, long)
+	 */
+	@Test
+	public void parseRange_shouldParseSingleByteRanges() {
+		assertArrayEquals(new long[] { 0, 99 }, ModuleResourcesServlet.parseRange("bytes=0-", 100));
+		assertArrayEquals(new long[] { 90, 99 }, ModuleResourcesServlet.parseRange("bytes=-10", 100));
+		assertArrayEquals(new long[] { 10, 99 }, ModuleResourcesServlet.parseRange("bytes=10-500", 100));
+		assertArrayEquals(new long[0], ModuleResourcesServlet.parseRange("bytes=100-", 100));
+		assertNull(ModuleResourcesServlet.parseRange("bytes=0-1,5-6", 100));
+		assertNull(ModuleResourcesServlet.parseRange("bytes=5-1", 100));
+		assertNull(ModuleResourcesServlet.parseRange("items=0-1", 100));
+	}
+}
@@ -13,33 +13,66 @@ import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.FilterChain;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 import org.mrs.GlobalProperty;
 import org.mrs.api.context.Context;
+import org.mrs.util.OpenmrsConstants;
 import org.mrs.web.filter.GZIPFilter;
+import org.mrs.web.filter.GZIPResponseWrapper;
 import org.mrs.web.test.BaseWebContextSensitiveTest;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.core.io.FileSystemResourceLoader;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletContext;
 
 /**
  * Tests some of the methods on the {@link org.mrs.web.filter.update.GZIPFilter}
  */
 public class GZIPFilterTest extends BaseWebContextSensitiveTest {
 	
+	@Rule
+	public TemporaryFolder webappFolder = new TemporaryFolder();
+	
+	private MockHttpServletResponse filter(String contentType, String content) throws Exception {
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_ENABLED, "true");
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", "/data.json");
+		req.addHeader("Accept-Encoding", "gzip, deflate");
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		
+		new GZIPFilter().doFilterInternal(req, resp, (request, response) -> {
+			response.setContentType(contentType);
+			response.getWriter().write(content);
+		});
+		return resp;
+	}
+	
+	private String gunzip(byte[] bytes) throws IOException {
+		return IOUtils.toString(new GZIPInputStream(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8);
+	}
+	
 	/**
 	 * @see org.mrs.web.filter.GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse, javax.servlet.FilterChain)
 	 */
@@ -83,4 +116,96 @@ public class GZIPFilterTest extends BaseWebContextSensitiveTest {
 		
 	}
 	
+	/**
+	 * @see GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse,FilterChain)
+	 */
+	@Test
+	public void doFilterInternal_shouldNotCompressResponsesUpToTheThreshold() throws Exception {
+		MockHttpServletResponse resp = filter("application/json", "{\"small\":true}");
+		
+		Assert.assertNull(resp.getHeader("Content-Encoding"));
+		Assert.assertEquals("{\"small\":true}", resp.getContentAsString());
+		Assert.assertEquals(resp.getContentAsByteArray().length, resp.getContentLength());
+	}
+	
+	/**
+	 * @see GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse,FilterChain)
+	 */
+	@Test
+	public void doFilterInternal_shouldCompressResponsesLargerThanTheThreshold() throws Exception {
+		String content = StringUtils.repeat("{\"name\":\"value\"},", 1000);
+		MockHttpServletResponse resp = filter("application/json", content);
+		
+		Assert.assertEquals("gzip", resp.getHeader("Content-Encoding"));
+		Assert.assertEquals(content, gunzip(resp.getContentAsByteArray()));
+	}
+	
+	/**
+	 * @see GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse,FilterChain)
+	 */
+	@Test
+	public void doFilterInternal_shouldNotSendTheUncompressedContentLengthSetAsALongWithCompressedContent()
+	        throws Exception {
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_ENABLED, "true");
+		String content = StringUtils.repeat("body { color: red; }\n", 500);
+		byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", "/styles/app.css");
+		req.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		
+		// the way the default servlet of a servlet 3.1 container serves a static file
+		new GZIPFilter().doFilterInternal(req, resp, (request, response) -> {
+			response.setContentType("text/css");
+			((GZIPResponseWrapper) response).setContentLengthLong(bytes.length);
+			response.getOutputStream().write(bytes);
+		});
+		
+		Assert.assertEquals("gzip", resp.getHeader("Content-Encoding"));
+		Assert.assertNull(resp.getHeader("Content-Length"));
+		Assert.assertEquals(content, gunzip(resp.getContentAsByteArray()));
+	}
+	
+	/**
+	 * @see GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse,FilterChain)
+	 */
+	@Test
+	public void doFilterInternal_shouldNotCompressExcludedContentTypes() throws Exception {
+		String content = StringUtils.repeat("x", 5000);
+		MockHttpServletResponse resp = filter("image/png", content);
+		
+		Assert.assertNull(resp.getHeader("Content-Encoding"));
+		Assert.assertEquals(content, resp.getContentAsString());
+	}
+	
+	/**
+	 * @see GZIPFilter#doFilterInternal(HttpServletRequest,HttpServletResponse,FilterChain)
+	 */
+	@Test
+	public void doFilterInternal_shouldServeThePrecompressedFileOfAStaticResource() throws Exception {
+		Context.getAdministrationService().setGlobalProperty(OpenmrsConstants.GLOBAL_PROPERTY_GZIP_ENABLED, "true");
+		File root = webappFolder.getRoot();
+		File script = new File(root, "scripts/app.js");
+		FileUtils.writeStringToFile(script, "var app = {};", StandardCharsets.UTF_8);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+			out.write("var app = {};".getBytes(StandardCharsets.UTF_8));
+		}
+		File gzipFile = new File(root, "scripts/app.js.gz");
+		FileUtils.writeByteArrayToFile(gzipFile, compressed.toByteArray());
+		gzipFile.setLastModified(script.lastModified() + 1000);
+		
+		MockHttpServletRequest req = new MockHttpServletRequest("GET", "/scripts/app.js");
+		req.setServletPath("/scripts/app.js");
+		req.addHeader("Accept-Encoding", "gzip");
+		MockHttpServletResponse resp = new MockHttpServletResponse();
+		FilterChain chain = mock(FilterChain.class);
+		GZIPFilter gzipFilter = new GZIPFilter();
+		gzipFilter.setServletContext(new MockServletContext(root.getAbsolutePath(), new FileSystemResourceLoader()));
+		gzipFilter.doFilterInternal(req, resp, chain);
+		
+		Mockito.verifyZeroInteractions(chain);
+		Assert.assertEquals("gzip", resp.getHeader("Content-Encoding"));
+		Assert.assertEquals("var app = {};", gunzip(resp.getContentAsByteArray()));
+	}
+	
 }